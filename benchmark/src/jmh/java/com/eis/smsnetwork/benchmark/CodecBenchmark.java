@@ -0,0 +1,92 @@
+package com.eis.smsnetwork.benchmark;
+
+import com.eis.communication.network.Version;
+import com.eis.smslibrary.SMSMessage;
+import com.eis.smslibrary.SMSPeer;
+import com.eis.smsnetwork.ResourceUpdate;
+import com.eis.smsnetwork.SMSNetMessageParseStrategy;
+import com.eis.smsnetwork.broadcast.BatchMessage;
+import com.eis.smsnetwork.codec.CompactUpdateCodec;
+import com.eis.smsnetwork.codec.UpdateCodec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of writing and reading the messages of the network: the single requests, whose
+ * fields are escaped, the text and compact batches, and the parse strategy every SMS goes
+ * through.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CodecBenchmark {
+
+    private static final int UPDATES = 8;
+    private static final SMSPeer SENDER = new SMSPeer("+393423541601");
+
+    private final UpdateCodec compactCodec = new CompactUpdateCodec();
+    private List<ResourceUpdate> updates;
+    private ResourceUpdate escapedUpdate;
+    private String textBatch;
+    private String compactBatch;
+    private SMSNetMessageParseStrategy parseStrategy;
+    private SMSMessage message;
+
+    @Setup
+    public void setup() {
+        updates = new ArrayList<>();
+        for (int i = 0; i < UPDATES; i++) {
+            Version version = new Version(1580000000000L + i, "+393423541601");
+            if (i % 4 == 3) updates.add(ResourceUpdate.remove("key_" + i).withVersion(version));
+            else updates.add(ResourceUpdate.add("key_" + i, "value " + i).withVersion(version));
+        }
+        escapedUpdate = ResourceUpdate.add("escaped_key", "a value with \\ and spaces\\");
+        textBatch = new BatchMessage(updates).encode();
+        compactBatch = compactCodec.encode(updates);
+        parseStrategy = new SMSNetMessageParseStrategy();
+        message = new SMSMessage(SENDER, textBatch);
+    }
+
+    @Benchmark
+    public String encodeRequest() {
+        return escapedUpdate.toRequestMessage();
+    }
+
+    @Benchmark
+    public String encodeTextBatch() {
+        return new BatchMessage(updates).encode();
+    }
+
+    @Benchmark
+    public List<ResourceUpdate> decodeTextBatch() {
+        return BatchMessage.decode(textBatch).getUpdates();
+    }
+
+    @Benchmark
+    public String encodeCompactBatch() {
+        return compactCodec.encode(updates);
+    }
+
+    @Benchmark
+    public List<ResourceUpdate> decodeCompactBatch() {
+        return compactCodec.decode(compactBatch);
+    }
+
+    /**
+     * Every parsed SMS gets a new sequence number, so the duplicate filter never drops it
+     */
+    @Benchmark
+    public SMSMessage parseRoundTrip() {
+        return parseStrategy.parseMessage(parseStrategy.parseData(message), SENDER);
+    }
+}
@@ -0,0 +1,75 @@
+package com.eis.smsnetwork.benchmark;
+
+import androidx.annotation.NonNull;
+
+import com.eis.communication.network.commands.AsyncCommandExecutor;
+import com.eis.communication.network.commands.CommandExecutor;
+import com.eis.smsnetwork.ResourceUpdate;
+import com.eis.smsnetwork.SMSNetDictionary;
+import com.eis.smsnetwork.broadcast.UpdateBroadcaster;
+import com.eis.smsnetwork.smsnetcommands.SMSAddResource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the overhead of running a request as a command: building it and executing it
+ * directly, or handing it to the {@link AsyncCommandExecutor} and waiting for it. Updates are
+ * handed to a broadcaster dropping them, so no message is sent.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CommandBenchmark {
+
+    private static final String KEY = "resource_key";
+    private static final String VALUE = "resource value";
+
+    private final UpdateBroadcaster droppingBroadcaster = new UpdateBroadcaster() {
+        @Override
+        public void submit(@NonNull ResourceUpdate update) {
+        }
+
+        @Override
+        public void flush() {
+        }
+    };
+    private SMSNetDictionary dictionary;
+    private AsyncCommandExecutor executor;
+
+    @Setup
+    public void setup() {
+        dictionary = new SMSNetDictionary();
+        executor = new AsyncCommandExecutor(1, 64);
+    }
+
+    @TearDown
+    public void teardown() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public void addDirectly() {
+        dictionary.addResource(KEY, VALUE);
+        droppingBroadcaster.submit(ResourceUpdate.add(KEY, VALUE).withVersionFrom(dictionary));
+    }
+
+    @Benchmark
+    public void executeCommand() {
+        CommandExecutor.execute(new SMSAddResource(KEY, VALUE, dictionary, droppingBroadcaster));
+    }
+
+    @Benchmark
+    public void submitCommand() throws ExecutionException, InterruptedException {
+        executor.submit(new SMSAddResource(KEY, VALUE, dictionary, droppingBroadcaster), null).get();
+    }
+}
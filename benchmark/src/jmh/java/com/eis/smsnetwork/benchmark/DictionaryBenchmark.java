@@ -0,0 +1,136 @@
+package com.eis.smsnetwork.benchmark;
+
+import com.eis.communication.network.KeyValidator;
+import com.eis.smsnetwork.SMSAnyKeyValidator;
+import com.eis.smsnetwork.SMSNetDictionary;
+import com.eis.smsnetwork.SMSWordKeyValidator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the {@link SMSNetDictionary} operations. Every operation validates its key, so
+ * the validators are compared: {@code regex} is the {@code key.matches("^\\w+$")} check the
+ * dictionary used to run, {@code word} the character scan of {@link SMSWordKeyValidator},
+ * {@code cached} the same scan behind a map of the keys already seen, and {@code any} the
+ * validator accepting any key, which isolates the cost of the validation.
+ * <p>
+ * Keys parsed from a message are new strings every time, so with {@code freshKeys} every
+ * operation gets a copy of its key, whose hash isn't computed yet. The cache only pays off for
+ * keys passed again as the same string, and was dropped from the library since it's slower than
+ * the plain scan on fresh keys.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DictionaryBenchmark {
+
+    @Param({"100", "10000"})
+    public int size;
+
+    @Param({"regex", "word", "cached", "any"})
+    public String validator;
+
+    @Param({"false", "true"})
+    public boolean freshKeys;
+
+    private KeyValidator<String> keyValidator;
+    private SMSNetDictionary dictionary;
+    private String[] keys;
+    private int next = 0;
+
+    /**
+     * The key check of the dictionary before the validators
+     */
+    private static class RegexKeyValidator implements KeyValidator<String> {
+        @Override
+        public boolean isValid(String key) {
+            return key != null && key.matches("^\\w+$");
+        }
+    }
+
+    /**
+     * Word validator remembering the keys it already accepted
+     */
+    private static class CachedKeyValidator implements KeyValidator<String> {
+        private static final int CAPACITY = 1024;
+        private final KeyValidator<String> validator = new SMSWordKeyValidator();
+        private final Map<String, Boolean> validKeys = new ConcurrentHashMap<>();
+
+        @Override
+        public boolean isValid(String key) {
+            if (key == null) return false;
+            if (validKeys.containsKey(key)) return true;
+            if (!validator.isValid(key)) return false;
+            if (validKeys.size() >= CAPACITY) validKeys.clear();
+            validKeys.put(key, Boolean.TRUE);
+            return true;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        switch (validator) {
+            case "regex":
+                keyValidator = new RegexKeyValidator();
+                break;
+            case "word":
+                keyValidator = new SMSWordKeyValidator();
+                break;
+            case "cached":
+                keyValidator = new CachedKeyValidator();
+                break;
+            default:
+                keyValidator = new SMSAnyKeyValidator();
+        }
+        dictionary = new SMSNetDictionary(keyValidator);
+        keys = new String[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = "resource_key_" + i;
+            dictionary.addResource(keys[i], "value of resource " + i);
+        }
+    }
+
+    private String nextKey() {
+        String key = keys[next];
+        next = (next + 1) % keys.length;
+        return freshKeys ? new String(key.toCharArray()) : key;
+    }
+
+    @Benchmark
+    public boolean validateKey() {
+        return keyValidator.isValid(nextKey());
+    }
+
+    @Benchmark
+    public String getResource() {
+        return dictionary.getResource(nextKey());
+    }
+
+    @Benchmark
+    public String getMissingResource() {
+        return dictionary.getResource("missing_resource_key");
+    }
+
+    @Benchmark
+    public void addResource() {
+        dictionary.addResource(nextKey(), "updated value");
+    }
+
+    @Benchmark
+    public void removeAndAddResource() {
+        String key = nextKey();
+        dictionary.removeResource(key);
+        dictionary.addResource(key, "value");
+    }
+}
@@ -0,0 +1,74 @@
+package com.eis.smsnetwork.benchmark;
+
+import com.eis.communication.network.SubscriberSnapshot;
+import com.eis.smslibrary.SMSPeer;
+import com.eis.smsnetwork.SMSNetSubscriberList;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the {@link SMSNetSubscriberList} membership changes, at growing network sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SubscriberListBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int peers;
+
+    private SMSNetSubscriberList subscribers;
+    private SMSPeer[] members;
+    private SMSPeer joiner;
+    private int next = 0;
+
+    @Setup
+    public void setup() {
+        subscribers = new SMSNetSubscriberList();
+        members = new SMSPeer[peers];
+        for (int i = 0; i < peers; i++) {
+            members[i] = peer(i);
+            subscribers.addSubscriber(members[i]);
+        }
+        joiner = peer(peers);
+    }
+
+    private static SMSPeer peer(int index) {
+        return new SMSPeer("+39" + (3400000000L + index));
+    }
+
+    @Benchmark
+    public void addAndRemoveSubscriber() {
+        subscribers.addSubscriber(joiner);
+        subscribers.removeSubscriber(joiner);
+    }
+
+    @Benchmark
+    public void removeAndAddSubscriber() {
+        SMSPeer member = members[next];
+        next = (next + 1) % members.length;
+        subscribers.removeSubscriber(member);
+        subscribers.addSubscriber(member);
+    }
+
+    @Benchmark
+    public boolean isSubscribed() {
+        SMSPeer member = members[next];
+        next = (next + 1) % members.length;
+        return subscribers.isSubscribed(member);
+    }
+
+    @Benchmark
+    public SubscriberSnapshot<SMSPeer> getSnapshot() {
+        return subscribers.getSnapshot();
+    }
+}
@@ -0,0 +1,45 @@
+package android.util;
+
+/**
+ * JVM stand-in for the Android logger, so that the library code reached by the simulations and
+ * the benchmarks runs outside a device. The debug and info messages are dropped, warnings and
+ * errors are written to the standard error.
+ * Only compiled into the benchmark module, where it takes the place of the class of android.jar.
+ */
+public final class Log {
+
+    private Log() {
+    }
+
+    public static int v(String tag, String msg) {
+        return 0;
+    }
+
+    public static int d(String tag, String msg) {
+        return 0;
+    }
+
+    public static int i(String tag, String msg) {
+        return 0;
+    }
+
+    public static int w(String tag, String msg) {
+        return print("W", tag, msg);
+    }
+
+    public static int e(String tag, String msg) {
+        return print("E", tag, msg);
+    }
+
+    public static int e(String tag, String msg, Throwable throwable) {
+        int length = print("E", tag, msg);
+        throwable.printStackTrace();
+        return length;
+    }
+
+    private static int print(String level, String tag, String msg) {
+        String line = level + "/" + tag + ": " + msg;
+        System.err.println(line);
+        return line.length();
+    }
+}
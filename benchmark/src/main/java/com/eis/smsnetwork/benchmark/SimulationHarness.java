@@ -0,0 +1,172 @@
+package com.eis.smsnetwork.benchmark;
+
+import com.eis.smsnetwork.simulation.NetworkSimulator;
+import com.eis.smsnetwork.simulation.SimulatedNode;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Runs the protocol on simulated networks of growing size and writes what it costs as JSON.
+ * For every size three scenarios are run on the same {@link NetworkSimulator}:
+ * <ul>
+ * <li>writes: resources are written by random nodes, measuring the messages and bytes sent per
+ * write, how long writes take to reach every node and how long they take to reach each one</li>
+ * <li>join: a random node invites a new one and sends it the state of the network, without
+ * losses since the transfer resumes in real time</li>
+ * <li>churn: part of the nodes go offline while resources are written, then come back, measuring
+ * the divergence before and after they repair their dictionary from a random node</li>
+ * </ul>
+ * Usage: {@code SimulationHarness <output file> [seed] [node counts...]}
+ */
+public class SimulationHarness {
+
+    private static final int[] DEFAULT_NODE_COUNTS = {50, 500, 5000};
+    private static final long DEFAULT_SEED = 42;
+    private static final int WRITES = 20;
+    private static final long WRITE_INTERVAL_MILLIS = 1000;
+    private static final long MIN_LATENCY_MILLIS = 2000;
+    private static final long MAX_LATENCY_MILLIS = 10000;
+    private static final double LOSS_RATE = 0.01;
+    private static final double CHURN_FRACTION = 0.1;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: SimulationHarness <output file> [seed] [node counts...]");
+            System.exit(1);
+        }
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : DEFAULT_SEED;
+        int[] nodeCounts = DEFAULT_NODE_COUNTS;
+        if (args.length > 2) {
+            nodeCounts = new int[args.length - 2];
+            for (int i = 2; i < args.length; i++)
+                nodeCounts[i - 2] = Integer.parseInt(args[i]);
+        }
+        StringBuilder json = new StringBuilder("{\"seed\":").append(seed).append(",\"results\":[");
+        for (int i = 0; i < nodeCounts.length; i++) {
+            if (i > 0) json.append(',');
+            json.append(simulate(nodeCounts[i], seed));
+        }
+        json.append("]}\n");
+        File output = new File(args[0]);
+        if (output.getParentFile() != null) output.getParentFile().mkdirs();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(output), Charset.forName("UTF-8"));
+        try {
+            writer.write(json.toString());
+        } finally {
+            writer.close();
+        }
+        System.out.print(json);
+    }
+
+    private static String simulate(int nodeCount, long seed) {
+        Random random = new Random(seed);
+        NetworkSimulator simulator = new NetworkSimulator(seed);
+        simulator.setLatency(MIN_LATENCY_MILLIS, MAX_LATENCY_MILLIS);
+        simulator.setLossRate(LOSS_RATE);
+        for (int i = 0; i < nodeCount; i++)
+            simulator.addNode();
+        StringBuilder json = new StringBuilder("{\"nodes\":").append(nodeCount);
+
+        // writes
+        long sent = simulator.getSentMessageCount();
+        long bytes = simulator.getSentBytes();
+        long startTime = simulator.getCurrentTime();
+        writeResources(simulator, random, "write");
+        simulator.run();
+        json.append(",\"writes\":{")
+                .append("\"messagesPerWrite\":").append(format((double) (simulator.getSentMessageCount() - sent) / WRITES))
+                .append(",\"bytesPerWrite\":").append(format((double) (simulator.getSentBytes() - bytes) / WRITES))
+                .append(",\"lostMessages\":").append(simulator.getLostMessageCount())
+                .append(",\"converged\":").append(simulator.getConvergedWriteCount())
+                .append(",\"notConverged\":").append(simulator.getPendingWriteCount())
+                .append(",\"convergenceMillis\":{")
+                .append("\"p50\":").append(simulator.getConvergencePercentile(50))
+                .append(",\"p90\":").append(simulator.getConvergencePercentile(90))
+                .append(",\"p99\":").append(simulator.getConvergencePercentile(99))
+                .append(",\"max\":").append(simulator.getConvergencePercentile(100))
+                .append("},\"replicaMillis\":{")
+                .append("\"p50\":").append(simulator.getReplicaPercentile(50))
+                .append(",\"p90\":").append(simulator.getReplicaPercentile(90))
+                .append(",\"p99\":").append(simulator.getReplicaPercentile(99))
+                .append("},\"virtualMillis\":").append(simulator.getCurrentTime() - startTime)
+                .append(",\"divergence\":").append(format(simulator.getDivergence()))
+                .append('}');
+
+        // join
+        sent = simulator.getSentMessageCount();
+        bytes = simulator.getSentBytes();
+        startTime = simulator.getCurrentTime();
+        SimulatedNode sponsor = simulator.getNodes().get(random.nextInt(nodeCount));
+        simulator.setLossRate(0);
+        simulator.join(sponsor);
+        simulator.run();
+        simulator.setLossRate(LOSS_RATE);
+        json.append(",\"join\":{")
+                .append("\"messages\":").append(simulator.getSentMessageCount() - sent)
+                .append(",\"bytes\":").append(simulator.getSentBytes() - bytes)
+                .append(",\"virtualMillis\":").append(simulator.getCurrentTime() - startTime)
+                .append('}');
+
+        // churn
+        List<SimulatedNode> churned = new ArrayList<>();
+        for (SimulatedNode node : simulator.getNodes())
+            if (random.nextDouble() < CHURN_FRACTION) churned.add(node);
+        for (SimulatedNode node : churned)
+            simulator.setOnline(node, false);
+        writeResources(simulator, random, "churn");
+        simulator.run();
+        for (SimulatedNode node : churned)
+            simulator.setOnline(node, true);
+        double divergence = simulator.getDivergence();
+        sent = simulator.getSentMessageCount();
+        bytes = simulator.getSentBytes();
+        List<SimulatedNode> nodes = simulator.getNodes();
+        for (SimulatedNode node : churned) {
+            SimulatedNode source = nodes.get(random.nextInt(nodes.size()));
+            while (churned.contains(source))
+                source = nodes.get(random.nextInt(nodes.size()));
+            node.getManager().getAntiEntropy().startRepair(source.getPeer());
+        }
+        simulator.run();
+        json.append(",\"churn\":{")
+                .append("\"offlineNodes\":").append(churned.size())
+                .append(",\"divergenceBeforeRepair\":").append(format(divergence))
+                .append(",\"divergenceAfterRepair\":").append(format(simulator.getDivergence()))
+                .append(",\"repairMessages\":").append(simulator.getSentMessageCount() - sent)
+                .append(",\"repairBytes\":").append(simulator.getSentBytes() - bytes)
+                .append('}');
+        return json.append('}').toString();
+    }
+
+    /**
+     * Writes resources from random online nodes, one every {@link #WRITE_INTERVAL_MILLIS}
+     */
+    private static void writeResources(final NetworkSimulator simulator, final Random random, String prefix) {
+        for (int i = 0; i < WRITES; i++) {
+            final String key = prefix + "_" + i;
+            simulator.schedule(i * WRITE_INTERVAL_MILLIS, new Runnable() {
+                @Override
+                public void run() {
+                    List<SimulatedNode> nodes = simulator.getNodes();
+                    SimulatedNode writer = nodes.get(random.nextInt(nodes.size()));
+                    while (!writer.isOnline())
+                        writer = nodes.get(random.nextInt(nodes.size()));
+                    simulator.setResource(writer, key, "value of " + key);
+                }
+            });
+        }
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.4f", value);
+    }
+}
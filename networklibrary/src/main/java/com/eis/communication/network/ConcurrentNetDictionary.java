@@ -0,0 +1,57 @@
+package com.eis.communication.network;
+
+/**
+ * Interface to define a network dictionary which can be safely shared between threads.
+ * On top of the basic {@link NetDictionary} operations it offers atomic read-modify-write
+ * operations, so that concurrent writers never lose an update.
+ *
+ * @param <K> The Key for each resource
+ * @param <R> The Resource
+ */
+public interface ConcurrentNetDictionary<K, R> extends NetDictionary<K, R> {
+
+    /**
+     * Adds a resource to the dictionary only if the key isn't already associated with one
+     *
+     * @param key      The key which defines the resource to be added
+     * @param resource The resource to add
+     * @return The resource already associated with the key, or null if the given one was added
+     */
+    R addResourceIfAbsent(K key, R resource);
+
+    /**
+     * Replaces the resource of a key only if it's currently equal to the expected one
+     *
+     * @param key              The key which defines the resource to be replaced
+     * @param expectedResource The resource the key is expected to be associated with
+     * @param newResource      The resource to set
+     * @return True if the resource was replaced, false otherwise
+     */
+    boolean replaceResource(K key, R expectedResource, R newResource);
+
+    /**
+     * Atomically computes a new resource for a key, given its current one
+     *
+     * @param key      The key which defines the resource to compute
+     * @param function The function computing the new resource. It may be invoked more than once
+     *                 if other threads are updating the same key, so it should have no side effects
+     * @return The new resource associated with the key, or null if it was removed
+     */
+    R computeResource(K key, ResourceFunction<K, R> function);
+
+    /**
+     * Function used to compute a new resource from the current one
+     *
+     * @param <K> The Key for each resource
+     * @param <R> The Resource
+     */
+    interface ResourceFunction<K, R> {
+
+        /**
+         * @param key             The key which defines the resource
+         * @param currentResource The resource currently associated with the key, or null if absent
+         * @return The new resource to associate with the key, or null to remove it
+         */
+        R apply(K key, R currentResource);
+    }
+}
@@ -0,0 +1,81 @@
+package com.eis.communication.network;
+
+/**
+ * Hybrid logical clock, giving timestamps which follow the physical time but still grow when the
+ * clocks of the nodes are not in sync.
+ * <p>
+ * A timestamp holds the milliseconds since the epoch in its upper bits and a counter in its lower
+ * {@link #LOGICAL_BITS} bits. Every timestamp given is greater than the previous ones and than
+ * every timestamp received through {@link #update(long)}, so a write made after seeing another
+ * one always has a greater version. A received timestamp further in the future than the maximum
+ * drift is rejected, otherwise a single node with a wrong clock would drag every other one along
+ * and its writes would win over any later one.
+ */
+public class HybridLogicalClock {
+
+    public static final int LOGICAL_BITS = 16;
+    /**
+     * Default time a received timestamp can be ahead of the local clock, in milliseconds
+     */
+    public static final long DEFAULT_MAX_DRIFT_MILLIS = 60 * 1000;
+
+    private final long maxDriftMillis;
+    private long last = 0;
+
+    /**
+     * Constructor for a HybridLogicalClock accepting timestamps up to
+     * {@link #DEFAULT_MAX_DRIFT_MILLIS} ahead of the local clock
+     */
+    public HybridLogicalClock() {
+        this(DEFAULT_MAX_DRIFT_MILLIS);
+    }
+
+    /**
+     * Constructor for a HybridLogicalClock
+     *
+     * @param maxDriftMillis The time a received timestamp can be ahead of the local clock, in
+     *                       milliseconds
+     * @throws IllegalArgumentException If the drift is negative
+     */
+    public HybridLogicalClock(long maxDriftMillis) {
+        if (maxDriftMillis < 0) throw new IllegalArgumentException("The maximum drift can't be negative!");
+        this.maxDriftMillis = maxDriftMillis;
+    }
+
+    /**
+     * @return A new timestamp, greater than any other seen so far
+     */
+    public synchronized long now() {
+        long physical = currentTimeMillis() << LOGICAL_BITS;
+        last = physical > last ? physical : last + 1;
+        return last;
+    }
+
+    /**
+     * Moves the clock past a timestamp received from another node
+     *
+     * @param remoteTimestamp The timestamp received
+     * @return False if the timestamp is further ahead of the local clock than the maximum drift,
+     * so it was ignored, true otherwise
+     */
+    public synchronized boolean update(long remoteTimestamp) {
+        if (toMillis(remoteTimestamp) > currentTimeMillis() + maxDriftMillis) return false;
+        if (remoteTimestamp > last) last = remoteTimestamp;
+        return true;
+    }
+
+    /**
+     * @param timestamp A timestamp given by a hybrid logical clock
+     * @return The milliseconds since the epoch of the timestamp
+     */
+    public static long toMillis(long timestamp) {
+        return timestamp >>> LOGICAL_BITS;
+    }
+
+    /**
+     * @return The current physical time, in milliseconds since the epoch
+     */
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,19 @@
+package com.eis.communication.network;
+
+/**
+ * Interface to define which keys a {@link NetDictionary} accepts.
+ * Different deployments can provide their own rules, for example depending on how keys are
+ * encoded when sent over the network.
+ *
+ * @param <K> The Key for each resource
+ */
+public interface KeyValidator<K> {
+
+    /**
+     * Checks if a given key can be used to identify a resource
+     *
+     * @param key The key to check
+     * @return True if the key is valid, false otherwise
+     */
+    boolean isValid(K key);
+}
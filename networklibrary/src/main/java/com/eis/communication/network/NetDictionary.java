@@ -1,5 +1,7 @@
 package com.eis.communication.network;
 
+import java.util.Map;
+
 /**
  * Interface to define a network dictionary
  *
@@ -32,4 +34,15 @@ public interface NetDictionary<K, R> {
      * else returns null
      */
     R getResource(K key);
+
+    /**
+     * @return A copy of every key in the dictionary with its resource, which isn't affected by
+     * later changes to the dictionary
+     */
+    Map<K, R> getResources();
+
+    /**
+     * Removes every resource from the dictionary
+     */
+    void clear();
 }
@@ -2,7 +2,7 @@ package com.eis.communication.network;
 
 import com.eis.communication.Peer;
 
-import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Interface which defines common operations for Subscribers of a network.
@@ -20,13 +20,31 @@ public interface NetSubscriberList<T extends Peer> {
     void addSubscriber(T subscriber);
 
     /**
-     * @return Returns the list of all the current subscribers to the net
+     * @return Returns an immutable list of all the current subscribers to the net, in the order
+     * they were added. Later changes to the subscribers are not reflected in the returned list.
      */
-    ArrayList<T> getSubscribers();
+    List<T> getSubscribers();
+
+    /**
+     * @return Returns the current subscribers together with the epoch of the membership, which
+     * increases every time a subscriber is added or removed
+     */
+    SubscriberSnapshot<T> getSnapshot();
 
     /**
      * Removes a given subscriber from the subscribers
      * @param subscriber The subscriber to remove
      */
     void removeSubscriber(T subscriber);
+
+    /**
+     * @param subscriber The subscriber to look for
+     * @return Returns true if the given subscriber is currently in the net, false otherwise
+     */
+    boolean isSubscribed(T subscriber);
+
+    /**
+     * Removes all the subscribers
+     */
+    void clear();
 }
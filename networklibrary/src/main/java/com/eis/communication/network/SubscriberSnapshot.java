@@ -0,0 +1,67 @@
+package com.eis.communication.network;
+
+import androidx.annotation.NonNull;
+
+import com.eis.communication.Peer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Immutable view of the subscribers of a network at a given point in time.
+ * Every change to the subscribers publishes a new snapshot with a greater epoch, so a snapshot
+ * can be iterated without any lock and tells exactly which membership it refers to.
+ *
+ * @param <T> The type of subscribers, must implement the {@link Peer} interface
+ */
+public final class SubscriberSnapshot<T extends Peer> {
+
+    private final long epoch;
+    private final List<T> subscribers;
+    private final Set<T> index;
+
+    /**
+     * Constructor for a SubscriberSnapshot, copies the given subscribers
+     *
+     * @param epoch       The version of the membership, increased on every change
+     * @param subscribers The subscribers in the net, in the order they were added
+     */
+    public SubscriberSnapshot(long epoch, @NonNull Collection<T> subscribers) {
+        this.epoch = epoch;
+        this.subscribers = Collections.unmodifiableList(new ArrayList<>(subscribers));
+        this.index = new HashSet<>(subscribers);
+    }
+
+    /**
+     * @return The version of the membership this snapshot was taken at
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * @return An immutable list of the subscribers, in the order they were added
+     */
+    public List<T> getSubscribers() {
+        return subscribers;
+    }
+
+    /**
+     * @param subscriber The subscriber to look for
+     * @return True if the subscriber was in the net when this snapshot was taken, false otherwise
+     */
+    public boolean contains(T subscriber) {
+        return index.contains(subscriber);
+    }
+
+    /**
+     * @return The number of subscribers in this snapshot
+     */
+    public int size() {
+        return subscribers.size();
+    }
+}
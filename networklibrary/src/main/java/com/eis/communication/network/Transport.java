@@ -0,0 +1,33 @@
+package com.eis.communication.network;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.eis.communication.Peer;
+import com.eis.communication.network.listeners.ReceiveListener;
+
+/**
+ * Interface which defines how the messages of a network reach other peers.
+ * The network logic only sends and receives text through a transport, so it can run over SMS
+ * as well as over a simulated network holding many nodes in a single process.
+ *
+ * @param <P> The type of peers messages are exchanged with, must implement the {@link Peer} interface
+ */
+public interface Transport<P extends Peer> {
+
+    /**
+     * Sends a message to a peer. This method doesn't wait for the message to be delivered,
+     * and a transport may lose it.
+     *
+     * @param peer    The peer to send the message to
+     * @param message The text of the message
+     */
+    void send(@NonNull P peer, @NonNull String message);
+
+    /**
+     * Sets the listener called for every message received through this transport
+     *
+     * @param listener The listener to call, or null to drop the received messages
+     */
+    void setReceiveListener(@Nullable ReceiveListener<P> listener);
+}
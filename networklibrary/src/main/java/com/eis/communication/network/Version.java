@@ -0,0 +1,69 @@
+package com.eis.communication.network;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Version of a resource, made of the timestamp given by a {@link HybridLogicalClock} and the id
+ * of the node which wrote the resource.
+ * Versions are totally ordered: by timestamp first, then by originator, so every node picks the
+ * same winner between two concurrent writes without asking anybody.
+ */
+public final class Version implements Comparable<Version> {
+
+    private final long timestamp;
+    private final String originator;
+
+    /**
+     * Constructor for a Version
+     *
+     * @param timestamp  The time of the write, given by a {@link HybridLogicalClock}
+     * @param originator The id of the node which made the write
+     * @throws IllegalArgumentException If the timestamp is negative
+     */
+    public Version(long timestamp, @NonNull String originator) {
+        if (timestamp < 0) throw new IllegalArgumentException("The timestamp can't be negative!");
+        this.timestamp = timestamp;
+        this.originator = originator;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getOriginator() {
+        return originator;
+    }
+
+    /**
+     * @param other Another version
+     * @return True if this version wins over the other one, false otherwise
+     */
+    public boolean isNewerThan(@NonNull Version other) {
+        return compareTo(other) > 0;
+    }
+
+    @Override
+    public int compareTo(@NonNull Version other) {
+        if (timestamp != other.timestamp) return timestamp < other.timestamp ? -1 : 1;
+        return originator.compareTo(other.originator);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (!(other instanceof Version)) return false;
+        Version version = (Version) other;
+        return timestamp == version.timestamp && originator.equals(version.originator);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (int) (timestamp ^ (timestamp >>> 32)) + originator.hashCode();
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return timestamp + "@" + originator;
+    }
+}
@@ -0,0 +1,38 @@
+package com.eis.communication.network;
+
+import java.util.Map;
+
+/**
+ * Network dictionary whose resources carry a {@link Version}, so that replicas receiving the same
+ * writes in any order end up equal.
+ * Local writes get a new version, greater than any other seen by the dictionary, and removals
+ * leave a tombstone. Writes from other nodes are merged with a last-writer-wins rule: a write is
+ * applied only if its version is greater than the one of the current resource or tombstone.
+ *
+ * @param <K> The Key for each resource
+ * @param <R> The Resource
+ */
+public interface VersionedNetDictionary<K, R> extends NetDictionary<K, R> {
+
+    /**
+     * @param key The key which defines the resource
+     * @return The resource with its version, a tombstone if it was removed, or null if the key was
+     * never written
+     */
+    VersionedResource<R> getVersionedResource(K key);
+
+    /**
+     * Merges a write made by another node
+     *
+     * @param key       The key which defines the resource
+     * @param versioned The resource with its version, or a tombstone
+     * @return True if the write was newer than the current one and was applied, false otherwise
+     */
+    boolean mergeResource(K key, VersionedResource<R> versioned);
+
+    /**
+     * @return A copy of every key in the dictionary with its versioned resource, tombstones
+     * included, which isn't affected by later changes to the dictionary
+     */
+    Map<K, VersionedResource<R>> getVersionedResources();
+}
@@ -0,0 +1,82 @@
+package com.eis.communication.network;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * A resource together with its {@link Version}.
+ * A removed resource is kept as a tombstone, with no resource and the version of the removal,
+ * so that an older write arriving later can't bring it back.
+ *
+ * @param <R> The Resource
+ */
+public final class VersionedResource<R> {
+
+    private final R resource;
+    private final Version version;
+
+    private VersionedResource(@Nullable R resource, @NonNull Version version) {
+        this.resource = resource;
+        this.version = version;
+    }
+
+    /**
+     * @param resource The resource
+     * @param version  The version of the write
+     * @param <R>      The Resource
+     * @return The resource with its version
+     * @throws IllegalArgumentException If the resource is null
+     */
+    public static <R> VersionedResource<R> of(@NonNull R resource, @NonNull Version version) {
+        if (resource == null) throw new IllegalArgumentException("Use a tombstone for a removed resource!");
+        return new VersionedResource<>(resource, version);
+    }
+
+    /**
+     * @param version The version of the removal
+     * @param <R>     The Resource
+     * @return The tombstone of a removed resource
+     */
+    public static <R> VersionedResource<R> tombstone(@NonNull Version version) {
+        return new VersionedResource<>(null, version);
+    }
+
+    /**
+     * @return The resource, or null if this is a tombstone
+     */
+    @Nullable
+    public R getResource() {
+        return resource;
+    }
+
+    public Version getVersion() {
+        return version;
+    }
+
+    /**
+     * @return True if the resource was removed, false otherwise
+     */
+    public boolean isTombstone() {
+        return resource == null;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (!(other instanceof VersionedResource)) return false;
+        VersionedResource<?> versioned = (VersionedResource<?>) other;
+        return version.equals(versioned.version) &&
+                (resource == null ? versioned.resource == null : resource.equals(versioned.resource));
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * version.hashCode() + (resource == null ? 0 : resource.hashCode());
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return (isTombstone() ? "tombstone" : String.valueOf(resource)) + " v" + version;
+    }
+}
@@ -0,0 +1,245 @@
+package com.eis.communication.network.commands;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.eis.communication.network.listeners.CommandListener;
+import com.eis.communication.network.metrics.Gauge;
+import com.eis.communication.network.metrics.MetricsRegistry;
+import com.eis.communication.network.metrics.NetworkMetrics;
+import com.eis.communication.network.metrics.NoOpMetricsRegistry;
+import com.eis.communication.network.tracing.TraceContext;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executes commands on a pool of worker threads instead of the caller thread.
+ * At most a fixed number of commands can wait to be executed: when the queue is full new commands
+ * are either rejected or make the caller wait, depending on the chosen policy.
+ * <p>
+ * With a single worker thread commands are executed in the same order they were submitted, which
+ * is what the network needs to send updates in order.
+ * <p>
+ * The commands executed, failed and rejected, the time they wait and the time they run can be
+ * recorded into a {@link MetricsRegistry}, see {@link #setMetricsRegistry(MetricsRegistry)}.
+ * The {@link TraceContext} of the submitting thread is attached to the worker thread while the
+ * command runs and its listener is called.
+ *
+ * @see CommandExecutor for the synchronous version
+ */
+public class AsyncCommandExecutor {
+
+    /**
+     * Time an idle worker thread is kept before stopping, in milliseconds
+     */
+    public static final long IDLE_TIMEOUT_MILLIS = 30 * 1000;
+
+    private final ThreadPoolExecutor workers;
+    private final Semaphore queueSlots;
+    private final boolean blockWhenFull;
+    private volatile MetricsRegistry metrics = NoOpMetricsRegistry.INSTANCE;
+
+    /**
+     * Constructor for an AsyncCommandExecutor rejecting commands when its queue is full
+     *
+     * @param workerThreads The number of threads executing commands
+     * @param queueCapacity The maximum number of commands waiting to be executed
+     * @throws IllegalArgumentException If workerThreads or queueCapacity are not positive
+     */
+    public AsyncCommandExecutor(int workerThreads, int queueCapacity) {
+        this(workerThreads, queueCapacity, false, new WorkerThreadFactory());
+    }
+
+    /**
+     * Constructor for an AsyncCommandExecutor
+     *
+     * @param workerThreads The number of threads executing commands
+     * @param queueCapacity The maximum number of commands waiting to be executed
+     * @param blockWhenFull If true a full queue makes {@link #submit(Command, CommandListener)}
+     *                      wait for a free slot, otherwise the command is rejected
+     * @param threadFactory The factory creating the worker threads, can be used for example to
+     *                      provide virtual threads on JVMs supporting them
+     * @throws IllegalArgumentException If workerThreads or queueCapacity are not positive
+     */
+    public AsyncCommandExecutor(int workerThreads, int queueCapacity, boolean blockWhenFull,
+                                @NonNull ThreadFactory threadFactory) {
+        if (workerThreads <= 0) throw new IllegalArgumentException("There must be at least one worker thread!");
+        if (queueCapacity <= 0) throw new IllegalArgumentException("Queue capacity must be positive!");
+        this.blockWhenFull = blockWhenFull;
+        // every running command keeps its slot too, so the limit covers waiting commands only
+        this.queueSlots = new Semaphore(queueCapacity + workerThreads);
+        this.workers = new ThreadPoolExecutor(workerThreads, workerThreads, IDLE_TIMEOUT_MILLIS,
+                TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), threadFactory);
+        // idle executors, such as the ones of managers never used, don't keep their threads
+        this.workers.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues a command to be executed by a worker thread
+     *
+     * @param command  The command to execute
+     * @param listener Listener notified when the command has been executed or failed, can be null
+     * @return A future completed once the command has been executed. If the command was rejected the
+     * future is already completed with a {@link RejectedExecutionException}
+     */
+    public Future<Void> submit(@NonNull final Command command, @Nullable final CommandListener listener) {
+        final MetricsRegistry metrics = this.metrics;
+        final long submitTime = metrics.isEnabled() ? System.nanoTime() : 0;
+        final TraceContext context = TraceContext.current();
+        if (!acquireSlot()) {
+            metrics.counter(NetworkMetrics.COMMANDS_REJECTED).increment();
+            RejectedExecutionException rejection =
+                    new RejectedExecutionException("The command queue is full");
+            if (listener != null) listener.onCommandFailed(rejection);
+            return failedFuture(rejection);
+        }
+        FutureTask<Void> task = new FutureTask<>(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                long startTime = metrics.isEnabled() ? System.nanoTime() : 0;
+                TraceContext previous = TraceContext.attach(context);
+                try {
+                    try {
+                        command.execute();
+                    } catch (Exception e) {
+                        recordExecution(metrics, submitTime, startTime, false);
+                        if (listener != null) listener.onCommandFailed(e);
+                        throw e;
+                    } finally {
+                        queueSlots.release();
+                    }
+                    recordExecution(metrics, submitTime, startTime, true);
+                    if (listener != null) listener.onCommandExecuted();
+                    return null;
+                } finally {
+                    TraceContext.attach(previous);
+                }
+            }
+        });
+        try {
+            workers.execute(task);
+        } catch (RejectedExecutionException e) {
+            metrics.counter(NetworkMetrics.COMMANDS_REJECTED).increment();
+            queueSlots.release();
+            if (listener != null) listener.onCommandFailed(e);
+            return failedFuture(e);
+        }
+        return task;
+    }
+
+    /**
+     * @return The number of commands waiting to be executed
+     */
+    public int getQueueSize() {
+        return workers.getQueue().size();
+    }
+
+    /**
+     * Sets the registry the metrics of the commands are recorded into, and registers the
+     * depth of the queue as a gauge
+     *
+     * @param metrics The registry to use from now on, {@link NoOpMetricsRegistry} to stop recording
+     */
+    public void setMetricsRegistry(@NonNull MetricsRegistry metrics) {
+        this.metrics = metrics;
+        metrics.gauge(NetworkMetrics.COMMAND_QUEUE_DEPTH, new Gauge() {
+            @Override
+            public long getValue() {
+                return getQueueSize();
+            }
+        });
+    }
+
+    /**
+     * @return The registry the metrics of the commands are recorded into
+     */
+    public MetricsRegistry getMetricsRegistry() {
+        return metrics;
+    }
+
+    /**
+     * Records the outcome of a command, if metrics are enabled
+     *
+     * @param metrics    The registry to record into
+     * @param submitTime The time the command was submitted at, from {@link System#nanoTime()}
+     * @param startTime  The time the command started at, from {@link System#nanoTime()}
+     * @param executed   True if the command was executed, false if it threw an exception
+     */
+    static void recordExecution(MetricsRegistry metrics, long submitTime, long startTime, boolean executed) {
+        if (!metrics.isEnabled()) return;
+        long endTime = System.nanoTime();
+        metrics.histogram(NetworkMetrics.COMMAND_WAIT_MILLIS)
+                .record(TimeUnit.NANOSECONDS.toMillis(startTime - submitTime));
+        metrics.histogram(NetworkMetrics.COMMAND_EXECUTION_MILLIS)
+                .record(TimeUnit.NANOSECONDS.toMillis(endTime - startTime));
+        metrics.counter(executed ? NetworkMetrics.COMMANDS_EXECUTED : NetworkMetrics.COMMANDS_FAILED).increment();
+    }
+
+    /**
+     * Stops accepting new commands, the ones already queued are still executed
+     */
+    public void shutdown() {
+        workers.shutdown();
+    }
+
+    /**
+     * Waits for all the queued commands to be executed after a {@link #shutdown()}
+     *
+     * @param timeout The maximum time to wait
+     * @param unit    The unit of the timeout
+     * @return True if all the commands were executed, false if the timeout elapsed
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public boolean awaitTermination(long timeout, @NonNull TimeUnit unit) throws InterruptedException {
+        return workers.awaitTermination(timeout, unit);
+    }
+
+    private boolean acquireSlot() {
+        if (!blockWhenFull) return queueSlots.tryAcquire();
+        try {
+            queueSlots.acquire();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static Future<Void> failedFuture(final Exception exception) {
+        FutureTask<Void> future = new FutureTask<>(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                throw exception;
+            }
+        });
+        future.run();
+        return future;
+    }
+
+    /**
+     * Creates daemon worker threads, so that pending commands never keep the process alive
+     */
+    private static class WorkerThreadFactory implements ThreadFactory {
+
+        private static final AtomicInteger POOL_COUNT = new AtomicInteger();
+        private final int poolNumber = POOL_COUNT.incrementAndGet();
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            Thread thread = new Thread(runnable,
+                    "CommandExecutor-" + poolNumber + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
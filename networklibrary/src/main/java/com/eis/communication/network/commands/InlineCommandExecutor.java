@@ -0,0 +1,56 @@
+package com.eis.communication.network.commands;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.eis.communication.network.listeners.CommandListener;
+import com.eis.communication.network.metrics.MetricsRegistry;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * {@link AsyncCommandExecutor} executing every command on the thread submitting it, before
+ * {@link #submit(Command, CommandListener)} returns. Meant for simulations, where the network
+ * must run on a single thread to be deterministic. No worker thread is ever started.
+ */
+public class InlineCommandExecutor extends AsyncCommandExecutor {
+
+    /**
+     * Constructor for an InlineCommandExecutor
+     */
+    public InlineCommandExecutor() {
+        super(1, 1);
+    }
+
+    /**
+     * Executes a command right away
+     *
+     * @param command  The command to execute
+     * @param listener Listener notified when the command has been executed or failed, can be null
+     * @return A future already completed
+     */
+    @Override
+    public Future<Void> submit(@NonNull final Command command, @Nullable final CommandListener listener) {
+        final MetricsRegistry metrics = getMetricsRegistry();
+        FutureTask<Void> task = new FutureTask<>(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                long startTime = metrics.isEnabled() ? System.nanoTime() : 0;
+                try {
+                    command.execute();
+                } catch (Exception e) {
+                    recordExecution(metrics, startTime, startTime, false);
+                    if (listener != null) listener.onCommandFailed(e);
+                    throw e;
+                }
+                recordExecution(metrics, startTime, startTime, true);
+                if (listener != null) listener.onCommandExecuted();
+                return null;
+            }
+        });
+        task.run();
+        return task;
+    }
+}
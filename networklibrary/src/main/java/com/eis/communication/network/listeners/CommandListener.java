@@ -0,0 +1,30 @@
+package com.eis.communication.network.listeners;
+
+import com.eis.communication.network.commands.AsyncCommandExecutor;
+
+/**
+ * Listener for commands submitted to an {@link AsyncCommandExecutor}.
+ * <p>
+ * If the command completed normally {@link #onCommandExecuted()} is called,
+ * {@link #onCommandFailed(Exception)} is called otherwise, including when the command couldn't be
+ * queued at all. Both callbacks run on the thread which executed the command, except for a
+ * command rejected because the queue was full or the executor was shut down: then
+ * {@link #onCommandFailed(Exception)} is called right away, on the thread submitting it, before
+ * {@link AsyncCommandExecutor#submit} returns.
+ */
+public interface CommandListener {
+
+    /**
+     * Callback for a command executed without errors.
+     */
+    void onCommandExecuted();
+
+    /**
+     * Callback for a command which threw an exception or was rejected.
+     *
+     * @param exception The exception thrown by the command, or a
+     *                  {@link java.util.concurrent.RejectedExecutionException} if it wasn't queued.
+     */
+    void onCommandFailed(Exception exception);
+
+}
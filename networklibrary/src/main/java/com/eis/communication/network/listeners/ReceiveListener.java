@@ -0,0 +1,21 @@
+package com.eis.communication.network.listeners;
+
+import com.eis.communication.Peer;
+import com.eis.communication.network.Transport;
+
+/**
+ * Listener for the messages received through a {@link Transport}.
+ *
+ * @param <P> The type of peers messages are received from
+ */
+public interface ReceiveListener<P extends Peer> {
+
+    /**
+     * Callback for a message received from another peer.
+     *
+     * @param sender  The peer which sent the message
+     * @param message The text of the message
+     */
+    void onMessageReceived(P sender, String message);
+
+}
@@ -0,0 +1,270 @@
+package com.eis.communication.network.loopback;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.eis.communication.Peer;
+import com.eis.communication.network.Transport;
+import com.eis.communication.network.listeners.ReceiveListener;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process network connecting any number of simulated nodes, to measure the network logic
+ * without real devices.
+ * <p>
+ * Every node gets its own {@link Transport} from {@link #getTransport(Peer)}. A message sent
+ * through it is delivered to the listener of the receiving node after a random latency, picked
+ * uniformly between the minimum and maximum latency, so messages sent close together can already
+ * arrive out of order. On top of that a message may be lost, or held back for an extra delay to
+ * force a reordering. Each node can also be limited to a number of messages per second, like a
+ * phone sending SMS: the messages above the rate wait for their turn before leaving.
+ * <p>
+ * Messages are delivered one at a time by a single background thread. Random choices are taken
+ * from a seeded generator, so with the same seed the same messages are lost and delayed.
+ *
+ * @param <P> The type of the nodes' peers
+ */
+public class LoopbackNetwork<P extends Peer> {
+
+    private final Random random;
+    private final ScheduledExecutorService deliverer;
+    private final Map<Object, LoopbackTransport> transports = new HashMap<>();
+
+    private long minLatencyMillis = 0;
+    private long maxLatencyMillis = 0;
+    private double lossRate = 0;
+    private double reorderRate = 0;
+    private long reorderDelayMillis = 0;
+    private double sendRate = 0;
+
+    private long sentMessages = 0;
+    private long deliveredMessages = 0;
+    private long lostMessages = 0;
+    private long inFlightMessages = 0;
+    private long totalDelayMillis = 0;
+
+    /**
+     * Transport of a single node of the network
+     */
+    private class LoopbackTransport implements Transport<P> {
+        final P peer;
+        volatile ReceiveListener<P> listener = null;
+        /**
+         * Time the next message of the node is allowed to leave, when the send rate is limited
+         */
+        long nextSendTime = 0;
+
+        LoopbackTransport(P peer) {
+            this.peer = peer;
+        }
+
+        @Override
+        public void send(@NonNull P destination, @NonNull String message) {
+            LoopbackNetwork.this.send(this, destination, message);
+        }
+
+        @Override
+        public void setReceiveListener(@Nullable ReceiveListener<P> listener) {
+            this.listener = listener;
+        }
+    }
+
+    /**
+     * Constructor for a LoopbackNetwork delivering every message immediately
+     *
+     * @param seed The seed of the random choices
+     */
+    public LoopbackNetwork(long seed) {
+        this.random = new Random(seed);
+        this.deliverer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, "LoopbackNetwork");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Gets the transport of a node, creating it on first use
+     *
+     * @param peer The peer of the node
+     * @return The transport sending messages from the node, and receiving the ones sent to it
+     */
+    public synchronized Transport<P> getTransport(@NonNull P peer) {
+        LoopbackTransport transport = transports.get(peer.getAddress());
+        if (transport == null) {
+            transport = new LoopbackTransport(peer);
+            transports.put(peer.getAddress(), transport);
+        }
+        return transport;
+    }
+
+    /**
+     * Sets how long messages take to be delivered
+     *
+     * @param minMillis The minimum latency, in milliseconds
+     * @param maxMillis The maximum latency, in milliseconds
+     * @throws IllegalArgumentException If the minimum is negative or greater than the maximum
+     */
+    public synchronized void setLatency(long minMillis, long maxMillis) {
+        if (minMillis < 0 || maxMillis < minMillis)
+            throw new IllegalArgumentException("Invalid latency range: " + minMillis + "-" + maxMillis);
+        minLatencyMillis = minMillis;
+        maxLatencyMillis = maxMillis;
+    }
+
+    /**
+     * @param rate The probability of a message being lost, between 0 and 1
+     * @throws IllegalArgumentException If the rate is not between 0 and 1
+     */
+    public synchronized void setLossRate(double rate) {
+        checkProbability(rate);
+        lossRate = rate;
+    }
+
+    /**
+     * Sets how often messages are held back, so that the ones sent after them arrive first
+     *
+     * @param rate        The probability of a message being held back, between 0 and 1
+     * @param delayMillis The extra delay of a message held back, in milliseconds
+     * @throws IllegalArgumentException If the rate is not between 0 and 1 or the delay is negative
+     */
+    public synchronized void setReorder(double rate, long delayMillis) {
+        checkProbability(rate);
+        if (delayMillis < 0) throw new IllegalArgumentException("The delay can't be negative!");
+        reorderRate = rate;
+        reorderDelayMillis = delayMillis;
+    }
+
+    /**
+     * @param messagesPerSecond The maximum number of messages each node sends per second, or 0 for
+     *                          no limit
+     * @throws IllegalArgumentException If the rate is negative
+     */
+    public synchronized void setSendRate(double messagesPerSecond) {
+        if (messagesPerSecond < 0) throw new IllegalArgumentException("The send rate can't be negative!");
+        sendRate = messagesPerSecond;
+    }
+
+    /**
+     * @return The number of messages sent so far, lost ones included
+     */
+    public synchronized long getSentMessageCount() {
+        return sentMessages;
+    }
+
+    /**
+     * @return The number of messages delivered so far
+     */
+    public synchronized long getDeliveredMessageCount() {
+        return deliveredMessages;
+    }
+
+    /**
+     * @return The number of messages lost so far
+     */
+    public synchronized long getLostMessageCount() {
+        return lostMessages;
+    }
+
+    /**
+     * @return The number of messages sent and neither delivered nor lost yet
+     */
+    public synchronized long getInFlightMessageCount() {
+        return inFlightMessages;
+    }
+
+    /**
+     * @return The average time between sending and delivering a message, waiting for the send
+     * rate included, in milliseconds
+     */
+    public synchronized double getAverageDelayMillis() {
+        return deliveredMessages == 0 ? 0 : (double) totalDelayMillis / deliveredMessages;
+    }
+
+    /**
+     * Waits until no message is in flight, including the ones sent while delivering others
+     *
+     * @param timeoutMillis The maximum time to wait, in milliseconds
+     * @return True if the network became idle, false if the time ran out
+     * @throws InterruptedException If the thread was interrupted while waiting
+     */
+    public synchronized boolean awaitIdle(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (inFlightMessages > 0) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) return false;
+            wait(remaining);
+        }
+        return true;
+    }
+
+    /**
+     * Stops delivering messages, the network can't be used anymore
+     */
+    public void shutdown() {
+        deliverer.shutdownNow();
+    }
+
+    /**
+     * Schedules the delivery of a message, unless it's lost
+     */
+    private synchronized void send(LoopbackTransport source, P destination, final String message) {
+        sentMessages++;
+        long now = System.currentTimeMillis();
+        long leaveTime = now;
+        if (sendRate > 0) {
+            leaveTime = Math.max(now, source.nextSendTime);
+            source.nextSendTime = leaveTime + (long) (1000 / sendRate);
+        }
+        if (random.nextDouble() < lossRate) {
+            lostMessages++;
+            return;
+        }
+        long latency = minLatencyMillis;
+        if (maxLatencyMillis > minLatencyMillis)
+            latency += (long) (random.nextDouble() * (maxLatencyMillis - minLatencyMillis + 1));
+        if (random.nextDouble() < reorderRate) latency += reorderDelayMillis;
+        final long delay = leaveTime - now + latency;
+        final LoopbackTransport target = transports.get(destination.getAddress());
+        final P sender = source.peer;
+        inFlightMessages++;
+        deliverer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    ReceiveListener<P> listener = target == null ? null : target.listener;
+                    if (listener != null) listener.onMessageReceived(sender, message);
+                } finally {
+                    delivered(target != null, delay);
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Counts a message which left the network, a message sent to an unknown node is lost
+     */
+    private synchronized void delivered(boolean reachedNode, long delayMillis) {
+        if (reachedNode) {
+            deliveredMessages++;
+            totalDelayMillis += delayMillis;
+        } else lostMessages++;
+        inFlightMessages--;
+        if (inFlightMessages == 0) notifyAll();
+    }
+
+    private static void checkProbability(double rate) {
+        if (rate < 0 || rate > 1)
+            throw new IllegalArgumentException("The rate must be between 0 and 1: " + rate);
+    }
+}
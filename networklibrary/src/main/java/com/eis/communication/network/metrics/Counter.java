@@ -0,0 +1,22 @@
+package com.eis.communication.network.metrics;
+
+/**
+ * A count which only increases, such as the number of messages sent.
+ */
+public interface Counter {
+
+    /**
+     * Adds one to the count
+     */
+    void increment();
+
+    /**
+     * @param amount The amount to add to the count, must not be negative
+     */
+    void add(long amount);
+
+    /**
+     * @return The current count
+     */
+    long getCount();
+}
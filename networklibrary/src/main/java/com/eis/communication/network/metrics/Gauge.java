@@ -0,0 +1,12 @@
+package com.eis.communication.network.metrics;
+
+/**
+ * A value read whenever the metrics are exported, such as the length of a queue.
+ */
+public interface Gauge {
+
+    /**
+     * @return The current value
+     */
+    long getValue();
+}
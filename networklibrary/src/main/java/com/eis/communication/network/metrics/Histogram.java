@@ -0,0 +1,17 @@
+package com.eis.communication.network.metrics;
+
+/**
+ * Distribution of recorded values, such as the latency of a request or the size of a message.
+ */
+public interface Histogram {
+
+    /**
+     * @param value The value to record, negative values are recorded as 0
+     */
+    void record(long value);
+
+    /**
+     * @return The values recorded so far
+     */
+    HistogramSnapshot getSnapshot();
+}
@@ -0,0 +1,104 @@
+package com.eis.communication.network.metrics;
+
+import androidx.annotation.NonNull;
+
+/**
+ * The values recorded by a {@link Histogram} at a point in time.
+ * <p>
+ * Values are counted in buckets whose upper bounds are the powers of two: bucket 0 holds the
+ * values up to 1, bucket {@code i} the values up to {@code 2^i}. Percentiles are therefore
+ * approximated by the upper bound of their bucket, at most twice the real value.
+ */
+public final class HistogramSnapshot {
+
+    /**
+     * Number of buckets, the last one holds every value above {@code 2^62}
+     */
+    public static final int BUCKETS = 64;
+
+    private final long count;
+    private final long sum;
+    private final long max;
+    private final long[] bucketCounts;
+
+    /**
+     * Constructor for a HistogramSnapshot
+     *
+     * @param count        The number of values recorded
+     * @param sum          The sum of the values recorded
+     * @param max          The largest value recorded
+     * @param bucketCounts The number of values recorded in each bucket
+     * @throws IllegalArgumentException If the number of buckets is not {@link #BUCKETS}
+     */
+    public HistogramSnapshot(long count, long sum, long max, @NonNull long[] bucketCounts) {
+        if (bucketCounts.length != BUCKETS)
+            throw new IllegalArgumentException("There must be " + BUCKETS + " buckets!");
+        this.count = count;
+        this.sum = sum;
+        this.max = max;
+        this.bucketCounts = bucketCounts.clone();
+    }
+
+    /**
+     * @param value A value to record
+     * @return The index of the bucket holding the value
+     */
+    public static int bucketOf(long value) {
+        if (value <= 1) return 0;
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value - 1));
+    }
+
+    /**
+     * @param bucket The index of a bucket
+     * @return The largest value the bucket holds
+     */
+    public static long upperBoundOf(int bucket) {
+        return bucket >= BUCKETS - 1 ? Long.MAX_VALUE : 1L << bucket;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getSum() {
+        return sum;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @return The average of the values recorded, or 0 if none was
+     */
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * @param bucket The index of a bucket
+     * @return The number of values recorded in the bucket
+     */
+    public long getBucketCount(int bucket) {
+        return bucketCounts[bucket];
+    }
+
+    /**
+     * @param percentile The percentile, between 0 and 100
+     * @return An upper bound of the given percentile of the values recorded, never above the
+     * largest one, or 0 if no value was recorded
+     * @throws IllegalArgumentException If the percentile is not between 0 and 100
+     */
+    public long getPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100)
+            throw new IllegalArgumentException("The percentile must be between 0 and 100: " + percentile);
+        if (count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += bucketCounts[bucket];
+            if (seen >= rank) return Math.min(upperBoundOf(bucket), max);
+        }
+        return max;
+    }
+}
@@ -0,0 +1,82 @@
+package com.eis.communication.network.metrics;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.eis.communication.Peer;
+import com.eis.communication.network.Transport;
+import com.eis.communication.network.listeners.ReceiveListener;
+
+import java.nio.charset.Charset;
+
+/**
+ * {@link Transport} counting the messages sent and received through another transport, by type,
+ * and recording the size of the messages sent.
+ *
+ * @param <P> The type of peers messages are exchanged with, must implement the {@link Peer} interface
+ */
+public class MeteredTransport<P extends Peer> implements Transport<P> {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final Transport<P> transport;
+    private final MetricsRegistry metrics;
+    private final Histogram messageBytes;
+
+    /**
+     * Constructor for a MeteredTransport
+     *
+     * @param transport The transport actually sending and receiving the messages
+     * @param metrics   The registry to record the metrics into
+     */
+    public MeteredTransport(@NonNull Transport<P> transport, @NonNull MetricsRegistry metrics) {
+        this.transport = transport;
+        this.metrics = metrics;
+        this.messageBytes = metrics.histogram(NetworkMetrics.MESSAGE_BYTES);
+    }
+
+    /**
+     * @return The transport actually sending and receiving the messages
+     */
+    public Transport<P> getTransport() {
+        return transport;
+    }
+
+    @Override
+    public void send(@NonNull P peer, @NonNull String message) {
+        metrics.counter(NetworkMetrics.MESSAGES_SENT + "." + getMessageType(message)).increment();
+        messageBytes.record(message.getBytes(UTF_8).length);
+        transport.send(peer, message);
+    }
+
+    @Override
+    public void setReceiveListener(@Nullable final ReceiveListener<P> listener) {
+        if (listener == null) {
+            transport.setReceiveListener(null);
+            return;
+        }
+        transport.setReceiveListener(new ReceiveListener<P>() {
+            @Override
+            public void onMessageReceived(P sender, String message) {
+                metrics.counter(NetworkMetrics.MESSAGES_RECEIVED + "." + getMessageType(message)).increment();
+                listener.onMessageReceived(sender, message);
+            }
+        });
+    }
+
+    /**
+     * Gets the type of a message: requests start with the number of their type, while the
+     * messages of the other components start with a letter.
+     *
+     * @param message The text of a message
+     * @return The leading number of the message if it has one, otherwise its first character,
+     * or "empty" for an empty message
+     */
+    public static String getMessageType(@NonNull String message) {
+        if (message.isEmpty()) return "empty";
+        int end = 0;
+        while (end < message.length() && Character.isDigit(message.charAt(end)))
+            end++;
+        return end > 0 ? message.substring(0, end) : message.substring(0, 1);
+    }
+}
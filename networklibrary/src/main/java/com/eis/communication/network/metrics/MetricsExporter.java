@@ -0,0 +1,17 @@
+package com.eis.communication.network.metrics;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Interface which defines how metrics are pushed to an external monitoring system.
+ */
+public interface MetricsExporter {
+
+    /**
+     * Pushes the metrics. Called from the thread of a {@link MetricsReporter}, an exception
+     * thrown here is dropped and the next export is attempted anyway.
+     *
+     * @param snapshot The current value of every metric
+     */
+    void export(@NonNull MetricsSnapshot snapshot);
+}
@@ -0,0 +1,44 @@
+package com.eis.communication.network.metrics;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Interface which defines where the components of the network record their metrics.
+ * Metrics are identified by their name and created on first use, every later request with the
+ * same name returns the same metric.
+ * <p>
+ * {@link NoOpMetricsRegistry} records nothing, at the cost of a call to an empty method;
+ * callers building names or measuring time should check {@link #isEnabled()} first.
+ */
+public interface MetricsRegistry {
+
+    /**
+     * @return True if the metrics are recorded, false if they're discarded
+     */
+    boolean isEnabled();
+
+    /**
+     * @param name The name of the counter
+     * @return The counter with the given name
+     */
+    Counter counter(@NonNull String name);
+
+    /**
+     * @param name The name of the histogram
+     * @return The histogram with the given name
+     */
+    Histogram histogram(@NonNull String name);
+
+    /**
+     * Registers a gauge, replacing any gauge with the same name
+     *
+     * @param name  The name of the gauge
+     * @param gauge The gauge to read when the metrics are exported
+     */
+    void gauge(@NonNull String name, @NonNull Gauge gauge);
+
+    /**
+     * @return The current value of every metric
+     */
+    MetricsSnapshot getSnapshot();
+}
@@ -0,0 +1,117 @@
+package com.eis.communication.network.metrics;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background task pushing the metrics of a {@link MetricsRegistry} to a {@link MetricsExporter}
+ * periodically.
+ */
+public class MetricsReporter {
+
+    /**
+     * Default time between two exports, in milliseconds
+     */
+    public static final long DEFAULT_PERIOD_MILLIS = 60 * 1000;
+
+    private final MetricsRegistry registry;
+    private final MetricsExporter exporter;
+    private final long periodMillis;
+    private ScheduledExecutorService timer = null;
+    private long exports = 0;
+    private long failedExports = 0;
+
+    /**
+     * Constructor for a MetricsReporter using the default period
+     *
+     * @param registry The registry whose metrics are exported
+     * @param exporter The exporter pushing the metrics
+     */
+    public MetricsReporter(@NonNull MetricsRegistry registry, @NonNull MetricsExporter exporter) {
+        this(registry, exporter, DEFAULT_PERIOD_MILLIS);
+    }
+
+    /**
+     * Constructor for a MetricsReporter
+     *
+     * @param registry     The registry whose metrics are exported
+     * @param exporter     The exporter pushing the metrics
+     * @param periodMillis The time between two exports once started, in milliseconds
+     * @throws IllegalArgumentException If the period is not positive
+     */
+    public MetricsReporter(@NonNull MetricsRegistry registry, @NonNull MetricsExporter exporter, long periodMillis) {
+        if (periodMillis <= 0) throw new IllegalArgumentException("The period must be positive!");
+        this.registry = registry;
+        this.exporter = exporter;
+        this.periodMillis = periodMillis;
+    }
+
+    /**
+     * Starts exporting the metrics periodically, on a background thread
+     */
+    public synchronized void start() {
+        if (timer != null) return;
+        timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, "MetricsReporter");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        timer.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                report();
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the periodic export, after a last one
+     */
+    public synchronized void shutdown() {
+        if (timer == null) return;
+        timer.shutdown();
+        timer = null;
+        report();
+    }
+
+    /**
+     * Exports the metrics right away
+     *
+     * @return True if the export succeeded, false if the exporter threw an exception
+     */
+    public boolean report() {
+        try {
+            exporter.export(registry.getSnapshot());
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                failedExports++;
+            }
+            return false;
+        }
+        synchronized (this) {
+            exports++;
+        }
+        return true;
+    }
+
+    /**
+     * @return The number of successful exports so far
+     */
+    public synchronized long getExportCount() {
+        return exports;
+    }
+
+    /**
+     * @return The number of exports which threw an exception so far
+     */
+    public synchronized long getFailedExportCount() {
+        return failedExports;
+    }
+}
@@ -0,0 +1,50 @@
+package com.eis.communication.network.metrics;
+
+import androidx.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The value of every metric of a {@link MetricsRegistry} at a point in time, sorted by name.
+ */
+public final class MetricsSnapshot {
+
+    private final long timestamp;
+    private final Map<String, Long> counters;
+    private final Map<String, Long> gauges;
+    private final Map<String, HistogramSnapshot> histograms;
+
+    /**
+     * Constructor for a MetricsSnapshot
+     *
+     * @param timestamp  The time the metrics were read at, in milliseconds
+     * @param counters   The counts of the counters
+     * @param gauges     The values of the gauges
+     * @param histograms The values recorded by the histograms
+     */
+    public MetricsSnapshot(long timestamp, @NonNull Map<String, Long> counters, @NonNull Map<String, Long> gauges,
+                           @NonNull Map<String, HistogramSnapshot> histograms) {
+        this.timestamp = timestamp;
+        this.counters = Collections.unmodifiableMap(new TreeMap<>(counters));
+        this.gauges = Collections.unmodifiableMap(new TreeMap<>(gauges));
+        this.histograms = Collections.unmodifiableMap(new TreeMap<>(histograms));
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public Map<String, Long> getCounters() {
+        return counters;
+    }
+
+    public Map<String, Long> getGauges() {
+        return gauges;
+    }
+
+    public Map<String, HistogramSnapshot> getHistograms() {
+        return histograms;
+    }
+}
@@ -0,0 +1,81 @@
+package com.eis.communication.network.metrics;
+
+/**
+ * Names of the metrics recorded by the network. Message counters are suffixed with the type of
+ * the message, see {@link MeteredTransport#getMessageType(String)}.
+ */
+public final class NetworkMetrics {
+
+    /**
+     * Counter of the messages sent, followed by a dot and the type of the message
+     */
+    public static final String MESSAGES_SENT = "messages.sent";
+    /**
+     * Counter of the messages received, followed by a dot and the type of the message
+     */
+    public static final String MESSAGES_RECEIVED = "messages.received";
+    /**
+     * Histogram of the size of the messages sent, in UTF-8 bytes
+     */
+    public static final String MESSAGE_BYTES = "messages.sent.bytes";
+    /**
+     * Histogram of the number of subscribers a broadcast message is sent to directly
+     */
+    public static final String BROADCAST_FANOUT = "broadcast.fanout";
+    /**
+     * Gauge of the number of commands waiting to be executed
+     */
+    public static final String COMMAND_QUEUE_DEPTH = "commands.queue.depth";
+    /**
+     * Counter of the commands executed successfully
+     */
+    public static final String COMMANDS_EXECUTED = "commands.executed";
+    /**
+     * Counter of the commands which threw an exception
+     */
+    public static final String COMMANDS_FAILED = "commands.failed";
+    /**
+     * Counter of the commands rejected because the queue was full
+     */
+    public static final String COMMANDS_REJECTED = "commands.rejected";
+    /**
+     * Histogram of the time commands wait in the queue, in milliseconds
+     */
+    public static final String COMMAND_WAIT_MILLIS = "commands.wait.millis";
+    /**
+     * Histogram of the time commands take to execute, in milliseconds
+     */
+    public static final String COMMAND_EXECUTION_MILLIS = "commands.execution.millis";
+    /**
+     * Prefix of the metrics of the requests of a manager, followed by the name of the request:
+     * "set", "get", "remove" or "invite"
+     */
+    public static final String OPERATION = "operation";
+    /**
+     * Suffix of the histogram of the latency of a request, in milliseconds
+     */
+    public static final String LATENCY_MILLIS = "latency.millis";
+    /**
+     * Suffix of the counter of the failed requests
+     */
+    public static final String FAILED = "failed";
+
+    private NetworkMetrics() {
+    }
+
+    /**
+     * @param operation The name of a request, "set", "get", "remove" or "invite"
+     * @return The name of the histogram of the latency of the request
+     */
+    public static String operationLatency(String operation) {
+        return OPERATION + "." + operation + "." + LATENCY_MILLIS;
+    }
+
+    /**
+     * @param operation The name of a request, "set", "get", "remove" or "invite"
+     * @return The name of the counter of the failures of the request
+     */
+    public static String operationFailures(String operation) {
+        return OPERATION + "." + operation + "." + FAILED;
+    }
+}
@@ -0,0 +1,73 @@
+package com.eis.communication.network.metrics;
+
+import androidx.annotation.NonNull;
+
+import java.util.Collections;
+
+/**
+ * {@link MetricsRegistry} discarding every metric, used when metrics are disabled. Every name
+ * gets the same empty counter and histogram, so nothing is allocated.
+ */
+public final class NoOpMetricsRegistry implements MetricsRegistry {
+
+    /**
+     * The only instance of this class
+     */
+    public static final NoOpMetricsRegistry INSTANCE = new NoOpMetricsRegistry();
+
+    private static final Counter COUNTER = new Counter() {
+        @Override
+        public void increment() {
+        }
+
+        @Override
+        public void add(long amount) {
+        }
+
+        @Override
+        public long getCount() {
+            return 0;
+        }
+    };
+
+    private static final HistogramSnapshot EMPTY = new HistogramSnapshot(0, 0, 0, new long[HistogramSnapshot.BUCKETS]);
+
+    private static final Histogram HISTOGRAM = new Histogram() {
+        @Override
+        public void record(long value) {
+        }
+
+        @Override
+        public HistogramSnapshot getSnapshot() {
+            return EMPTY;
+        }
+    };
+
+    private NoOpMetricsRegistry() {
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return false;
+    }
+
+    @Override
+    public Counter counter(@NonNull String name) {
+        return COUNTER;
+    }
+
+    @Override
+    public Histogram histogram(@NonNull String name) {
+        return HISTOGRAM;
+    }
+
+    @Override
+    public void gauge(@NonNull String name, @NonNull Gauge gauge) {
+    }
+
+    @Override
+    public MetricsSnapshot getSnapshot() {
+        return new MetricsSnapshot(System.currentTimeMillis(), Collections.<String, Long>emptyMap(),
+                Collections.<String, Long>emptyMap(), Collections.<String, HistogramSnapshot>emptyMap());
+    }
+}
@@ -0,0 +1,112 @@
+package com.eis.communication.network.metrics;
+
+import androidx.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@link MetricsRegistry} keeping its metrics in memory. Recording never locks: counters and
+ * histogram buckets are atomic, so metrics can be recorded from any thread.
+ */
+public class SimpleMetricsRegistry implements MetricsRegistry {
+
+    private final ConcurrentMap<String, SimpleCounter> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, SimpleHistogram> histograms = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Gauge> gauges = new ConcurrentHashMap<>();
+
+    private static class SimpleCounter implements Counter {
+        private final AtomicLong count = new AtomicLong();
+
+        @Override
+        public void increment() {
+            count.incrementAndGet();
+        }
+
+        @Override
+        public void add(long amount) {
+            count.addAndGet(amount);
+        }
+
+        @Override
+        public long getCount() {
+            return count.get();
+        }
+    }
+
+    private static class SimpleHistogram implements Histogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(HistogramSnapshot.BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        @Override
+        public void record(long value) {
+            if (value < 0) value = 0;
+            buckets.incrementAndGet(HistogramSnapshot.bucketOf(value));
+            count.incrementAndGet();
+            sum.addAndGet(value);
+            long currentMax = max.get();
+            while (value > currentMax && !max.compareAndSet(currentMax, value))
+                currentMax = max.get();
+        }
+
+        /**
+         * The fields are read one at a time, so a value recorded meanwhile may be counted in
+         * some of them only
+         */
+        @Override
+        public HistogramSnapshot getSnapshot() {
+            long[] counts = new long[HistogramSnapshot.BUCKETS];
+            for (int i = 0; i < counts.length; i++)
+                counts[i] = buckets.get(i);
+            return new HistogramSnapshot(count.get(), sum.get(), max.get(), counts);
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public Counter counter(@NonNull String name) {
+        SimpleCounter counter = counters.get(name);
+        if (counter != null) return counter;
+        SimpleCounter created = new SimpleCounter();
+        counter = counters.putIfAbsent(name, created);
+        return counter != null ? counter : created;
+    }
+
+    @Override
+    public Histogram histogram(@NonNull String name) {
+        SimpleHistogram histogram = histograms.get(name);
+        if (histogram != null) return histogram;
+        SimpleHistogram created = new SimpleHistogram();
+        histogram = histograms.putIfAbsent(name, created);
+        return histogram != null ? histogram : created;
+    }
+
+    @Override
+    public void gauge(@NonNull String name, @NonNull Gauge gauge) {
+        gauges.put(name, gauge);
+    }
+
+    @Override
+    public MetricsSnapshot getSnapshot() {
+        Map<String, Long> counterValues = new HashMap<>();
+        for (Map.Entry<String, SimpleCounter> counter : counters.entrySet())
+            counterValues.put(counter.getKey(), counter.getValue().getCount());
+        Map<String, Long> gaugeValues = new HashMap<>();
+        for (Map.Entry<String, Gauge> gauge : gauges.entrySet())
+            gaugeValues.put(gauge.getKey(), gauge.getValue().getValue());
+        Map<String, HistogramSnapshot> histogramValues = new HashMap<>();
+        for (Map.Entry<String, SimpleHistogram> histogram : histograms.entrySet())
+            histogramValues.put(histogram.getKey(), histogram.getValue().getSnapshot());
+        return new MetricsSnapshot(System.currentTimeMillis(), counterValues, gaugeValues, histogramValues);
+    }
+}
@@ -0,0 +1,94 @@
+package com.eis.communication.network.tracing;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * {@link TraceSink} keeping the latest events in memory, dropping the oldest ones once full.
+ * The same sink can be shared by many nodes running in a single process, to rebuild the whole
+ * timeline of an operation.
+ */
+public class InMemoryTraceSink implements TraceSink {
+
+    /**
+     * Default maximum number of events kept
+     */
+    public static final int DEFAULT_CAPACITY = 10000;
+
+    private final int capacity;
+    private final Deque<TraceEvent> events = new ArrayDeque<>();
+    private long droppedEvents = 0;
+
+    /**
+     * Constructor for an InMemoryTraceSink using the default capacity
+     */
+    public InMemoryTraceSink() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor for an InMemoryTraceSink
+     *
+     * @param capacity The maximum number of events kept
+     * @throws IllegalArgumentException If the capacity is not positive
+     */
+    public InMemoryTraceSink(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive!");
+        this.capacity = capacity;
+    }
+
+    @Override
+    public synchronized void record(@NonNull TraceEvent event) {
+        if (events.size() == capacity) {
+            events.removeFirst();
+            droppedEvents++;
+        }
+        events.addLast(event);
+    }
+
+    /**
+     * @return The events kept, in the order they were recorded
+     */
+    public synchronized List<TraceEvent> getEvents() {
+        return new ArrayList<>(events);
+    }
+
+    /**
+     * Gets the timeline of a trace
+     *
+     * @param traceId The identifier of the trace
+     * @return The events of the trace, sorted by timestamp
+     */
+    public List<TraceEvent> getTimeline(@NonNull String traceId) {
+        List<TraceEvent> timeline = new ArrayList<>();
+        for (TraceEvent event : getEvents())
+            if (event.getTraceId().equals(traceId)) timeline.add(event);
+        Collections.sort(timeline, new Comparator<TraceEvent>() {
+            @Override
+            public int compare(TraceEvent first, TraceEvent second) {
+                return Long.compare(first.getTimestamp(), second.getTimestamp());
+            }
+        });
+        return timeline;
+    }
+
+    /**
+     * @return The number of events dropped because the sink was full
+     */
+    public synchronized long getDroppedEventCount() {
+        return droppedEvents;
+    }
+
+    /**
+     * Drops every event kept
+     */
+    public synchronized void clear() {
+        events.clear();
+    }
+}
@@ -0,0 +1,115 @@
+package com.eis.communication.network.tracing;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * The traces the current thread is working for. A context is attached to a thread while an
+ * operation is requested, while a command runs and while a received message is handled, so
+ * that the messages sent meanwhile carry its trace identifiers.
+ * <p>
+ * A context can hold several traces, since a single batch message carries the updates of
+ * several operations. Identifiers are joined by {@link #ID_SEPARATOR}.
+ */
+public final class TraceContext {
+
+    /**
+     * Character separating the identifiers of the traces
+     */
+    public static final char ID_SEPARATOR = ',';
+
+    private static final ThreadLocal<TraceContext> CURRENT = new ThreadLocal<>();
+
+    private final String traceIds;
+    private final boolean remote;
+
+    /**
+     * Constructor for a TraceContext
+     *
+     * @param traceIds The identifiers of the traces, joined by {@link #ID_SEPARATOR}
+     * @param remote   True if the context comes from a received message, false if it was
+     *                 started by a local operation
+     * @throws IllegalArgumentException If there are no identifiers
+     */
+    public TraceContext(@NonNull String traceIds, boolean remote) {
+        if (traceIds.isEmpty()) throw new IllegalArgumentException("There must be a trace identifier!");
+        this.traceIds = traceIds;
+        this.remote = remote;
+    }
+
+    /**
+     * @return The identifiers of the traces, joined by {@link #ID_SEPARATOR}
+     */
+    public String getTraceIds() {
+        return traceIds;
+    }
+
+    /**
+     * @return Every identifier of the traces
+     */
+    public String[] getTraceIdArray() {
+        return traceIds.split(String.valueOf(ID_SEPARATOR));
+    }
+
+    /**
+     * @return True if the context comes from a received message, false if it was started by a
+     * local operation
+     */
+    public boolean isRemote() {
+        return remote;
+    }
+
+    /**
+     * @return The context attached to the current thread, or null if there's none
+     */
+    @Nullable
+    public static TraceContext current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Attaches a context to the current thread. The previous context should be attached again
+     * once done, in a finally block.
+     *
+     * @param context The context to attach, or null to detach the current one
+     * @return The context attached before, or null if there was none
+     */
+    @Nullable
+    public static TraceContext attach(@Nullable TraceContext context) {
+        TraceContext previous = CURRENT.get();
+        if (context == null) CURRENT.remove();
+        else CURRENT.set(context);
+        return previous;
+    }
+
+    /**
+     * Merges many contexts into one holding all of their traces, which is remote only if all of
+     * them are
+     *
+     * @param contexts The contexts to merge, can contain null
+     * @return The merged context, or null if there were no traces
+     */
+    @Nullable
+    public static TraceContext merge(@NonNull Collection<TraceContext> contexts) {
+        Set<String> ids = null;
+        boolean remote = true;
+        for (TraceContext context : contexts) {
+            if (context == null) continue;
+            if (ids == null) ids = new LinkedHashSet<>();
+            for (String id : context.getTraceIdArray())
+                ids.add(id);
+            remote &= context.isRemote();
+        }
+        if (ids == null) return null;
+        StringBuilder joined = new StringBuilder();
+        for (String id : ids) {
+            if (joined.length() > 0) joined.append(ID_SEPARATOR);
+            joined.append(id);
+        }
+        return new TraceContext(joined.toString(), remote);
+    }
+}
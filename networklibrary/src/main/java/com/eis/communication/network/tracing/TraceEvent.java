@@ -0,0 +1,101 @@
+package com.eis.communication.network.tracing;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Something which happened to an operation on a node, at a point in time.
+ * The events of a trace, collected from every node, make up the timeline of the operation.
+ */
+public final class TraceEvent {
+
+    /**
+     * What happened to the operation
+     */
+    public enum Type {
+        /**
+         * The operation was requested on its origin node
+         */
+        START,
+        /**
+         * A message of the operation was sent by its origin node
+         */
+        SEND,
+        /**
+         * A message of the operation was received
+         */
+        RECEIVE,
+        /**
+         * The updates of the operation were applied to the dictionary of a remote node
+         */
+        APPLY,
+        /**
+         * A message of the operation was sent by a node while handling one it received, such as
+         * a relayed broadcast or a reply
+         */
+        FORWARD,
+        /**
+         * The operation completed on its origin node, its listener was called
+         */
+        COMPLETE
+    }
+
+    private final String traceId;
+    private final Type type;
+    private final long timestamp;
+    private final String node;
+    private final String peer;
+    private final String detail;
+
+    /**
+     * Constructor for a TraceEvent
+     *
+     * @param traceId   The identifier of the trace
+     * @param type      What happened
+     * @param timestamp When it happened, in milliseconds
+     * @param node      The node it happened on, can be null if unknown
+     * @param peer      The address of the other peer involved, can be null
+     * @param detail    A description, such as the operation or the type of the message, can be null
+     */
+    public TraceEvent(@NonNull String traceId, @NonNull Type type, long timestamp, @Nullable String node,
+                      @Nullable String peer, @Nullable String detail) {
+        this.traceId = traceId;
+        this.type = type;
+        this.timestamp = timestamp;
+        this.node = node;
+        this.peer = peer;
+        this.detail = detail;
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Nullable
+    public String getNode() {
+        return node;
+    }
+
+    @Nullable
+    public String getPeer() {
+        return peer;
+    }
+
+    @Nullable
+    public String getDetail() {
+        return detail;
+    }
+
+    @Override
+    public String toString() {
+        return timestamp + " " + traceId + " " + type + " node=" + node + " peer=" + peer + " " + detail;
+    }
+}
@@ -0,0 +1,17 @@
+package com.eis.communication.network.tracing;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Interface which defines where trace events are collected, for example to ship them to a
+ * tracing backend and rebuild the timeline of operations across peers.
+ */
+public interface TraceSink {
+
+    /**
+     * Collects an event. Called from the thread the event happened on, so it should return quickly.
+     *
+     * @param event The event to collect
+     */
+    void record(@NonNull TraceEvent event);
+}
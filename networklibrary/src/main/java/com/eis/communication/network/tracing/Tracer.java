@@ -0,0 +1,106 @@
+package com.eis.communication.network.tracing;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Random;
+
+/**
+ * Creates the traces of the operations of a node and records their events into a
+ * {@link TraceSink}, stamped with the time and the name of the node.
+ */
+public class Tracer {
+
+    /**
+     * Radix of the trace identifiers, written with digits and lowercase letters
+     */
+    static final int ID_RADIX = 36;
+    /**
+     * Maximum characters of a trace identifier
+     */
+    static final int MAX_ID_LENGTH = 8;
+    // 40 bits keep an identifier within 8 characters, enough for the operations being traced at once
+    private static final long ID_MASK = (1L << 40) - 1;
+
+    private final TraceSink sink;
+    private final String node;
+    private final Random random;
+
+    /**
+     * Constructor for a Tracer
+     *
+     * @param sink The sink to record the events into
+     * @param node The name of this node in the events, such as its address, can be null
+     */
+    public Tracer(@NonNull TraceSink sink, @Nullable String node) {
+        this(sink, node, new Random());
+    }
+
+    /**
+     * Constructor for a Tracer drawing the trace identifiers from the given generator, for
+     * example a seeded one to get the same identifiers every run
+     *
+     * @param sink   The sink to record the events into
+     * @param node   The name of this node in the events, such as its address, can be null
+     * @param random The generator of the trace identifiers
+     */
+    public Tracer(@NonNull TraceSink sink, @Nullable String node, @NonNull Random random) {
+        this.sink = sink;
+        this.node = node;
+        this.random = random;
+    }
+
+    /**
+     * @return The sink the events are recorded into
+     */
+    public TraceSink getSink() {
+        return sink;
+    }
+
+    /**
+     * Starts a new trace, recording its {@link TraceEvent.Type#START} event
+     *
+     * @param operation The operation being traced, such as "set"
+     * @param key       The key of the operation, can be null
+     * @return The identifier of the new trace
+     */
+    public String startTrace(@NonNull String operation, @Nullable String key) {
+        String traceId = Long.toString(random.nextLong() & ID_MASK, ID_RADIX);
+        record(traceId, TraceEvent.Type.START, null, key == null ? operation : operation + " " + key);
+        return traceId;
+    }
+
+    /**
+     * Records an event of a trace
+     *
+     * @param traceId The identifier of the trace
+     * @param type    What happened
+     * @param peer    The address of the other peer involved, can be null
+     * @param detail  A description of the event, can be null
+     */
+    public void record(@NonNull String traceId, @NonNull TraceEvent.Type type, @Nullable String peer,
+                       @Nullable String detail) {
+        sink.record(new TraceEvent(traceId, type, currentTimeMillis(), node, peer, detail));
+    }
+
+    /**
+     * Records an event of every trace of a context
+     *
+     * @param context The context holding the traces
+     * @param type    What happened
+     * @param peer    The address of the other peer involved, can be null
+     * @param detail  A description of the event, can be null
+     */
+    public void record(@NonNull TraceContext context, @NonNull TraceEvent.Type type, @Nullable String peer,
+                       @Nullable String detail) {
+        for (String traceId : context.getTraceIdArray())
+            record(traceId, type, peer, detail);
+    }
+
+    /**
+     * @return The current time in milliseconds, can be overridden to trace in a virtual time
+     */
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,231 @@
+package com.eis.communication.network.tracing;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.eis.communication.Peer;
+import com.eis.communication.network.Transport;
+import com.eis.communication.network.listeners.ReceiveListener;
+import com.eis.communication.network.metrics.MeteredTransport;
+
+/**
+ * {@link Transport} carrying the traces of the current {@link TraceContext} in a header of the
+ * messages sent through another transport, and attaching the traces of the messages received
+ * while they're handled. Every message sent and received with traces is recorded by a {@link Tracer}.
+ * <p>
+ * A traced message is written as {@link #PREFIX}, the identifier of its first trace,
+ * {@link #HEADER_END} and the message itself. A message sent for more traces, such as a batch,
+ * carries only the first one followed by {@link #OMITTED_SEPARATOR} and the number of the others
+ * in base 36, so that the header never takes more than {@link #MAX_HEADER_LENGTH} characters,
+ * which the packers leave free. The sending is still recorded for every trace. Messages sent
+ * without a context are left unchanged, and so are the requests, starting with the number of
+ * their type: they're parsed by the broadcast receiver, which doesn't know the header, so their
+ * sending is recorded only.
+ *
+ * @param <P> The type of peers messages are exchanged with, must implement the {@link Peer} interface
+ */
+public class TracingTransport<P extends Peer> implements Transport<P> {
+
+    /**
+     * First character of a traced message
+     */
+    public static final char PREFIX = 'T';
+    /**
+     * Character ending the header of a traced message
+     */
+    public static final char HEADER_END = ';';
+    /**
+     * Character separating the trace carried by a message from the number of the traces left out
+     */
+    public static final char OMITTED_SEPARATOR = '+';
+    /**
+     * Base 36 digits of the number of the traces left out, larger numbers are capped
+     */
+    private static final int MAX_OMITTED_DIGITS = 2;
+    private static final int MAX_OMITTED = 36 * 36 - 1;
+    /**
+     * Characters written in front of every traced message
+     */
+    public static final int MAX_HEADER_LENGTH = 1 + Tracer.MAX_ID_LENGTH + 1 + MAX_OMITTED_DIGITS + 1;
+
+    private final Transport<P> transport;
+    private final Tracer tracer;
+
+    /**
+     * Constructor for a TracingTransport
+     *
+     * @param transport The transport actually sending and receiving the messages
+     * @param tracer    The tracer recording the events
+     */
+    public TracingTransport(@NonNull Transport<P> transport, @NonNull Tracer tracer) {
+        this.transport = transport;
+        this.tracer = tracer;
+    }
+
+    /**
+     * @return The transport actually sending and receiving the messages
+     */
+    public Transport<P> getTransport() {
+        return transport;
+    }
+
+    /**
+     * @return The tracer recording the events
+     */
+    public Tracer getTracer() {
+        return tracer;
+    }
+
+    /**
+     * Sends a message, with the traces of the current context if there is one. The message is
+     * recorded as {@link TraceEvent.Type#FORWARD} if the context comes from a received message,
+     * as {@link TraceEvent.Type#SEND} otherwise.
+     *
+     * @param peer    The peer to send the message to
+     * @param message The text of the message
+     */
+    @Override
+    public void send(@NonNull P peer, @NonNull String message) {
+        TraceContext context = TraceContext.current();
+        if (context == null) {
+            transport.send(peer, message);
+            return;
+        }
+        tracer.record(context, context.isRemote() ? TraceEvent.Type.FORWARD : TraceEvent.Type.SEND,
+                String.valueOf(peer.getAddress()), MeteredTransport.getMessageType(message));
+        String header = isRequest(message) ? null : writeHeader(context);
+        transport.send(peer, header == null ? message : header + message);
+    }
+
+    @Override
+    public void setReceiveListener(@Nullable final ReceiveListener<P> listener) {
+        if (listener == null) {
+            transport.setReceiveListener(null);
+            return;
+        }
+        transport.setReceiveListener(new ReceiveListener<P>() {
+            @Override
+            public void onMessageReceived(P sender, String message) {
+                TraceContext context = getContext(message);
+                if (context != null) {
+                    int omitted = getOmittedTraceCount(message);
+                    message = removeHeader(message);
+                    String detail = MeteredTransport.getMessageType(message);
+                    if (omitted > 0) detail += " +" + omitted + " traces";
+                    tracer.record(context, TraceEvent.Type.RECEIVE, String.valueOf(sender.getAddress()), detail);
+                }
+                TraceContext previous = TraceContext.attach(context);
+                try {
+                    listener.onMessageReceived(sender, message);
+                } finally {
+                    TraceContext.attach(previous);
+                }
+            }
+        });
+    }
+
+    /**
+     * @param message The text of a message
+     * @return True if the message is a request, starting with the number of its type
+     */
+    private static boolean isRequest(String message) {
+        return !message.isEmpty() && Character.isDigit(message.charAt(0));
+    }
+
+    /**
+     * @param context The context of the message
+     * @return The header carrying the first trace of the context and the number of the others, or
+     * null if the identifier of the first trace isn't one written by a {@link Tracer}
+     */
+    @Nullable
+    private static String writeHeader(TraceContext context) {
+        String[] traceIds = context.getTraceIdArray();
+        String traceId = traceIds[0];
+        if (traceId.length() > Tracer.MAX_ID_LENGTH || skipDigits(traceId, 0, traceId.length()) != traceId.length())
+            return null;
+        StringBuilder header = new StringBuilder(MAX_HEADER_LENGTH).append(PREFIX).append(traceId);
+        if (traceIds.length > 1)
+            header.append(OMITTED_SEPARATOR)
+                    .append(Integer.toString(Math.min(traceIds.length - 1, MAX_OMITTED), Tracer.ID_RADIX));
+        return header.append(HEADER_END).toString();
+    }
+
+    /**
+     * @param message The text of a message
+     * @return The index of the end of its trace header, or -1 if the message carries none
+     */
+    private static int findHeaderEnd(String message) {
+        if (message.isEmpty() || message.charAt(0) != PREFIX) return -1;
+        int end = skipDigits(message, 1, Tracer.MAX_ID_LENGTH);
+        if (end == 1 || end == message.length()) return -1;
+        if (message.charAt(end) == OMITTED_SEPARATOR) {
+            int countStart = end + 1;
+            end = skipDigits(message, countStart, MAX_OMITTED_DIGITS);
+            if (end == countStart || end == message.length()) return -1;
+        }
+        return message.charAt(end) == HEADER_END ? end : -1;
+    }
+
+    /**
+     * @param text      A text
+     * @param start     The index to start from
+     * @param maxDigits The maximum number of digits to skip
+     * @return The index of the first character after the base 36 digits starting at the index
+     */
+    private static int skipDigits(String text, int start, int maxDigits) {
+        int end = start;
+        while (end < text.length() && end - start < maxDigits && isDigit(text.charAt(end)))
+            end++;
+        return end;
+    }
+
+    /**
+     * @return True if the character is a digit of a trace identifier, in base 36 and lowercase
+     */
+    private static boolean isDigit(char character) {
+        return (character >= '0' && character <= '9') || (character >= 'a' && character <= 'z');
+    }
+
+    /**
+     * @param message The text of a message
+     * @return True if the message carries a trace header, false otherwise
+     */
+    public static boolean isTraced(@NonNull String message) {
+        return findHeaderEnd(message) >= 0;
+    }
+
+    /**
+     * @param message The text of a message
+     * @return The context of the trace carried by the message, as a remote one, or null if it
+     * carries none
+     */
+    @Nullable
+    public static TraceContext getContext(@NonNull String message) {
+        int end = findHeaderEnd(message);
+        if (end < 0) return null;
+        return new TraceContext(message.substring(1, skipDigits(message, 1, Tracer.MAX_ID_LENGTH)), true);
+    }
+
+    /**
+     * @param message The text of a message
+     * @return The number of the traces the message was sent for but doesn't carry, 0 if it
+     * carries no header
+     */
+    public static int getOmittedTraceCount(@NonNull String message) {
+        int end = findHeaderEnd(message);
+        if (end < 0) return 0;
+        int separator = skipDigits(message, 1, Tracer.MAX_ID_LENGTH);
+        if (separator == end) return 0;
+        return Integer.parseInt(message.substring(separator + 1, end), Tracer.ID_RADIX);
+    }
+
+    /**
+     * @param message The text of a message
+     * @return The message without its trace header, or the message itself if it has none
+     */
+    public static String removeHeader(@NonNull String message) {
+        int end = findHeaderEnd(message);
+        if (end < 0) return message;
+        return message.substring(end + 1);
+    }
+}
@@ -0,0 +1,113 @@
+package com.eis.smsnetwork;
+
+import androidx.annotation.NonNull;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the ids of the messages recently received, to drop the ones received twice because of
+ * retransmissions or because they travelled along more than one path.
+ * Ids are forgotten once they're older than the retention time, or when more than the capacity
+ * are remembered, starting from the oldest.
+ */
+public class DuplicateFilter {
+
+    /**
+     * Default maximum number of ids remembered
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+    /**
+     * Default time an id is remembered for, in milliseconds
+     */
+    public static final long DEFAULT_RETENTION_MILLIS = 10 * 60 * 1000;
+
+    private final int capacity;
+    private final long retentionMillis;
+    /**
+     * Ids with the time they were first seen, oldest first
+     */
+    private final LinkedHashMap<MessageId, Long> seenIds = new LinkedHashMap<>();
+    private long acceptedMessages = 0;
+    private long duplicateMessages = 0;
+
+    /**
+     * Constructor for a DuplicateFilter with the default capacity and retention time
+     */
+    public DuplicateFilter() {
+        this(DEFAULT_CAPACITY, DEFAULT_RETENTION_MILLIS);
+    }
+
+    /**
+     * Constructor for a DuplicateFilter
+     *
+     * @param capacity        The maximum number of ids remembered
+     * @param retentionMillis The time an id is remembered for, in milliseconds
+     * @throws IllegalArgumentException If capacity or retentionMillis are not positive
+     */
+    public DuplicateFilter(int capacity, long retentionMillis) {
+        if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive!");
+        if (retentionMillis <= 0) throw new IllegalArgumentException("Retention time must be positive!");
+        this.capacity = capacity;
+        this.retentionMillis = retentionMillis;
+    }
+
+    /**
+     * Checks if a message was already seen, and remembers it if it wasn't
+     *
+     * @param id The id of the received message
+     * @return True if the message was already seen and must be dropped, false otherwise
+     */
+    public synchronized boolean isDuplicate(@NonNull MessageId id) {
+        long now = currentTimeMillis();
+        evictExpired(now);
+        if (seenIds.containsKey(id)) {
+            duplicateMessages++;
+            return true;
+        }
+        acceptedMessages++;
+        seenIds.put(id, now);
+        if (seenIds.size() > capacity) {
+            Iterator<MessageId> oldest = seenIds.keySet().iterator();
+            oldest.next();
+            oldest.remove();
+        }
+        return false;
+    }
+
+    /**
+     * @return The number of messages seen for the first time
+     */
+    public synchronized long getAcceptedCount() {
+        return acceptedMessages;
+    }
+
+    /**
+     * @return The number of messages dropped because they were already seen
+     */
+    public synchronized long getDuplicateCount() {
+        return duplicateMessages;
+    }
+
+    /**
+     * @return The number of ids currently remembered
+     */
+    public synchronized int size() {
+        evictExpired(currentTimeMillis());
+        return seenIds.size();
+    }
+
+    /**
+     * @return The current time in milliseconds, used to expire ids
+     */
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    private void evictExpired(long now) {
+        Iterator<Map.Entry<MessageId, Long>> oldest = seenIds.entrySet().iterator();
+        while (oldest.hasNext() && now - oldest.next().getValue() > retentionMillis)
+            oldest.remove();
+    }
+}
@@ -0,0 +1,92 @@
+package com.eis.smsnetwork;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Identifier of a message sent over the network: the node which created it and a sequence number
+ * increased by that node for every new message.
+ * It's written as the originator, {@link #SEPARATOR} and the sequence number in base 36, so it
+ * only takes a few characters besides the originator.
+ */
+public final class MessageId {
+
+    public static final char SEPARATOR = ':';
+    private static final int RADIX = 36;
+
+    private final String originator;
+    private final long sequence;
+
+    /**
+     * Constructor for a MessageId
+     *
+     * @param originator The address of the node which created the message
+     * @param sequence   The sequence number of the message at its originator
+     * @throws IllegalArgumentException If the originator is empty or contains {@link #SEPARATOR},
+     *                                  or the sequence number is negative
+     */
+    public MessageId(@NonNull String originator, long sequence) {
+        if (originator == null || originator.isEmpty() || originator.indexOf(SEPARATOR) >= 0)
+            throw new IllegalArgumentException("Invalid message originator: " + originator);
+        if (sequence < 0) throw new IllegalArgumentException("The sequence number can't be negative!");
+        this.originator = originator;
+        this.sequence = sequence;
+    }
+
+    /**
+     * @return The address of the node which created the message
+     */
+    public String getOriginator() {
+        return originator;
+    }
+
+    /**
+     * @return The sequence number of the message at its originator
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return The text form of this id
+     */
+    public String encode() {
+        return originator + SEPARATOR + Long.toString(sequence, RADIX);
+    }
+
+    /**
+     * Parses an id previously written with {@link #encode()}
+     *
+     * @param text The text form of the id
+     * @return The parsed id
+     * @throws IllegalArgumentException If the text is not a valid id
+     */
+    public static MessageId decode(@NonNull String text) {
+        int separator = text.lastIndexOf(SEPARATOR);
+        if (separator < 0) throw new IllegalArgumentException("Invalid message id: " + text);
+        try {
+            return new MessageId(text.substring(0, separator),
+                    Long.parseLong(text.substring(separator + 1), RADIX));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid message id: " + text);
+        }
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (!(other instanceof MessageId)) return false;
+        MessageId id = (MessageId) other;
+        return sequence == id.sequence && originator.equals(id.originator);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * originator.hashCode() + (int) (sequence ^ (sequence >>> 32));
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return encode();
+    }
+}
@@ -0,0 +1,168 @@
+package com.eis.smsnetwork;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.eis.communication.network.NetDictionary;
+import com.eis.communication.network.Version;
+import com.eis.communication.network.VersionedNetDictionary;
+import com.eis.communication.network.VersionedResource;
+import com.eis.smsnetwork.broadcast.BatchMessage;
+import com.eis.smsnetwork.broadcast.BroadcastReceiver;
+
+import java.util.Collections;
+
+/**
+ * A single change to a dictionary: either a key set to a value or a key removed.
+ * An update may carry the {@link Version} of the write, so that it's merged by the dictionaries
+ * of the other nodes instead of blindly overwriting their resource.
+ */
+public final class ResourceUpdate {
+
+    private final String key;
+    private final String value;
+    private final Version version;
+
+    private ResourceUpdate(@NonNull String key, @Nullable String value, @Nullable Version version) {
+        this.key = key;
+        this.value = value;
+        this.version = version;
+    }
+
+    /**
+     * @param key   The key of the resource
+     * @param value The new value of the resource
+     * @return An update setting the key to the value
+     */
+    public static ResourceUpdate add(@NonNull String key, @NonNull String value) {
+        if (value == null) throw new IllegalArgumentException("Cannot add a null resource!");
+        return new ResourceUpdate(key, value, null);
+    }
+
+    /**
+     * @param key The key of the resource
+     * @return An update removing the key
+     */
+    public static ResourceUpdate remove(@NonNull String key) {
+        return new ResourceUpdate(key, null, null);
+    }
+
+    /**
+     * @param key       The key of the resource
+     * @param versioned The resource with its version, or a tombstone
+     * @return An update setting the key to the resource, or removing it, carrying the version
+     */
+    public static ResourceUpdate of(@NonNull String key, @NonNull VersionedResource<String> versioned) {
+        return new ResourceUpdate(key, versioned.getResource(), versioned.getVersion());
+    }
+
+    /**
+     * @param version The version of the write
+     * @return An update equal to this one, carrying the given version
+     */
+    public ResourceUpdate withVersion(@Nullable Version version) {
+        return new ResourceUpdate(key, value, version);
+    }
+
+    /**
+     * @return The key of the resource
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return The new value of the resource, or null if the update is a removal
+     */
+    @Nullable
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * @return True if the update removes the key, false if it sets it
+     */
+    public boolean isRemoval() {
+        return value == null;
+    }
+
+    /**
+     * @return The version of the write, or null if the update carries none
+     */
+    @Nullable
+    public Version getVersion() {
+        return version;
+    }
+
+    /**
+     * Applies this update to a dictionary. A versioned update is merged into a
+     * {@link VersionedNetDictionary}, so it's ignored if the dictionary has a newer write.
+     *
+     * @param dictionary The dictionary to change
+     * @return False if the update was ignored because the dictionary has a newer write, true otherwise
+     */
+    public boolean applyTo(@NonNull NetDictionary<String, String> dictionary) {
+        if (version != null && dictionary instanceof VersionedNetDictionary)
+            return ((VersionedNetDictionary<String, String>) dictionary).mergeResource(key, isRemoval() ?
+                    VersionedResource.<String>tombstone(version) : VersionedResource.of(value, version));
+        if (isRemoval()) dictionary.removeResource(key);
+        else dictionary.addResource(key, value);
+        return true;
+    }
+
+    /**
+     * Returns the update carrying the write a dictionary currently holds for the key of this one.
+     * Called after applying this update to a {@link VersionedNetDictionary}, it gives the same
+     * update with the version the dictionary stamped on it. If the key was written again in the
+     * meantime the newer write is returned, which is the one every node must end up with anyway.
+     *
+     * @param dictionary The dictionary this update was applied to
+     * @return The versioned update, or this one if the dictionary doesn't version its resources
+     */
+    public ResourceUpdate withVersionFrom(@NonNull NetDictionary<String, String> dictionary) {
+        if (!(dictionary instanceof VersionedNetDictionary)) return this;
+        VersionedResource<String> written = ((VersionedNetDictionary<String, String>) dictionary).getVersionedResource(key);
+        return written == null ? this : of(key, written);
+    }
+
+    /**
+     * @return The text of the single {@link RequestType#AddResource} or
+     * {@link RequestType#RemoveResource} message broadcasting this update.
+     * Those messages have no room for a version, so a versioned update is sent as a
+     * {@link BatchMessage} holding only this update instead.
+     * @throws IllegalArgumentException if the key or the value contain a backslash as their last
+     *                                  character.
+     */
+    public String toRequestMessage() {
+        if (version != null)
+            return new BatchMessage(Collections.singletonList(this)).encode();
+        if (isRemoval())
+            return RequestType.RemoveResource.asString() + BroadcastReceiver.FIELD_SEPARATOR +
+                    SMSNetDictionary.addEscapes(key);
+        return RequestType.AddResource.asString() +
+                BroadcastReceiver.FIELD_SEPARATOR + SMSNetDictionary.addEscapes(key) +
+                BroadcastReceiver.FIELD_SEPARATOR + SMSNetDictionary.addEscapes(value);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (!(other instanceof ResourceUpdate)) return false;
+        ResourceUpdate update = (ResourceUpdate) other;
+        return key.equals(update.key) && (value == null ? update.value == null : value.equals(update.value)) &&
+                (version == null ? update.version == null : version.equals(update.version));
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 31 * key.hashCode() + (value == null ? 0 : value.hashCode());
+        return 31 * hash + (version == null ? 0 : version.hashCode());
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        String update = isRemoval() ? "-" + key : key + "=" + value;
+        return version == null ? update : update + " v" + version;
+    }
+}
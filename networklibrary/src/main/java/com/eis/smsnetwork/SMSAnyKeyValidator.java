@@ -0,0 +1,23 @@
+package com.eis.smsnetwork;
+
+import com.eis.communication.network.KeyValidator;
+
+/**
+ * {@link KeyValidator} accepting any non empty key.
+ * It can only be used when the messages sent over the network escape their field separators,
+ * so that keys containing spaces or any other character can still be told apart from values.
+ *
+ * @see SMSNetDictionary#SMSNetDictionary(KeyValidator)
+ */
+public class SMSAnyKeyValidator implements KeyValidator<String> {
+
+    /**
+     * Checks if a given key is not null nor empty
+     *
+     * @param key The key to check
+     * @return True if the key is not null and not empty, false otherwise
+     */
+    public boolean isValid(String key) {
+        return key != null && !key.isEmpty();
+    }
+}
@@ -26,6 +26,11 @@ public class SMSFailReason extends FailReason {
      */
     public static final SMSFailReason MESSAGE_SEND_ERROR  = new SMSFailReason("ErrorWhileSendingMessage");
 
+    /**
+     * Error when there are too many requests waiting to be sent
+     */
+    public static final SMSFailReason REQUEST_QUEUE_FULL = new SMSFailReason("RequestQueueFull");
+
     /**
      * Private constructor as suggested in the TypeSafe enum pattern.
      *
@@ -2,18 +2,34 @@ package com.eis.smsnetwork;
 
 import android.util.Log;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
 import com.eis.communication.network.Invitation;
 import com.eis.communication.network.JoinableNetworkManager;
+import com.eis.communication.network.NetDictionary;
+import com.eis.communication.network.NetSubscriberList;
+import com.eis.communication.network.Transport;
+import com.eis.communication.network.tracing.TracingTransport;
 import com.eis.communication.network.commands.CommandExecutor;
 import com.eis.communication.network.listeners.JoinInvitationListener;
 import com.eis.smslibrary.SMSPeer;
+import com.eis.smsnetwork.partition.KeyPartitioner;
 import com.eis.smsnetwork.smsnetcommands.SMSAcceptInvite;
+import com.eis.smsnetwork.sync.SnapshotChunk;
+import com.eis.smsnetwork.sync.SnapshotReceiver;
+import com.eis.smsnetwork.sync.SnapshotResume;
+import com.eis.smsnetwork.sync.SnapshotSender;
 
 /**
  * Concrete JoinableNetwork for SMS Messages
  * If a listener is NOT set (using {@link #setJoinInvitationListener(JoinInvitationListener)})
  * the method {@link #acceptJoinInvitation(Invitation)} will be called automatically,
  * else you should call that from the listener if you want to accept an invitation
+ * <p>
+ * Once a peer accepts an invitation, the inviter sends it the whole state of the network with
+ * {@link #startSnapshotSync(SMSPeer)}, and the messages of the transfer are handled by
+ * {@link #onSnapshotMessage(SMSPeer, String)} on both sides.
  *
  * @author Marco Cognolato
  * @author Giovanni Velludo
@@ -24,6 +40,8 @@ public class SMSJoinableNetManager extends SMSNetworkManager
     private static SMSJoinableNetManager instance;
 
     private JoinInvitationListener<Invitation<SMSPeer>> invitationListener = null;
+    private SnapshotSender snapshotSender = null;
+    private SnapshotReceiver snapshotReceiver = null;
 
     /**
      * Private constructor of the singleton.
@@ -31,6 +49,18 @@ public class SMSJoinableNetManager extends SMSNetworkManager
     private SMSJoinableNetManager() {
     }
 
+    /**
+     * Constructor for a SMSJoinableNetManager using the given subscribers and dictionary
+     * themselves, for example to run simulated nodes next to each other
+     *
+     * @param subscribers The subscribers of the network
+     * @param dictionary  The dictionary of the network
+     */
+    public SMSJoinableNetManager(@NonNull NetSubscriberList<SMSPeer> subscribers,
+                                 @NonNull NetDictionary<String, String> dictionary) {
+        super(subscribers, dictionary);
+    }
+
     /**
      * Gets the only instance of this class.
      *
@@ -51,7 +81,7 @@ public class SMSJoinableNetManager extends SMSNetworkManager
      */
     @Override
     public void acceptJoinInvitation(Invitation invitation) {
-        CommandExecutor.execute(new SMSAcceptInvite((SMSInvitation)invitation, instance));
+        CommandExecutor.execute(new SMSAcceptInvite((SMSInvitation) invitation, this));
     }
 
     /**
@@ -80,11 +110,122 @@ public class SMSJoinableNetManager extends SMSNetworkManager
         }
     }
 
+    /**
+     * @return The sender of the state of the network to the peers joining it
+     */
+    public synchronized SnapshotSender getSnapshotSender() {
+        if (snapshotSender == null) {
+            snapshotSender = new SnapshotSender(getNetDictionary(), getNetSubscriberList(), getMaxMessageLength());
+            snapshotSender.setTransport(getTransport());
+            snapshotSender.setKeyPartitioner(getKeyPartitioner());
+        }
+        return snapshotSender;
+    }
+
+    /**
+     * @return The receiver of the state of the network this peer joined
+     */
+    public synchronized SnapshotReceiver getSnapshotReceiver() {
+        if (snapshotReceiver == null) {
+            snapshotReceiver = new SnapshotReceiver(getNetDictionary(), getNetSubscriberList());
+            snapshotReceiver.setTransport(getTransport());
+        }
+        return snapshotReceiver;
+    }
+
+    /**
+     * Partitions the dictionary over the network, the state sent to the joining peers included
+     *
+     * @param partitioner The partitioner deciding which peers store every key, or null to store
+     *                    every key on every peer
+     */
+    @Override
+    public synchronized void setKeyPartitioner(@Nullable KeyPartitioner partitioner) {
+        super.setKeyPartitioner(partitioner);
+        if (snapshotSender != null) snapshotSender.setKeyPartitioner(partitioner);
+    }
+
+    /**
+     * Sets the transport the messages are sent through, the state transfer included
+     *
+     * @param transport The transport to use from now on
+     */
+    @Override
+    public synchronized void setTransport(@NonNull Transport<SMSPeer> transport) {
+        super.setTransport(transport);
+        if (snapshotSender != null) {
+            snapshotSender.setTransport(getTransport());
+            snapshotSender.setMaxMessageLength(getMaxMessageLength());
+        }
+        if (snapshotReceiver != null) snapshotReceiver.setTransport(getTransport());
+    }
+
+    /**
+     * Handles a message received from another peer, the messages of the state transfer included
+     *
+     * @param sender  The peer which sent the message
+     * @param message The text of the message
+     * @return True if the message was handled, false otherwise
+     */
+    @Override
+    public boolean onMessageReceived(@NonNull SMSPeer sender, @NonNull String message) {
+        message = TracingTransport.removeHeader(message);
+        return onSnapshotMessage(sender, message) || super.onMessageReceived(sender, message);
+    }
+
+    /**
+     * Sends the whole state of the network to a peer which accepted an invitation
+     *
+     * @param joiner The peer which just joined the network
+     */
+    public void startSnapshotSync(@NonNull SMSPeer joiner) {
+        int session = getSnapshotSender().startSession(joiner);
+        Log.d("JOINABLE_NET", "Sending snapshot " + session + " to: " + joiner);
+    }
+
+    /**
+     * Handles a message of the state transfer
+     *
+     * @param sender The peer which sent the message
+     * @param data   The text of the message
+     * @return True if the message belonged to the state transfer, false otherwise
+     */
+    public boolean onSnapshotMessage(@NonNull SMSPeer sender, @NonNull String data) {
+        try {
+            if (SnapshotChunk.isChunk(data)) {
+                getSnapshotReceiver().onChunk(sender, SnapshotChunk.decode(data));
+                return true;
+            }
+            if (SnapshotResume.isResume(data)) {
+                if (!getSnapshotSender().onResumeRequest(sender, SnapshotResume.decode(data)))
+                    Log.d("JOINABLE_NET", "Unknown snapshot requested by: " + sender);
+                return true;
+            }
+        } catch (IllegalArgumentException e) {
+            Log.e("JOINABLE_NET", "Malformed snapshot message from: " + sender);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Sets a given dictionary of resources, the state transfer will use the new one
+     *
+     * @param dictionary A NetDictionary of type <String,String> to provide
+     */
+    @Override
+    public synchronized void setNetDictionary(@NonNull NetDictionary<String, String> dictionary) {
+        super.setNetDictionary(dictionary);
+        snapshotSender = null;
+        snapshotReceiver = null;
+    }
+
     /**
      * Clears the state of the network
      */
     public void clear(){
-        super.getNetSubscriberList().getSubscribers().clear();
+        super.getNetSubscriberList().clear();
         super.getNetDictionary().clear();
+        getSnapshotReceiver().reset();
     }
 }
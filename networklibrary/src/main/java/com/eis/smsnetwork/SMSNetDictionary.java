@@ -1,35 +1,110 @@
 package com.eis.smsnetwork;
 
 
-import com.eis.communication.network.NetDictionary;
+import androidx.annotation.NonNull;
 
+import com.eis.communication.network.ConcurrentNetDictionary;
+import com.eis.communication.network.HybridLogicalClock;
+import com.eis.communication.network.KeyValidator;
+import com.eis.communication.network.Version;
+import com.eis.communication.network.VersionedNetDictionary;
+import com.eis.communication.network.VersionedResource;
+
+import java.security.SecureRandom;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
- * Concrete implementation of a NetDictionary
+ * Concrete implementation of a NetDictionary.
+ * It's backed by a {@link ConcurrentHashMap}, so it can be safely used by the broadcast receiver,
+ * the UI thread and the network manager at the same time.
+ * <p>
+ * Every resource carries a {@link Version}: local writes are stamped by a
+ * {@link HybridLogicalClock} with the originator id of this dictionary, removals leave a
+ * tombstone, and writes from other nodes are merged with {@link #mergeResource(String, VersionedResource)}.
+ * Since the newest version always wins, replicas receiving the same writes in any order converge.
+ * Every change is a compare-and-set on the versioned entry, so a local write never overwrites a
+ * newer one merged at the same time.
  *
  * @author Marco Cognolato
  */
-public class SMSNetDictionary implements NetDictionary<String, String> {
+public class SMSNetDictionary implements ConcurrentNetDictionary<String, String>,
+        VersionedNetDictionary<String, String> {
+
+    private static final int ORIGINATOR_RADIX = 36;
+
+    ConcurrentMap<String, VersionedResource<String>> dict = new ConcurrentHashMap<>();
+    private final KeyValidator<String> keyValidator;
+    private final String originator;
+    private final HybridLogicalClock clock;
+
+    /**
+     * Constructor for a dictionary only accepting single word keys
+     *
+     * @see SMSWordKeyValidator
+     */
+    public SMSNetDictionary() {
+        this(new SMSWordKeyValidator());
+    }
 
-    Map<String, String> dict = new HashMap<>();
+    /**
+     * Constructor for a dictionary using a custom key validation rule and a random originator id
+     *
+     * @param keyValidator The validator deciding which keys are accepted
+     */
+    public SMSNetDictionary(@NonNull KeyValidator<String> keyValidator) {
+        this(keyValidator, Long.toString(new SecureRandom().nextLong() & Long.MAX_VALUE, ORIGINATOR_RADIX),
+                new HybridLogicalClock());
+    }
+
+    /**
+     * Constructor for a dictionary
+     *
+     * @param keyValidator The validator deciding which keys are accepted
+     * @param originator   The id stamped on the local writes, different for every node
+     * @param clock        The clock giving the timestamps of the local writes
+     */
+    public SMSNetDictionary(@NonNull KeyValidator<String> keyValidator, @NonNull String originator,
+                            @NonNull HybridLogicalClock clock) {
+        this.keyValidator = keyValidator;
+        this.originator = originator;
+        this.clock = clock;
+    }
+
+    /**
+     * @return The id stamped on the local writes
+     */
+    public String getOriginator() {
+        return originator;
+    }
+
+    /**
+     * @param key The key to check
+     * @return True if this dictionary accepts the key, false otherwise
+     */
+    public boolean isValidKey(String key) {
+        return keyValidator.isValid(key);
+    }
 
     /**
      * Adds a resource to the network dictionary
      *
      * @param key      The key which defines the resource
      * @param resource The resource to add
-     * @throws IllegalArgumentException If the key is invalid.
+     * @throws IllegalArgumentException If the key is invalid or the resource is null.
      *                                  A key is said to be valid only if it's composed of a single word
      */
     public void addResource(String key, String resource) {
         checkKeyValidity(key);
-        dict.put(key, resource);
+        checkResourceValidity(resource);
+        write(key, resource);
     }
 
     /**
-     * Removes a resource from the dictionary
+     * Removes a resource from the dictionary, leaving a tombstone
      *
      * @param key The key which defines the resource
      * @throws IllegalArgumentException If the key is invalid.
@@ -37,7 +112,7 @@ public class SMSNetDictionary implements NetDictionary<String, String> {
      */
     public void removeResource(String key) {
         checkKeyValidity(key);
-        dict.remove(key);
+        write(key, null);
     }
 
     /**
@@ -50,13 +125,248 @@ public class SMSNetDictionary implements NetDictionary<String, String> {
      *                                  A key is said to be valid only if it's composed of a single word
      */
     public String getResource(String key) {
+        checkKeyValidity(key);
+        return resourceOf(dict.get(key));
+    }
+
+    /**
+     * Adds a resource to the dictionary only if the key isn't already associated with one
+     *
+     * @param key      The key which defines the resource
+     * @param resource The resource to add
+     * @return The resource already associated with the key, or null if the given one was added
+     * @throws IllegalArgumentException If the key is invalid or the resource is null.
+     */
+    public String addResourceIfAbsent(String key, String resource) {
+        checkKeyValidity(key);
+        checkResourceValidity(resource);
+        while (true) {
+            VersionedResource<String> current = dict.get(key);
+            if (current != null && !current.isTombstone()) return current.getResource();
+            if (compareAndSet(key, current, resource)) return null;
+        }
+    }
+
+    /**
+     * Replaces the resource of a key only if it's currently equal to the expected one
+     *
+     * @param key              The key which defines the resource
+     * @param expectedResource The resource the key is expected to be associated with
+     * @param newResource      The resource to set
+     * @return True if the resource was replaced, false otherwise
+     * @throws IllegalArgumentException If the key is invalid or one of the resources is null.
+     */
+    public boolean replaceResource(String key, String expectedResource, String newResource) {
+        checkKeyValidity(key);
+        checkResourceValidity(expectedResource);
+        checkResourceValidity(newResource);
+        while (true) {
+            VersionedResource<String> current = dict.get(key);
+            if (!expectedResource.equals(resourceOf(current))) return false;
+            if (compareAndSet(key, current, newResource)) return true;
+        }
+    }
+
+    /**
+     * Atomically computes a new resource for a key, given its current one.
+     * This is implemented as a compare-and-set loop, so it never blocks other threads and
+     * the function may be invoked more than once under contention.
+     *
+     * @param key      The key which defines the resource
+     * @param function The function computing the new resource, returning null removes the key
+     * @return The new resource associated with the key, or null if it was removed
+     * @throws IllegalArgumentException If the key is invalid.
+     */
+    public String computeResource(String key, ResourceFunction<String, String> function) {
+        checkKeyValidity(key);
+        while (true) {
+            VersionedResource<String> current = dict.get(key);
+            String currentResource = resourceOf(current);
+            String updated = function.apply(key, currentResource);
+            // removing a missing resource changes nothing
+            if (updated == null && currentResource == null) return null;
+            if (compareAndSet(key, current, updated)) return updated;
+        }
+    }
+
+    /**
+     * Returns a resource with its version
+     *
+     * @param key The key which defines the resource
+     * @return The resource with its version, a tombstone if it was removed, or null if the key
+     * was never written
+     * @throws IllegalArgumentException If the key is invalid.
+     */
+    public VersionedResource<String> getVersionedResource(String key) {
         checkKeyValidity(key);
         return dict.get(key);
     }
 
+    /**
+     * Merges a write made by another node, applying it only if its version is newer than the
+     * current one. The clock is moved past the version, so later local writes win over it, and a
+     * version further ahead of the clock than its maximum drift is rejected.
+     *
+     * @param key       The key which defines the resource
+     * @param versioned The resource with its version, or a tombstone
+     * @return True if the write was applied, false if the current version is the same or newer
+     * or the version is too far in the future
+     * @throws IllegalArgumentException If the key is invalid.
+     */
+    public boolean mergeResource(String key, VersionedResource<String> versioned) {
+        checkKeyValidity(key);
+        if (!clock.update(versioned.getVersion().getTimestamp())) return false;
+        while (true) {
+            VersionedResource<String> current = dict.get(key);
+            if (current != null && !versioned.getVersion().isNewerThan(current.getVersion()))
+                return false;
+            if (current == null ? dict.putIfAbsent(key, versioned) == null : dict.replace(key, current, versioned))
+                return true;
+        }
+    }
+
+    /**
+     * Copies the dictionary without locking it, so a change made during the copy may or may not
+     * be part of it
+     *
+     * @return An unmodifiable copy of every key in the dictionary with its resource
+     */
+    public Map<String, String> getResources() {
+        Map<String, String> resources = new HashMap<>();
+        for (Map.Entry<String, VersionedResource<String>> entry : dict.entrySet())
+            if (!entry.getValue().isTombstone())
+                resources.put(entry.getKey(), entry.getValue().getResource());
+        return Collections.unmodifiableMap(resources);
+    }
+
+    /**
+     * Copies the dictionary without locking it, so a change made during the copy may or may not
+     * be part of it
+     *
+     * @return An unmodifiable copy of every key in the dictionary with its versioned resource,
+     * tombstones included
+     */
+    public Map<String, VersionedResource<String>> getVersionedResources() {
+        return Collections.unmodifiableMap(new HashMap<>(dict));
+    }
+
+    /**
+     * @return The number of resources in the dictionary, tombstones excluded
+     */
+    public int getLiveResourceCount() {
+        int live = 0;
+        for (VersionedResource<String> versioned : dict.values())
+            if (!versioned.isTombstone()) live++;
+        return live;
+    }
+
+    /**
+     * @return The number of tombstones kept for removed resources
+     */
+    public int getTombstoneCount() {
+        int tombstones = 0;
+        for (VersionedResource<String> versioned : dict.values())
+            if (versioned.isTombstone()) tombstones++;
+        return tombstones;
+    }
+
+    /**
+     * Forgets the tombstones whose timestamp is not greater than the given one. A tombstone
+     * replaced by a newer write in the meantime is left untouched.
+     * After this a write older than a purged tombstone would bring its resource back, so it must
+     * only be done once every node has seen the removal.
+     *
+     * @param maxTimestamp The greatest timestamp of a tombstone to purge
+     * @return The tombstones purged, by key
+     */
+    public Map<String, VersionedResource<String>> purgeTombstones(long maxTimestamp) {
+        Map<String, VersionedResource<String>> purged = new HashMap<>();
+        for (Map.Entry<String, VersionedResource<String>> entry : dict.entrySet()) {
+            VersionedResource<String> versioned = entry.getValue();
+            if (versioned.isTombstone() && versioned.getVersion().getTimestamp() <= maxTimestamp &&
+                    isPurgeable(entry.getKey()) && dict.remove(entry.getKey(), versioned))
+                purged.put(entry.getKey(), versioned);
+        }
+        return purged;
+    }
+
+    /**
+     * Purges the tombstone of a key, if the key still has it. Like
+     * {@link #purgeTombstones(long)} this must only be done once every node has seen the removal.
+     *
+     * @param key       The key of the tombstone
+     * @param tombstone The tombstone the key is expected to have
+     * @return True if the tombstone was purged, false if the key changed in the meantime or its
+     * tombstone must be kept
+     */
+    public boolean purgeTombstone(String key, VersionedResource<String> tombstone) {
+        return tombstone.isTombstone() && isPurgeable(key) && dict.remove(key, tombstone);
+    }
+
+    /**
+     * Tells whether the tombstone of a key can be purged once it's old enough. Every tombstone
+     * can by default; a subclass keeping older entries elsewhere keeps the tombstones hiding them.
+     *
+     * @param key The key of the tombstone
+     * @return True if the tombstone can be purged, false if it must be kept
+     */
+    protected boolean isPurgeable(String key) {
+        return true;
+    }
+
+    /**
+     * Forgets the entry of a key without leaving a tombstone, for a key this node no longer has to
+     * hold. Unlike {@link #removeResource(String)} the resource is not removed from the network.
+     *
+     * @param key      The key which defines the resource
+     * @param expected The entry the key is expected to have
+     * @return True if the entry was forgotten, false if it changed in the meantime
+     */
+    public boolean evictResource(String key, VersionedResource<String> expected) {
+        return dict.remove(key, expected);
+    }
+
+    /**
+     * Removes every resource from the dictionary, tombstones included
+     */
+    public void clear() {
+        dict.clear();
+    }
+
+    /**
+     * Writes a resource with a new local version, retrying until the write isn't raced by another one
+     *
+     * @param resource The resource to write, or null to leave a tombstone
+     */
+    private void write(String key, String resource) {
+        while (true)
+            if (compareAndSet(key, dict.get(key), resource)) return;
+    }
+
+    /**
+     * Replaces the current entry of a key with a resource stamped with a new local version
+     *
+     * @param current  The entry the key is expected to have, or null if it's expected to have none
+     * @param resource The resource to write, or null to leave a tombstone
+     * @return True if the entry was replaced, false if it changed in the meantime
+     */
+    private boolean compareAndSet(String key, VersionedResource<String> current, String resource) {
+        if (current != null) clock.update(current.getVersion().getTimestamp());
+        Version version = new Version(clock.now(), originator);
+        VersionedResource<String> updated = resource == null ?
+                VersionedResource.<String>tombstone(version) : VersionedResource.of(resource, version);
+        if (current == null) return dict.putIfAbsent(key, updated) == null;
+        return dict.replace(key, current, updated);
+    }
+
+    private static String resourceOf(VersionedResource<String> versioned) {
+        return versioned == null ? null : versioned.getResource();
+    }
+
     /**
      * Checks if a given key is valid, else throws IllegalArgumentException.
-     * A key is said to be valid only if it's composed of one word.
+     * By default a key is said to be valid only if it's composed of one word, a different rule can
+     * be provided with {@link #SMSNetDictionary(KeyValidator)}.
      * <p>
      * This is because when a Key-Resource pair gets embedded in an SMSMessage they need a separator.
      * We decided to use a space as a separator, so if we allow multiple words keys we run into a
@@ -72,7 +382,18 @@ public class SMSNetDictionary implements NetDictionary<String, String> {
      * @param key The key to check
      */
     private void checkKeyValidity(String key) {
-        if (key == null || !key.matches("^\\w+$"))
+        if (!keyValidator.isValid(key))
             throw new IllegalArgumentException("The given key is not valid! Given key was: " + key);
     }
+
+    /**
+     * Checks if a given resource can be stored, else throws IllegalArgumentException.
+     * A removed resource is represented by a tombstone instead.
+     *
+     * @param resource The resource to check
+     */
+    private void checkResourceValidity(String resource) {
+        if (resource == null)
+            throw new IllegalArgumentException("The given resource is not valid! Resources cannot be null");
+    }
 }
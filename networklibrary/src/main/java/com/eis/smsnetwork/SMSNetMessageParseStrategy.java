@@ -0,0 +1,133 @@
+package com.eis.smsnetwork;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.eis.communication.MessageParseStrategy;
+import com.eis.smslibrary.SMSMessage;
+import com.eis.smslibrary.SMSPeer;
+import com.eis.smsnetwork.broadcast.BatchMessage;
+import com.eis.smsnetwork.codec.UpdateCodec;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Parse strategy telling the messages of the network apart from any other SMS and dropping
+ * the ones already received.
+ * <p>
+ * Every message sent starts with {@link #HIDDEN_CHARACTER}, followed by its sequence number in
+ * base 36, {@link #ID_SEPARATOR} and its data. Together with the address of the sender, the
+ * sequence number makes up the {@link MessageId} of the message, which is checked against a
+ * {@link DuplicateFilter} before the message reaches the network.
+ * Sequence numbers start from the current time, so that they keep growing after a restart, and
+ * the header takes at most {@link #MAX_HEADER_LENGTH} characters of the SMS.
+ * <p>
+ * If an {@link UpdateCodec} is set, the batches it wrote are turned back into text
+ * {@link BatchMessage}s, so the rest of the network only ever sees the text format.
+ */
+public class SMSNetMessageParseStrategy implements MessageParseStrategy<String, SMSPeer, SMSMessage> {
+
+    public static final String HIDDEN_CHARACTER = "¤";
+    public static final char ID_SEPARATOR = ' ';
+    /**
+     * Characters of a single SMS
+     */
+    public static final int MAX_SMS_LENGTH = 160;
+    private static final int RADIX = 36;
+    /**
+     * Base 36 digits of the sequence numbers, enough for the milliseconds of thousands of years
+     */
+    private static final int MAX_SEQUENCE_DIGITS = 9;
+    /**
+     * Characters written in front of every message
+     */
+    public static final int MAX_HEADER_LENGTH = HIDDEN_CHARACTER.length() + MAX_SEQUENCE_DIGITS + 1;
+
+    private final DuplicateFilter duplicateFilter;
+    private final AtomicLong nextSequence = new AtomicLong(System.currentTimeMillis());
+    private volatile UpdateCodec updateCodec = null;
+
+    /**
+     * Constructor for a SMSNetMessageParseStrategy using a default {@link DuplicateFilter}
+     */
+    public SMSNetMessageParseStrategy() {
+        this(new DuplicateFilter());
+    }
+
+    /**
+     * Constructor for a SMSNetMessageParseStrategy
+     *
+     * @param duplicateFilter The filter remembering the messages already received
+     */
+    public SMSNetMessageParseStrategy(@NonNull DuplicateFilter duplicateFilter) {
+        this.duplicateFilter = duplicateFilter;
+    }
+
+    /**
+     * @return The filter remembering the messages already received
+     */
+    public DuplicateFilter getDuplicateFilter() {
+        return duplicateFilter;
+    }
+
+    /**
+     * @return The codec used to read received batches, or null if only text batches are read
+     */
+    public UpdateCodec getUpdateCodec() {
+        return updateCodec;
+    }
+
+    /**
+     * @param codec The codec used to read received batches, or null to read only text batches
+     */
+    public void setUpdateCodec(@Nullable UpdateCodec codec) {
+        updateCodec = codec;
+    }
+
+    /**
+     * Parses a received SMS
+     *
+     * @param channelData The text of the SMS
+     * @param channelPeer The sender of the SMS
+     * @return The message, or null if it doesn't belong to the network, it was already received
+     * or it's a malformed batch
+     */
+    @Override
+    public SMSMessage parseMessage(String channelData, SMSPeer channelPeer) {
+        if (!channelData.startsWith(HIDDEN_CHARACTER))
+            return null;
+        int separator = channelData.indexOf(ID_SEPARATOR, HIDDEN_CHARACTER.length());
+        if (separator < 0)
+            return null;
+        long sequence;
+        try {
+            sequence = Long.parseLong(channelData.substring(HIDDEN_CHARACTER.length(), separator), RADIX);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (sequence < 0 || duplicateFilter.isDuplicate(new MessageId(channelPeer.getAddress(), sequence)))
+            return null;
+        String data = channelData.substring(separator + 1);
+        UpdateCodec codec = updateCodec;
+        if (codec != null && !BatchMessage.isBatch(data) && codec.isEncoded(data)) {
+            try {
+                data = new BatchMessage(codec.decode(data)).encode();
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+        return new SMSMessage(channelPeer, data);
+    }
+
+    /**
+     * Prepares a message to be sent, giving it a new sequence number
+     *
+     * @param message The message to send
+     * @return The text of the SMS
+     */
+    @Override
+    public String parseData(SMSMessage message) {
+        return HIDDEN_CHARACTER + Long.toString(nextSequence.getAndIncrement(), RADIX) + ID_SEPARATOR +
+                message.getData();
+    }
+}
@@ -4,35 +4,70 @@ package com.eis.smsnetwork;
 import androidx.annotation.NonNull;
 
 import com.eis.communication.network.NetSubscriberList;
+import com.eis.communication.network.SubscriberSnapshot;
 import com.eis.smslibrary.SMSPeer;
 
-import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Concrete implementation of a {@link NetSubscriberList} interface
+ * Concrete implementation of a {@link NetSubscriberList} interface.
+ * Subscribers are kept in an insertion-ordered hash set, so the same peer is never added twice.
+ * Every change increases the epoch of the membership in constant time. The immutable
+ * {@link SubscriberSnapshot} of an epoch is only built when first asked for and then reused
+ * until the next change, so readers such as broadcasts never see a membership change halfway
+ * through, and many changes in a row don't copy the subscribers each time.
  *
  * @author Marco Cognolato
  */
 public class SMSNetSubscriberList implements NetSubscriberList<SMSPeer> {
 
-    private ArrayList<SMSPeer> subscribers = new ArrayList<>();
+    private final LinkedHashSet<SMSPeer> subscribers = new LinkedHashSet<>();
+    // lock free membership checks, kept in sync with subscribers while holding the lock
+    private final Set<SMSPeer> index = Collections.newSetFromMap(new ConcurrentHashMap<SMSPeer, Boolean>());
+    private volatile long epoch = 0;
+    private volatile SubscriberSnapshot<SMSPeer> snapshot =
+            new SubscriberSnapshot<>(0, Collections.<SMSPeer>emptyList());
 
     /**
-     * Adds a subscriber to this network
+     * Adds a subscriber to this network, if it's not already present
      *
      * @param subscriber The subscriber to add to the net
      * @throws IllegalArgumentException If subscriber is null
      */
-    public void addSubscriber(@NonNull final SMSPeer subscriber) {
+    public synchronized void addSubscriber(@NonNull final SMSPeer subscriber) {
         if (subscriber == null) throw new IllegalArgumentException("Cannot add a null peer!");
-        subscribers.add(subscriber);
+        if (subscribers.add(subscriber)) {
+            index.add(subscriber);
+            epoch++;
+        }
     }
 
     /**
-     * @return Returns the list of all the current subscribers to the net
+     * @return Returns an immutable list of all the current subscribers to the net, in the order
+     * they were added
      */
-    public ArrayList<SMSPeer> getSubscribers() {
-        return subscribers;
+    public List<SMSPeer> getSubscribers() {
+        return getSnapshot().getSubscribers();
+    }
+
+    /**
+     * @return Returns the current subscribers together with the epoch of the membership. The
+     * snapshot is copied from the subscribers only if they changed since the last one.
+     */
+    public SubscriberSnapshot<SMSPeer> getSnapshot() {
+        SubscriberSnapshot<SMSPeer> current = snapshot;
+        if (current.getEpoch() == epoch) return current;
+        synchronized (this) {
+            current = snapshot;
+            if (current.getEpoch() == epoch) return current;
+            current = new SubscriberSnapshot<>(epoch, subscribers);
+            snapshot = current;
+            return current;
+        }
     }
 
     /**
@@ -41,9 +76,28 @@ public class SMSNetSubscriberList implements NetSubscriberList<SMSPeer> {
      * @param subscriber The subscriber to remove
      * @throws IllegalArgumentException If a non present subscriber is removed
      */
-    public void removeSubscriber(@NonNull final SMSPeer subscriber) {
-        if (!subscribers.contains(subscriber))
+    public synchronized void removeSubscriber(@NonNull final SMSPeer subscriber) {
+        if (!subscribers.remove(subscriber))
             throw new IllegalArgumentException("The subscriber you're trying to remove is not present!");
-        subscribers.remove(subscriber);
+        index.remove(subscriber);
+        epoch++;
+    }
+
+    /**
+     * @param subscriber The subscriber to look for
+     * @return Returns true if the given subscriber is currently in the net, false otherwise
+     */
+    public boolean isSubscribed(@NonNull final SMSPeer subscriber) {
+        return index.contains(subscriber);
+    }
+
+    /**
+     * Removes all the subscribers
+     */
+    public synchronized void clear() {
+        if (subscribers.isEmpty()) return;
+        subscribers.clear();
+        index.clear();
+        epoch++;
     }
 }
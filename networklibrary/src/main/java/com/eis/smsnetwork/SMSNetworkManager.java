@@ -4,26 +4,51 @@ import android.content.Context;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
-import com.eis.communication.MessageParseStrategy;
-import com.eis.communication.network.commands.CommandExecutor;
+import com.eis.communication.network.commands.AsyncCommandExecutor;
 import com.eis.communication.network.NetDictionary;
 import com.eis.communication.network.NetSubscriberList;
 import com.eis.communication.network.NetworkManager;
+import com.eis.communication.network.SubscriberSnapshot;
+import com.eis.communication.network.Transport;
+import com.eis.communication.network.VersionedNetDictionary;
+import com.eis.communication.network.VersionedResource;
+import com.eis.communication.network.listeners.CommandListener;
 import com.eis.communication.network.listeners.GetResourceListener;
 import com.eis.communication.network.listeners.InviteListener;
+import com.eis.communication.network.listeners.ReceiveListener;
 import com.eis.communication.network.listeners.RemoveResourceListener;
 import com.eis.communication.network.listeners.SetResourceListener;
+import com.eis.communication.network.metrics.MeteredTransport;
+import com.eis.communication.network.metrics.MetricsRegistry;
+import com.eis.communication.network.metrics.NetworkMetrics;
+import com.eis.communication.network.metrics.NoOpMetricsRegistry;
+import com.eis.communication.network.tracing.TraceContext;
+import com.eis.communication.network.tracing.TraceEvent;
+import com.eis.communication.network.tracing.Tracer;
+import com.eis.communication.network.tracing.TracingTransport;
 import com.eis.smslibrary.SMSManager;
-import com.eis.smslibrary.SMSMessage;
 import com.eis.smslibrary.SMSMessageHandler;
 import com.eis.smslibrary.SMSPeer;
 import com.eis.smsnetwork.broadcast.BroadcastReceiver;
+import com.eis.smsnetwork.broadcast.BatchMessage;
+import com.eis.smsnetwork.broadcast.UpdateBroadcaster;
+import com.eis.smsnetwork.codec.UpdateCodec;
+import com.eis.smsnetwork.dissemination.Disseminator;
+import com.eis.smsnetwork.partition.KeyPartitioner;
+import com.eis.smsnetwork.query.ResourceCache;
+import com.eis.smsnetwork.query.ResourceLookup;
 import com.eis.smsnetwork.smsnetcommands.SMSAddResource;
 import com.eis.smsnetwork.smsnetcommands.SMSSendInvitation;
 import com.eis.smsnetwork.smsnetcommands.SMSRemoveResource;
+import com.eis.smsnetwork.sync.AntiEntropy;
+import com.eis.smsnetwork.sync.MerkleTree;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The manager class of the network.
@@ -38,8 +63,63 @@ public class SMSNetworkManager implements NetworkManager<String, String, SMSPeer
     private NetDictionary<String, String> netDictionary = new SMSNetDictionary();
     private ArrayList<SMSPeer> invitedPeers = new ArrayList<SMSPeer>();
 
+    /**
+     * Characters left for the text of a message in a single SMS, once the header of the
+     * {@link SMSNetMessageParseStrategy} is written
+     */
+    public static final int MAX_PAYLOAD_LENGTH = SMSNetMessageParseStrategy.MAX_SMS_LENGTH -
+            SMSNetMessageParseStrategy.MAX_HEADER_LENGTH;
+    /**
+     * Characters left for the text of a message in a single SMS whatever the configuration, once
+     * the wrap of a {@link Disseminator} and the header of a {@link TracingTransport} are written
+     * too. Components owned by a manager use {@link #getMaxMessageLength()} instead.
+     */
+    public static final int MAX_MESSAGE_LENGTH = MAX_PAYLOAD_LENGTH - Disseminator.MAX_WRAP_LENGTH -
+            TracingTransport.MAX_HEADER_LENGTH;
+
+    /**
+     * Default maximum number of requests waiting to be sent
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+    /**
+     * Executes the requests in the background. A single worker keeps them in order.
+     */
+    private volatile AsyncCommandExecutor commandExecutor = new AsyncCommandExecutor(1, DEFAULT_QUEUE_CAPACITY);
+    private UpdateBroadcaster updateBroadcaster = null;
+    private Disseminator disseminator = null;
+    private volatile ReceiveListener<SMSPeer> requestListener = null;
+    private AntiEntropy antiEntropy = null;
+    private TombstoneCompactor tombstoneCompactor = null;
+    private ResourceLookup resourceLookup = null;
+    private volatile KeyPartitioner keyPartitioner = null;
+    private volatile ResourceCache resourceCache = new ResourceCache();
+    private volatile Transport<SMSPeer> transport = SMSTransport.getInstance();
+    private volatile MetricsRegistry metrics = NoOpMetricsRegistry.INSTANCE;
+    private volatile Tracer tracer = null;
+    private final SMSNetMessageParseStrategy messageParseStrategy = new SMSNetMessageParseStrategy();
+
     private String LOG_KEY = "NET_MANAGER";
 
+    /**
+     * Constructor for a SMSNetworkManager with no subscribers and an empty dictionary
+     */
+    public SMSNetworkManager() {
+    }
+
+    /**
+     * Constructor for a SMSNetworkManager using the given subscribers and dictionary themselves,
+     * for example to share them with other components or to run simulated nodes
+     *
+     * @param subscribers The subscribers of the network
+     * @param dictionary  The dictionary of the network
+     */
+    public SMSNetworkManager(@NonNull NetSubscriberList<SMSPeer> subscribers,
+                             @NonNull NetDictionary<String, String> dictionary) {
+        netSubscribers = subscribers;
+        netDictionary = dictionary;
+    }
+
     /**
      * @return netSubscribers
      */
@@ -63,7 +143,341 @@ public class SMSNetworkManager implements NetworkManager<String, String, SMSPeer
     }
 
     /**
-     * Starts a setResource request to the net
+     * @return The executor running the requests to the net
+     */
+    public AsyncCommandExecutor getCommandExecutor() {
+        return commandExecutor;
+    }
+
+    /**
+     * Sets the executor running the requests to the net, to change its number of worker threads
+     * or its queue capacity. The replaced executor is shut down, the requests it already queued
+     * are still executed.
+     *
+     * @param executor The executor to use from now on
+     */
+    public synchronized void setCommandExecutor(@NonNull AsyncCommandExecutor executor) {
+        if (metrics.isEnabled()) executor.setMetricsRegistry(metrics);
+        AsyncCommandExecutor previous = commandExecutor;
+        commandExecutor = executor;
+        if (previous != executor) previous.shutdown();
+    }
+
+    /**
+     * @return The stage resource updates are handed to, or null if they're broadcast one by one
+     */
+    @Nullable
+    public UpdateBroadcaster getUpdateBroadcaster() {
+        return updateBroadcaster;
+    }
+
+    /**
+     * Sets a stage to hand resource updates to instead of broadcasting each one immediately, for
+     * example a {@link com.eis.smsnetwork.broadcast.BatchBroadcaster} packing several updates in
+     * each message or a {@link com.eis.smsnetwork.broadcast.CoalescingBroadcaster} dropping
+     * superseded ones. When batching, every subscriber must be able to receive
+     * {@link com.eis.smsnetwork.broadcast.BatchMessage}s.
+     *
+     * @param broadcaster The stage to hand resource updates to, or null to broadcast them one by one
+     */
+    public void setUpdateBroadcaster(@Nullable UpdateBroadcaster broadcaster) {
+        updateBroadcaster = broadcaster;
+    }
+
+    /**
+     * @return The disseminator network-wide messages are sent through, or null if they're sent
+     * directly to every subscriber
+     */
+    @Nullable
+    public Disseminator getDisseminator() {
+        return disseminator;
+    }
+
+    /**
+     * Sets how network-wide messages reach the subscribers, for example through a gossip or a
+     * spanning tree {@link com.eis.smsnetwork.dissemination.DisseminationStrategy} so that no
+     * single node has to message everybody. Every subscriber must use a disseminator too, as they
+     * have to forward the messages they receive.
+     *
+     * @param disseminator The disseminator to use, or null to send every message directly to
+     *                     every subscriber
+     */
+    public void setDisseminator(@Nullable Disseminator disseminator) {
+        if (disseminator != null) disseminator.setTransport(transport);
+        this.disseminator = disseminator;
+    }
+
+    /**
+     * @return The listener receiving the single requests which reached this node disseminated,
+     * or null if there's none
+     */
+    @Nullable
+    public ReceiveListener<SMSPeer> getRequestListener() {
+        return requestListener;
+    }
+
+    /**
+     * Sets the listener receiving the single requests of the network, such as the added peers or
+     * the quitting ones, which reached this node through the disseminator. The
+     * {@link BroadcastReceiver} only sees them wrapped, so it must handle them here once
+     * unwrapped. The requests are attributed to the node which originated them, which must so use
+     * its phone number as the address of its disseminator.
+     *
+     * @param listener The listener to call, or null to drop the disseminated requests
+     */
+    public void setRequestListener(@Nullable ReceiveListener<SMSPeer> listener) {
+        this.requestListener = listener;
+    }
+
+    /**
+     * @return The characters left for the text of a message sent to a single peer, once the
+     * header of the {@link SMSNetMessageParseStrategy} and, if a tracer is set, the one of the
+     * {@link TracingTransport} are written
+     */
+    public int getMaxMessageLength() {
+        return MAX_PAYLOAD_LENGTH - (tracer != null ? TracingTransport.MAX_HEADER_LENGTH : 0);
+    }
+
+    /**
+     * @return The characters left for the text of a message sent to the whole network with
+     * {@link #broadcastMessage(SubscriberSnapshot, String)}, which also holds the wrap of the
+     * disseminator if one is set
+     */
+    public int getMaxBroadcastLength() {
+        return getMaxMessageLength() - (disseminator != null ? Disseminator.MAX_WRAP_LENGTH : 0);
+    }
+
+    /**
+     * @return The transport the messages of this manager are sent and received through
+     */
+    public Transport<SMSPeer> getTransport() {
+        return transport;
+    }
+
+    /**
+     * Sets the transport the messages of this manager and of its components are sent through,
+     * and starts handling the messages received from it with {@link #onMessageReceived(SMSPeer, String)}.
+     * A {@link com.eis.communication.network.loopback.LoopbackNetwork} transport lets many
+     * managers run in a single process.
+     * If tracing is enabled the transport is wrapped in a {@link TracingTransport}, and if metrics
+     * are enabled in a {@link MeteredTransport}.
+     *
+     * @param transport The transport to use from now on
+     */
+    public synchronized void setTransport(@NonNull Transport<SMSPeer> transport) {
+        if (transport instanceof MeteredTransport)
+            transport = ((MeteredTransport<SMSPeer>) transport).getTransport();
+        if (transport instanceof TracingTransport)
+            transport = ((TracingTransport<SMSPeer>) transport).getTransport();
+        Tracer currentTracer = tracer;
+        if (currentTracer != null) transport = new TracingTransport<>(transport, currentTracer);
+        if (metrics.isEnabled()) transport = new MeteredTransport<>(transport, metrics);
+        this.transport = transport;
+        transport.setReceiveListener(new ReceiveListener<SMSPeer>() {
+            @Override
+            public void onMessageReceived(SMSPeer sender, String message) {
+                SMSNetworkManager.this.onMessageReceived(sender, message);
+            }
+        });
+        if (disseminator != null) disseminator.setTransport(transport);
+        if (resourceLookup != null) resourceLookup.setTransport(transport);
+        if (keyPartitioner != null) keyPartitioner.setTransport(transport);
+        if (antiEntropy != null) antiEntropy.setTransport(transport);
+        if (tombstoneCompactor != null) tombstoneCompactor.setTransport(transport);
+        // the tracer may have changed, and with it the room left to the messages
+        int maxMessageLength = getMaxMessageLength();
+        if (keyPartitioner != null) keyPartitioner.setMaxMessageLength(maxMessageLength);
+        if (antiEntropy != null) antiEntropy.setMaxMessageLength(maxMessageLength);
+        if (tombstoneCompactor != null) tombstoneCompactor.setMaxMessageLength(maxMessageLength);
+    }
+
+    /**
+     * @return The registry the metrics of this manager are recorded into
+     */
+    public MetricsRegistry getMetricsRegistry() {
+        return metrics;
+    }
+
+    /**
+     * Sets the registry the metrics of this manager are recorded into: the messages sent and
+     * received by type and their size, the fan-out of the broadcasts, the queue depth and the
+     * metrics of the command executor, and the latency and failures of every request.
+     * Metrics are disabled by default, with {@link NoOpMetricsRegistry}.
+     *
+     * @param metrics The registry to use from now on
+     */
+    public synchronized void setMetricsRegistry(@NonNull MetricsRegistry metrics) {
+        this.metrics = metrics;
+        commandExecutor.setMetricsRegistry(metrics);
+        setTransport(transport);
+    }
+
+    /**
+     * @return The tracer recording the operations of this manager, or null if tracing is disabled
+     */
+    @Nullable
+    public Tracer getTracer() {
+        return tracer;
+    }
+
+    /**
+     * Sets the tracer recording the operations of this manager. Every request gets a trace,
+     * carried in the header of the messages it sends, and its events are recorded when it
+     * starts and completes and when its messages are sent, received, applied and forwarded,
+     * by this node and by every peer tracing too. Peers not tracing ignore the header.
+     * Tracing is disabled by default.
+     *
+     * @param tracer The tracer to use from now on, or null to disable tracing
+     */
+    public synchronized void setTracer(@Nullable Tracer tracer) {
+        this.tracer = tracer;
+        setTransport(transport);
+    }
+
+    /**
+     * Starts the trace of a request and attaches it to the current thread, if tracing is enabled
+     *
+     * @param tracer    The tracer to record with, can be null
+     * @param operation The name of the request
+     * @param key       The key of the request, can be null
+     * @return The identifier of the new trace, or null if tracing is disabled
+     */
+    private static String startTrace(@Nullable Tracer tracer, String operation, @Nullable String key) {
+        if (tracer == null) return null;
+        String traceId = tracer.startTrace(operation, key);
+        TraceContext.attach(new TraceContext(traceId, false));
+        return traceId;
+    }
+
+    /**
+     * Records the completion of a request, if it's being traced
+     *
+     * @param tracer    The tracer to record with, can be null
+     * @param traceId   The identifier of the trace of the request, can be null
+     * @param succeeded True if the request succeeded, false otherwise
+     */
+    private static void completeTrace(@Nullable Tracer tracer, @Nullable String traceId, boolean succeeded) {
+        if (tracer == null || traceId == null) return;
+        tracer.record(traceId, TraceEvent.Type.COMPLETE, null, succeeded ? "succeeded" : "failed");
+    }
+
+    /**
+     * Records the outcome of a request, if metrics are enabled
+     *
+     * @param metrics   The registry to record into
+     * @param operation The name of the request
+     * @param startTime The time the request started at, from {@link System#nanoTime()}
+     * @param succeeded True if the request succeeded, false otherwise
+     */
+    private static void recordOperation(MetricsRegistry metrics, String operation, long startTime,
+                                        boolean succeeded) {
+        if (!metrics.isEnabled()) return;
+        metrics.histogram(NetworkMetrics.operationLatency(operation))
+                .record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+        if (!succeeded) metrics.counter(NetworkMetrics.operationFailures(operation)).increment();
+    }
+
+    /**
+     * Handles a message received from another peer: disseminated messages are unwrapped, then
+     * batches of updates are applied to the dictionary and the messages of the lookups, of the
+     * anti-entropy, of the partitioning and the acknowledgements of the tombstones are handed to
+     * their component.
+     * The single requests of the network are left to the {@link BroadcastReceiver}, or handed to
+     * the listener set with {@link #setRequestListener(ReceiveListener)} if they were disseminated.
+     *
+     * @param sender  The peer which sent the message
+     * @param message The text of the message
+     * @return True if the message was handled, false otherwise
+     */
+    public boolean onMessageReceived(@NonNull SMSPeer sender, @NonNull String message) {
+        // traced messages reach managers not tracing with their header
+        message = TracingTransport.removeHeader(message);
+        SMSPeer originator = null;
+        Disseminator currentDisseminator = disseminator;
+        if (currentDisseminator != null && Disseminator.isDisseminated(message)) {
+            try {
+                originator = new SMSPeer(Disseminator.getOriginator(message));
+                message = currentDisseminator.onMessageReceived(sender, message, netSubscribers.getSnapshot());
+            } catch (IllegalArgumentException e) {
+                Log.e(LOG_KEY, "Malformed disseminated message from: " + sender);
+                return true;
+            }
+            if (message == null) return true;
+        }
+        if (onBatchMessage(sender, message)) return true;
+        if (onResourceLookupMessage(sender, message) || onAntiEntropyMessage(sender, message) ||
+                onPartitionMessage(sender, message) || onTombstoneAck(sender, message))
+            return true;
+        if (originator == null) return false;
+        ReceiveListener<SMSPeer> listener = requestListener;
+        if (listener == null) {
+            Log.w(LOG_KEY, "Dropped a disseminated request from: " + originator);
+            return true;
+        }
+        listener.onMessageReceived(originator, message);
+        return true;
+    }
+
+    /**
+     * Applies a batch of updates, written as text or by the codec set with
+     * {@link #setUpdateCodec(UpdateCodec)}, and drops the cached resources it changes.
+     * The removals received are handed to the {@link TombstoneCompactor}, which acknowledges them
+     * to the sender with its next compaction, so that the sender can purge their tombstones before
+     * the horizon.
+     *
+     * @param sender  The peer which sent the message
+     * @param message The text of the message
+     * @return True if the message was a batch, false otherwise
+     */
+    private boolean onBatchMessage(SMSPeer sender, String message) {
+        UpdateCodec codec = messageParseStrategy.getUpdateCodec();
+        boolean batch = BatchMessage.isBatch(message);
+        if (!batch && (codec == null || !codec.isEncoded(message))) return false;
+        List<ResourceUpdate> updates;
+        try {
+            updates = batch ? BatchMessage.decode(message).getUpdates() : codec.decode(message);
+            BatchMessage.checkKeys(updates, netDictionary);
+        } catch (IllegalArgumentException e) {
+            Log.e(LOG_KEY, "Malformed batch from: " + sender);
+            return true;
+        }
+        TombstoneCompactor compactor = getTombstoneCompactor();
+        for (ResourceUpdate update : updates) {
+            update.applyTo(netDictionary);
+            onResourceUpdated(update.getKey());
+            // a removal older than the local write was still seen, so it's acknowledged anyway
+            if (compactor != null && update.isRemoval() && update.getVersion() != null)
+                compactor.onRemovalReceived(sender, update.getVersion());
+        }
+        Tracer currentTracer = tracer;
+        TraceContext context = TraceContext.current();
+        if (currentTracer != null && context != null)
+            currentTracer.record(context, TraceEvent.Type.APPLY, sender.getAddress(), updates.size() + " updates");
+        return true;
+    }
+
+    /**
+     * Sends a message to the whole network, using the disseminator if one is set
+     *
+     * @param subscribers The subscribers to reach
+     * @param message     The text of the message
+     */
+    public void broadcastMessage(@NonNull SubscriberSnapshot<SMSPeer> subscribers, @NonNull String message) {
+        Disseminator currentDisseminator = disseminator;
+        if (currentDisseminator == null) {
+            Transport<SMSPeer> currentTransport = transport;
+            metrics.histogram(NetworkMetrics.BROADCAST_FANOUT).record(subscribers.size());
+            for (SMSPeer subscriber : subscribers.getSubscribers())
+                currentTransport.send(subscriber, message);
+        } else
+            currentDisseminator.broadcast(subscribers, message);
+    }
+
+    /**
+     * Starts a setResource request to the net.
+     * The resource is written to the local dictionary and the listener is called before this
+     * method returns, so the resource can be read right away, while the update is broadcast to
+     * the subscribers from a background thread.
      *
      * @param key                 The key identifier for the resource. It cannot have a backslash as
      *                            its last character.
@@ -73,19 +487,41 @@ public class SMSNetworkManager implements NetworkManager<String, String, SMSPeer
      * @author Marco Cognolato
      */
     @Override
-    public void setResource(String key, String value, SetResourceListener<String, String, SMSFailReason> setResourceListener) {
+    public void setResource(final String key, final String value, final SetResourceListener<String, String, SMSFailReason> setResourceListener) {
+        final MetricsRegistry currentMetrics = metrics;
+        final long startTime = currentMetrics.isEnabled() ? System.nanoTime() : 0;
+        final Tracer currentTracer = tracer;
+        TraceContext previousContext = TraceContext.current();
+        final String traceId = startTrace(currentTracer, "set", key);
+        resourceCache.invalidate(key);
         try {
-            CommandExecutor.execute(new SMSAddResource(key, value, netDictionary));
-        } catch (Exception e) {
-            Log.e(LOG_KEY, "There's been an error: " + e);
-            setResourceListener.onResourceSetFail(key, value, SMSFailReason.MESSAGE_SEND_ERROR);
-            return;
+            SMSAddResource command = new SMSAddResource(key, value, netDictionary, updateBroadcaster, this);
+            try {
+                command.applyLocally();
+            } catch (IllegalArgumentException exception) {
+                recordOperation(currentMetrics, "set", startTime, false);
+                completeTrace(currentTracer, traceId, false);
+                Log.e(LOG_KEY, "There's been an error: " + exception);
+                setResourceListener.onResourceSetFail(key, value, getFailReason(exception));
+                return;
+            }
+            commandExecutor.submit(command, new BroadcastFailureLogger(key));
+            recordOperation(currentMetrics, "set", startTime, true);
+            completeTrace(currentTracer, traceId, true);
+            setResourceListener.onResourceSet(key, value);
+        } finally {
+            TraceContext.attach(previousContext);
         }
-        setResourceListener.onResourceSet(key, value);
     }
 
     /**
-     * Starts a getResource request to the net
+     * Starts a getResource request to the net.
+     * A resource held by the local dictionary or by the {@link ResourceCache} is returned
+     * immediately, and a key this node knows was removed fails with
+     * {@link SMSFailReason#NO_RESOURCE} right away. Otherwise the key is looked up through the
+     * subscribers by the {@link ResourceLookup}, and the listener is called from a background
+     * thread once the peers asked reply or the lookup expires. The newest resource found by a
+     * lookup is cached, unless the key was updated meanwhile.
      *
      * @param key                 The key identifier for the resource. It cannot have a backslash as
      *                            its last character.
@@ -93,16 +529,183 @@ public class SMSNetworkManager implements NetworkManager<String, String, SMSPeer
      * @author Marco Cognolato
      */
     @Override
-    public void getResource(String key, GetResourceListener<String, String, SMSFailReason> getResourceListener) {
+    public void getResource(String key, final GetResourceListener<String, String, SMSFailReason> getResourceListener) {
+        final MetricsRegistry currentMetrics = metrics;
+        final long startTime = currentMetrics.isEnabled() ? System.nanoTime() : 0;
+        if (netDictionary instanceof VersionedNetDictionary) {
+            VersionedResource<String> versioned =
+                    ((VersionedNetDictionary<String, String>) netDictionary).getVersionedResource(key);
+            if (versioned != null && versioned.isTombstone()) {
+                recordOperation(currentMetrics, "get", startTime, false);
+                getResourceListener.onGetResourceFailed(key, SMSFailReason.NO_RESOURCE);
+                return;
+            }
+        }
         String resource = netDictionary.getResource(key);
-        if (resource != null) getResourceListener.onGetResource(key, resource);
-        else {
-            getResourceListener.onGetResourceFailed(key, SMSFailReason.NO_RESOURCE);
+        if (resource == null) resource = resourceCache.get(key);
+        if (resource != null) {
+            recordOperation(currentMetrics, "get", startTime, true);
+            getResourceListener.onGetResource(key, resource);
+            return;
+        }
+        final ResourceCache cache = resourceCache;
+        // an update received during the lookup makes its resource stale
+        final long generation = cache.getGeneration();
+        final Tracer currentTracer = tracer;
+        TraceContext previousContext = TraceContext.current();
+        final String traceId = startTrace(currentTracer, "get", key);
+        GetResourceListener<String, String, SMSFailReason> cachingListener =
+                new GetResourceListener<String, String, SMSFailReason>() {
+                    @Override
+                    public void onGetResource(String key, String value) {
+                        cache.put(key, value, generation);
+                        recordOperation(currentMetrics, "get", startTime, true);
+                        completeTrace(currentTracer, traceId, true);
+                        getResourceListener.onGetResource(key, value);
+                    }
+
+                    @Override
+                    public void onGetResourceFailed(String key, SMSFailReason reason) {
+                        recordOperation(currentMetrics, "get", startTime, false);
+                        completeTrace(currentTracer, traceId, false);
+                        getResourceListener.onGetResourceFailed(key, reason);
+                    }
+                };
+        try {
+            KeyPartitioner partitioner = keyPartitioner;
+            if (partitioner != null)
+                getResourceLookup().lookup(key, partitioner.getRemoteOwners(key), cachingListener);
+            else getResourceLookup().lookup(key, cachingListener);
+        } finally {
+            TraceContext.attach(previousContext);
+        }
+    }
+
+    /**
+     * @return The cache of the resources found by lookups, with its statistics
+     */
+    public ResourceCache getResourceCache() {
+        return resourceCache;
+    }
+
+    /**
+     * Sets the cache of the resources found by lookups, to change its capacity or time to live
+     *
+     * @param cache The cache to use from now on
+     */
+    public void setResourceCache(@NonNull ResourceCache cache) {
+        resourceCache = cache;
+    }
+
+    /**
+     * Drops the cached resource of a key, must be called whenever an update of the key is
+     * received from another peer
+     *
+     * @param key The key of the resource updated
+     */
+    public void onResourceUpdated(@NonNull String key) {
+        resourceCache.invalidate(key);
+    }
+
+    /**
+     * @return The partitioner deciding which peers store every key, or null if every peer stores
+     * every key
+     */
+    @Nullable
+    public KeyPartitioner getKeyPartitioner() {
+        return keyPartitioner;
+    }
+
+    /**
+     * Partitions the dictionary over the network, so resource updates are sent only to the owners
+     * of their keys and missing resources are asked only to them. This replaces the
+     * {@link UpdateBroadcaster}, every peer of the network must use the same partitioning.
+     *
+     * @param partitioner The partitioner deciding which peers store every key, built on the
+     *                    dictionary and subscribers of this manager, or null to store every key
+     *                    on every peer
+     */
+    public synchronized void setKeyPartitioner(@Nullable KeyPartitioner partitioner) {
+        if (partitioner != null) {
+            partitioner.setTransport(transport);
+            partitioner.setMaxMessageLength(getMaxMessageLength());
+        }
+        keyPartitioner = partitioner;
+        updateBroadcaster = partitioner;
+        if (antiEntropy != null) antiEntropy.setKeyPartitioner(partitioner);
+    }
+
+    /**
+     * Handles a message of the partitioning, the keys handed off to this node or the
+     * acknowledgement of the ones it handed off
+     *
+     * @param sender The peer which sent the message
+     * @param data   The text of the message
+     * @return True if the message belonged to the partitioning, false otherwise
+     */
+    public boolean onPartitionMessage(@NonNull SMSPeer sender, @NonNull String data) {
+        KeyPartitioner partitioner = keyPartitioner;
+        if (partitioner == null) return false;
+        try {
+            return partitioner.onMessage(sender, data);
+        } catch (IllegalArgumentException e) {
+            Log.e(LOG_KEY, "Malformed handoff from: " + sender);
+            return true;
+        }
+    }
+
+    /**
+     * Moves the keys whose owners changed after a peer joined or left, if the dictionary is
+     * partitioned. Must be called after every change of the subscribers.
+     */
+    public void onMembershipChanged() {
+        KeyPartitioner partitioner = keyPartitioner;
+        if (partitioner != null) partitioner.rebalance();
+    }
+
+    /**
+     * @return The lookup asking the subscribers for the resources missing from the dictionary
+     */
+    public synchronized ResourceLookup getResourceLookup() {
+        if (resourceLookup == null) {
+            resourceLookup = new ResourceLookup(netDictionary, netSubscribers);
+            resourceLookup.setTransport(transport);
+        }
+        return resourceLookup;
+    }
+
+    /**
+     * Sets the lookup asking the subscribers for the resources missing from the dictionary, to
+     * change how many peers are asked or how long a lookup waits for them
+     *
+     * @param lookup The lookup to use from now on, built on the dictionary and subscribers of this manager
+     */
+    public synchronized void setResourceLookup(@NonNull ResourceLookup lookup) {
+        if (resourceLookup != null) resourceLookup.shutdown();
+        lookup.setTransport(transport);
+        resourceLookup = lookup;
+    }
+
+    /**
+     * Handles a query for a resource, or a reply to one of ours
+     *
+     * @param sender The peer which sent the message
+     * @param data   The text of the message
+     * @return True if the message belonged to a lookup, false otherwise
+     */
+    public boolean onResourceLookupMessage(@NonNull SMSPeer sender, @NonNull String data) {
+        try {
+            return getResourceLookup().onMessage(sender, data);
+        } catch (IllegalArgumentException e) {
+            Log.e(LOG_KEY, "Malformed lookup message from: " + sender);
+            return true;
         }
     }
 
     /**
-     * Starts a remove resource request to the net
+     * Starts a remove resource request to the net.
+     * The resource is removed from the local dictionary and the listener is called before this
+     * method returns, while the removal is broadcast to the subscribers from a background thread.
      *
      * @param key                    The key identifier for the resource. It cannot have a backslash
      *                               as its last character.
@@ -110,35 +713,101 @@ public class SMSNetworkManager implements NetworkManager<String, String, SMSPeer
      * @author Marco Cognolato
      */
     @Override
-    public void removeResource(String key, RemoveResourceListener<String, SMSFailReason> removeResourceListener) {
+    public void removeResource(final String key, final RemoveResourceListener<String, SMSFailReason> removeResourceListener) {
+        final MetricsRegistry currentMetrics = metrics;
+        final long startTime = currentMetrics.isEnabled() ? System.nanoTime() : 0;
+        final Tracer currentTracer = tracer;
+        TraceContext previousContext = TraceContext.current();
+        final String traceId = startTrace(currentTracer, "remove", key);
+        resourceCache.invalidate(key);
         try {
-            CommandExecutor.execute(new SMSRemoveResource(key, netDictionary));
-        } catch (Exception e) {
-            Log.e(LOG_KEY, "There's been an error: " + e);
-            removeResourceListener.onResourceRemoveFail(key, SMSFailReason.MESSAGE_SEND_ERROR);
-            return;
+            SMSRemoveResource command = new SMSRemoveResource(key, netDictionary, updateBroadcaster, this);
+            try {
+                command.applyLocally();
+            } catch (IllegalArgumentException exception) {
+                recordOperation(currentMetrics, "remove", startTime, false);
+                completeTrace(currentTracer, traceId, false);
+                Log.e(LOG_KEY, "There's been an error: " + exception);
+                removeResourceListener.onResourceRemoveFail(key, getFailReason(exception));
+                return;
+            }
+            commandExecutor.submit(command, new BroadcastFailureLogger(key));
+            recordOperation(currentMetrics, "remove", startTime, true);
+            completeTrace(currentTracer, traceId, true);
+            removeResourceListener.onResourceRemoved(key);
+        } finally {
+            TraceContext.attach(previousContext);
         }
-        removeResourceListener.onResourceRemoved(key);
     }
 
     /**
-     * Starts an invite operation to the net
+     * Starts an invite operation to the net.
+     * This method returns immediately, the listener is called from a background thread once the
+     * invitation has been sent.
      *
      * @param peer           The address of the user to invite to join the network.
      * @param inviteListener Listener called on user invited or on fail.
      * @author Marco Cognolato
      */
     @Override
-    public void invite(SMSPeer peer, InviteListener<SMSPeer, SMSFailReason> inviteListener) {
+    public void invite(final SMSPeer peer, final InviteListener<SMSPeer, SMSFailReason> inviteListener) {
+        final MetricsRegistry currentMetrics = metrics;
+        final long startTime = currentMetrics.isEnabled() ? System.nanoTime() : 0;
+        final Tracer currentTracer = tracer;
+        TraceContext previousContext = TraceContext.current();
+        final String traceId = startTrace(currentTracer, "invite", peer.getAddress());
+        SMSInvitation invitation = new SMSInvitation(peer);
         try {
-            SMSInvitation invitation = new SMSInvitation(peer);
-            CommandExecutor.execute(new SMSSendInvitation(invitation, this));
-        } catch (Exception e) {
-            Log.e(LOG_KEY, "There's been an error: " + e);
-            inviteListener.onInvitationNotSent(peer, SMSFailReason.MESSAGE_SEND_ERROR);
-            return;
+            commandExecutor.submit(new SMSSendInvitation(invitation, this), new CommandListener() {
+                @Override
+                public void onCommandExecuted() {
+                    recordOperation(currentMetrics, "invite", startTime, true);
+                    completeTrace(currentTracer, traceId, true);
+                    inviteListener.onInvitationSent(peer);
+                }
+
+                @Override
+                public void onCommandFailed(Exception exception) {
+                    recordOperation(currentMetrics, "invite", startTime, false);
+                    completeTrace(currentTracer, traceId, false);
+                    Log.e(LOG_KEY, "There's been an error: " + exception);
+                    inviteListener.onInvitationNotSent(peer, getFailReason(exception));
+                }
+            });
+        } finally {
+            TraceContext.attach(previousContext);
+        }
+    }
+
+    /**
+     * @param exception The exception thrown by a failed request
+     * @return The reason to report to the listener of the request
+     */
+    private static SMSFailReason getFailReason(Exception exception) {
+        if (exception instanceof RejectedExecutionException)
+            return SMSFailReason.REQUEST_QUEUE_FULL;
+        return SMSFailReason.MESSAGE_SEND_ERROR;
+    }
+
+    /**
+     * Listener of the broadcast of an update already applied to the local dictionary: a lost
+     * broadcast is only logged, the subscribers missing it are repaired by the anti-entropy
+     */
+    private class BroadcastFailureLogger implements CommandListener {
+        private final String key;
+
+        BroadcastFailureLogger(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public void onCommandExecuted() {
+        }
+
+        @Override
+        public void onCommandFailed(Exception exception) {
+            Log.e(LOG_KEY, "The update of " + key + " couldn't be broadcast: " + exception);
         }
-        inviteListener.onInvitationSent(peer);
     }
 
     /**
@@ -160,6 +829,104 @@ public class SMSNetworkManager implements NetworkManager<String, String, SMSPeer
      */
     public void setNetDictionary(@NonNull NetDictionary<String, String> dictionary) {
         netDictionary = dictionary;
+        synchronized (this) {
+            antiEntropy = null;
+            if (resourceLookup != null) resourceLookup.shutdown();
+            resourceLookup = null;
+            boolean compacting = tombstoneCompactor != null && tombstoneCompactor.isRunning();
+            if (tombstoneCompactor != null) tombstoneCompactor.shutdown();
+            tombstoneCompactor = null;
+            TombstoneCompactor compactor = getTombstoneCompactor();
+            if (compacting && compactor != null) compactor.start();
+        }
+    }
+
+    /**
+     * @return The task purging the tombstones of the dictionary, or null if the dictionary isn't a
+     * {@link SMSNetDictionary}
+     */
+    @Nullable
+    public synchronized TombstoneCompactor getTombstoneCompactor() {
+        if (tombstoneCompactor == null && netDictionary instanceof SMSNetDictionary) {
+            tombstoneCompactor = new TombstoneCompactor((SMSNetDictionary) netDictionary, netSubscribers);
+            tombstoneCompactor.setTransport(transport);
+            tombstoneCompactor.setMaxMessageLength(getMaxMessageLength());
+        }
+        return tombstoneCompactor;
+    }
+
+    /**
+     * Handles an acknowledgement of the writes seen by another subscriber
+     *
+     * @param sender The peer which sent the message
+     * @param data   The text of the message
+     * @return True if the message was an acknowledgement, false otherwise
+     */
+    public boolean onTombstoneAck(@NonNull SMSPeer sender, @NonNull String data) {
+        TombstoneCompactor compactor = getTombstoneCompactor();
+        if (compactor == null) return false;
+        try {
+            return compactor.onMessage(sender, data);
+        } catch (IllegalArgumentException e) {
+            Log.e(LOG_KEY, "Malformed acknowledgement from: " + sender);
+            return true;
+        }
+    }
+
+    /**
+     * @return The anti-entropy repairing the dictionary, or repairing others with it
+     */
+    public synchronized AntiEntropy getAntiEntropy() {
+        if (antiEntropy == null) {
+            antiEntropy = new AntiEntropy(netDictionary, MerkleTree.DEFAULT_DEPTH, getMaxMessageLength());
+            antiEntropy.setTransport(transport);
+            antiEntropy.setKeyPartitioner(keyPartitioner);
+        }
+        return antiEntropy;
+    }
+
+    /**
+     * Repairs the differences between the dictionary and the one of another peer, for example
+     * after having been offline. Only the ranges of keys which differ are transferred.
+     *
+     * @param source The peer whose dictionary is trusted
+     */
+    public void repairDictionary(@NonNull SMSPeer source) {
+        Log.d(LOG_KEY, "Repairing dictionary from: " + source);
+        getAntiEntropy().startRepair(source);
+    }
+
+    /**
+     * Handles a message of the anti-entropy exchange
+     *
+     * @param sender The peer which sent the message
+     * @param data   The text of the message
+     * @return True if the message belonged to the exchange, false otherwise
+     */
+    public boolean onAntiEntropyMessage(@NonNull SMSPeer sender, @NonNull String data) {
+        try {
+            return getAntiEntropy().onMessage(sender, data);
+        } catch (IllegalArgumentException e) {
+            Log.e(LOG_KEY, "Malformed anti-entropy message from: " + sender);
+            return true;
+        }
+    }
+
+    /**
+     * @return The filter dropping the messages received more than once, with its counters
+     */
+    public DuplicateFilter getDuplicateFilter() {
+        return messageParseStrategy.getDuplicateFilter();
+    }
+
+    /**
+     * Sets the codec used to read batches written by other nodes. Batches broadcast by this node
+     * are written by the codec of its {@link com.eis.smsnetwork.broadcast.BatchBroadcaster}, if any.
+     *
+     * @param codec The codec to read received batches with, or null to read only text batches
+     */
+    public void setUpdateCodec(@Nullable UpdateCodec codec) {
+        messageParseStrategy.setUpdateCodec(codec);
     }
 
     /**
@@ -170,22 +937,9 @@ public class SMSNetworkManager implements NetworkManager<String, String, SMSPeer
     public void setup(Context context) {
         SMSManager.getInstance().setReceivedListener(BroadcastReceiver.class,
                 context.getApplicationContext());
-        SMSMessageHandler.getInstance()
-                .setMessageParseStrategy(new MessageParseStrategy<String, SMSPeer, SMSMessage>() {
-                    private final String HIDDEN_CHARACTER = "¤";
-
-                    @Override
-                    public SMSMessage parseMessage(String channelData, SMSPeer channelPeer) {
-                        if (!channelData.startsWith(HIDDEN_CHARACTER))
-                            return null;
-                        String messageData = channelData.substring(1);
-                        return new SMSMessage(channelPeer, messageData);
-                    }
-
-                    @Override
-                    public String parseData(SMSMessage message) {
-                        return HIDDEN_CHARACTER + message.getData();
-                    }
-                });
+        SMSMessageHandler.getInstance().setMessageParseStrategy(messageParseStrategy);
+        setTransport(SMSTransport.getInstance());
+        TombstoneCompactor compactor = getTombstoneCompactor();
+        if (compactor != null) compactor.start();
     }
 }
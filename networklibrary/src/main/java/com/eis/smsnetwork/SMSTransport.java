@@ -0,0 +1,68 @@
+package com.eis.smsnetwork;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.eis.communication.network.Transport;
+import com.eis.communication.network.listeners.ReceiveListener;
+import com.eis.smslibrary.SMSManager;
+import com.eis.smslibrary.SMSMessage;
+import com.eis.smslibrary.SMSPeer;
+
+/**
+ * {@link Transport} sending the messages of the network as SMS through the {@link SMSManager}.
+ * The receiver of the network hands every parsed message to {@link #onMessageReceived(SMSPeer, String)}.
+ */
+public class SMSTransport implements Transport<SMSPeer> {
+
+    private static SMSTransport instance;
+
+    private volatile ReceiveListener<SMSPeer> receiveListener = null;
+
+    /**
+     * Private constructor of the singleton.
+     */
+    private SMSTransport() {
+    }
+
+    /**
+     * Gets the only instance of this class.
+     *
+     * @return the only instance of SMSTransport.
+     */
+    public static synchronized SMSTransport getInstance() {
+        if (instance == null) instance = new SMSTransport();
+        return instance;
+    }
+
+    /**
+     * Sends a message to a peer as an SMS
+     *
+     * @param peer    The peer to send the message to
+     * @param message The text of the message
+     */
+    @Override
+    public void send(@NonNull SMSPeer peer, @NonNull String message) {
+        SMSManager.getInstance().sendMessage(new SMSMessage(peer, message));
+    }
+
+    /**
+     * @param listener The listener to call for every message of the network received, or null to
+     *                 drop them
+     */
+    @Override
+    public void setReceiveListener(@Nullable ReceiveListener<SMSPeer> listener) {
+        receiveListener = listener;
+    }
+
+    /**
+     * Hands a message of the network received as an SMS to the listener, if any
+     *
+     * @param sender  The peer which sent the message
+     * @param message The text of the message, already parsed by the {@link SMSNetMessageParseStrategy}
+     */
+    public void onMessageReceived(@NonNull SMSPeer sender, @NonNull String message) {
+        ReceiveListener<SMSPeer> listener = receiveListener;
+        if (listener != null) listener.onMessageReceived(sender, message);
+    }
+}
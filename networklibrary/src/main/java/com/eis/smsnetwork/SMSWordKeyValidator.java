@@ -0,0 +1,32 @@
+package com.eis.smsnetwork;
+
+import com.eis.communication.network.KeyValidator;
+
+/**
+ * Default {@link KeyValidator} of the SMS network: a key is valid only if it's a single non empty
+ * word, made of ASCII letters, digits and underscores. This is the same set of keys matched by
+ * the regular expression {@code ^\w+$}, but checked with a plain character scan which neither
+ * compiles a pattern nor allocates anything.
+ *
+ * @see SMSNetDictionary
+ */
+public class SMSWordKeyValidator implements KeyValidator<String> {
+
+    /**
+     * Checks if a given key is composed of a single word
+     *
+     * @param key The key to check
+     * @return True if the key is a non empty word, false otherwise
+     */
+    public boolean isValid(String key) {
+        if (key == null || key.isEmpty()) return false;
+        for (int i = 0; i < key.length(); i++) {
+            if (!isWordCharacter(key.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    private static boolean isWordCharacter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+}
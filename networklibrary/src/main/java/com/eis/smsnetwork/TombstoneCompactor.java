@@ -0,0 +1,361 @@
+package com.eis.smsnetwork;
+
+import androidx.annotation.NonNull;
+
+import com.eis.communication.network.HybridLogicalClock;
+import com.eis.communication.network.NetSubscriberList;
+import com.eis.communication.network.Version;
+import com.eis.communication.network.VersionedResource;
+import com.eis.smslibrary.SMSPeer;
+import com.eis.smsnetwork.codec.FieldReader;
+import com.eis.smsnetwork.codec.Varints;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background task purging the tombstones of a {@link SMSNetDictionary}.
+ * <p>
+ * A tombstone is purged as soon as every current subscriber is known to have seen it, or in any
+ * case once it's older than the horizon, so that a subscriber which never confirms doesn't keep
+ * tombstones forever. A subscriber confirms every single removal it received, by its version, since
+ * a removal seen doesn't tell anything about the ones before it, which may have been lost or
+ * reordered. The {@link SMSNetworkManager} hands the removals it applies to
+ * {@link #onRemovalReceived(SMSPeer, Version)}, and their acknowledgements are only sent with
+ * the next compaction, packed in as few messages as possible for each peer, so that removals don't
+ * cost an extra message for every batch. Removals beyond {@link #MAX_PENDING_ACKS} are not
+ * acknowledged, their tombstones are purged by the horizon.
+ * With no subscribers only the horizon applies, so a node which is briefly alone, for example
+ * right after leaving the network, keeps its tombstones and a returning peer can't bring the
+ * removed resources back.
+ */
+public class TombstoneCompactor extends TransportClient {
+
+    /**
+     * Type of the acknowledgement message, sent at its beginning
+     */
+    public static final String ACK_TYPE = "K";
+    /**
+     * Default time after which a tombstone is purged anyway, in milliseconds
+     */
+    public static final long DEFAULT_HORIZON_MILLIS = 24 * 60 * 60 * 1000;
+    /**
+     * Default time between two compactions, in milliseconds
+     */
+    public static final long DEFAULT_PERIOD_MILLIS = 10 * 60 * 1000;
+    /**
+     * Maximum number of removals waiting to be acknowledged, and of removals whose
+     * acknowledgements are kept
+     */
+    public static final int MAX_PENDING_ACKS = 256;
+    /**
+     * Estimated bytes taken by an entry of the dictionary besides its strings
+     */
+    static final int ENTRY_OVERHEAD_BYTES = 64;
+
+    private final SMSNetDictionary dictionary;
+    private final NetSubscriberList<SMSPeer> netSubscribers;
+    private final long horizonMillis;
+    private final long periodMillis;
+    // the peers which have seen every removal, by the version of the removal
+    private final Map<Version, Set<String>> acknowledgements = new HashMap<>();
+    private final Map<SMSPeer, List<Version>> pendingAcks = new LinkedHashMap<>();
+    private int pendingAckCount = 0;
+    private int maxMessageLength = SMSNetworkManager.MAX_MESSAGE_LENGTH;
+    private ScheduledExecutorService timer = null;
+    private long compactions = 0;
+    private long purgedTombstones = 0;
+    private long reclaimedBytes = 0;
+
+    /**
+     * Constructor for a TombstoneCompactor using the default horizon and period
+     *
+     * @param dictionary     The dictionary to compact
+     * @param netSubscribers The subscribers which must see a tombstone before it's purged
+     */
+    public TombstoneCompactor(@NonNull SMSNetDictionary dictionary, @NonNull NetSubscriberList<SMSPeer> netSubscribers) {
+        this(dictionary, netSubscribers, DEFAULT_HORIZON_MILLIS, DEFAULT_PERIOD_MILLIS);
+    }
+
+    /**
+     * Constructor for a TombstoneCompactor
+     *
+     * @param dictionary     The dictionary to compact
+     * @param netSubscribers The subscribers which must see a tombstone before it's purged
+     * @param horizonMillis  The time after which a tombstone is purged anyway, in milliseconds
+     * @param periodMillis   The time between two compactions once started, in milliseconds
+     * @throws IllegalArgumentException If the horizon or the period are not positive
+     */
+    public TombstoneCompactor(@NonNull SMSNetDictionary dictionary, @NonNull NetSubscriberList<SMSPeer> netSubscribers,
+                              long horizonMillis, long periodMillis) {
+        if (horizonMillis <= 0) throw new IllegalArgumentException("The horizon must be positive!");
+        if (periodMillis <= 0) throw new IllegalArgumentException("The period must be positive!");
+        this.dictionary = dictionary;
+        this.netSubscribers = netSubscribers;
+        this.horizonMillis = horizonMillis;
+        this.periodMillis = periodMillis;
+    }
+
+    /**
+     * Starts compacting the dictionary periodically, on a background thread
+     */
+    public synchronized void start() {
+        if (timer != null) return;
+        timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, "TombstoneCompactor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        timer.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                compact();
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the periodic compaction
+     */
+    public synchronized void shutdown() {
+        if (timer == null) return;
+        timer.shutdown();
+        timer = null;
+    }
+
+    /**
+     * @return True if the periodic compaction is running, false otherwise
+     */
+    public synchronized boolean isRunning() {
+        return timer != null;
+    }
+
+    /**
+     * Records that a peer has seen a removal. Acknowledgements of removals this node doesn't know
+     * yet are kept too, as long as there are less than {@link #MAX_PENDING_ACKS} of them.
+     *
+     * @param peer    The peer which sent the acknowledgement
+     * @param version The version of the removal acknowledged
+     */
+    public synchronized void acknowledge(@NonNull SMSPeer peer, @NonNull Version version) {
+        Set<String> peers = acknowledgements.get(version);
+        if (peers == null) {
+            if (acknowledgements.size() >= MAX_PENDING_ACKS) return;
+            peers = new HashSet<>();
+            acknowledgements.put(version, peers);
+        }
+        peers.add(peer.getAddress());
+    }
+
+    /**
+     * Queues the acknowledgement of a removal received from a peer, sent with the next compaction
+     *
+     * @param sender  The peer which sent the removal
+     * @param version The version of the removal
+     */
+    public synchronized void onRemovalReceived(@NonNull SMSPeer sender, @NonNull Version version) {
+        if (pendingAckCount >= MAX_PENDING_ACKS) return;
+        List<Version> versions = pendingAcks.get(sender);
+        if (versions == null) {
+            versions = new ArrayList<>();
+            pendingAcks.put(sender, versions);
+        }
+        versions.add(version);
+        pendingAckCount++;
+    }
+
+    /**
+     * @return The number of removals waiting to be acknowledged
+     */
+    public synchronized int getPendingAckCount() {
+        return pendingAckCount;
+    }
+
+    /**
+     * @param maxMessageLength The maximum number of characters of an acknowledgement message
+     * @throws IllegalArgumentException If the length can't hold any acknowledgement
+     */
+    public synchronized void setMaxMessageLength(int maxMessageLength) {
+        if (maxMessageLength <= ACK_TYPE.length())
+            throw new IllegalArgumentException("The message length can't hold any acknowledgement!");
+        this.maxMessageLength = maxMessageLength;
+    }
+
+    /**
+     * Sends the acknowledgements of the removals received since the last time, packed in as few
+     * messages as possible for each peer
+     */
+    public void sendAcknowledgements() {
+        Map<SMSPeer, List<String>> messages = new LinkedHashMap<>();
+        synchronized (this) {
+            for (Map.Entry<SMSPeer, List<Version>> pending : pendingAcks.entrySet())
+                messages.put(pending.getKey(), encodeAcks(pending.getValue(), maxMessageLength));
+            pendingAcks.clear();
+            pendingAckCount = 0;
+        }
+        for (Map.Entry<SMSPeer, List<String>> peerMessages : messages.entrySet())
+            for (String message : peerMessages.getValue())
+                sendMessage(peerMessages.getKey(), message);
+    }
+
+    /**
+     * Handles a received acknowledgement
+     *
+     * @param sender The peer which sent the message
+     * @param data   The text of the message
+     * @return True if the message was an acknowledgement, false otherwise
+     * @throws IllegalArgumentException If the message was an acknowledgement but was malformed
+     */
+    public boolean onMessage(@NonNull SMSPeer sender, @NonNull String data) {
+        if (!data.startsWith(ACK_TYPE)) return false;
+        FieldReader reader = new FieldReader(data, ACK_TYPE.length());
+        List<Version> versions = new ArrayList<>();
+        do {
+            long timestamp = reader.readVarlong();
+            if (timestamp < 0) throw new IllegalArgumentException("Malformed acknowledgement: " + data);
+            versions.add(new Version(timestamp, reader.readField()));
+        } while (reader.hasMore());
+        for (Version version : versions)
+            acknowledge(sender, version);
+        return true;
+    }
+
+    /**
+     * @param versions         The versions of the removals to acknowledge
+     * @param maxMessageLength The maximum number of characters of a message
+     * @return The texts of the acknowledgements, each holding as many removals as it fits
+     */
+    public static List<String> encodeAcks(@NonNull List<Version> versions, int maxMessageLength) {
+        List<String> messages = new ArrayList<>();
+        StringBuilder builder = new StringBuilder(ACK_TYPE);
+        for (Version version : versions) {
+            int length = Varints.varlongLength(version.getTimestamp()) + Varints.fieldLength(version.getOriginator());
+            // a removal longer than a message is still sent, alone
+            if (builder.length() > ACK_TYPE.length() && builder.length() + length > maxMessageLength) {
+                messages.add(builder.toString());
+                builder = new StringBuilder(ACK_TYPE);
+            }
+            Varints.appendVarlong(builder, version.getTimestamp());
+            Varints.appendField(builder, version.getOriginator());
+        }
+        if (builder.length() > ACK_TYPE.length()) messages.add(builder.toString());
+        return messages;
+    }
+
+    /**
+     * Sends the pending acknowledgements, then purges the tombstones every subscriber has seen
+     * and the ones older than the horizon
+     *
+     * @return The number of tombstones purged
+     */
+    public int compact() {
+        sendAcknowledgements();
+        Map<String, VersionedResource<String>> purged = dictionary.purgeTombstones(getHorizonTimestamp());
+        for (Map.Entry<String, VersionedResource<String>> tombstone : getSeenTombstones().entrySet())
+            if (dictionary.purgeTombstone(tombstone.getKey(), tombstone.getValue()))
+                purged.put(tombstone.getKey(), tombstone.getValue());
+        long bytes = 0;
+        for (Map.Entry<String, VersionedResource<String>> tombstone : purged.entrySet())
+            bytes += estimateBytes(tombstone.getKey(), tombstone.getValue());
+        synchronized (this) {
+            compactions++;
+            purgedTombstones += purged.size();
+            reclaimedBytes += bytes;
+        }
+        return purged.size();
+    }
+
+    /**
+     * @return The number of resources in the dictionary, tombstones excluded
+     */
+    public int getLiveEntryCount() {
+        return dictionary.getLiveResourceCount();
+    }
+
+    /**
+     * @return The number of tombstones currently kept
+     */
+    public int getTombstoneCount() {
+        return dictionary.getTombstoneCount();
+    }
+
+    /**
+     * @return The number of compactions run so far
+     */
+    public synchronized long getCompactionCount() {
+        return compactions;
+    }
+
+    /**
+     * @return The number of tombstones purged so far
+     */
+    public synchronized long getPurgedTombstoneCount() {
+        return purgedTombstones;
+    }
+
+    /**
+     * @return An estimate of the memory freed by the purged tombstones so far, in bytes
+     */
+    public synchronized long getReclaimedBytes() {
+        return reclaimedBytes;
+    }
+
+    /**
+     * @return The current time, in milliseconds since the epoch
+     */
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * @return The tombstones every current subscriber has acknowledged, by key, none if there are
+     * no subscribers. Acknowledgements of removals no longer in the dictionary are forgotten.
+     */
+    private synchronized Map<String, VersionedResource<String>> getSeenTombstones() {
+        Map<String, VersionedResource<String>> seen = new HashMap<>();
+        List<SMSPeer> subscribers = netSubscribers.getSubscribers();
+        if (subscribers.isEmpty() || acknowledgements.isEmpty()) {
+            acknowledgements.clear();
+            return seen;
+        }
+        Set<String> addresses = new HashSet<>();
+        for (SMSPeer subscriber : subscribers)
+            addresses.add(subscriber.getAddress());
+        Set<Version> kept = new HashSet<>();
+        for (Map.Entry<String, VersionedResource<String>> entry : dictionary.getVersionedResources().entrySet()) {
+            if (!entry.getValue().isTombstone()) continue;
+            Set<String> peers = acknowledgements.get(entry.getValue().getVersion());
+            if (peers == null) continue;
+            if (peers.containsAll(addresses)) seen.put(entry.getKey(), entry.getValue());
+            else kept.add(entry.getValue().getVersion());
+        }
+        acknowledgements.keySet().retainAll(kept);
+        return seen;
+    }
+
+    /**
+     * @return The greatest timestamp older than the horizon
+     */
+    private long getHorizonTimestamp() {
+        long horizon = currentTimeMillis() - horizonMillis;
+        if (horizon < 0) return -1;
+        return (horizon << HybridLogicalClock.LOGICAL_BITS) | ((1L << HybridLogicalClock.LOGICAL_BITS) - 1);
+    }
+
+    private static long estimateBytes(String key, VersionedResource<String> tombstone) {
+        // strings take two bytes per character
+        return ENTRY_OVERHEAD_BYTES + 2L * (key.length() + tombstone.getVersion().getOriginator().length());
+    }
+}
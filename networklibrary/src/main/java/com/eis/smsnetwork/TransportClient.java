@@ -0,0 +1,42 @@
+package com.eis.smsnetwork;
+
+import androidx.annotation.NonNull;
+
+import com.eis.communication.network.Transport;
+import com.eis.smslibrary.SMSPeer;
+
+/**
+ * Base of the components of a network which send their own messages, such as the lookups, the
+ * anti-entropy or the state transfer. They all send through a {@link Transport}, the
+ * {@link SMSTransport} by default, which the manager owning them replaces with its own.
+ */
+public abstract class TransportClient {
+
+    private volatile Transport<SMSPeer> transport = SMSTransport.getInstance();
+
+    /**
+     * @return The transport the messages are sent through
+     */
+    public Transport<SMSPeer> getTransport() {
+        return transport;
+    }
+
+    /**
+     * Sets the transport the messages are sent through, {@link SMSTransport} by default
+     *
+     * @param transport The transport to send the messages through
+     */
+    public void setTransport(@NonNull Transport<SMSPeer> transport) {
+        this.transport = transport;
+    }
+
+    /**
+     * Sends a message through the transport
+     *
+     * @param peer    The peer to send the message to
+     * @param message The text of the message
+     */
+    protected void sendMessage(SMSPeer peer, String message) {
+        transport.send(peer, message);
+    }
+}
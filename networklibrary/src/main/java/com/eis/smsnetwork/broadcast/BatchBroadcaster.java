@@ -0,0 +1,244 @@
+package com.eis.smsnetwork.broadcast;
+
+import androidx.annotation.NonNull;
+
+import com.eis.communication.network.SubscriberSnapshot;
+import com.eis.communication.network.tracing.TraceContext;
+import com.eis.smslibrary.SMSPeer;
+import com.eis.smsnetwork.ResourceUpdate;
+import com.eis.smsnetwork.SMSNetworkManager;
+import com.eis.smsnetwork.codec.TextUpdateCodec;
+import com.eis.smsnetwork.codec.UpdateCodec;
+import com.eis.smsnetwork.codec.UpdateWriter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Batching stage in front of {@link SMSNetworkManager#broadcastMessage(SubscriberSnapshot, String)}.
+ * Dictionary updates are kept pending and packed into as few messages as possible, written by an
+ * {@link UpdateCodec} ({@link TextUpdateCodec} by default).
+ * Pending updates are broadcast as soon as they fill a whole message, or when the oldest of them
+ * has waited for the maximum delay, whichever comes first.
+ * Batches are broadcast while holding the lock of this object, so they are always sent in order.
+ * Each batch is sent in a {@link TraceContext} holding the traces of all of its updates.
+ * The delayed broadcasts are run by {@link #schedule(Runnable, long)}, on a timer of this object
+ * unless it's overridden, for example to run them in a simulated time.
+ */
+public class BatchBroadcaster implements UpdateBroadcaster {
+
+    /**
+     * Characters available for a batch in a single SMS whatever the configuration of the manager
+     */
+    public static final int DEFAULT_MAX_MESSAGE_LENGTH = SMSNetworkManager.MAX_MESSAGE_LENGTH;
+    /**
+     * Default maximum time an update is kept pending, in milliseconds
+     */
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 2000;
+
+    private final SMSNetworkManager netManager;
+    // 0 when the batches take the room left by the manager
+    private final int maxMessageLength;
+    private final long maxDelayMillis;
+    private final UpdateCodec codec;
+    private ScheduledExecutorService timer = null;
+
+    private final List<TraceContext> pendingContexts = new ArrayList<>();
+    private UpdateWriter pendingWriter;
+    private boolean flushScheduled = false;
+    private long sentMessages = 0;
+    private long batchedUpdates = 0;
+
+    /**
+     * Constructor for a BatchBroadcaster using the default delay, whose batches take all the room
+     * the manager leaves to a broadcast, as told by {@link SMSNetworkManager#getMaxBroadcastLength()}
+     *
+     * @param netManager The manager whose subscribers the batches are broadcast to, through it
+     */
+    public BatchBroadcaster(@NonNull SMSNetworkManager netManager) {
+        this(netManager, 0, DEFAULT_MAX_DELAY_MILLIS, new TextUpdateCodec(), true);
+    }
+
+    /**
+     * Constructor for a BatchBroadcaster
+     *
+     * @param netManager       The manager whose subscribers the batches are broadcast to, through it
+     * @param maxMessageLength The maximum number of characters of a batch message
+     * @param maxDelayMillis   The maximum time an update is kept pending, in milliseconds
+     * @throws IllegalArgumentException If the message length can't hold any update or the delay
+     *                                  is negative
+     */
+    public BatchBroadcaster(@NonNull SMSNetworkManager netManager, int maxMessageLength,
+                            long maxDelayMillis) {
+        this(netManager, maxMessageLength, maxDelayMillis, new TextUpdateCodec());
+    }
+
+    /**
+     * Constructor for a BatchBroadcaster
+     *
+     * @param netManager       The manager whose subscribers the batches are broadcast to, through it
+     * @param maxMessageLength The maximum number of characters of a batch message
+     * @param maxDelayMillis   The maximum time an update is kept pending, in milliseconds
+     * @param codec            The codec writing the batch messages, receivers must understand it
+     * @throws IllegalArgumentException If the message length can't hold any update or the delay
+     *                                  is negative
+     */
+    public BatchBroadcaster(@NonNull SMSNetworkManager netManager, int maxMessageLength,
+                            long maxDelayMillis, @NonNull UpdateCodec codec) {
+        this(netManager, maxMessageLength, maxDelayMillis, codec, false);
+    }
+
+    private BatchBroadcaster(SMSNetworkManager netManager, int maxMessageLength, long maxDelayMillis,
+                             UpdateCodec codec, boolean followsManager) {
+        if (!followsManager && maxMessageLength <= codec.newWriter().length())
+            throw new IllegalArgumentException("The message length can't hold any update!");
+        if (maxDelayMillis < 0) throw new IllegalArgumentException("The delay can't be negative!");
+        this.netManager = netManager;
+        this.maxMessageLength = maxMessageLength;
+        this.maxDelayMillis = maxDelayMillis;
+        this.codec = codec;
+        this.pendingWriter = codec.newWriter();
+    }
+
+    /**
+     * Queues an update to be broadcast with the next batch. The length of the pending batch is
+     * kept up to date by its {@link UpdateWriter}, so it's never encoded again.
+     *
+     * @param update The update to broadcast
+     */
+    public synchronized void submit(@NonNull ResourceUpdate update) {
+        int maxLength = getMaxMessageLength();
+        // an update longer than a message is still sent, alone
+        if (!pendingContexts.isEmpty() && pendingWriter.lengthWith(update) > maxLength)
+            broadcastPending();
+        pendingWriter.append(update);
+        pendingContexts.add(TraceContext.current());
+        if (pendingWriter.length() >= maxLength)
+            broadcastPending();
+        else if (!flushScheduled)
+            scheduleFlush();
+    }
+
+    /**
+     * @return The maximum number of characters of a batch message
+     */
+    public int getMaxMessageLength() {
+        return maxMessageLength > 0 ? maxMessageLength : netManager.getMaxBroadcastLength();
+    }
+
+    /**
+     * Broadcasts all the pending updates right away
+     */
+    public synchronized void flush() {
+        if (!pendingContexts.isEmpty()) broadcastPending();
+    }
+
+    /**
+     * Broadcasts the pending updates and stops the timer, the broadcaster can't be used anymore
+     */
+    public synchronized void shutdown() {
+        flush();
+        if (timer != null) timer.shutdown();
+    }
+
+    /**
+     * @return The number of batch messages broadcast so far, each one sent to every subscriber
+     */
+    public synchronized long getSentMessageCount() {
+        return sentMessages;
+    }
+
+    /**
+     * @return The number of updates broadcast so far
+     */
+    public synchronized long getBatchedUpdateCount() {
+        return batchedUpdates;
+    }
+
+    /**
+     * @return The number of updates waiting to be broadcast
+     */
+    public synchronized int getPendingUpdateCount() {
+        return pendingContexts.size();
+    }
+
+    /**
+     * Sends a message to the given subscribers
+     *
+     * @param subscribers The subscribers to send the message to
+     * @param message     The text of the message
+     */
+    protected void broadcastMessage(SubscriberSnapshot<SMSPeer> subscribers, String message) {
+        netManager.broadcastMessage(subscribers, message);
+    }
+
+    /**
+     * Runs a task once a delay expires, on a timer started with the first task
+     *
+     * @param task        The task to run
+     * @param delayMillis The time to wait before running the task, in milliseconds
+     */
+    protected synchronized void schedule(@NonNull Runnable task, long delayMillis) {
+        if (timer == null) {
+            timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull Runnable runnable) {
+                    Thread thread = new Thread(runnable, "BatchBroadcaster");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        timer.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Broadcasts the pending batch once the maximum delay expires, unless it's broadcast earlier.
+     * Must be called while holding the lock.
+     */
+    private void scheduleFlush() {
+        flushScheduled = true;
+        // batches are numbered by the messages sent before them
+        final long batch = sentMessages;
+        schedule(new Runnable() {
+            @Override
+            public void run() {
+                flushBatch(batch);
+            }
+        }, maxDelayMillis);
+    }
+
+    /**
+     * Broadcasts the pending batch if it's still the given one
+     *
+     * @param batch The number of the batch the flush was scheduled for
+     */
+    private synchronized void flushBatch(long batch) {
+        if (batch == sentMessages && !pendingContexts.isEmpty()) broadcastPending();
+    }
+
+    /**
+     * Broadcasts the pending batch to the current subscribers, inside the trace context of its
+     * updates, and starts a new one. Must be called while holding the lock.
+     */
+    private void broadcastPending() {
+        String message = pendingWriter.getMessage();
+        TraceContext context = TraceContext.merge(pendingContexts);
+        sentMessages++;
+        batchedUpdates += pendingContexts.size();
+        pendingWriter = codec.newWriter();
+        pendingContexts.clear();
+        flushScheduled = false;
+        TraceContext previous = TraceContext.current();
+        try {
+            TraceContext.attach(context);
+            broadcastMessage(netManager.getNetSubscriberList().getSnapshot(), message);
+        } finally {
+            TraceContext.attach(previous);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.eis.smsnetwork.broadcast;
+
+import androidx.annotation.NonNull;
+
+import com.eis.communication.network.NetDictionary;
+import com.eis.communication.network.Version;
+import com.eis.smsnetwork.ResourceUpdate;
+import com.eis.smsnetwork.SMSNetDictionary;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Message carrying several dictionary updates at once.
+ * <p>
+ * The message starts with {@link #BATCH_TYPE}, followed by the updates in order. Each update is
+ * {@link #ADD_OPERATION} followed by the key and the value, or {@link #REMOVE_OPERATION} followed
+ * by the key. Keys and values are written as their length, {@link #LENGTH_SEPARATOR} and the
+ * text itself, so they never need to be escaped.
+ * For example setting "a" to "hello" and removing "b" is encoded as {@code B+1:a5:hello-1:b}.
+ * <p>
+ * A versioned update is preceded by {@link #VERSION_MARK}, the timestamp of its version in base
+ * 36 and its originator, both written as fields. Updates without a version are still read, so
+ * nodes not versioning their writes are understood.
+ */
+public class BatchMessage {
+
+    /**
+     * Type of the message, sent at its beginning so that the receiver recognises batches
+     */
+    public static final String BATCH_TYPE = "B";
+    public static final char ADD_OPERATION = '+';
+    public static final char REMOVE_OPERATION = '-';
+    public static final char LENGTH_SEPARATOR = ':';
+    public static final char VERSION_MARK = '@';
+    private static final int TIMESTAMP_RADIX = 36;
+
+    private final List<ResourceUpdate> updates;
+
+    /**
+     * Constructor for a BatchMessage
+     *
+     * @param updates The updates carried by the message, in the order they must be applied
+     */
+    public BatchMessage(@NonNull List<ResourceUpdate> updates) {
+        this.updates = Collections.unmodifiableList(new ArrayList<>(updates));
+    }
+
+    /**
+     * @return The updates carried by the message, in the order they must be applied
+     */
+    public List<ResourceUpdate> getUpdates() {
+        return updates;
+    }
+
+    /**
+     * @return The text of the message, ready to be sent
+     */
+    public String encode() {
+        StringBuilder builder = new StringBuilder(BATCH_TYPE);
+        for (ResourceUpdate update : updates)
+            appendUpdate(builder, update);
+        return builder.toString();
+    }
+
+    /**
+     * @param update An update to add to a batch
+     * @return The number of characters the update takes inside a batch message
+     */
+    public static int encodedLength(@NonNull ResourceUpdate update) {
+        int length = 1 + fieldLength(update.getKey());
+        if (!update.isRemoval()) length += fieldLength(update.getValue());
+        Version version = update.getVersion();
+        if (version != null)
+            length += 1 + fieldLength(Long.toString(version.getTimestamp(), TIMESTAMP_RADIX)) +
+                    fieldLength(version.getOriginator());
+        return length;
+    }
+
+    /**
+     * @param message The text of a received message
+     * @return True if the message is a batch: its type followed by nothing or by the start of
+     * an update, false otherwise
+     */
+    public static boolean isBatch(@NonNull String message) {
+        if (!message.startsWith(BATCH_TYPE)) return false;
+        if (message.length() == BATCH_TYPE.length()) return true;
+        char first = message.charAt(BATCH_TYPE.length());
+        return first == ADD_OPERATION || first == REMOVE_OPERATION || first == VERSION_MARK;
+    }
+
+    /**
+     * Parses a received batch message
+     *
+     * @param message The text of the message, including its type
+     * @return The parsed message
+     * @throws IllegalArgumentException If the message is not a well formed batch
+     */
+    public static BatchMessage decode(@NonNull String message) {
+        if (!isBatch(message))
+            throw new IllegalArgumentException("The given message is not a batch: " + message);
+        List<ResourceUpdate> updates = new ArrayList<>();
+        int[] position = {BATCH_TYPE.length()};
+        while (position[0] < message.length()) {
+            char operation = message.charAt(position[0]++);
+            Version version = null;
+            if (operation == VERSION_MARK) {
+                version = readVersion(message, position);
+                if (position[0] >= message.length())
+                    throw new IllegalArgumentException("Version without update in batch: " + message);
+                operation = message.charAt(position[0]++);
+            }
+            String key = readField(message, position);
+            if (operation == ADD_OPERATION)
+                updates.add(ResourceUpdate.add(key, readField(message, position)).withVersion(version));
+            else if (operation == REMOVE_OPERATION)
+                updates.add(ResourceUpdate.remove(key).withVersion(version));
+            else
+                throw new IllegalArgumentException("Unknown batch operation: " + operation);
+        }
+        return new BatchMessage(updates);
+    }
+
+    /**
+     * Parses a received batch message and applies all of its updates to a dictionary.
+     * The whole message is parsed and its keys validated before changing the dictionary, so a
+     * malformed batch leaves it untouched.
+     *
+     * @param message    The text of the message, including its type
+     * @param dictionary The dictionary to apply the updates to
+     * @throws IllegalArgumentException If the message is not a well formed batch or one of its
+     *                                  keys is not accepted by the dictionary
+     */
+    public static void applyTo(@NonNull String message, @NonNull NetDictionary<String, String> dictionary) {
+        List<ResourceUpdate> updates = decode(message).getUpdates();
+        checkKeys(updates, dictionary);
+        for (ResourceUpdate update : updates)
+            update.applyTo(dictionary);
+    }
+
+    /**
+     * Checks that a dictionary accepts every key of some updates, so that they can be applied
+     * all together. Only an {@link SMSNetDictionary} can tell, other dictionaries accept any key here.
+     *
+     * @param updates    The updates to apply
+     * @param dictionary The dictionary to apply them to
+     * @throws IllegalArgumentException If a key is not accepted
+     */
+    public static void checkKeys(@NonNull List<ResourceUpdate> updates, @NonNull NetDictionary<String, String> dictionary) {
+        if (!(dictionary instanceof SMSNetDictionary)) return;
+        SMSNetDictionary smsDictionary = (SMSNetDictionary) dictionary;
+        for (ResourceUpdate update : updates)
+            if (!smsDictionary.isValidKey(update.getKey()))
+                throw new IllegalArgumentException("Invalid key in batch: " + update.getKey());
+    }
+
+    private static void appendUpdate(StringBuilder builder, ResourceUpdate update) {
+        Version version = update.getVersion();
+        if (version != null) {
+            builder.append(VERSION_MARK);
+            appendField(builder, Long.toString(version.getTimestamp(), TIMESTAMP_RADIX));
+            appendField(builder, version.getOriginator());
+        }
+        builder.append(update.isRemoval() ? REMOVE_OPERATION : ADD_OPERATION);
+        appendField(builder, update.getKey());
+        if (!update.isRemoval()) appendField(builder, update.getValue());
+    }
+
+    private static void appendField(StringBuilder builder, String field) {
+        builder.append(field.length()).append(LENGTH_SEPARATOR).append(field);
+    }
+
+    private static int fieldLength(String field) {
+        return String.valueOf(field.length()).length() + 1 + field.length();
+    }
+
+    private static Version readVersion(String message, int[] position) {
+        String timestamp = readField(message, position);
+        String originator = readField(message, position);
+        try {
+            return new Version(Long.parseLong(timestamp, TIMESTAMP_RADIX), originator);
+        } catch (IllegalArgumentException e) {
+            // NumberFormatException is an IllegalArgumentException too
+            throw new IllegalArgumentException("Invalid version in batch: " + message);
+        }
+    }
+
+    /**
+     * Reads a length-prefixed field
+     *
+     * @param message  The message to read from
+     * @param position Single element array holding the position to read at, moved past the field
+     * @return The field read
+     */
+    private static String readField(String message, int[] position) {
+        int separator = message.indexOf(LENGTH_SEPARATOR, position[0]);
+        if (separator < 0)
+            throw new IllegalArgumentException("Missing field length in batch: " + message);
+        int length;
+        try {
+            length = Integer.parseInt(message.substring(position[0], separator));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid field length in batch: " + message);
+        }
+        int end = separator + 1 + length;
+        if (length < 0 || end > message.length())
+            throw new IllegalArgumentException("Truncated field in batch: " + message);
+        position[0] = end;
+        return message.substring(separator + 1, end);
+    }
+}
@@ -0,0 +1,174 @@
+package com.eis.smsnetwork.broadcast;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.eis.communication.network.SubscriberSnapshot;
+import com.eis.communication.network.tracing.TraceContext;
+import com.eis.smslibrary.SMSPeer;
+import com.eis.smsnetwork.ResourceUpdate;
+import com.eis.smsnetwork.SMSNetworkManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stage which keeps only the last update of each key submitted within a short window.
+ * For example setting a key twice and then removing it inside the window only broadcasts the
+ * removal. At the end of the window the surviving updates are either handed to another
+ * {@link UpdateBroadcaster}, such as a {@link BatchBroadcaster}, or broadcast one per message.
+ * <p>
+ * The local dictionary is never delayed: commands change it before handing their update here.
+ * The {@link TraceContext} an update was submitted in is attached again when it leaves.
+ */
+public class CoalescingBroadcaster implements UpdateBroadcaster {
+
+    /**
+     * Default time updates are kept to be coalesced, in milliseconds
+     */
+    public static final long DEFAULT_WINDOW_MILLIS = 500;
+
+    private final SMSNetworkManager netManager;
+    private final UpdateBroadcaster downstream;
+    private final long windowMillis;
+    private final ScheduledExecutorService timer;
+
+    private final Map<String, ResourceUpdate> pendingUpdates = new LinkedHashMap<>();
+    private final Map<String, TraceContext> pendingContexts = new HashMap<>();
+    private ScheduledFuture<?> scheduledFlush;
+    private long submittedUpdates = 0;
+    private long forwardedUpdates = 0;
+
+    /**
+     * Constructor for a CoalescingBroadcaster broadcasting each update in its own message
+     *
+     * @param netManager   The manager whose subscribers the updates are broadcast to, through it
+     * @param windowMillis The time updates are kept to be coalesced, in milliseconds
+     */
+    public CoalescingBroadcaster(@NonNull SMSNetworkManager netManager, long windowMillis) {
+        this(netManager, windowMillis, null);
+    }
+
+    /**
+     * Constructor for a CoalescingBroadcaster
+     *
+     * @param netManager   The manager whose subscribers the updates are broadcast to, through it,
+     *                     used only if there's no downstream stage
+     * @param windowMillis The time updates are kept to be coalesced, in milliseconds
+     * @param downstream   The stage to hand the surviving updates to, or null to broadcast each
+     *                     of them in its own message
+     * @throws IllegalArgumentException If the window is negative
+     */
+    public CoalescingBroadcaster(@NonNull SMSNetworkManager netManager, long windowMillis,
+                                 @Nullable UpdateBroadcaster downstream) {
+        if (windowMillis < 0) throw new IllegalArgumentException("The window can't be negative!");
+        this.netManager = netManager;
+        this.windowMillis = windowMillis;
+        this.downstream = downstream;
+        this.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, "CoalescingBroadcaster");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Keeps an update until the end of the current window, replacing any pending update of the
+     * same key
+     *
+     * @param update The update to broadcast
+     */
+    public synchronized void submit(@NonNull ResourceUpdate update) {
+        submittedUpdates++;
+        // removing first moves the key to the end, so updates leave in the order of their last change
+        pendingUpdates.remove(update.getKey());
+        pendingUpdates.put(update.getKey(), update);
+        pendingContexts.put(update.getKey(), TraceContext.current());
+        if (scheduledFlush == null)
+            scheduledFlush = timer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            }, windowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Broadcasts the last update of every pending key right away
+     */
+    public synchronized void flush() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        if (pendingUpdates.isEmpty()) return;
+        List<ResourceUpdate> updates = new ArrayList<>(pendingUpdates.values());
+        Map<String, TraceContext> contexts = new HashMap<>(pendingContexts);
+        pendingUpdates.clear();
+        pendingContexts.clear();
+        forwardedUpdates += updates.size();
+        SubscriberSnapshot<SMSPeer> subscribers = downstream == null ? netManager.getNetSubscriberList().getSnapshot() : null;
+        TraceContext previous = TraceContext.current();
+        try {
+            for (ResourceUpdate update : updates) {
+                TraceContext.attach(contexts.get(update.getKey()));
+                if (downstream != null) downstream.submit(update);
+                else broadcastMessage(subscribers, update.toRequestMessage());
+            }
+        } finally {
+            TraceContext.attach(previous);
+        }
+    }
+
+    /**
+     * Broadcasts the pending updates and stops the timer, the broadcaster can't be used anymore
+     */
+    public void shutdown() {
+        flush();
+        timer.shutdown();
+    }
+
+    /**
+     * @return The number of updates submitted so far
+     */
+    public synchronized long getSubmittedUpdateCount() {
+        return submittedUpdates;
+    }
+
+    /**
+     * @return The number of updates which survived coalescing and were broadcast or handed
+     * downstream so far
+     */
+    public synchronized long getForwardedUpdateCount() {
+        return forwardedUpdates;
+    }
+
+    /**
+     * @return The number of updates dropped because a later update of the same key superseded
+     * them, each of which would have been broadcast to every subscriber
+     */
+    public synchronized long getSavedUpdateCount() {
+        return submittedUpdates - forwardedUpdates - pendingUpdates.size();
+    }
+
+    /**
+     * Sends a message to the given subscribers
+     *
+     * @param subscribers The subscribers to send the message to
+     * @param message     The text of the message
+     */
+    protected void broadcastMessage(SubscriberSnapshot<SMSPeer> subscribers, String message) {
+        netManager.broadcastMessage(subscribers, message);
+    }
+}
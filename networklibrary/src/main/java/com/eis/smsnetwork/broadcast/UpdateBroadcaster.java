@@ -0,0 +1,24 @@
+package com.eis.smsnetwork.broadcast;
+
+import androidx.annotation.NonNull;
+
+import com.eis.smsnetwork.ResourceUpdate;
+
+/**
+ * Stage between the resource commands and the manager's broadcast which decides when and how
+ * dictionary updates are broadcast to the subscribers.
+ */
+public interface UpdateBroadcaster {
+
+    /**
+     * Hands an update over to be broadcast, possibly later
+     *
+     * @param update The update to broadcast
+     */
+    void submit(@NonNull ResourceUpdate update);
+
+    /**
+     * Broadcasts all the pending updates right away
+     */
+    void flush();
+}
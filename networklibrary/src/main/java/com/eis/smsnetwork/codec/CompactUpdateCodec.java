@@ -0,0 +1,195 @@
+package com.eis.smsnetwork.codec;
+
+import androidx.annotation.NonNull;
+
+import com.eis.communication.network.Version;
+import com.eis.smsnetwork.ResourceUpdate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Codec packing as many updates as possible in each message.
+ * <p>
+ * The message starts with {@link #COMPACT_TYPE}, then every update is a single character opcode
+ * followed by its fields, written with {@link Varints}: lengths and indexes are text varints, so
+ * lengths below 32 take a single character and keys and values never need escaping.
+ * <p>
+ * Keys are also compressed with a dictionary: the first time a key appears in a message it's
+ * written in full, later updates of the same key refer to it by its index. Keys known in advance
+ * by every node can be given as a shared dictionary, so they're never written in full.
+ * <ul>
+ * <li>{@link #ADD}: key length, key, value length, value</li>
+ * <li>{@link #REMOVE}: key length, key</li>
+ * <li>{@link #ADD_REFERENCE}: key index, value length, value</li>
+ * <li>{@link #REMOVE_REFERENCE}: key index</li>
+ * <li>{@link #VERSION}: timestamp, originator length, originator; the version of the next update</li>
+ * <li>{@link #SAME_ORIGINATOR_VERSION}: timestamp; a version with the originator of the previous one</li>
+ * </ul>
+ */
+public class CompactUpdateCodec implements UpdateCodec {
+
+    /**
+     * Type of the message, sent at its beginning
+     */
+    public static final String COMPACT_TYPE = "C";
+    public static final char ADD = 'a';
+    public static final char REMOVE = 'r';
+    public static final char ADD_REFERENCE = 'A';
+    public static final char REMOVE_REFERENCE = 'R';
+    public static final char VERSION = 'v';
+    public static final char SAME_ORIGINATOR_VERSION = 'w';
+
+    private final List<String> sharedKeys;
+
+    /**
+     * Constructor for a CompactUpdateCodec without a shared dictionary
+     */
+    public CompactUpdateCodec() {
+        this(Collections.<String>emptyList());
+    }
+
+    /**
+     * Constructor for a CompactUpdateCodec
+     *
+     * @param sharedKeys Keys known in advance by every node, which must use the same list in the
+     *                   same order
+     */
+    public CompactUpdateCodec(@NonNull List<String> sharedKeys) {
+        this.sharedKeys = Collections.unmodifiableList(new ArrayList<>(sharedKeys));
+    }
+
+    @Override
+    public String encode(@NonNull List<ResourceUpdate> updates) {
+        UpdateWriter writer = newWriter();
+        for (ResourceUpdate update : updates)
+            writer.append(update);
+        return writer.getMessage();
+    }
+
+    @Override
+    public UpdateWriter newWriter() {
+        return new Writer();
+    }
+
+    @Override
+    public boolean isEncoded(@NonNull String message) {
+        return message.startsWith(COMPACT_TYPE);
+    }
+
+    @Override
+    public List<ResourceUpdate> decode(@NonNull String message) {
+        if (!isEncoded(message))
+            throw new IllegalArgumentException("The given message is not compact: " + message);
+        List<String> keys = new ArrayList<>(sharedKeys);
+        List<ResourceUpdate> updates = new ArrayList<>();
+        FieldReader reader = new FieldReader(message, COMPACT_TYPE.length());
+        String lastOriginator = null;
+        while (reader.hasMore()) {
+            char opcode = reader.readChar();
+            Version version = null;
+            if (opcode == VERSION || opcode == SAME_ORIGINATOR_VERSION) {
+                long timestamp = reader.readVarlong();
+                if (opcode == VERSION) lastOriginator = reader.readField();
+                else if (lastOriginator == null)
+                    throw new IllegalArgumentException("No previous originator in: " + message);
+                if (timestamp < 0) throw new IllegalArgumentException("Invalid version in: " + message);
+                version = new Version(timestamp, lastOriginator);
+                opcode = reader.readChar();
+            }
+            String key;
+            if (opcode == ADD || opcode == REMOVE) {
+                key = reader.readField();
+                keys.add(key);
+            } else if (opcode == ADD_REFERENCE || opcode == REMOVE_REFERENCE) {
+                int index = reader.readVarint();
+                if (index >= keys.size())
+                    throw new IllegalArgumentException("Unknown key reference " + index + " in: " + message);
+                key = keys.get(index);
+            } else
+                throw new IllegalArgumentException("Unknown opcode " + opcode + " in: " + message);
+            if (opcode == ADD || opcode == ADD_REFERENCE)
+                updates.add(ResourceUpdate.add(key, reader.readField()).withVersion(version));
+            else
+                updates.add(ResourceUpdate.remove(key).withVersion(version));
+        }
+        return updates;
+    }
+
+    /**
+     * Writer keeping the key dictionary and the last originator of the message being written
+     */
+    private class Writer implements UpdateWriter {
+
+        private final StringBuilder builder = new StringBuilder(COMPACT_TYPE);
+        private final Map<String, Integer> keyIndexes = new HashMap<>();
+        private int nextIndex = sharedKeys.size();
+        private String lastOriginator = null;
+
+        Writer() {
+            for (int i = 0; i < sharedKeys.size(); i++)
+                keyIndexes.put(sharedKeys.get(i), i);
+        }
+
+        @Override
+        public int lengthWith(@NonNull ResourceUpdate update) {
+            int length = builder.length() + 1;
+            Version version = update.getVersion();
+            if (version != null) {
+                length += 1 + Varints.varlongLength(version.getTimestamp());
+                if (!version.getOriginator().equals(lastOriginator))
+                    length += Varints.fieldLength(version.getOriginator());
+            }
+            String key = update.getKey();
+            Integer index = keyIndexes.get(key);
+            if (index != null && Varints.varintLength(index) < Varints.fieldLength(key))
+                length += Varints.varintLength(index);
+            else
+                length += Varints.fieldLength(key);
+            if (!update.isRemoval()) length += Varints.fieldLength(update.getValue());
+            return length;
+        }
+
+        @Override
+        public void append(@NonNull ResourceUpdate update) {
+            Version version = update.getVersion();
+            if (version != null) {
+                if (version.getOriginator().equals(lastOriginator)) {
+                    builder.append(SAME_ORIGINATOR_VERSION);
+                    Varints.appendVarlong(builder, version.getTimestamp());
+                } else {
+                    builder.append(VERSION);
+                    Varints.appendVarlong(builder, version.getTimestamp());
+                    Varints.appendField(builder, version.getOriginator());
+                    lastOriginator = version.getOriginator();
+                }
+            }
+            String key = update.getKey();
+            Integer index = keyIndexes.get(key);
+            if (index != null && Varints.varintLength(index) < Varints.fieldLength(key)) {
+                builder.append(update.isRemoval() ? REMOVE_REFERENCE : ADD_REFERENCE);
+                Varints.appendVarint(builder, index);
+            } else {
+                builder.append(update.isRemoval() ? REMOVE : ADD);
+                Varints.appendField(builder, key);
+                if (index == null) keyIndexes.put(key, nextIndex);
+                // the index is taken even if the key was shared, so both ends count the same way
+                nextIndex++;
+            }
+            if (!update.isRemoval()) Varints.appendField(builder, update.getValue());
+        }
+
+        @Override
+        public int length() {
+            return builder.length();
+        }
+
+        @Override
+        public String getMessage() {
+            return builder.toString();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.eis.smsnetwork.codec;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Reads back, in order, the characters, numbers and strings written with {@link Varints}.
+ * Every read throws {@link IllegalArgumentException} if the message is malformed or truncated.
+ */
+public class FieldReader {
+
+    private final String message;
+    private int position;
+
+    /**
+     * Constructor for a FieldReader
+     *
+     * @param message The message to read
+     * @param start   The index of the first character to read
+     */
+    public FieldReader(@NonNull String message, int start) {
+        this.message = message;
+        this.position = start;
+    }
+
+    /**
+     * @return True if there are characters left to read, false otherwise
+     */
+    public boolean hasMore() {
+        return position < message.length();
+    }
+
+    /**
+     * @return The characters left to read, after which the message is over
+     */
+    public String readRest() {
+        String rest = message.substring(position);
+        position = message.length();
+        return rest;
+    }
+
+    /**
+     * @return The next character
+     */
+    public char readChar() {
+        if (!hasMore()) throw new IllegalArgumentException("Truncated message: " + message);
+        return message.charAt(position++);
+    }
+
+    /**
+     * @return The next number
+     */
+    public int readVarint() {
+        int value = 0;
+        int shift = 0;
+        while (true) {
+            if (!hasMore() || shift >= Integer.SIZE)
+                throw new IllegalArgumentException("Truncated number in: " + message);
+            int digit = Varints.DIGITS.indexOf(message.charAt(position++));
+            if (digit < 0) throw new IllegalArgumentException("Invalid number in: " + message);
+            value |= (digit & Varints.DIGIT_MASK) << shift;
+            if ((digit & Varints.CONTINUATION) == 0) break;
+            shift += Varints.DIGIT_BITS;
+        }
+        if (value < 0) throw new IllegalArgumentException("Invalid number in: " + message);
+        return value;
+    }
+
+    /**
+     * @return The next number written with {@link Varints#appendVarlong(StringBuilder, long)}
+     */
+    public long readVarlong() {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            if (!hasMore() || shift >= Long.SIZE)
+                throw new IllegalArgumentException("Truncated number in: " + message);
+            int digit = Varints.DIGITS.indexOf(message.charAt(position++));
+            if (digit < 0) throw new IllegalArgumentException("Invalid number in: " + message);
+            value |= (long) (digit & Varints.DIGIT_MASK) << shift;
+            if ((digit & Varints.CONTINUATION) == 0) return value;
+            shift += Varints.DIGIT_BITS;
+        }
+    }
+
+    /**
+     * @return The next string
+     */
+    public String readField() {
+        int length = readVarint();
+        if (length > message.length() - position)
+            throw new IllegalArgumentException("Truncated field in: " + message);
+        String field = message.substring(position, position + length);
+        position += length;
+        return field;
+    }
+}
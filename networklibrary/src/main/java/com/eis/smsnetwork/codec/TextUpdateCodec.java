@@ -0,0 +1,66 @@
+package com.eis.smsnetwork.codec;
+
+import androidx.annotation.NonNull;
+
+import com.eis.smsnetwork.ResourceUpdate;
+import com.eis.smsnetwork.broadcast.BatchMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Human readable codec, writing updates as a {@link BatchMessage}.
+ * It's the default one, understood by every node.
+ */
+public class TextUpdateCodec implements UpdateCodec {
+
+    @Override
+    public String encode(@NonNull List<ResourceUpdate> updates) {
+        return new BatchMessage(updates).encode();
+    }
+
+    @Override
+    public UpdateWriter newWriter() {
+        return new Writer();
+    }
+
+    @Override
+    public boolean isEncoded(@NonNull String message) {
+        return BatchMessage.isBatch(message);
+    }
+
+    @Override
+    public List<ResourceUpdate> decode(@NonNull String message) {
+        return BatchMessage.decode(message).getUpdates();
+    }
+
+    /**
+     * Writer adding up the length of every update, since each one is written independently
+     */
+    private static class Writer implements UpdateWriter {
+
+        private final List<ResourceUpdate> updates = new ArrayList<>();
+        private int length = BatchMessage.BATCH_TYPE.length();
+
+        @Override
+        public int lengthWith(@NonNull ResourceUpdate update) {
+            return length + BatchMessage.encodedLength(update);
+        }
+
+        @Override
+        public void append(@NonNull ResourceUpdate update) {
+            length += BatchMessage.encodedLength(update);
+            updates.add(update);
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public String getMessage() {
+            return new BatchMessage(updates).encode();
+        }
+    }
+}
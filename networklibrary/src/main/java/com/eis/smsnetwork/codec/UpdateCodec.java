@@ -0,0 +1,39 @@
+package com.eis.smsnetwork.codec;
+
+import androidx.annotation.NonNull;
+
+import com.eis.smsnetwork.ResourceUpdate;
+
+import java.util.List;
+
+/**
+ * Encoding of a list of dictionary updates into the text of a single message.
+ * Both ends of the network must use compatible codecs.
+ */
+public interface UpdateCodec {
+
+    /**
+     * @param updates The updates to encode, in the order they must be applied
+     * @return The text of the message carrying the updates
+     */
+    String encode(@NonNull List<ResourceUpdate> updates);
+
+    /**
+     * @return A writer building a message update by update, which ends up equal to the one
+     * {@link #encode(List)} writes for the same updates
+     */
+    UpdateWriter newWriter();
+
+    /**
+     * @param message The text of a received message
+     * @return True if the message was written by this codec, false otherwise
+     */
+    boolean isEncoded(@NonNull String message);
+
+    /**
+     * @param message The text of a received message
+     * @return The updates carried by the message, in the order they must be applied
+     * @throws IllegalArgumentException If the message is not well formed
+     */
+    List<ResourceUpdate> decode(@NonNull String message);
+}
@@ -0,0 +1,35 @@
+package com.eis.smsnetwork.codec;
+
+import androidx.annotation.NonNull;
+
+import com.eis.smsnetwork.ResourceUpdate;
+
+/**
+ * Builds the text of a single message one update at a time, keeping track of its length so that
+ * a message can be filled without encoding it again for every update added.
+ */
+public interface UpdateWriter {
+
+    /**
+     * @param update An update to add after the ones already written
+     * @return The number of characters of the message if the update was appended to it
+     */
+    int lengthWith(@NonNull ResourceUpdate update);
+
+    /**
+     * Appends an update after the ones already written
+     *
+     * @param update The update to append
+     */
+    void append(@NonNull ResourceUpdate update);
+
+    /**
+     * @return The number of characters of the message holding the updates appended so far
+     */
+    int length();
+
+    /**
+     * @return The text of the message carrying the updates appended so far
+     */
+    String getMessage();
+}
@@ -0,0 +1,89 @@
+package com.eis.smsnetwork.codec;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Writes numbers and strings so that they can be packed in a message without separators or escapes.
+ * <p>
+ * A number is written as a text varint: each character of {@link #DIGITS} carries 5 bits of the
+ * number, least significant first, and its sixth bit tells whether another character follows.
+ * So numbers below 32 take a single character.
+ * A string is written as its length followed by the string itself.
+ * They are read back by a {@link FieldReader}.
+ */
+public final class Varints {
+
+    /**
+     * Characters used to write varints, each one stands for its index
+     */
+    public static final String DIGITS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz-_";
+    static final int DIGIT_BITS = 5;
+    static final int CONTINUATION = 1 << DIGIT_BITS;
+    static final int DIGIT_MASK = CONTINUATION - 1;
+
+    private Varints() {
+    }
+
+    /**
+     * @param value A non negative number
+     * @return The number of characters the number takes as a varint
+     */
+    public static int varintLength(int value) {
+        int length = 1;
+        while ((value >>>= DIGIT_BITS) != 0) length++;
+        return length;
+    }
+
+    /**
+     * @param field A string
+     * @return The number of characters the string takes as a field
+     */
+    public static int fieldLength(@NonNull String field) {
+        return varintLength(field.length()) + field.length();
+    }
+
+    /**
+     * @param builder The builder to append the number to
+     * @param value   A non negative number
+     * @throws IllegalArgumentException If the number is negative
+     */
+    public static void appendVarint(@NonNull StringBuilder builder, int value) {
+        if (value < 0) throw new IllegalArgumentException("A varint can't be negative: " + value);
+        while (value >= CONTINUATION) {
+            builder.append(DIGITS.charAt((value & DIGIT_MASK) | CONTINUATION));
+            value >>>= DIGIT_BITS;
+        }
+        builder.append(DIGITS.charAt(value));
+    }
+
+    /**
+     * @param builder The builder to append the number to
+     * @param value   Any number, negative ones are written as unsigned and take 13 characters
+     */
+    public static void appendVarlong(@NonNull StringBuilder builder, long value) {
+        while ((value & ~DIGIT_MASK) != 0) {
+            builder.append(DIGITS.charAt((int) (value & DIGIT_MASK) | CONTINUATION));
+            value >>>= DIGIT_BITS;
+        }
+        builder.append(DIGITS.charAt((int) value));
+    }
+
+    /**
+     * @param value Any number, negative ones are counted as unsigned
+     * @return The number of characters the number takes as a varlong
+     */
+    public static int varlongLength(long value) {
+        int length = 1;
+        while ((value >>>= DIGIT_BITS) != 0) length++;
+        return length;
+    }
+
+    /**
+     * @param builder The builder to append the string to
+     * @param field   The string to append, with its length
+     */
+    public static void appendField(@NonNull StringBuilder builder, @NonNull String field) {
+        appendVarint(builder, field.length());
+        builder.append(field);
+    }
+}
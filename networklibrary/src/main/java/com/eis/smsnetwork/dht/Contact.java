@@ -0,0 +1,47 @@
+package com.eis.smsnetwork.dht;
+
+import androidx.annotation.NonNull;
+
+import com.eis.smslibrary.SMSPeer;
+
+/**
+ * A node of the DHT, with its id computed once
+ */
+public final class Contact {
+
+    private final SMSPeer peer;
+    private final NodeId id;
+
+    /**
+     * Constructor for a Contact
+     *
+     * @param peer The peer of the node
+     */
+    public Contact(@NonNull SMSPeer peer) {
+        this.peer = peer;
+        this.id = NodeId.of(peer.getAddress());
+    }
+
+    public SMSPeer getPeer() {
+        return peer;
+    }
+
+    public NodeId getId() {
+        return id;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Contact && ((Contact) other).peer.equals(peer);
+    }
+
+    @Override
+    public int hashCode() {
+        return peer.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return peer + "@" + id;
+    }
+}
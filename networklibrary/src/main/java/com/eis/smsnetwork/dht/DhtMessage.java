@@ -0,0 +1,264 @@
+package com.eis.smsnetwork.dht;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.eis.communication.network.Version;
+import com.eis.communication.network.VersionedResource;
+import com.eis.smslibrary.SMSPeer;
+import com.eis.smsnetwork.codec.FieldReader;
+import com.eis.smsnetwork.codec.Varints;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Message of the DHT protocol: a request or the reply to one, matched by their rpc id.
+ * <p>
+ * The message is {@link #DHT_TYPE}, the operation, the rpc id and the fields of the operation,
+ * written with {@link Varints}:
+ * <pre>
+ * {@link #PING}       -
+ * {@link #PONG}       -
+ * {@link #FIND_NODE}  target id
+ * {@link #FIND_VALUE} key
+ * {@link #NODES}      count, addresses
+ * {@link #VALUE}      timestamp, originator, {@link #LIVE} and resource or {@link #TOMBSTONE}
+ * {@link #STORE}      key, then the same fields of {@link #VALUE}
+ * {@link #STORED}     -
+ * </pre>
+ * Node ids are not sent, every node derives them from the phone numbers.
+ */
+public final class DhtMessage {
+
+    /**
+     * Type of the message, sent at its beginning
+     */
+    public static final String DHT_TYPE = "D";
+    public static final char PING = 'p';
+    public static final char PONG = 'o';
+    public static final char FIND_NODE = 'n';
+    public static final char FIND_VALUE = 'v';
+    public static final char NODES = 'N';
+    public static final char VALUE = 'V';
+    public static final char STORE = 's';
+    public static final char STORED = 'S';
+    private static final char LIVE = 'r';
+    private static final char TOMBSTONE = 't';
+
+    private final char operation;
+    private final int rpcId;
+    private final NodeId target;
+    private final String key;
+    private final List<SMSPeer> nodes;
+    private final VersionedResource<String> value;
+
+    private DhtMessage(char operation, int rpcId, NodeId target, String key, List<SMSPeer> nodes,
+                       VersionedResource<String> value) {
+        if (rpcId < 0) throw new IllegalArgumentException("Invalid rpc id: " + rpcId);
+        this.operation = operation;
+        this.rpcId = rpcId;
+        this.target = target;
+        this.key = key;
+        this.nodes = nodes;
+        this.value = value;
+    }
+
+    public static DhtMessage ping(int rpcId) {
+        return new DhtMessage(PING, rpcId, null, null, null, null);
+    }
+
+    public static DhtMessage pong(int rpcId) {
+        return new DhtMessage(PONG, rpcId, null, null, null, null);
+    }
+
+    public static DhtMessage findNode(int rpcId, @NonNull NodeId target) {
+        return new DhtMessage(FIND_NODE, rpcId, target, null, null, null);
+    }
+
+    public static DhtMessage findValue(int rpcId, @NonNull String key) {
+        return new DhtMessage(FIND_VALUE, rpcId, null, key, null, null);
+    }
+
+    public static DhtMessage nodes(int rpcId, @NonNull List<SMSPeer> nodes) {
+        return new DhtMessage(NODES, rpcId, null, null, Collections.unmodifiableList(new ArrayList<>(nodes)), null);
+    }
+
+    public static DhtMessage value(int rpcId, @NonNull VersionedResource<String> value) {
+        return new DhtMessage(VALUE, rpcId, null, null, null, value);
+    }
+
+    public static DhtMessage store(int rpcId, @NonNull String key, @NonNull VersionedResource<String> value) {
+        return new DhtMessage(STORE, rpcId, null, key, null, value);
+    }
+
+    public static DhtMessage stored(int rpcId) {
+        return new DhtMessage(STORED, rpcId, null, null, null, null);
+    }
+
+    public char getOperation() {
+        return operation;
+    }
+
+    public int getRpcId() {
+        return rpcId;
+    }
+
+    /**
+     * @return The id looked up by a {@link #FIND_NODE}
+     */
+    @Nullable
+    public NodeId getTarget() {
+        return target;
+    }
+
+    /**
+     * @return The key of a {@link #FIND_VALUE} or a {@link #STORE}
+     */
+    @Nullable
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return The nodes of a {@link #NODES}
+     */
+    @Nullable
+    public List<SMSPeer> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return The resource of a {@link #VALUE} or a {@link #STORE}
+     */
+    @Nullable
+    public VersionedResource<String> getValue() {
+        return value;
+    }
+
+    /**
+     * @return True if the message answers a request, false if it's a request
+     */
+    public boolean isReply() {
+        return operation == PONG || operation == NODES || operation == VALUE || operation == STORED;
+    }
+
+    /**
+     * @return The text of the message
+     */
+    public String encode() {
+        StringBuilder builder = new StringBuilder(DHT_TYPE).append(operation);
+        Varints.appendVarint(builder, rpcId);
+        switch (operation) {
+            case FIND_NODE:
+                Varints.appendVarlong(builder, target.getValue());
+                break;
+            case FIND_VALUE:
+                Varints.appendField(builder, key);
+                break;
+            case NODES:
+                Varints.appendVarint(builder, nodes.size());
+                for (SMSPeer node : nodes)
+                    Varints.appendField(builder, node.getAddress());
+                break;
+            case STORE:
+                Varints.appendField(builder, key);
+                appendValue(builder, value);
+                break;
+            case VALUE:
+                appendValue(builder, value);
+                break;
+            default:
+                break;
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @param rpcId The id of the reply
+     * @param nodes The addresses of some nodes
+     * @return The length of a {@link #NODES} message carrying the nodes
+     */
+    static int nodesLength(int rpcId, List<SMSPeer> nodes) {
+        int length = DHT_TYPE.length() + 1 + Varints.varintLength(rpcId) + Varints.varintLength(nodes.size());
+        for (SMSPeer node : nodes)
+            length += Varints.fieldLength(node.getAddress());
+        return length;
+    }
+
+    /**
+     * @param message The text of a received message
+     * @return True if the message belongs to the DHT protocol, false otherwise
+     */
+    public static boolean isDhtMessage(@NonNull String message) {
+        return message.startsWith(DHT_TYPE);
+    }
+
+    /**
+     * @param message The text of a received DHT message
+     * @return The message
+     * @throws IllegalArgumentException If the message is not a well formed DHT message
+     */
+    public static DhtMessage decode(@NonNull String message) {
+        if (!isDhtMessage(message))
+            throw new IllegalArgumentException("The given message is not a DHT message: " + message);
+        FieldReader reader = new FieldReader(message, DHT_TYPE.length());
+        char operation = reader.readChar();
+        int rpcId = reader.readVarint();
+        DhtMessage decoded;
+        switch (operation) {
+            case PING:
+                decoded = ping(rpcId);
+                break;
+            case PONG:
+                decoded = pong(rpcId);
+                break;
+            case STORED:
+                decoded = stored(rpcId);
+                break;
+            case FIND_NODE:
+                decoded = findNode(rpcId, new NodeId(reader.readVarlong()));
+                break;
+            case FIND_VALUE:
+                decoded = findValue(rpcId, reader.readField());
+                break;
+            case NODES:
+                List<SMSPeer> nodes = new ArrayList<>();
+                for (int count = reader.readVarint(); count > 0; count--)
+                    nodes.add(new SMSPeer(reader.readField()));
+                decoded = nodes(rpcId, nodes);
+                break;
+            case VALUE:
+                decoded = value(rpcId, readValue(reader));
+                break;
+            case STORE:
+                String key = reader.readField();
+                decoded = store(rpcId, key, readValue(reader));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown DHT operation in: " + message);
+        }
+        if (reader.hasMore())
+            throw new IllegalArgumentException("Unexpected data in: " + message);
+        return decoded;
+    }
+
+    private static void appendValue(StringBuilder builder, VersionedResource<String> value) {
+        Varints.appendVarlong(builder, value.getVersion().getTimestamp());
+        Varints.appendField(builder, value.getVersion().getOriginator());
+        if (value.isTombstone()) builder.append(TOMBSTONE);
+        else {
+            builder.append(LIVE);
+            Varints.appendField(builder, value.getResource());
+        }
+    }
+
+    private static VersionedResource<String> readValue(FieldReader reader) {
+        Version version = new Version(reader.readVarlong(), reader.readField());
+        char state = reader.readChar();
+        if (state == TOMBSTONE) return VersionedResource.tombstone(version);
+        if (state != LIVE) throw new IllegalArgumentException("Invalid resource state: " + state);
+        return VersionedResource.of(reader.readField(), version);
+    }
+}
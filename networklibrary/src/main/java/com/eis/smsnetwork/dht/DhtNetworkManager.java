@@ -0,0 +1,642 @@
+package com.eis.smsnetwork.dht;
+
+import androidx.annotation.NonNull;
+
+import com.eis.communication.network.HybridLogicalClock;
+import com.eis.communication.network.NetworkManager;
+import com.eis.communication.network.Version;
+import com.eis.communication.network.VersionedResource;
+import com.eis.communication.network.listeners.GetResourceListener;
+import com.eis.communication.network.listeners.InviteListener;
+import com.eis.communication.network.listeners.RemoveResourceListener;
+import com.eis.communication.network.listeners.SetResourceListener;
+import com.eis.smslibrary.SMSPeer;
+import com.eis.smsnetwork.SMSAnyKeyValidator;
+import com.eis.smsnetwork.SMSFailReason;
+import com.eis.smsnetwork.SMSNetDictionary;
+import com.eis.smsnetwork.SMSNetworkManager;
+import com.eis.smsnetwork.TransportClient;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link NetworkManager} storing the dictionary in a Kademlia distributed hash table, so a write
+ * or a read costs O(log N) messages instead of one per subscriber.
+ * <p>
+ * Every node has a {@link NodeId} derived from its phone number, and every key one derived from
+ * the key. A resource is stored by the k nodes closest to its key by XOR distance, found with an
+ * iterative {@link NodeLookup} sending at most alpha queries at a time. A read waits for
+ * {@link #READ_QUORUM} values, or for the closest nodes to reply, and returns the newest one. A
+ * write is reported once {@link #WRITE_QUORUM} of the nodes storing it acknowledged it, this one
+ * included if it's among them, and fails if too many of them don't reply in time.
+ * Nodes only know a few
+ * others, kept in the k-buckets of a {@link RoutingTable}: every message received updates the
+ * table, a full bucket pings its least recently seen contact before replacing it, and
+ * {@link #refreshBuckets()} looks up a random id in every bucket without recent lookups.
+ * <p>
+ * Resources carry a {@link Version}, stamped with this node's phone number, so copies on
+ * different nodes are merged by last-writer-wins and removals are stored as tombstones. When a
+ * new node is seen, the resources it's now among the closest to are stored on it too.
+ * <p>
+ * The SMS receiver must hand every {@link DhtMessage} to {@link #onMessage(SMSPeer, String)}.
+ * {@link #sendMessage(SMSPeer, String)} must not deliver messages synchronously. The listeners
+ * are called without holding the lock of the manager, so they can start other requests.
+ */
+public class DhtNetworkManager extends TransportClient implements NetworkManager<String, String, SMSPeer, SMSFailReason> {
+
+    /**
+     * Default number of queries of a lookup in flight at the same time, the alpha of Kademlia
+     */
+    public static final int DEFAULT_PARALLELISM = 3;
+    /**
+     * Default time a request waits for its reply, in milliseconds
+     */
+    public static final long DEFAULT_RPC_TIMEOUT_MILLIS = 30000;
+    /**
+     * Default time after which a bucket without lookups is refreshed, in milliseconds
+     */
+    public static final long DEFAULT_REFRESH_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+    /**
+     * Number of values a read waits for before returning the newest one, unless the closest nodes
+     * reply before
+     */
+    public static final int READ_QUORUM = 2;
+    /**
+     * Number of the nodes storing a resource which must acknowledge a write before it's reported
+     */
+    public static final int WRITE_QUORUM = 2;
+
+    private static final int PING_REQUEST = 0;
+    private static final int FIND_NODE_REQUEST = 1;
+    private static final int FIND_VALUE_REQUEST = 2;
+
+    private final Contact self;
+    private final RoutingTable routingTable;
+    private final SMSNetDictionary store = new SMSNetDictionary(new SMSAnyKeyValidator());
+    private final HybridLogicalClock clock = new HybridLogicalClock();
+    private final int parallelism;
+    private final long rpcTimeoutMillis;
+    private final long refreshIntervalMillis;
+    private final Random random = new Random();
+    private final ScheduledExecutorService timer;
+
+    private final Map<Integer, PendingRpc> pendingRpcs = new HashMap<>();
+    private final Map<Contact, Contact> pendingEvictions = new HashMap<>();
+    /**
+     * Callbacks of the requests completed while holding the lock, run once it's released
+     */
+    private final List<Runnable> pendingCallbacks = new ArrayList<>();
+    private int nextRpcId = new Random().nextInt(Integer.MAX_VALUE);
+    private ScheduledFuture<?> refreshTask = null;
+    private long sentMessages = 0;
+
+    /**
+     * A request waiting for its reply
+     */
+    private static class PendingRpc {
+        final Contact contact;
+        final NodeLookup lookup;
+        final PendingStore store;
+        ScheduledFuture<?> timeout;
+
+        PendingRpc(Contact contact, NodeLookup lookup, PendingStore store) {
+            this.contact = contact;
+            this.lookup = lookup;
+            this.store = store;
+        }
+    }
+
+    /**
+     * A write waiting for the acknowledgements of the nodes storing it
+     */
+    private static class PendingStore {
+        final Runnable onStored;
+        final Runnable onFailed;
+        int missingAcks;
+        int waitingReplies;
+        boolean complete = false;
+
+        PendingStore(int missingAcks, int waitingReplies, Runnable onStored, Runnable onFailed) {
+            this.missingAcks = missingAcks;
+            this.waitingReplies = waitingReplies;
+            this.onStored = onStored;
+            this.onFailed = onFailed;
+        }
+
+        /**
+         * @param acknowledged True if a node stored the resource, false if it didn't reply in time
+         * @return The callback to run if the write is over now, null otherwise
+         */
+        Runnable onReply(boolean acknowledged) {
+            waitingReplies--;
+            if (acknowledged) missingAcks--;
+            if (complete) return null;
+            if (missingAcks <= 0) {
+                complete = true;
+                return onStored;
+            }
+            if (waitingReplies < missingAcks) {
+                complete = true;
+                return onFailed;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Constructor for a DhtNetworkManager using the default Kademlia parameters
+     *
+     * @param self This node, as the other peers address it
+     */
+    public DhtNetworkManager(@NonNull SMSPeer self) {
+        this(self, RoutingTable.DEFAULT_BUCKET_SIZE, DEFAULT_PARALLELISM, DEFAULT_RPC_TIMEOUT_MILLIS,
+                DEFAULT_REFRESH_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Constructor for a DhtNetworkManager
+     *
+     * @param self                  This node, as the other peers address it
+     * @param bucketSize            The size of the buckets and the number of nodes storing every
+     *                              resource, the k of Kademlia, the same on every node
+     * @param parallelism           The number of queries of a lookup in flight at the same time
+     * @param rpcTimeoutMillis      The time a request waits for its reply, in milliseconds
+     * @param refreshIntervalMillis The time after which a bucket without lookups is refreshed,
+     *                              in milliseconds
+     * @throws IllegalArgumentException If one of the parameters is not positive
+     */
+    public DhtNetworkManager(@NonNull SMSPeer self, int bucketSize, int parallelism, long rpcTimeoutMillis,
+                             long refreshIntervalMillis) {
+        if (parallelism <= 0) throw new IllegalArgumentException("The parallelism must be positive!");
+        if (rpcTimeoutMillis <= 0 || refreshIntervalMillis <= 0)
+            throw new IllegalArgumentException("The timeouts must be positive!");
+        this.self = new Contact(self);
+        this.routingTable = new RoutingTable(this.self, bucketSize);
+        this.parallelism = parallelism;
+        this.rpcTimeoutMillis = rpcTimeoutMillis;
+        this.refreshIntervalMillis = refreshIntervalMillis;
+        this.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, "DhtNetworkManager");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @return The routing table of this node
+     */
+    public RoutingTable getRoutingTable() {
+        return routingTable;
+    }
+
+    /**
+     * @return The resources this node stores for the network, tombstones included
+     */
+    public Map<String, VersionedResource<String>> getStoredResources() {
+        return store.getVersionedResources();
+    }
+
+    /**
+     * @return The number of messages sent so far
+     */
+    public synchronized long getSentMessageCount() {
+        return sentMessages;
+    }
+
+    /**
+     * Stores a resource on the nodes closest to its key.
+     * The listener is called once {@link #WRITE_QUORUM} of the closest nodes stored it, or when
+     * too many of them didn't reply in time.
+     *
+     * @param key                 The key identifier for the resource
+     * @param value               The identified value of the resource
+     * @param setResourceListener Listener called on resource successfully saved or on fail
+     */
+    @Override
+    public void setResource(final String key, final String value,
+                            final SetResourceListener<String, String, SMSFailReason> setResourceListener) {
+        if (value == null) throw new IllegalArgumentException("Cannot add a null resource!");
+        final VersionedResource<String> versioned = VersionedResource.of(value, newVersion());
+        storeOnClosest(key, versioned, new Runnable() {
+            @Override
+            public void run() {
+                setResourceListener.onResourceSet(key, value);
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                setResourceListener.onResourceSetFail(key, value, SMSFailReason.REQUEST_EXPIRED);
+            }
+        });
+    }
+
+    /**
+     * Looks a resource up in the nodes closest to its key, unless this node stores it
+     *
+     * @param key                 The key identifier for the resource
+     * @param getResourceListener Listener called on resource successfully retrieved or on fail
+     */
+    @Override
+    public void getResource(final String key, final GetResourceListener<String, String, SMSFailReason> getResourceListener) {
+        VersionedResource<String> local = store.getVersionedResource(key);
+        if (local != null && !local.isTombstone()) {
+            getResourceListener.onGetResource(key, local.getResource());
+            return;
+        }
+        startLookup(NodeId.of(key), key, new NodeLookup.Callback() {
+            @Override
+            public void onLookupComplete(List<Contact> closest, VersionedResource<String> value) {
+                if (value == null || value.isTombstone())
+                    getResourceListener.onGetResourceFailed(key, SMSFailReason.NO_RESOURCE);
+                else getResourceListener.onGetResource(key, value.getResource());
+            }
+        });
+    }
+
+    /**
+     * Stores a tombstone for a resource on the nodes closest to its key
+     *
+     * @param key                    The key identifier for the resource
+     * @param removeResourceListener Listener called on resource successfully removed or on fail
+     */
+    @Override
+    public void removeResource(final String key, final RemoveResourceListener<String, SMSFailReason> removeResourceListener) {
+        storeOnClosest(key, VersionedResource.<String>tombstone(newVersion()), new Runnable() {
+            @Override
+            public void run() {
+                removeResourceListener.onResourceRemoved(key);
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                removeResourceListener.onResourceRemoveFail(key, SMSFailReason.REQUEST_EXPIRED);
+            }
+        });
+    }
+
+    /**
+     * Pings a peer, which adds this node to its routing table and can then join the network
+     * through it with {@link #join(SMSPeer)}
+     *
+     * @param peer           The peer to invite
+     * @param inviteListener Listener called once the invitation has been sent
+     */
+    @Override
+    public void invite(SMSPeer peer, InviteListener<SMSPeer, SMSFailReason> inviteListener) {
+        synchronized (this) {
+            sendRequest(new Contact(peer), null, PING_REQUEST);
+        }
+        inviteListener.onInvitationSent(peer);
+    }
+
+    /**
+     * Joins the network through a node already in it: looks up this node's own id, which fills
+     * the routing table with the nodes close to it and makes them aware of this one, then
+     * refreshes the farther buckets
+     *
+     * @param bootstrap A node of the network
+     */
+    public void join(@NonNull SMSPeer bootstrap) {
+        routingTable.update(new Contact(bootstrap));
+        startLookup(self.getId(), null, new NodeLookup.Callback() {
+            @Override
+            public void onLookupComplete(List<Contact> closest, VersionedResource<String> value) {
+                refreshBuckets();
+            }
+        });
+    }
+
+    /**
+     * Looks up a random id in every bucket without lookups for the refresh interval
+     */
+    public void refreshBuckets() {
+        for (int bucket : routingTable.getStaleBuckets(currentTimeMillis(), refreshIntervalMillis))
+            startLookup(self.getId().randomIdInBucket(bucket, random.nextLong()), null,
+                    new NodeLookup.Callback() {
+                        @Override
+                        public void onLookupComplete(List<Contact> closest, VersionedResource<String> value) {
+                        }
+                    });
+    }
+
+    /**
+     * Starts refreshing the stale buckets periodically
+     */
+    public synchronized void start() {
+        if (refreshTask != null) return;
+        refreshTask = timer.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                refreshBuckets();
+            }
+        }, refreshIntervalMillis, refreshIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the refreshes and the timeouts, the manager can't be used anymore
+     */
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    /**
+     * Handles a message of the DHT protocol
+     *
+     * @param sender The peer which sent the message
+     * @param data   The text of the message
+     * @return True if the message belonged to the protocol, false otherwise
+     * @throws IllegalArgumentException If the message is malformed
+     */
+    public boolean onMessage(@NonNull SMSPeer sender, @NonNull String data) {
+        if (!DhtMessage.isDhtMessage(data)) return false;
+        DhtMessage message = DhtMessage.decode(data);
+        Contact contact = new Contact(sender);
+        synchronized (this) {
+            if (message.isReply()) onReply(contact, message);
+            else onRequest(contact, message);
+            seen(contact);
+        }
+        runPendingCallbacks();
+        return true;
+    }
+
+    /**
+     * @return The current time, in milliseconds
+     */
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Answers a request. Must be called while holding the lock.
+     */
+    private void onRequest(Contact from, DhtMessage request) {
+        switch (request.getOperation()) {
+            case DhtMessage.PING:
+                send(from, DhtMessage.pong(request.getRpcId()));
+                break;
+            case DhtMessage.FIND_NODE:
+                send(from, closestNodes(request.getRpcId(), request.getTarget(), from));
+                break;
+            case DhtMessage.FIND_VALUE:
+                VersionedResource<String> value = store.getVersionedResource(request.getKey());
+                if (value != null) send(from, DhtMessage.value(request.getRpcId(), value));
+                else send(from, closestNodes(request.getRpcId(), NodeId.of(request.getKey()), from));
+                break;
+            case DhtMessage.STORE:
+                // a write too far in the future is refused, so it's not acknowledged
+                if (!clock.update(request.getValue().getVersion().getTimestamp())) break;
+                store.mergeResource(request.getKey(), request.getValue());
+                send(from, DhtMessage.stored(request.getRpcId()));
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Matches a reply to its request and moves its lookup forward. Must be called while holding the lock.
+     */
+    private void onReply(Contact from, DhtMessage reply) {
+        PendingRpc rpc = pendingRpcs.get(reply.getRpcId());
+        // replies to requests never sent, or sent to another node, are ignored
+        if (rpc == null || !rpc.contact.equals(from)) return;
+        pendingRpcs.remove(reply.getRpcId());
+        rpc.timeout.cancel(false);
+        pendingEvictions.remove(from);
+        if (rpc.store != null) {
+            queueCallback(rpc.store.onReply(reply.getOperation() == DhtMessage.STORED));
+            return;
+        }
+        NodeLookup lookup = rpc.lookup;
+        if (lookup == null || lookup.isComplete()) return;
+        if (reply.getOperation() == DhtMessage.VALUE) lookup.onValue(from, reply.getValue());
+        else if (reply.getOperation() == DhtMessage.NODES) {
+            List<Contact> contacts = new ArrayList<>();
+            for (SMSPeer node : reply.getNodes()) {
+                Contact contact = new Contact(node);
+                if (!contact.equals(self)) contacts.add(contact);
+            }
+            lookup.onNodes(from, contacts);
+        } else lookup.onFailure(from);
+        advance(lookup);
+    }
+
+    /**
+     * Handles a request which got no reply in time
+     */
+    private void onTimeout(int rpcId) {
+        synchronized (this) {
+            PendingRpc rpc = pendingRpcs.remove(rpcId);
+            if (rpc == null) return;
+            routingTable.remove(rpc.contact);
+            Contact waiting = pendingEvictions.remove(rpc.contact);
+            if (waiting != null) routingTable.update(waiting);
+            if (rpc.store != null) queueCallback(rpc.store.onReply(false));
+            if (rpc.lookup != null && !rpc.lookup.isComplete()) {
+                rpc.lookup.onFailure(rpc.contact);
+                advance(rpc.lookup);
+            }
+        }
+        runPendingCallbacks();
+    }
+
+    /**
+     * Records that a contact was seen: adds it to the routing table, pinging the least recently
+     * seen contact of its bucket if it's full, and stores on a new contact the resources it's now
+     * among the closest to. Must be called while holding the lock.
+     */
+    private void seen(Contact contact) {
+        boolean known = routingTable.contains(contact);
+        Contact leastRecent = routingTable.update(contact);
+        if (leastRecent != null) {
+            if (!pendingEvictions.containsKey(leastRecent)) {
+                pendingEvictions.put(leastRecent, contact);
+                sendRequest(leastRecent, null, PING_REQUEST);
+            }
+            return;
+        }
+        if (!known && routingTable.contains(contact)) replicateTo(contact);
+    }
+
+    /**
+     * Sends to a new contact the resources it's among the closest to, if this node is the closest
+     * of the other holders. Must be called while holding the lock.
+     */
+    private void replicateTo(Contact contact) {
+        for (Map.Entry<String, VersionedResource<String>> entry : store.getVersionedResources().entrySet()) {
+            NodeId keyId = NodeId.of(entry.getKey());
+            List<Contact> closest = routingTable.findClosest(keyId, routingTable.getBucketSize());
+            closest.add(self);
+            Collections.sort(closest, RoutingTable.byDistanceFrom(keyId));
+            if (closest.size() > routingTable.getBucketSize())
+                closest = closest.subList(0, routingTable.getBucketSize());
+            if (!closest.contains(contact)) continue;
+            for (Contact holder : closest) {
+                if (holder.equals(contact)) continue;
+                if (holder.equals(self)) send(contact, DhtMessage.store(takeRpcId(), entry.getKey(), entry.getValue()));
+                break;
+            }
+        }
+    }
+
+    /**
+     * Finds the nodes closest to a key and stores a resource on them, and on this node if it's one
+     * of them, running a callback once enough of them acknowledged it or once it failed
+     */
+    private void storeOnClosest(final String key, final VersionedResource<String> versioned,
+                                final Runnable onStored, final Runnable onFailed) {
+        final NodeId keyId = NodeId.of(key);
+        startLookup(keyId, null, new NodeLookup.Callback() {
+            @Override
+            public void onLookupComplete(List<Contact> closest, VersionedResource<String> value) {
+                synchronized (DhtNetworkManager.this) {
+                    List<Contact> holders = new ArrayList<>(closest);
+                    holders.add(self);
+                    Collections.sort(holders, RoutingTable.byDistanceFrom(keyId));
+                    if (holders.size() > routingTable.getBucketSize())
+                        holders = holders.subList(0, routingTable.getBucketSize());
+                    PendingStore pending = new PendingStore(Math.min(WRITE_QUORUM, holders.size()),
+                            holders.size(), onStored, onFailed);
+                    for (Contact holder : holders) {
+                        if (holder.equals(self)) {
+                            store.mergeResource(key, versioned);
+                            queueCallback(pending.onReply(true));
+                        } else {
+                            int rpcId = takeRpcId();
+                            sendRpc(rpcId, new PendingRpc(holder, null, pending), DhtMessage.store(rpcId, key, versioned));
+                        }
+                    }
+                }
+                runPendingCallbacks();
+            }
+        });
+    }
+
+    /**
+     * Starts an iterative lookup from the contacts of the routing table closest to the target
+     */
+    private void startLookup(NodeId target, String key, NodeLookup.Callback callback) {
+        synchronized (this) {
+            routingTable.touch(target, currentTimeMillis());
+            NodeLookup lookup = new NodeLookup(target, key, routingTable.getBucketSize(), parallelism,
+                    READ_QUORUM, routingTable.findClosest(target, routingTable.getBucketSize()), callback);
+            advance(lookup);
+        }
+        runPendingCallbacks();
+    }
+
+    /**
+     * Completes a lookup if it's over, queueing its callback, otherwise sends its next queries.
+     * Must be called while holding the lock.
+     */
+    private void advance(final NodeLookup lookup) {
+        if (lookup.completeIfDone()) {
+            queueCallback(new Runnable() {
+                @Override
+                public void run() {
+                    lookup.notifyComplete();
+                }
+            });
+            return;
+        }
+        for (Contact contact : lookup.takeNextQueries())
+            sendRequest(contact, lookup, lookup.getKey() == null ? FIND_NODE_REQUEST : FIND_VALUE_REQUEST);
+    }
+
+    /**
+     * Queues a callback to run once the lock is released. Must be called while holding the lock.
+     *
+     * @param callback The callback to run, or null if there's none
+     */
+    private void queueCallback(Runnable callback) {
+        if (callback != null) pendingCallbacks.add(callback);
+    }
+
+    /**
+     * Runs the queued callbacks. Must be called without holding the lock.
+     */
+    private void runPendingCallbacks() {
+        List<Runnable> callbacks;
+        synchronized (this) {
+            if (pendingCallbacks.isEmpty()) return;
+            callbacks = new ArrayList<>(pendingCallbacks);
+            pendingCallbacks.clear();
+        }
+        for (Runnable callback : callbacks)
+            callback.run();
+    }
+
+    /**
+     * Sends a request of a lookup or a ping. Must be called while holding the lock.
+     */
+    private void sendRequest(Contact contact, NodeLookup lookup, int type) {
+        int rpcId = takeRpcId();
+        DhtMessage request;
+        if (type == PING_REQUEST) request = DhtMessage.ping(rpcId);
+        else if (type == FIND_NODE_REQUEST) request = DhtMessage.findNode(rpcId, lookup.getTarget());
+        else request = DhtMessage.findValue(rpcId, lookup.getKey());
+        sendRpc(rpcId, new PendingRpc(contact, lookup, null), request);
+    }
+
+    /**
+     * Sends a request, failing it if no reply comes in time. Must be called while holding the lock.
+     */
+    private void sendRpc(final int rpcId, PendingRpc rpc, DhtMessage request) {
+        rpc.timeout = timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                onTimeout(rpcId);
+            }
+        }, rpcTimeoutMillis, TimeUnit.MILLISECONDS);
+        pendingRpcs.put(rpcId, rpc);
+        send(rpc.contact, request);
+    }
+
+    /**
+     * @return A reply with the known nodes closest to the target, as many as fit in a single SMS,
+     * the requester excluded
+     */
+    private DhtMessage closestNodes(int rpcId, NodeId target, Contact requester) {
+        List<SMSPeer> nodes = new ArrayList<>();
+        for (Contact contact : routingTable.findClosest(target, routingTable.getBucketSize() + 1)) {
+            if (contact.equals(requester)) continue;
+            nodes.add(contact.getPeer());
+            // the messages of the DHT are neither disseminated nor traced
+            if (DhtMessage.nodesLength(rpcId, nodes) > SMSNetworkManager.MAX_PAYLOAD_LENGTH) {
+                nodes.remove(nodes.size() - 1);
+                break;
+            }
+            if (nodes.size() == routingTable.getBucketSize()) break;
+        }
+        return DhtMessage.nodes(rpcId, nodes);
+    }
+
+    private void send(Contact contact, DhtMessage message) {
+        sentMessages++;
+        sendMessage(contact.getPeer(), message.encode());
+    }
+
+    private Version newVersion() {
+        return new Version(clock.now(), self.getPeer().getAddress());
+    }
+
+    private int takeRpcId() {
+        int id = nextRpcId;
+        nextRpcId = id == Integer.MAX_VALUE ? 0 : id + 1;
+        return id;
+    }
+}
@@ -0,0 +1,117 @@
+package com.eis.smsnetwork.dht;
+
+import androidx.annotation.NonNull;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Identifier of a node or of a key in the DHT, a point of a 64 bit space.
+ * <p>
+ * Node ids are derived from phone numbers and key ids from keys, as the first 64 bits of their
+ * SHA-1, so every node computes the same ids without sending them. Ids are compared by their XOR
+ * distance, read as an unsigned number: the node whose id has the longest common prefix with a
+ * key is the closest to it.
+ */
+public final class NodeId {
+
+    /**
+     * Number of bits of an id, and so of buckets of a routing table
+     */
+    public static final int BITS = Long.SIZE;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final long value;
+
+    /**
+     * Constructor for a NodeId
+     *
+     * @param value The 64 bits of the id
+     */
+    public NodeId(long value) {
+        this.value = value;
+    }
+
+    /**
+     * @param address The phone number of a node, or a key
+     * @return The id of the node or the key
+     */
+    public static NodeId of(@NonNull String address) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(address.getBytes(UTF_8));
+            long value = 0;
+            for (int i = 0; i < Long.SIZE / Byte.SIZE; i++)
+                value = (value << Byte.SIZE) | (digest[i] & 0xFF);
+            return new NodeId(value);
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public long getValue() {
+        return value;
+    }
+
+    /**
+     * @param other Another id
+     * @return The XOR distance between the ids, to be compared as an unsigned number
+     */
+    public long distance(@NonNull NodeId other) {
+        return value ^ other.value;
+    }
+
+    /**
+     * @param first  An id
+     * @param second Another id
+     * @return A negative number, zero or a positive number if the first id is closer to this one,
+     * as close or farther than the second one
+     */
+    public int compareDistance(@NonNull NodeId first, @NonNull NodeId second) {
+        // flipping the sign bit compares the distances as unsigned numbers
+        return compare(distance(first) ^ Long.MIN_VALUE, distance(second) ^ Long.MIN_VALUE);
+    }
+
+    /**
+     * @param other Another id, different from this one
+     * @return The index of the bucket the other id falls in, the length of the common prefix
+     * counted from the far end: 0 for the closest ids, {@link #BITS} - 1 for the farthest ones
+     * @throws IllegalArgumentException If the ids are equal
+     */
+    public int bucketIndex(@NonNull NodeId other) {
+        long distance = distance(other);
+        if (distance == 0) throw new IllegalArgumentException("An id has no bucket for itself!");
+        return BITS - 1 - Long.numberOfLeadingZeros(distance);
+    }
+
+    /**
+     * @param bucket The index of a bucket
+     * @param random Random bits, only the ones inside the bucket are used
+     * @return An id falling in the given bucket of this id
+     */
+    public NodeId randomIdInBucket(int bucket, long random) {
+        long mask = bucket == BITS - 1 ? -1L : (1L << (bucket + 1)) - 1;
+        long flipped = (random & mask) | (1L << bucket);
+        return new NodeId(value ^ flipped);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof NodeId && ((NodeId) other).value == value;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (value ^ (value >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return Long.toHexString(value);
+    }
+
+    private static int compare(long first, long second) {
+        return first < second ? -1 : (first == second ? 0 : 1);
+    }
+}
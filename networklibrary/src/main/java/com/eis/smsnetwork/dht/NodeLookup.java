@@ -0,0 +1,181 @@
+package com.eis.smsnetwork.dht;
+
+import com.eis.communication.network.VersionedResource;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * State of an iterative Kademlia lookup, driven by {@link DhtNetworkManager} while holding its lock.
+ * <p>
+ * The lookup keeps a shortlist of the contacts closest to the target, and queries at most alpha
+ * of them at a time, always the closest ones not queried yet. Every reply adds the contacts it
+ * carries to the shortlist. The lookup ends when the k closest contacts which didn't fail have all
+ * replied, or when a value lookup received the value from a quorum of contacts, and the newest
+ * value received is the one found.
+ * <p>
+ * The callback isn't called by the lookup, {@link #notifyComplete()} must be called once it's
+ * over, without holding the lock of the manager.
+ */
+final class NodeLookup {
+
+    /**
+     * Receives the outcome of a lookup
+     */
+    interface Callback {
+        /**
+         * @param closest The closest contacts which replied, closest first
+         * @param value   The value found, or null if none was found or the lookup was for nodes
+         */
+        void onLookupComplete(List<Contact> closest, VersionedResource<String> value);
+    }
+
+    private final NodeId target;
+    private final String key;
+    private final int k;
+    private final int alpha;
+    private final int quorum;
+    private final Callback callback;
+    private final TreeSet<Contact> shortlist;
+    private final Set<Contact> queried = new HashSet<>();
+    private final Set<Contact> replied = new HashSet<>();
+    private final Set<Contact> failed = new HashSet<>();
+    private int inFlight = 0;
+    private VersionedResource<String> value = null;
+    private int values = 0;
+    private boolean complete = false;
+
+    /**
+     * @param target   The id to get close to
+     * @param key      The key whose value is looked up, or null to look up nodes only
+     * @param k        The number of closest contacts wanted
+     * @param alpha    The maximum number of queries in flight
+     * @param quorum   The number of values a value lookup waits for, unless the k closest contacts
+     *                 reply before
+     * @param callback The receiver of the outcome
+     */
+    NodeLookup(NodeId target, String key, int k, int alpha, int quorum, List<Contact> initialContacts,
+               Callback callback) {
+        this.target = target;
+        this.key = key;
+        this.k = k;
+        this.alpha = alpha;
+        this.quorum = quorum;
+        this.callback = callback;
+        final Comparator<Contact> byDistance = RoutingTable.byDistanceFrom(target);
+        this.shortlist = new TreeSet<>(new Comparator<Contact>() {
+            @Override
+            public int compare(Contact first, Contact second) {
+                int comparison = byDistance.compare(first, second);
+                return comparison != 0 ? comparison :
+                        first.getPeer().getAddress().compareTo(second.getPeer().getAddress());
+            }
+        });
+        shortlist.addAll(initialContacts);
+    }
+
+    NodeId getTarget() {
+        return target;
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * @return The contacts to query now, which are counted as in flight
+     */
+    List<Contact> takeNextQueries() {
+        List<Contact> next = new ArrayList<>();
+        if (complete) return next;
+        for (Contact contact : shortlist) {
+            if (inFlight + next.size() >= alpha) break;
+            if (!queried.contains(contact)) next.add(contact);
+        }
+        queried.addAll(next);
+        inFlight += next.size();
+        return next;
+    }
+
+    /**
+     * @param from     The contact which replied
+     * @param contacts The contacts it knows closest to the target
+     */
+    void onNodes(Contact from, List<Contact> contacts) {
+        inFlight--;
+        replied.add(from);
+        for (Contact contact : contacts)
+            if (!failed.contains(contact)) shortlist.add(contact);
+    }
+
+    /**
+     * @param from  The contact which replied
+     * @param found The value it holds
+     */
+    void onValue(Contact from, VersionedResource<String> found) {
+        inFlight--;
+        replied.add(from);
+        values++;
+        if (value == null || found.getVersion().isNewerThan(value.getVersion())) value = found;
+    }
+
+    /**
+     * @param contact The contact which didn't reply in time
+     */
+    void onFailure(Contact contact) {
+        inFlight--;
+        failed.add(contact);
+        shortlist.remove(contact);
+    }
+
+    /**
+     * Completes the lookup if it's over
+     *
+     * @return True if the lookup is over, false otherwise
+     */
+    boolean completeIfDone() {
+        if (complete) return true;
+        if (values < quorum && !closestReplied()) return false;
+        complete = true;
+        return true;
+    }
+
+    /**
+     * Calls the callback with the outcome of the completed lookup
+     */
+    void notifyComplete() {
+        callback.onLookupComplete(getClosestReplied(), value);
+    }
+
+    /**
+     * @return True if the k closest contacts have all replied and no query is in flight, or there's
+     * nobody left to query
+     */
+    private boolean closestReplied() {
+        if (inFlight > 0) return false;
+        int checked = 0;
+        for (Contact contact : shortlist) {
+            if (checked == k) break;
+            if (!replied.contains(contact)) return false;
+            checked++;
+        }
+        return true;
+    }
+
+    private List<Contact> getClosestReplied() {
+        List<Contact> closest = new ArrayList<>();
+        for (Contact contact : shortlist) {
+            if (closest.size() == k) break;
+            if (replied.contains(contact)) closest.add(contact);
+        }
+        return closest;
+    }
+}
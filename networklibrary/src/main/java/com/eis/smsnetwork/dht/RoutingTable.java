@@ -0,0 +1,166 @@
+package com.eis.smsnetwork.dht;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Kademlia routing table: the contacts known by a node, in {@link NodeId#BITS} k-buckets.
+ * <p>
+ * Bucket i holds up to k contacts whose XOR distance from this node has its highest bit at i, so
+ * a node knows many of the nodes close to it and a few of the far ones. A bucket is ordered from
+ * the least to the most recently seen contact. When a full bucket sees a new contact, the least
+ * recently seen one is returned to be pinged: if it answers it stays and the new contact waits in
+ * the replacement cache of the bucket, otherwise it's removed and replaced by the newest waiting
+ * contact. Long lived nodes are so preferred, as they're the likeliest to stay online.
+ */
+public class RoutingTable {
+
+    /**
+     * Default maximum number of contacts of a bucket, the k of Kademlia
+     */
+    public static final int DEFAULT_BUCKET_SIZE = 8;
+
+    private final Contact self;
+    private final int bucketSize;
+    private final List<LinkedList<Contact>> buckets = new ArrayList<>(NodeId.BITS);
+    private final List<LinkedList<Contact>> replacements = new ArrayList<>(NodeId.BITS);
+    private final long[] lastLookups = new long[NodeId.BITS];
+
+    /**
+     * Constructor for a RoutingTable
+     *
+     * @param self       The node owning the table
+     * @param bucketSize The maximum number of contacts of a bucket
+     * @throws IllegalArgumentException If the bucket size is not positive
+     */
+    public RoutingTable(@NonNull Contact self, int bucketSize) {
+        if (bucketSize <= 0) throw new IllegalArgumentException("The bucket size must be positive!");
+        this.self = self;
+        this.bucketSize = bucketSize;
+        for (int i = 0; i < NodeId.BITS; i++) {
+            buckets.add(new LinkedList<Contact>());
+            replacements.add(new LinkedList<Contact>());
+        }
+    }
+
+    public Contact getSelf() {
+        return self;
+    }
+
+    public int getBucketSize() {
+        return bucketSize;
+    }
+
+    /**
+     * Records that a contact was seen, because it sent a message or answered one
+     *
+     * @param contact The contact seen
+     * @return The least recently seen contact of the bucket to ping if the bucket is full and the
+     * contact is waiting for a place, null otherwise
+     */
+    @Nullable
+    public synchronized Contact update(@NonNull Contact contact) {
+        if (contact.equals(self)) return null;
+        int index = self.getId().bucketIndex(contact.getId());
+        LinkedList<Contact> bucket = buckets.get(index);
+        if (bucket.remove(contact) || bucket.size() < bucketSize) {
+            bucket.addLast(contact);
+            return null;
+        }
+        LinkedList<Contact> waiting = replacements.get(index);
+        waiting.remove(contact);
+        waiting.addLast(contact);
+        if (waiting.size() > bucketSize) waiting.removeFirst();
+        return bucket.getFirst();
+    }
+
+    /**
+     * Removes a contact which didn't answer, replacing it with the newest waiting contact
+     *
+     * @param contact The contact to remove
+     * @return True if the contact was in the table, false otherwise
+     */
+    public synchronized boolean remove(@NonNull Contact contact) {
+        if (contact.equals(self)) return false;
+        int index = self.getId().bucketIndex(contact.getId());
+        replacements.get(index).remove(contact);
+        LinkedList<Contact> bucket = buckets.get(index);
+        if (!bucket.remove(contact)) return false;
+        LinkedList<Contact> waiting = replacements.get(index);
+        if (!waiting.isEmpty()) bucket.addLast(waiting.removeLast());
+        return true;
+    }
+
+    /**
+     * @param contact A contact
+     * @return True if the contact is in one of the buckets, false otherwise
+     */
+    public synchronized boolean contains(@NonNull Contact contact) {
+        return !contact.equals(self) &&
+                buckets.get(self.getId().bucketIndex(contact.getId())).contains(contact);
+    }
+
+    /**
+     * @param target The id to get close to
+     * @param count  The maximum number of contacts to return
+     * @return The known contacts closest to the id, closest first
+     */
+    public synchronized List<Contact> findClosest(@NonNull final NodeId target, int count) {
+        List<Contact> contacts = new ArrayList<>();
+        for (List<Contact> bucket : buckets)
+            contacts.addAll(bucket);
+        Collections.sort(contacts, byDistanceFrom(target));
+        return contacts.size() > count ? new ArrayList<>(contacts.subList(0, count)) : contacts;
+    }
+
+    /**
+     * @return The number of contacts in the buckets
+     */
+    public synchronized int size() {
+        int size = 0;
+        for (List<Contact> bucket : buckets)
+            size += bucket.size();
+        return size;
+    }
+
+    /**
+     * Records a lookup of an id, which refreshes the bucket the id falls in
+     *
+     * @param target The id looked up
+     * @param now    The current time, in milliseconds
+     */
+    public synchronized void touch(@NonNull NodeId target, long now) {
+        if (!target.equals(self.getId())) lastLookups[self.getId().bucketIndex(target)] = now;
+    }
+
+    /**
+     * @param now             The current time, in milliseconds
+     * @param refreshInterval The time after which a bucket without lookups is stale, in milliseconds
+     * @return The indexes of the buckets with contacts and without lookups for the given interval
+     */
+    public synchronized List<Integer> getStaleBuckets(long now, long refreshInterval) {
+        List<Integer> stale = new ArrayList<>();
+        for (int i = 0; i < NodeId.BITS; i++)
+            if (!buckets.get(i).isEmpty() && now - lastLookups[i] >= refreshInterval) stale.add(i);
+        return stale;
+    }
+
+    /**
+     * @param target An id
+     * @return A comparator ordering contacts from the closest to the farthest from the id
+     */
+    static Comparator<Contact> byDistanceFrom(final NodeId target) {
+        return new Comparator<Contact>() {
+            @Override
+            public int compare(Contact first, Contact second) {
+                return target.compareDistance(first.getId(), second.getId());
+            }
+        };
+    }
+}
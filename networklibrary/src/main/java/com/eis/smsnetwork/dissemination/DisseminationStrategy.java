@@ -0,0 +1,36 @@
+package com.eis.smsnetwork.dissemination;
+
+import androidx.annotation.NonNull;
+
+import com.eis.communication.network.SubscriberSnapshot;
+import com.eis.smslibrary.SMSPeer;
+import com.eis.smsnetwork.MessageId;
+
+import java.util.List;
+
+/**
+ * Strategy deciding which subscribers a node sends a network-wide message to.
+ * The originator of a message sends it to its initial targets, then every node receiving it for
+ * the first time forwards it to its own forward targets, so that the message reaches the whole
+ * network without a single node sending it to everyone.
+ *
+ * @see Disseminator
+ */
+public interface DisseminationStrategy {
+
+    /**
+     * @param subscribers The current subscribers of the originator
+     * @param id          The id of the new message
+     * @return The subscribers the originator sends the message to
+     */
+    List<SMSPeer> getInitialTargets(@NonNull SubscriberSnapshot<SMSPeer> subscribers, @NonNull MessageId id);
+
+    /**
+     * @param subscribers The current subscribers of the receiving node
+     * @param id          The id of the received message
+     * @param sender      The subscriber the message was received from
+     * @return The subscribers the message is forwarded to, never including the sender
+     */
+    List<SMSPeer> getForwardTargets(@NonNull SubscriberSnapshot<SMSPeer> subscribers, @NonNull MessageId id,
+                                    @NonNull SMSPeer sender);
+}
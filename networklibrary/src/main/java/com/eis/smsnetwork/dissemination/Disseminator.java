@@ -0,0 +1,188 @@
+package com.eis.smsnetwork.dissemination;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.eis.communication.network.SubscriberSnapshot;
+import com.eis.smslibrary.SMSPeer;
+import com.eis.smsnetwork.DuplicateFilter;
+import com.eis.smsnetwork.MessageId;
+import com.eis.smsnetwork.TransportClient;
+
+import java.util.List;
+
+/**
+ * Sends network-wide messages following a {@link DisseminationStrategy} and forwards the ones
+ * received from other nodes.
+ * <p>
+ * Every message is wrapped as {@link #DISSEMINATED_TYPE}, its {@link MessageId},
+ * {@link #ID_TERMINATOR} and the original text. Each node remembers the ids it recently saw in a
+ * {@link DuplicateFilter}, so a message reaching it again through another path is neither applied
+ * nor forwarded twice. This filter is not the one of the
+ * {@link com.eis.smsnetwork.SMSNetMessageParseStrategy}: that one drops copies of the same SMS,
+ * while this one drops copies of the same network-wide message received from different nodes.
+ * Sequence numbers start from the current time, so that they keep growing after a restart and
+ * the first messages sent then aren't taken for ones the other nodes already saw.
+ * <p>
+ * The wrap takes at most {@link #MAX_WRAP_LENGTH} characters, as long as the originator
+ * addresses are no longer than {@link #MAX_ADDRESS_LENGTH}.
+ */
+public class Disseminator extends TransportClient {
+
+    /**
+     * Type of the messages sent by a Disseminator, sent at their beginning
+     */
+    public static final String DISSEMINATED_TYPE = "G";
+    public static final char ID_TERMINATOR = ' ';
+    /**
+     * Maximum length of the address of an originator, the one of an international phone number
+     */
+    public static final int MAX_ADDRESS_LENGTH = 16;
+    /**
+     * Base 36 digits of the sequence numbers, enough for the milliseconds of thousands of years
+     */
+    private static final int MAX_SEQUENCE_DIGITS = 9;
+    /**
+     * Characters written in front of every disseminated message
+     */
+    public static final int MAX_WRAP_LENGTH = DISSEMINATED_TYPE.length() + MAX_ADDRESS_LENGTH + 1 +
+            MAX_SEQUENCE_DIGITS + 1;
+    private final DisseminationStrategy strategy;
+    private final String localAddress;
+    private final DuplicateFilter seenIds;
+    private long nextSequence = System.currentTimeMillis();
+    private long sentMessages = 0;
+    private long forwardedMessages = 0;
+
+    /**
+     * Constructor for a Disseminator
+     *
+     * @param strategy     The strategy choosing the targets of each message
+     * @param localAddress The address identifying the local node as originator. It must be the
+     *                     phone number of this device when using a {@link TreeStrategy}, any
+     *                     unique identifier otherwise
+     */
+    public Disseminator(@NonNull DisseminationStrategy strategy, @NonNull String localAddress) {
+        this(strategy, localAddress, new DuplicateFilter());
+    }
+
+    /**
+     * Constructor for a Disseminator
+     *
+     * @param strategy     The strategy choosing the targets of each message
+     * @param localAddress The address identifying the local node as originator
+     * @param seenIds      The filter remembering the ids of the messages already seen
+     * @throws IllegalArgumentException If the address is invalid or longer than {@link #MAX_ADDRESS_LENGTH}
+     */
+    public Disseminator(@NonNull DisseminationStrategy strategy, @NonNull String localAddress,
+                        @NonNull DuplicateFilter seenIds) {
+        if (localAddress.indexOf(ID_TERMINATOR) >= 0 || localAddress.length() > MAX_ADDRESS_LENGTH)
+            throw new IllegalArgumentException("Invalid local address: " + localAddress);
+        // validates the address right away
+        new MessageId(localAddress, 0);
+        this.strategy = strategy;
+        this.localAddress = localAddress;
+        this.seenIds = seenIds;
+    }
+
+    /**
+     * Sends a new message to the network
+     *
+     * @param subscribers The current subscribers
+     * @param message     The text of the message
+     * @return The id given to the message
+     */
+    public MessageId broadcast(@NonNull SubscriberSnapshot<SMSPeer> subscribers, @NonNull String message) {
+        MessageId id;
+        synchronized (this) {
+            id = new MessageId(localAddress, nextSequence++);
+        }
+        // remembers our own message, so that copies forwarded back to us are dropped
+        seenIds.isDuplicate(id);
+        List<SMSPeer> targets = strategy.getInitialTargets(subscribers, id);
+        send(targets, wrap(id, message));
+        synchronized (this) {
+            sentMessages += targets.size();
+        }
+        return id;
+    }
+
+    /**
+     * Handles a message received from another node: forwards it if it's the first time it's
+     * seen and returns its original text
+     *
+     * @param sender      The node the message was received from
+     * @param message     The received text, as sent by a Disseminator
+     * @param subscribers The current subscribers
+     * @return The original text of the message, or null if it was already seen and must be ignored
+     * @throws IllegalArgumentException If the message wasn't sent by a Disseminator
+     */
+    @Nullable
+    public String onMessageReceived(@NonNull SMSPeer sender, @NonNull String message,
+                                    @NonNull SubscriberSnapshot<SMSPeer> subscribers) {
+        if (!isDisseminated(message))
+            throw new IllegalArgumentException("The given message was not disseminated: " + message);
+        int terminator = message.indexOf(ID_TERMINATOR);
+        if (terminator < 0) throw new IllegalArgumentException("Missing message id: " + message);
+        MessageId id = MessageId.decode(message.substring(DISSEMINATED_TYPE.length(), terminator));
+        if (seenIds.isDuplicate(id))
+            return null;
+        List<SMSPeer> targets = strategy.getForwardTargets(subscribers, id, sender);
+        send(targets, message);
+        synchronized (this) {
+            forwardedMessages += targets.size();
+        }
+        return message.substring(terminator + 1);
+    }
+
+    /**
+     * @param message The received text, as sent by a Disseminator
+     * @return The address of the node which originated the message
+     * @throws IllegalArgumentException If the message wasn't sent by a Disseminator
+     */
+    public static String getOriginator(@NonNull String message) {
+        if (!isDisseminated(message))
+            throw new IllegalArgumentException("The given message was not disseminated: " + message);
+        int terminator = message.indexOf(ID_TERMINATOR);
+        if (terminator < 0) throw new IllegalArgumentException("Missing message id: " + message);
+        return MessageId.decode(message.substring(DISSEMINATED_TYPE.length(), terminator)).getOriginator();
+    }
+
+    /**
+     * @param message The text of a received message
+     * @return True if the message was sent by a Disseminator, false otherwise
+     */
+    public static boolean isDisseminated(@NonNull String message) {
+        return message.startsWith(DISSEMINATED_TYPE);
+    }
+
+    /**
+     * @return The number of messages sent for the messages originated here
+     */
+    public synchronized long getSentMessageCount() {
+        return sentMessages;
+    }
+
+    /**
+     * @return The number of messages sent to forward other nodes' messages
+     */
+    public synchronized long getForwardedMessageCount() {
+        return forwardedMessages;
+    }
+
+    /**
+     * @return The number of received messages dropped because they were already seen
+     */
+    public long getDuplicateMessageCount() {
+        return seenIds.getDuplicateCount();
+    }
+
+    private void send(List<SMSPeer> targets, String message) {
+        for (SMSPeer target : targets)
+            sendMessage(target, message);
+    }
+
+    private static String wrap(MessageId id, String message) {
+        return DISSEMINATED_TYPE + id.encode() + ID_TERMINATOR + message;
+    }
+}
@@ -0,0 +1,29 @@
+package com.eis.smsnetwork.dissemination;
+
+import androidx.annotation.NonNull;
+
+import com.eis.communication.network.SubscriberSnapshot;
+import com.eis.smslibrary.SMSPeer;
+import com.eis.smsnetwork.MessageId;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The originator sends the message to every subscriber and nobody forwards it.
+ * This is the cheapest strategy for small networks, but the originator sends one message per
+ * subscriber.
+ */
+public class FullMeshStrategy implements DisseminationStrategy {
+
+    @Override
+    public List<SMSPeer> getInitialTargets(@NonNull SubscriberSnapshot<SMSPeer> subscribers, @NonNull MessageId id) {
+        return subscribers.getSubscribers();
+    }
+
+    @Override
+    public List<SMSPeer> getForwardTargets(@NonNull SubscriberSnapshot<SMSPeer> subscribers, @NonNull MessageId id,
+                                           @NonNull SMSPeer sender) {
+        return Collections.emptyList();
+    }
+}
@@ -0,0 +1,76 @@
+package com.eis.smsnetwork.dissemination;
+
+import androidx.annotation.NonNull;
+
+import com.eis.communication.network.SubscriberSnapshot;
+import com.eis.smslibrary.SMSPeer;
+import com.eis.smsnetwork.MessageId;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Bounded fan-out gossip: every node sends the message to a fixed number of random subscribers.
+ * Each node sends at most fan-out messages whatever the size of the network, and with a fan-out
+ * around the logarithm of the network size the message reaches every node with high probability.
+ */
+public class GossipStrategy implements DisseminationStrategy {
+
+    private final int fanout;
+    private final Random random;
+
+    /**
+     * Constructor for a GossipStrategy
+     *
+     * @param fanout The number of subscribers each node sends the message to
+     * @throws IllegalArgumentException If fanout is not positive
+     */
+    public GossipStrategy(int fanout) {
+        this(fanout, new Random());
+    }
+
+    /**
+     * Constructor for a GossipStrategy with a given source of randomness, to make it repeatable
+     *
+     * @param fanout The number of subscribers each node sends the message to
+     * @param random The source used to pick the subscribers
+     * @throws IllegalArgumentException If fanout is not positive
+     */
+    public GossipStrategy(int fanout, @NonNull Random random) {
+        if (fanout <= 0) throw new IllegalArgumentException("The fan-out must be positive!");
+        this.fanout = fanout;
+        this.random = random;
+    }
+
+    @Override
+    public List<SMSPeer> getInitialTargets(@NonNull SubscriberSnapshot<SMSPeer> subscribers, @NonNull MessageId id) {
+        return pickRandom(subscribers.getSubscribers(), null, id.getOriginator());
+    }
+
+    @Override
+    public List<SMSPeer> getForwardTargets(@NonNull SubscriberSnapshot<SMSPeer> subscribers, @NonNull MessageId id,
+                                           @NonNull SMSPeer sender) {
+        return pickRandom(subscribers.getSubscribers(), sender, id.getOriginator());
+    }
+
+    /**
+     * Picks up to fan-out distinct subscribers, skipping the sender and the originator which
+     * already have the message
+     */
+    private List<SMSPeer> pickRandom(List<SMSPeer> subscribers, SMSPeer sender, String originator) {
+        List<SMSPeer> candidates = new ArrayList<>(subscribers.size());
+        for (SMSPeer subscriber : subscribers) {
+            if (!subscriber.equals(sender) && !subscriber.getAddress().equals(originator))
+                candidates.add(subscriber);
+        }
+        if (candidates.size() <= fanout) return candidates;
+        synchronized (random) {
+            // partial Fisher-Yates shuffle, only the first fan-out positions are needed
+            for (int i = 0; i < fanout; i++)
+                Collections.swap(candidates, i, i + random.nextInt(candidates.size() - i));
+        }
+        return new ArrayList<>(candidates.subList(0, fanout));
+    }
+}
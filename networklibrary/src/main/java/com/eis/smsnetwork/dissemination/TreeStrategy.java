@@ -0,0 +1,87 @@
+package com.eis.smsnetwork.dissemination;
+
+import androidx.annotation.NonNull;
+
+import com.eis.communication.network.SubscriberSnapshot;
+import com.eis.smslibrary.SMSPeer;
+import com.eis.smsnetwork.MessageId;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Spanning tree rooted at the originator: every node forwards the message to at most branching
+ * children, so each node sends a constant number of messages and the message reaches every node
+ * in a logarithmic number of hops.
+ * <p>
+ * The tree is computed by every node on its own: all the members, including the local one, are
+ * sorted by address and rotated so that the originator comes first, then the children of the
+ * member at position i are the ones at positions i * branching + 1 to i * branching + branching.
+ * This requires every node to know its own address and to share the same view of the members;
+ * nodes whose view differs may miss the message until it's repaired.
+ */
+public class TreeStrategy implements DisseminationStrategy {
+
+    private static final Comparator<SMSPeer> BY_ADDRESS = new Comparator<SMSPeer>() {
+        @Override
+        public int compare(SMSPeer first, SMSPeer second) {
+            return first.getAddress().compareTo(second.getAddress());
+        }
+    };
+
+    private final int branching;
+    private final SMSPeer localPeer;
+
+    /**
+     * Constructor for a TreeStrategy
+     *
+     * @param branching The maximum number of children of each node
+     * @param localPeer The address of the local node, as known by the other members
+     * @throws IllegalArgumentException If branching is not positive
+     */
+    public TreeStrategy(int branching, @NonNull SMSPeer localPeer) {
+        if (branching <= 0) throw new IllegalArgumentException("The branching factor must be positive!");
+        this.branching = branching;
+        this.localPeer = localPeer;
+    }
+
+    @Override
+    public List<SMSPeer> getInitialTargets(@NonNull SubscriberSnapshot<SMSPeer> subscribers, @NonNull MessageId id) {
+        return getChildren(subscribers, id.getOriginator());
+    }
+
+    @Override
+    public List<SMSPeer> getForwardTargets(@NonNull SubscriberSnapshot<SMSPeer> subscribers, @NonNull MessageId id,
+                                           @NonNull SMSPeer sender) {
+        List<SMSPeer> children = getChildren(subscribers, id.getOriginator());
+        children.remove(sender);
+        return children;
+    }
+
+    /**
+     * @return The children of the local node in the tree rooted at the originator
+     */
+    private List<SMSPeer> getChildren(SubscriberSnapshot<SMSPeer> subscribers, String originator) {
+        List<SMSPeer> members = new ArrayList<>(subscribers.getSubscribers());
+        if (!subscribers.contains(localPeer)) members.add(localPeer);
+        Collections.sort(members, BY_ADDRESS);
+        int root = indexOf(members, originator);
+        int local = members.indexOf(localPeer);
+        if (root < 0) return new ArrayList<>();
+        int size = members.size();
+        int position = (local - root + size) % size;
+        List<SMSPeer> children = new ArrayList<>(branching);
+        for (int child = position * branching + 1; child <= position * branching + branching && child < size; child++)
+            children.add(members.get((child + root) % size));
+        return children;
+    }
+
+    private static int indexOf(List<SMSPeer> members, String address) {
+        for (int i = 0; i < members.size(); i++) {
+            if (members.get(i).getAddress().equals(address)) return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,107 @@
+package com.eis.smsnetwork.partition;
+
+import androidx.annotation.NonNull;
+
+import com.eis.smslibrary.SMSPeer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Immutable consistent-hash ring assigning every key to a set of peers.
+ * <p>
+ * Every peer is placed on the ring at {@link #getVirtualNodes()} points, given by the hash of its
+ * address. The owners of a key are the first distinct peers found going clockwise from the hash
+ * of the key. Adding or removing a peer only changes the owners of the keys falling next to its
+ * points, so only about {@code 1 / peers} of the keys move.
+ */
+public final class HashRing {
+
+    /**
+     * Default number of points of every peer on the ring, the more the more evenly keys are spread
+     */
+    public static final int DEFAULT_VIRTUAL_NODES = 64;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final TreeMap<Long, SMSPeer> points = new TreeMap<>();
+    private final Set<SMSPeer> members;
+    private final int virtualNodes;
+
+    /**
+     * Constructor for a HashRing
+     *
+     * @param members      The peers on the ring
+     * @param virtualNodes The number of points of every peer on the ring
+     * @throws IllegalArgumentException If the number of points is not positive
+     */
+    public HashRing(@NonNull Collection<SMSPeer> members, int virtualNodes) {
+        if (virtualNodes <= 0) throw new IllegalArgumentException("The virtual nodes must be positive!");
+        this.members = Collections.unmodifiableSet(new LinkedHashSet<>(members));
+        this.virtualNodes = virtualNodes;
+        for (SMSPeer member : this.members)
+            for (int i = 0; i < virtualNodes; i++) {
+                long point = hash(member.getAddress() + '#' + i);
+                // on a collision the smaller address keeps the point, whatever the order of the members
+                SMSPeer current = points.get(point);
+                if (current == null || current.getAddress().compareTo(member.getAddress()) > 0)
+                    points.put(point, member);
+            }
+    }
+
+    /**
+     * @return The peers on the ring
+     */
+    public Set<SMSPeer> getMembers() {
+        return members;
+    }
+
+    public int getVirtualNodes() {
+        return virtualNodes;
+    }
+
+    /**
+     * @param key      The key to place on the ring
+     * @param replicas The number of owners wanted
+     * @return The owners of the key, the first one is its primary. They're fewer than the replicas
+     * only if there are fewer peers on the ring.
+     */
+    public List<SMSPeer> getOwners(@NonNull String key, int replicas) {
+        int wanted = Math.min(replicas, members.size());
+        Set<SMSPeer> owners = new LinkedHashSet<>();
+        if (wanted <= 0) return new ArrayList<>(owners);
+        long point = hash(key);
+        for (Map.Entry<Long, SMSPeer> entry : points.tailMap(point, true).entrySet()) {
+            if (owners.size() == wanted) break;
+            owners.add(entry.getValue());
+        }
+        // wrap around the ring
+        for (SMSPeer peer : points.values()) {
+            if (owners.size() == wanted) break;
+            owners.add(peer);
+        }
+        return new ArrayList<>(owners);
+    }
+
+    /**
+     * @return A 64-bit hash of the string, FNV-1a with a final avalanche so that close strings land
+     * far apart on the ring
+     */
+    static long hash(String string) {
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < string.length(); i++)
+            hash = (hash ^ string.charAt(i)) * FNV_PRIME;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+}
@@ -0,0 +1,481 @@
+package com.eis.smsnetwork.partition;
+
+import androidx.annotation.NonNull;
+
+import com.eis.communication.network.NetSubscriberList;
+import com.eis.communication.network.SubscriberSnapshot;
+import com.eis.communication.network.VersionedResource;
+import com.eis.smslibrary.SMSPeer;
+import com.eis.smsnetwork.ResourceUpdate;
+import com.eis.smsnetwork.SMSNetDictionary;
+import com.eis.smsnetwork.SMSNetworkManager;
+import com.eis.smsnetwork.TransportClient;
+import com.eis.smsnetwork.broadcast.BatchMessage;
+import com.eis.smsnetwork.broadcast.UpdateBroadcaster;
+import com.eis.smsnetwork.codec.FieldReader;
+import com.eis.smsnetwork.codec.TextUpdateCodec;
+import com.eis.smsnetwork.codec.UpdateCodec;
+import com.eis.smsnetwork.codec.UpdateWriter;
+import com.eis.smsnetwork.codec.Varints;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Partitions the dictionary over the network, so every key is stored by {@link #getReplicas()}
+ * peers instead of all of them.
+ * <p>
+ * The owners of a key are given by a {@link HashRing} of the subscribers and this node, rebuilt
+ * whenever the subscribers change. As an {@link UpdateBroadcaster}, an update is sent only to the
+ * owners of its key, and dropped from the local dictionary if this node isn't one of them.
+ * <p>
+ * After a membership change {@link #rebalance()} sends the keys whose owners changed to their new
+ * owners, and drops the ones this node no longer owns. Only the keys next to the points of the
+ * peers which joined or left move. Every key is sent by a single old owner, the first one still in
+ * the network, and updates carry their versions, so copies received twice are merged away.
+ * <p>
+ * Keys are sent in handoff messages, {@link #HANDOFF_TYPE} and an id followed by the updates,
+ * which the receiver merges and acknowledges with {@link #ACK_TYPE} and the same id. A key this
+ * node doesn't own anymore is only dropped once every message carrying it was acknowledged, so a
+ * lost message never loses a key. At most {@link #MAX_PENDING_HANDOFFS} messages wait for their
+ * acknowledgement, the keys of older ones are kept.
+ */
+public class KeyPartitioner extends TransportClient implements UpdateBroadcaster {
+
+    /**
+     * Default number of peers storing every key
+     */
+    public static final int DEFAULT_REPLICAS = 3;
+    /**
+     * Type of the message carrying keys to their new owners, sent at its beginning
+     */
+    public static final String HANDOFF_TYPE = "P";
+    /**
+     * Type of the acknowledgement of a handoff message, sent at its beginning
+     */
+    public static final String ACK_TYPE = "A";
+    /**
+     * Maximum number of handoff messages waiting for their acknowledgement
+     */
+    public static final int MAX_PENDING_HANDOFFS = 256;
+
+    private final SMSPeer self;
+    private final SMSNetDictionary netDictionary;
+    private final NetSubscriberList<SMSPeer> netSubscribers;
+    private final int replicas;
+    private final int virtualNodes;
+    private volatile int maxMessageLength = SMSNetworkManager.MAX_MESSAGE_LENGTH;
+    private final UpdateCodec codec = new TextUpdateCodec();
+
+    private HashRing ring;
+    private long ringEpoch;
+    private HashRing balancedRing;
+    private long movedResources = 0;
+    private long evictedResources = 0;
+    private int nextHandoffId = 0;
+    /**
+     * Handoff messages waiting for their acknowledgement, by id, the oldest first
+     */
+    private final Map<Integer, Handoff> pendingHandoffs = new LinkedHashMap<Integer, Handoff>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Handoff> eldest) {
+            if (size() <= MAX_PENDING_HANDOFFS) return false;
+            // never acknowledged, so its keys are kept
+            for (String key : eldest.getValue().evictedKeys)
+                pendingEvictions.remove(key);
+            return true;
+        }
+    };
+    /**
+     * Keys to drop once the handoff messages carrying them are acknowledged, by key
+     */
+    private final Map<String, Eviction> pendingEvictions = new HashMap<>();
+
+    /**
+     * Constructor for a KeyPartitioner using the default replicas and virtual nodes
+     *
+     * @param self           This node, as the other peers address it
+     * @param netDictionary  The local dictionary, holding the keys owned by this node
+     * @param netSubscribers The other peers of the network
+     */
+    public KeyPartitioner(@NonNull SMSPeer self, @NonNull SMSNetDictionary netDictionary,
+                          @NonNull NetSubscriberList<SMSPeer> netSubscribers) {
+        this(self, netDictionary, netSubscribers, DEFAULT_REPLICAS, HashRing.DEFAULT_VIRTUAL_NODES);
+    }
+
+    /**
+     * Constructor for a KeyPartitioner
+     *
+     * @param self           This node, as the other peers address it
+     * @param netDictionary  The local dictionary, holding the keys owned by this node
+     * @param netSubscribers The other peers of the network
+     * @param replicas       The number of peers storing every key, the same on every node
+     * @param virtualNodes   The number of points of every peer on the ring, the same on every node
+     * @throws IllegalArgumentException If the replicas or the virtual nodes are not positive
+     */
+    public KeyPartitioner(@NonNull SMSPeer self, @NonNull SMSNetDictionary netDictionary,
+                          @NonNull NetSubscriberList<SMSPeer> netSubscribers, int replicas, int virtualNodes) {
+        if (replicas <= 0) throw new IllegalArgumentException("The replicas must be positive!");
+        this.self = self;
+        this.netDictionary = netDictionary;
+        this.netSubscribers = netSubscribers;
+        this.replicas = replicas;
+        this.virtualNodes = virtualNodes;
+        this.balancedRing = getRing();
+    }
+
+    public int getReplicas() {
+        return replicas;
+    }
+
+    /**
+     * Sets the maximum number of characters of a handoff message, set by the manager owning this
+     * partitioner
+     *
+     * @param maxMessageLength The maximum number of characters of a handoff message
+     * @throws IllegalArgumentException If the length is not positive
+     */
+    public void setMaxMessageLength(int maxMessageLength) {
+        if (maxMessageLength <= 0) throw new IllegalArgumentException("The message length must be positive!");
+        this.maxMessageLength = maxMessageLength;
+    }
+
+    /**
+     * @return The ring of the current subscribers and this node
+     */
+    public synchronized HashRing getRing() {
+        SubscriberSnapshot<SMSPeer> subscribers = netSubscribers.getSnapshot();
+        if (ring == null || ringEpoch != subscribers.getEpoch()) {
+            List<SMSPeer> members = new ArrayList<>(subscribers.getSubscribers());
+            members.add(self);
+            ring = new HashRing(members, virtualNodes);
+            ringEpoch = subscribers.getEpoch();
+        }
+        return ring;
+    }
+
+    /**
+     * @param key The key of a resource
+     * @return The peers storing the key, this node included if it's one of them
+     */
+    public List<SMSPeer> getOwners(@NonNull String key) {
+        return getRing().getOwners(key, replicas);
+    }
+
+    /**
+     * @param key The key of a resource
+     * @return True if this node has to store the key, false otherwise
+     */
+    public boolean isOwner(@NonNull String key) {
+        return getOwners(key).contains(self);
+    }
+
+    /**
+     * @param key The key of a resource
+     * @return The other peers storing the key, the ones to ask for it or to send its updates to
+     */
+    public List<SMSPeer> getRemoteOwners(@NonNull String key) {
+        List<SMSPeer> owners = getOwners(key);
+        owners.remove(self);
+        return owners;
+    }
+
+    /**
+     * @param key  The key of a resource
+     * @param peer Another peer
+     * @return True if both this node and the peer have to store the key, false otherwise
+     */
+    public boolean isSharedWith(@NonNull String key, @NonNull SMSPeer peer) {
+        List<SMSPeer> owners = getOwners(key);
+        return owners.contains(self) && owners.contains(peer);
+    }
+
+    /**
+     * @param key  The key of a resource
+     * @param peer A peer
+     * @return True if the peer has to store the key, false otherwise
+     */
+    public boolean isOwnedBy(@NonNull String key, @NonNull SMSPeer peer) {
+        return getOwners(key).contains(peer);
+    }
+
+    /**
+     * Sends an update to the other owners of its key. The local copy is dropped once they
+     * acknowledged it if this node isn't an owner, unless it was changed again in the meantime.
+     *
+     * @param update The update to send
+     */
+    public void submit(@NonNull ResourceUpdate update) {
+        Map<SMSPeer, List<ResourceUpdate>> destinations = new LinkedHashMap<>();
+        List<SMSPeer> owners = getOwners(update.getKey());
+        for (SMSPeer owner : owners)
+            if (!owner.equals(self)) destinationOf(destinations, owner).add(update);
+        Map<String, VersionedResource<String>> evicted = new HashMap<>();
+        VersionedResource<String> local = netDictionary.getVersionedResource(update.getKey());
+        if (!owners.contains(self) && local != null) evicted.put(update.getKey(), local);
+        sendUpdates(destinations, evicted);
+    }
+
+    /**
+     * Handles a handoff message, merging its keys and acknowledging it, or the acknowledgement of
+     * one of ours, dropping the keys it carried if this node doesn't own them anymore
+     *
+     * @param sender The peer which sent the message
+     * @param data   The text of the message
+     * @return True if the message belonged to the partitioning, false otherwise
+     * @throws IllegalArgumentException If the message belonged to the partitioning but was malformed
+     */
+    public boolean onMessage(@NonNull SMSPeer sender, @NonNull String data) {
+        if (data.startsWith(HANDOFF_TYPE)) {
+            FieldReader reader = new FieldReader(data, HANDOFF_TYPE.length());
+            int id = reader.readVarint();
+            List<ResourceUpdate> updates = codec.decode(reader.readRest());
+            BatchMessage.checkKeys(updates, netDictionary);
+            for (ResourceUpdate update : updates)
+                update.applyTo(netDictionary);
+            StringBuilder ack = new StringBuilder(ACK_TYPE);
+            Varints.appendVarint(ack, id);
+            sendMessage(sender, ack.toString());
+            return true;
+        }
+        if (!data.startsWith(ACK_TYPE)) return false;
+        FieldReader reader = new FieldReader(data, ACK_TYPE.length());
+        int id = reader.readVarint();
+        if (reader.hasMore()) throw new IllegalArgumentException("Malformed acknowledgement: " + data);
+        onAck(sender, id);
+        return true;
+    }
+
+    /**
+     * Updates are sent as soon as they're submitted, so there's nothing to flush
+     */
+    public void flush() {
+    }
+
+    /**
+     * Moves the keys whose owners changed since the last rebalance to their new owners.
+     * Must be called after every change of the subscribers.
+     *
+     * @return The number of keys sent to new owners
+     */
+    public synchronized int rebalance() {
+        HashRing current = getRing();
+        HashRing previous = balancedRing;
+        balancedRing = current;
+        if (previous.getMembers().equals(current.getMembers())) return 0;
+        return moveResources(previous, current);
+    }
+
+    /**
+     * Sends every key owned by this node to the peers owning it once this node leaves.
+     * Must be called before leaving the network, while the subscribers are still known.
+     *
+     * @return The number of keys sent to new owners
+     */
+    public synchronized int handOff() {
+        HashRing current = getRing();
+        List<SMSPeer> others = new ArrayList<>(current.getMembers());
+        others.remove(self);
+        return moveResources(current, new HashRing(others, virtualNodes));
+    }
+
+    /**
+     * @return The number of keys sent to new owners so far
+     */
+    public synchronized long getMovedResourceCount() {
+        return movedResources;
+    }
+
+    /**
+     * @return The number of keys dropped from the local dictionary so far
+     */
+    public synchronized long getEvictedResourceCount() {
+        return evictedResources;
+    }
+
+    /**
+     * @return The number of handoff messages waiting for their acknowledgement
+     */
+    public synchronized int getPendingHandoffCount() {
+        return pendingHandoffs.size();
+    }
+
+    /**
+     * Sends the local keys whose owners differ between two rings to the owners they gained, and
+     * drops the keys this node doesn't own anymore, once they're acknowledged if this node is the
+     * one sending them. Must be called while holding the lock.
+     */
+    private int moveResources(HashRing previous, HashRing current) {
+        Map<SMSPeer, List<ResourceUpdate>> destinations = new LinkedHashMap<>();
+        Map<String, VersionedResource<String>> evicted = new HashMap<>();
+        int moved = 0;
+        for (Map.Entry<String, VersionedResource<String>> entry : netDictionary.getVersionedResources().entrySet()) {
+            String key = entry.getKey();
+            List<SMSPeer> oldOwners = previous.getOwners(key, replicas);
+            List<SMSPeer> newOwners = current.getOwners(key, replicas);
+            if (oldOwners.equals(newOwners)) continue;
+            if (self.equals(firstRemaining(oldOwners, current))) {
+                Set<SMSPeer> gained = new HashSet<>(newOwners);
+                gained.removeAll(oldOwners);
+                gained.remove(self);
+                ResourceUpdate update = ResourceUpdate.of(key, entry.getValue());
+                for (SMSPeer owner : gained)
+                    destinationOf(destinations, owner).add(update);
+                if (!gained.isEmpty()) moved++;
+            }
+            // a key sent by another old owner is its responsibility
+            if (!newOwners.contains(self)) evicted.put(key, entry.getValue());
+        }
+        sendUpdates(destinations, evicted);
+        movedResources += moved;
+        return moved;
+    }
+
+    /**
+     * Drops the keys carried by an acknowledged handoff message whose other messages were all
+     * acknowledged too
+     */
+    private void onAck(SMSPeer sender, int id) {
+        Map<String, VersionedResource<String>> evicted = new HashMap<>();
+        synchronized (this) {
+            Handoff handoff = pendingHandoffs.get(id);
+            if (handoff == null || !handoff.peer.equals(sender)) return;
+            pendingHandoffs.remove(id);
+            for (String key : handoff.evictedKeys) {
+                Eviction eviction = pendingEvictions.get(key);
+                if (eviction == null || --eviction.waitingHandoffs > 0) continue;
+                pendingEvictions.remove(key);
+                evicted.put(key, eviction.expected);
+            }
+        }
+        for (Map.Entry<String, VersionedResource<String>> entry : evicted.entrySet())
+            evict(entry.getKey(), entry.getValue());
+    }
+
+    /**
+     * @return The first of the owners still on the ring, or this node if none is left
+     */
+    private SMSPeer firstRemaining(List<SMSPeer> owners, HashRing current) {
+        for (SMSPeer owner : owners)
+            if (current.getMembers().contains(owner)) return owner;
+        return self;
+    }
+
+    private void evict(String key, VersionedResource<String> expected) {
+        if (expected == null || !netDictionary.evictResource(key, expected)) return;
+        synchronized (this) {
+            evictedResources++;
+        }
+    }
+
+    private static List<ResourceUpdate> destinationOf(Map<SMSPeer, List<ResourceUpdate>> destinations, SMSPeer peer) {
+        List<ResourceUpdate> updates = destinations.get(peer);
+        if (updates == null) {
+            updates = new ArrayList<>();
+            destinations.put(peer, updates);
+        }
+        return updates;
+    }
+
+    /**
+     * Packs the updates for every peer into as few handoff messages as possible and sends them.
+     * The keys to drop are dropped once every message carrying them is acknowledged, or at once
+     * if no message carries them.
+     *
+     * @param evicted The keys to drop, with the entry they're expected to have
+     */
+    private void sendUpdates(Map<SMSPeer, List<ResourceUpdate>> destinations,
+                             Map<String, VersionedResource<String>> evicted) {
+        List<Handoff> handoffs = new ArrayList<>();
+        List<String> messages = new ArrayList<>();
+        for (Map.Entry<SMSPeer, List<ResourceUpdate>> destination : destinations.entrySet()) {
+            Handoff handoff = null;
+            UpdateWriter writer = null;
+            for (ResourceUpdate update : destination.getValue()) {
+                // an update longer than a message is still sent, alone
+                if (handoff != null && handoffHeaderLength(handoff.id) + writer.lengthWith(update) > maxMessageLength) {
+                    messages.add(encodeHandoff(handoff.id, writer));
+                    handoff = null;
+                }
+                if (handoff == null) {
+                    handoff = new Handoff(destination.getKey(), nextHandoffId());
+                    handoffs.add(handoff);
+                    writer = codec.newWriter();
+                }
+                writer.append(update);
+                if (evicted.containsKey(update.getKey())) handoff.evictedKeys.add(update.getKey());
+            }
+            if (handoff != null) messages.add(encodeHandoff(handoff.id, writer));
+        }
+        Map<String, VersionedResource<String>> unsent = new HashMap<>(evicted);
+        synchronized (this) {
+            // registered before sending, an acknowledgement can come back at once
+            for (Handoff handoff : handoffs) {
+                for (String key : handoff.evictedKeys) {
+                    unsent.remove(key);
+                    Eviction eviction = pendingEvictions.get(key);
+                    if (eviction == null || !eviction.expected.equals(evicted.get(key))) {
+                        eviction = new Eviction(evicted.get(key));
+                        pendingEvictions.put(key, eviction);
+                    }
+                    eviction.waitingHandoffs++;
+                }
+                pendingHandoffs.put(handoff.id, handoff);
+            }
+        }
+        for (int i = 0; i < handoffs.size(); i++)
+            sendMessage(handoffs.get(i).peer, messages.get(i));
+        for (Map.Entry<String, VersionedResource<String>> entry : unsent.entrySet())
+            evict(entry.getKey(), entry.getValue());
+    }
+
+    private synchronized int nextHandoffId() {
+        int id = nextHandoffId;
+        nextHandoffId = (nextHandoffId + 1) & Integer.MAX_VALUE;
+        return id;
+    }
+
+    private static int handoffHeaderLength(int id) {
+        return HANDOFF_TYPE.length() + Varints.varintLength(id);
+    }
+
+    private static String encodeHandoff(int id, UpdateWriter writer) {
+        StringBuilder builder = new StringBuilder(HANDOFF_TYPE);
+        Varints.appendVarint(builder, id);
+        return builder.append(writer.getMessage()).toString();
+    }
+
+    /**
+     * A handoff message waiting for its acknowledgement
+     */
+    private static class Handoff {
+        final SMSPeer peer;
+        final int id;
+        /**
+         * The keys carried by the message which this node drops once they're acknowledged
+         */
+        final List<String> evictedKeys = new ArrayList<>();
+
+        Handoff(SMSPeer peer, int id) {
+            this.peer = peer;
+            this.id = id;
+        }
+    }
+
+    /**
+     * A key to drop once every handoff message carrying it is acknowledged
+     */
+    private static class Eviction {
+        final VersionedResource<String> expected;
+        int waitingHandoffs = 0;
+
+        Eviction(VersionedResource<String> expected) {
+            this.expected = expected;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.eis.smsnetwork.persistence;
+
+import androidx.annotation.NonNull;
+
+import com.eis.communication.network.HybridLogicalClock;
+import com.eis.communication.network.KeyValidator;
+import com.eis.communication.network.VersionedResource;
+import com.eis.smsnetwork.SMSNetDictionary;
+import com.eis.smsnetwork.SMSWordKeyValidator;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link SMSNetDictionary} reading most of its resources from a {@link MappedSnapshot}, so a large
+ * dictionary is not loaded into the heap at startup.
+ * <p>
+ * The heap only holds an overlay with the keys changed since the snapshot was written: lookups
+ * check the overlay first and the snapshot after. Before a conditional change or a merge the
+ * entry of the key is copied from the snapshot into the overlay, so they see its current version.
+ * The clock is moved past every version of the snapshot, so a local write always wins over it.
+ * <p>
+ * The snapshot never changes: tombstones shadowing one of its entries are kept by
+ * {@link #purgeTombstones(long)}, and the overlay is folded in by writing a new snapshot with
+ * {@link #writeSnapshot(File)} and opening a dictionary on it.
+ */
+public class MappedNetDictionary extends SMSNetDictionary {
+
+    private static final int ORIGINATOR_RADIX = 36;
+
+    private volatile MappedSnapshot snapshot;
+
+    /**
+     * Constructor for a dictionary only accepting single word keys, with a random originator id
+     *
+     * @param snapshot The snapshot holding the resources
+     */
+    public MappedNetDictionary(@NonNull MappedSnapshot snapshot) {
+        this(snapshot, new SMSWordKeyValidator(),
+                Long.toString(new SecureRandom().nextLong() & Long.MAX_VALUE, ORIGINATOR_RADIX),
+                new HybridLogicalClock());
+    }
+
+    /**
+     * Constructor for a dictionary on top of a snapshot
+     *
+     * @param snapshot     The snapshot holding the resources
+     * @param keyValidator The validator deciding which keys are accepted
+     * @param originator   The id stamped on the local writes, different for every node
+     * @param clock        The clock giving the timestamps of the local writes
+     */
+    public MappedNetDictionary(@NonNull MappedSnapshot snapshot, @NonNull KeyValidator<String> keyValidator,
+                               @NonNull String originator, @NonNull HybridLogicalClock clock) {
+        super(keyValidator, originator, clock);
+        clock.update(snapshot.getMaxTimestamp());
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * @return The snapshot under the overlay
+     */
+    public MappedSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @return The number of keys held in the heap
+     */
+    public int getOverlaySize() {
+        return super.getVersionedResources().size();
+    }
+
+    @Override
+    public String getResource(String key) {
+        VersionedResource<String> versioned = getVersionedResource(key);
+        return versioned == null ? null : versioned.getResource();
+    }
+
+    @Override
+    public VersionedResource<String> getVersionedResource(String key) {
+        VersionedResource<String> versioned = super.getVersionedResource(key);
+        return versioned != null ? versioned : snapshot.get(key);
+    }
+
+    @Override
+    public String addResourceIfAbsent(String key, String resource) {
+        promote(key);
+        return super.addResourceIfAbsent(key, resource);
+    }
+
+    @Override
+    public boolean replaceResource(String key, String expectedResource, String newResource) {
+        promote(key);
+        return super.replaceResource(key, expectedResource, newResource);
+    }
+
+    @Override
+    public String computeResource(String key, ResourceFunction<String, String> function) {
+        promote(key);
+        return super.computeResource(key, function);
+    }
+
+    @Override
+    public boolean mergeResource(String key, VersionedResource<String> versioned) {
+        promote(key);
+        return super.mergeResource(key, versioned);
+    }
+
+    /**
+     * Reads every entry of the snapshot, so it's as slow as loading the whole dictionary
+     *
+     * @return An unmodifiable copy of every key in the dictionary with its resource
+     */
+    @Override
+    public Map<String, String> getResources() {
+        Map<String, String> resources = new HashMap<>();
+        for (Map.Entry<String, VersionedResource<String>> entry : getVersionedResources().entrySet())
+            if (!entry.getValue().isTombstone())
+                resources.put(entry.getKey(), entry.getValue().getResource());
+        return Collections.unmodifiableMap(resources);
+    }
+
+    /**
+     * Reads every entry of the snapshot, so it's as slow as loading the whole dictionary
+     *
+     * @return An unmodifiable copy of every key in the dictionary with its versioned resource,
+     * tombstones included
+     */
+    @Override
+    public Map<String, VersionedResource<String>> getVersionedResources() {
+        MappedSnapshot current = snapshot;
+        Map<String, VersionedResource<String>> resources = new HashMap<>();
+        for (int i = 0; i < current.size(); i++)
+            resources.put(current.getKey(i), current.getEntry(i));
+        resources.putAll(super.getVersionedResources());
+        return Collections.unmodifiableMap(resources);
+    }
+
+    @Override
+    public int getLiveResourceCount() {
+        return getResources().size();
+    }
+
+    @Override
+    public int getTombstoneCount() {
+        return getVersionedResources().size() - getLiveResourceCount();
+    }
+
+    /**
+     * A tombstone hiding an entry of the snapshot is never purged, otherwise the entry would come
+     * back. It's left out before purging, so the entry is hidden the whole time.
+     *
+     * @param key The key of the tombstone
+     * @return True if the snapshot has no entry for the key, false otherwise
+     */
+    @Override
+    protected boolean isPurgeable(String key) {
+        return snapshot.get(key) == null;
+    }
+
+    /**
+     * Removes every resource from the dictionary, tombstones included, the snapshot is dropped too
+     */
+    @Override
+    public void clear() {
+        snapshot = MappedSnapshot.empty();
+        super.clear();
+    }
+
+    /**
+     * Writes the snapshot together with the overlay to a new snapshot file
+     *
+     * @param file The snapshot file to write, replaced atomically if it exists
+     * @throws IOException If the file can't be written
+     */
+    public void writeSnapshot(@NonNull File file) throws IOException {
+        MappedSnapshot.write(file, getVersionedResources());
+    }
+
+    /**
+     * Copies the entry of a key from the snapshot into the overlay, if the overlay has none
+     */
+    private void promote(String key) {
+        if (super.getVersionedResource(key) != null) return;
+        VersionedResource<String> mapped = snapshot.get(key);
+        if (mapped != null) super.mergeResource(key, mapped);
+    }
+}
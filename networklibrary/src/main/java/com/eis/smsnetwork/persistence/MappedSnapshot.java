@@ -0,0 +1,306 @@
+package com.eis.smsnetwork.persistence;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.eis.communication.network.Version;
+import com.eis.communication.network.VersionedResource;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only snapshot of a versioned dictionary, looked up straight from a memory-mapped file
+ * instead of being loaded into the heap.
+ * <p>
+ * The file holds a header, a table of the originators, an index with a fixed size slot for every
+ * key, sorted by their UTF-8 bytes, the keys and a region with the versioned values:
+ * <pre>
+ * header:     magic, entries, max timestamp, index offset, values offset
+ * originator: length, UTF-8 bytes (once for every originator)
+ * slot:       key offset, key length, value offset
+ * value:      timestamp, originator index, tombstone flag, length, UTF-8 bytes
+ * </pre>
+ * A lookup is a binary search over the slots, comparing the keys in place, so only the pages
+ * touched are read from the disk and only the resource found is decoded.
+ * Since offsets are ints a snapshot is limited to 2GB.
+ */
+public final class MappedSnapshot {
+
+    private static final int MAGIC = 0x4D534E31;
+    private static final int HEADER_BYTES = 24;
+    private static final int SLOT_BYTES = 12;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Comparator<byte[]> UNSIGNED_ORDER = new Comparator<byte[]>() {
+        @Override
+        public int compare(byte[] first, byte[] second) {
+            int length = Math.min(first.length, second.length);
+            for (int i = 0; i < length; i++) {
+                int difference = (first[i] & 0xFF) - (second[i] & 0xFF);
+                if (difference != 0) return difference;
+            }
+            return first.length - second.length;
+        }
+    };
+
+    private static final MappedSnapshot EMPTY =
+            new MappedSnapshot(ByteBuffer.allocate(0), 0, 0, 0, new String[0]);
+
+    private final ByteBuffer buffer;
+    private final int entries;
+    private final long maxTimestamp;
+    private final int indexOffset;
+    private final String[] originators;
+
+    private MappedSnapshot(ByteBuffer buffer, int entries, long maxTimestamp, int indexOffset,
+                           String[] originators) {
+        this.buffer = buffer;
+        this.entries = entries;
+        this.maxTimestamp = maxTimestamp;
+        this.indexOffset = indexOffset;
+        this.originators = originators;
+    }
+
+    /**
+     * @return A snapshot without entries
+     */
+    public static MappedSnapshot empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Maps a snapshot file into memory. Only the header and the originators are read, the entries
+     * are read when they're looked up.
+     *
+     * @param file The snapshot file
+     * @return The mapped snapshot
+     * @throws IOException If the file can't be mapped or is not a snapshot
+     */
+    public static MappedSnapshot open(@NonNull File file) throws IOException {
+        MappedByteBuffer buffer;
+        RandomAccessFile access = new RandomAccessFile(file, "r");
+        try {
+            if (access.length() > Integer.MAX_VALUE) throw new IOException("Snapshot too large!");
+            // the mapping stays valid after the file is closed
+            buffer = access.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, access.length());
+        } finally {
+            access.close();
+        }
+        try {
+            if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC)
+                throw new IOException("Not a mapped snapshot: " + file);
+            int entries = buffer.getInt(4);
+            long maxTimestamp = buffer.getLong(8);
+            int indexOffset = buffer.getInt(16);
+            int valuesOffset = buffer.getInt(20);
+            if (entries < 0 || indexOffset < HEADER_BYTES || valuesOffset > buffer.limit() ||
+                    (long) indexOffset + (long) entries * SLOT_BYTES > valuesOffset)
+                throw new IOException("Corrupted mapped snapshot: " + file);
+            ByteBuffer table = buffer.duplicate();
+            table.position(HEADER_BYTES);
+            String[] originators = new String[table.getInt()];
+            for (int i = 0; i < originators.length; i++) {
+                int length = table.getInt();
+                originators[i] = readString(table, table.position(), length);
+                table.position(table.position() + length);
+            }
+            return new MappedSnapshot(buffer, entries, maxTimestamp, indexOffset, originators);
+        } catch (IndexOutOfBoundsException | BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Corrupted mapped snapshot: " + file, e);
+        }
+    }
+
+    /**
+     * Writes a snapshot file, replacing the given one atomically once it's on the disk
+     *
+     * @param file    The snapshot file
+     * @param entries The versioned resources, tombstones included, by key
+     * @throws IOException If the file can't be written
+     */
+    public static void write(@NonNull File file, @NonNull Map<String, VersionedResource<String>> entries)
+            throws IOException {
+        byte[][] keys = new byte[entries.size()][];
+        Map<byte[], VersionedResource<String>> byKey = new HashMap<>();
+        int count = 0;
+        for (Map.Entry<String, VersionedResource<String>> entry : entries.entrySet()) {
+            keys[count] = entry.getKey().getBytes(UTF_8);
+            byKey.put(keys[count++], entry.getValue());
+        }
+        Arrays.sort(keys, UNSIGNED_ORDER);
+
+        Map<String, Integer> originatorIndexes = new HashMap<>();
+        List<String> originators = new ArrayList<>();
+        ByteArrayOutputStream values = new ByteArrayOutputStream();
+        DataOutputStream valuesOutput = new DataOutputStream(values);
+        int[] valueOffsets = new int[keys.length];
+        long maxTimestamp = 0;
+        for (int i = 0; i < keys.length; i++) {
+            VersionedResource<String> versioned = byKey.get(keys[i]);
+            Version version = versioned.getVersion();
+            Integer originator = originatorIndexes.get(version.getOriginator());
+            if (originator == null) {
+                originator = originators.size();
+                originatorIndexes.put(version.getOriginator(), originator);
+                originators.add(version.getOriginator());
+            }
+            maxTimestamp = Math.max(maxTimestamp, version.getTimestamp());
+            valueOffsets[i] = valuesOutput.size();
+            valuesOutput.writeLong(version.getTimestamp());
+            valuesOutput.writeInt(originator);
+            valuesOutput.writeBoolean(versioned.isTombstone());
+            byte[] value = versioned.isTombstone() ? new byte[0] : versioned.getResource().getBytes(UTF_8);
+            valuesOutput.writeInt(value.length);
+            valuesOutput.write(value);
+        }
+        valuesOutput.flush();
+
+        ByteArrayOutputStream table = new ByteArrayOutputStream();
+        DataOutputStream tableOutput = new DataOutputStream(table);
+        tableOutput.writeInt(originators.size());
+        for (String originator : originators) {
+            byte[] bytes = originator.getBytes(UTF_8);
+            tableOutput.writeInt(bytes.length);
+            tableOutput.write(bytes);
+        }
+        tableOutput.flush();
+
+        long indexOffset = HEADER_BYTES + table.size();
+        long keysOffset = indexOffset + (long) keys.length * SLOT_BYTES;
+        long valuesOffset = keysOffset;
+        for (byte[] key : keys)
+            valuesOffset += key.length;
+        if (valuesOffset + values.size() > Integer.MAX_VALUE)
+            throw new IOException("Snapshot too large!");
+
+        File temporary = new File(file.getPath() + ".tmp");
+        FileOutputStream stream = new FileOutputStream(temporary);
+        try {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream));
+            output.writeInt(MAGIC);
+            output.writeInt(keys.length);
+            output.writeLong(maxTimestamp);
+            output.writeInt((int) indexOffset);
+            output.writeInt((int) valuesOffset);
+            table.writeTo(output);
+            int keyOffset = (int) keysOffset;
+            for (int i = 0; i < keys.length; i++) {
+                output.writeInt(keyOffset);
+                output.writeInt(keys[i].length);
+                output.writeInt((int) valuesOffset + valueOffsets[i]);
+                keyOffset += keys[i].length;
+            }
+            for (byte[] key : keys)
+                output.write(key);
+            values.writeTo(output);
+            output.flush();
+            stream.getFD().sync();
+        } finally {
+            stream.close();
+        }
+        if (!temporary.renameTo(file)) throw new IOException("Cannot replace the snapshot " + file);
+    }
+
+    /**
+     * @return The number of entries, tombstones included
+     */
+    public int size() {
+        return entries;
+    }
+
+    /**
+     * @return The greatest timestamp of the entries, or 0 if there are none
+     */
+    public long getMaxTimestamp() {
+        return maxTimestamp;
+    }
+
+    /**
+     * Looks a key up with a binary search over the mapped index
+     *
+     * @param key The key to look for
+     * @return The versioned resource of the key, a tombstone, or null if the key is not in the snapshot
+     */
+    @Nullable
+    public VersionedResource<String> get(@NonNull String key) {
+        byte[] wanted = key.getBytes(UTF_8);
+        int low = 0;
+        int high = entries - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compareKey(middle, wanted);
+            if (comparison < 0) low = middle + 1;
+            else if (comparison > 0) high = middle - 1;
+            else return getEntry(middle);
+        }
+        return null;
+    }
+
+    /**
+     * @param index The position of the entry, in the order of the keys' UTF-8 bytes
+     * @return The key of the entry
+     * @throws IndexOutOfBoundsException If there's no entry at the given position
+     */
+    public String getKey(int index) {
+        int slot = slotOffset(index);
+        return readString(buffer, buffer.getInt(slot), buffer.getInt(slot + 4));
+    }
+
+    /**
+     * @param index The position of the entry, in the order of the keys' UTF-8 bytes
+     * @return The versioned resource of the entry, or a tombstone
+     * @throws IndexOutOfBoundsException If there's no entry at the given position
+     */
+    public VersionedResource<String> getEntry(int index) {
+        int offset = buffer.getInt(slotOffset(index) + 8);
+        Version version = new Version(buffer.getLong(offset), originators[buffer.getInt(offset + 8)]);
+        if (buffer.get(offset + 12) != 0) return VersionedResource.tombstone(version);
+        return VersionedResource.of(readString(buffer, offset + 17, buffer.getInt(offset + 13)), version);
+    }
+
+    /**
+     * Compares the key of an entry with the given bytes, without copying it out of the buffer
+     */
+    private int compareKey(int index, byte[] wanted) {
+        int slot = slotOffset(index);
+        int offset = buffer.getInt(slot);
+        int length = buffer.getInt(slot + 4);
+        int common = Math.min(length, wanted.length);
+        for (int i = 0; i < common; i++) {
+            int difference = (buffer.get(offset + i) & 0xFF) - (wanted[i] & 0xFF);
+            if (difference != 0) return difference;
+        }
+        return length - wanted.length;
+    }
+
+    private int slotOffset(int index) {
+        if (index < 0 || index >= entries) throw new IndexOutOfBoundsException("No entry " + index);
+        return indexOffset + index * SLOT_BYTES;
+    }
+
+    /**
+     * Decodes a string with absolute reads only, so lookups can run on many threads at once
+     */
+    private static String readString(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        byte[] bytes = new byte[length];
+        view.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
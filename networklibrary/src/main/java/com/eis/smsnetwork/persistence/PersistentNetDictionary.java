@@ -0,0 +1,161 @@
+package com.eis.smsnetwork.persistence;
+
+import androidx.annotation.NonNull;
+
+import com.eis.communication.network.HybridLogicalClock;
+import com.eis.communication.network.KeyValidator;
+import com.eis.communication.network.VersionedResource;
+import com.eis.smsnetwork.SMSNetDictionary;
+
+/**
+ * {@link SMSNetDictionary} whose changes are written to the log of a {@link PersistentNetworkStore},
+ * so they survive a restart.
+ * <p>
+ * After every change the versioned entry of its key is logged. Since entries are merged back by
+ * version when the log is replayed, two writes racing on the same key may be logged in any order.
+ * Purged tombstones are not logged, they're simply missing from the next checkpoint. Evicted
+ * entries are logged instead, as a key handed off to another node must not come back on replay.
+ */
+public class PersistentNetDictionary extends SMSNetDictionary {
+
+    private final PersistentNetworkStore store;
+
+    /**
+     * Constructor for a PersistentNetDictionary, only meant to be called by its store
+     *
+     * @param store        The store logging the changes
+     * @param keyValidator The validator deciding which keys are accepted
+     * @param originator   The id stamped on the local writes, kept across restarts
+     * @param clock        The clock giving the timestamps of the local writes
+     */
+    PersistentNetDictionary(@NonNull PersistentNetworkStore store, @NonNull KeyValidator<String> keyValidator,
+                            @NonNull String originator, @NonNull HybridLogicalClock clock) {
+        super(keyValidator, originator, clock);
+        this.store = store;
+    }
+
+    @Override
+    public void addResource(String key, String resource) {
+        store.beginWrite();
+        try {
+            super.addResource(key, resource);
+            logEntry(key);
+        } finally {
+            store.endWrite();
+        }
+    }
+
+    @Override
+    public void removeResource(String key) {
+        store.beginWrite();
+        try {
+            super.removeResource(key);
+            logEntry(key);
+        } finally {
+            store.endWrite();
+        }
+    }
+
+    @Override
+    public String addResourceIfAbsent(String key, String resource) {
+        store.beginWrite();
+        try {
+            String current = super.addResourceIfAbsent(key, resource);
+            if (current == null) logEntry(key);
+            return current;
+        } finally {
+            store.endWrite();
+        }
+    }
+
+    @Override
+    public boolean replaceResource(String key, String expectedResource, String newResource) {
+        store.beginWrite();
+        try {
+            boolean replaced = super.replaceResource(key, expectedResource, newResource);
+            if (replaced) logEntry(key);
+            return replaced;
+        } finally {
+            store.endWrite();
+        }
+    }
+
+    @Override
+    public String computeResource(String key, ResourceFunction<String, String> function) {
+        store.beginWrite();
+        try {
+            String updated = super.computeResource(key, function);
+            if (super.getVersionedResource(key) != null) logEntry(key);
+            return updated;
+        } finally {
+            store.endWrite();
+        }
+    }
+
+    @Override
+    public boolean mergeResource(String key, VersionedResource<String> versioned) {
+        store.beginWrite();
+        try {
+            boolean merged = super.mergeResource(key, versioned);
+            if (merged) logEntry(key);
+            return merged;
+        } finally {
+            store.endWrite();
+        }
+    }
+
+    @Override
+    public boolean evictResource(String key, VersionedResource<String> expected) {
+        store.beginWrite();
+        try {
+            boolean evicted = super.evictResource(key, expected);
+            if (evicted) store.log(PersistentNetworkStore.encodeEviction(key, expected));
+            return evicted;
+        } finally {
+            store.endWrite();
+        }
+    }
+
+    /**
+     * Removes every resource from the dictionary, tombstones included. No other change can be made
+     * until the removal is logged.
+     */
+    @Override
+    public void clear() {
+        store.beginExclusive();
+        try {
+            super.clear();
+            store.log(PersistentNetworkStore.encodeClearDictionary());
+        } finally {
+            store.endExclusive();
+        }
+    }
+
+    /**
+     * Merges an entry read from the disk, without logging it again
+     */
+    void restore(String key, VersionedResource<String> versioned) {
+        super.mergeResource(key, versioned);
+    }
+
+    /**
+     * Forgets an entry evicted according to a record read from the disk, unless the key has a
+     * newer entry, without logging it again
+     */
+    void restoreEviction(String key, VersionedResource<String> evicted) {
+        VersionedResource<String> current = super.getVersionedResource(key);
+        if (current != null && !current.getVersion().isNewerThan(evicted.getVersion()))
+            super.evictResource(key, current);
+    }
+
+    /**
+     * Clears the dictionary on a cleared record read from the disk, without logging it again
+     */
+    void restoreClear() {
+        super.clear();
+    }
+
+    private void logEntry(String key) {
+        store.log(PersistentNetworkStore.encodeEntry(key, super.getVersionedResource(key)));
+    }
+}
@@ -0,0 +1,88 @@
+package com.eis.smsnetwork.persistence;
+
+import androidx.annotation.NonNull;
+
+import com.eis.smslibrary.SMSPeer;
+import com.eis.smsnetwork.SMSNetSubscriberList;
+
+/**
+ * {@link SMSNetSubscriberList} whose changes are written to the log of a
+ * {@link PersistentNetworkStore}, so they survive a restart.
+ * A change is logged while holding the lock of the list, so the log has them in the same order
+ * they were applied.
+ */
+public class PersistentNetSubscriberList extends SMSNetSubscriberList {
+
+    private final PersistentNetworkStore store;
+
+    /**
+     * Constructor for a PersistentNetSubscriberList, only meant to be called by its store
+     *
+     * @param store The store logging the changes
+     */
+    PersistentNetSubscriberList(@NonNull PersistentNetworkStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public void addSubscriber(@NonNull SMSPeer subscriber) {
+        store.beginWrite();
+        try {
+            synchronized (this) {
+                boolean added = subscriber != null && !isSubscribed(subscriber);
+                super.addSubscriber(subscriber);
+                if (added) store.log(PersistentNetworkStore.encodeSubscriber(true, subscriber));
+            }
+        } finally {
+            store.endWrite();
+        }
+    }
+
+    @Override
+    public void removeSubscriber(@NonNull SMSPeer subscriber) {
+        store.beginWrite();
+        try {
+            synchronized (this) {
+                super.removeSubscriber(subscriber);
+                store.log(PersistentNetworkStore.encodeSubscriber(false, subscriber));
+            }
+        } finally {
+            store.endWrite();
+        }
+    }
+
+    @Override
+    public void clear() {
+        store.beginWrite();
+        try {
+            synchronized (this) {
+                if (getSubscribers().isEmpty()) return;
+                super.clear();
+                store.log(PersistentNetworkStore.encodeClearSubscribers());
+            }
+        } finally {
+            store.endWrite();
+        }
+    }
+
+    /**
+     * Adds a subscriber read from the disk, without logging it again
+     */
+    void restoreSubscriber(SMSPeer subscriber) {
+        super.addSubscriber(subscriber);
+    }
+
+    /**
+     * Removes a subscriber on a removal read from the disk, without logging it again
+     */
+    void restoreRemoval(SMSPeer subscriber) {
+        if (isSubscribed(subscriber)) super.removeSubscriber(subscriber);
+    }
+
+    /**
+     * Clears the list on a cleared record read from the disk, without logging it again
+     */
+    void restoreClear() {
+        super.clear();
+    }
+}
@@ -0,0 +1,507 @@
+package com.eis.smsnetwork.persistence;
+
+import androidx.annotation.NonNull;
+
+import com.eis.communication.network.HybridLogicalClock;
+import com.eis.communication.network.KeyValidator;
+import com.eis.communication.network.Version;
+import com.eis.communication.network.VersionedResource;
+import com.eis.smslibrary.SMSPeer;
+import com.eis.smsnetwork.SMSWordKeyValidator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.SecureRandom;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps a dictionary and a subscriber list on the disk, so a node gets them back after a restart.
+ * <p>
+ * Every change is appended to a {@link WriteAheadLog}, whose records are forced to the disk in
+ * groups: a crash loses at most the changes of the last {@link WriteAheadLog#DEFAULT_MAX_DELAY_MILLIS}
+ * milliseconds, unless {@link #sync()} is called. Every {@link #DEFAULT_CHECKPOINT_INTERVAL}
+ * records a checkpoint writes the whole state to a snapshot file, replaced atomically, and deletes
+ * the log segments it covers, so the replay on startup stays short.
+ * <p>
+ * On startup the snapshot is loaded and the log is replayed on top of it. Entries are merged by
+ * version, so replaying a change already in the snapshot has no effect. The originator id of the
+ * dictionary is kept too, together with its timestamps this keeps the versions of the local
+ * writes growing across restarts.
+ * <p>
+ * The dictionary and the list given by {@link #getNetDictionary()} and {@link #getNetSubscriberList()}
+ * are meant to be handed to the network manager with setNetDictionary and setNetSubscriberList.
+ * Their methods throw {@link IllegalStateException} when a change can't be logged.
+ */
+public class PersistentNetworkStore implements Closeable {
+
+    /**
+     * Default number of logged changes between two checkpoints
+     */
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 1000;
+    static final String SNAPSHOT_FILE = "snapshot";
+    static final String ORIGINATOR_FILE = "originator";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final int SNAPSHOT_MAGIC = 0x534E4431;
+    private static final int ORIGINATOR_RADIX = 36;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final byte ENTRY = 'E';
+    private static final byte EVICTION = 'V';
+    private static final byte CLEAR_DICTIONARY = 'X';
+    private static final byte ADD_SUBSCRIBER = 'A';
+    private static final byte REMOVE_SUBSCRIBER = 'R';
+    private static final byte CLEAR_SUBSCRIBERS = 'Z';
+
+    private final File directory;
+    private final int checkpointInterval;
+    private final PersistentNetDictionary dictionary;
+    private final PersistentNetSubscriberList subscribers;
+    private final WriteAheadLog log;
+    private final ExecutorService checkpointer;
+    /**
+     * Changes are logged holding the read lock, a checkpoint rotates the log and copies the state
+     * holding the write lock, so no change is missing from both the snapshot and the new segment
+     */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object checkpointLock = new Object();
+    private final AtomicLong recordsSinceCheckpoint = new AtomicLong();
+    private final AtomicBoolean checkpointScheduled = new AtomicBoolean();
+    private final long replayedRecords;
+    private final long replayMillis;
+    private volatile IOException checkpointError = null;
+    private long checkpoints = 0;
+    private boolean closed = false;
+
+    /**
+     * Constructor for a store of a dictionary only accepting single word keys, using the default
+     * group commit and checkpoint settings
+     *
+     * @param directory The directory holding the files of the store, created if missing
+     * @throws IOException If the store can't be read or created
+     */
+    public PersistentNetworkStore(@NonNull File directory) throws IOException {
+        this(directory, new SMSWordKeyValidator(),
+                WriteAheadLog.DEFAULT_MAX_PENDING_RECORDS, WriteAheadLog.DEFAULT_MAX_DELAY_MILLIS,
+                DEFAULT_CHECKPOINT_INTERVAL);
+    }
+
+    /**
+     * Constructor for a store, loading the state saved in the directory
+     *
+     * @param directory          The directory holding the files of the store, created if missing
+     * @param keyValidator       The validator deciding which keys the dictionary accepts
+     * @param maxPendingRecords  The number of changes forced to the disk together
+     * @param maxDelayMillis     The maximum time a change waits before being forced to the disk,
+     *                           in milliseconds
+     * @param checkpointInterval The number of logged changes between two checkpoints
+     * @throws IOException              If the store can't be read or created
+     * @throws IllegalArgumentException If one of the settings is out of range
+     */
+    public PersistentNetworkStore(@NonNull File directory, @NonNull KeyValidator<String> keyValidator,
+                                  int maxPendingRecords, long maxDelayMillis, int checkpointInterval)
+            throws IOException {
+        if (checkpointInterval <= 0)
+            throw new IllegalArgumentException("The checkpoint interval must be positive!");
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Cannot create the directory " + directory);
+        this.directory = directory;
+        this.checkpointInterval = checkpointInterval;
+        this.dictionary = new PersistentNetDictionary(this, keyValidator, loadOriginator(),
+                new HybridLogicalClock());
+        this.subscribers = new PersistentNetSubscriberList(this);
+
+        long start = System.nanoTime();
+        loadSnapshot();
+        this.replayedRecords = WriteAheadLog.replay(directory, new WriteAheadLog.RecordHandler() {
+            @Override
+            public void onRecord(byte[] record) throws IOException {
+                restore(record);
+            }
+        });
+        this.replayMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        this.log = new WriteAheadLog(directory, maxPendingRecords, maxDelayMillis);
+        this.checkpointer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, "PersistentNetworkStore");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @return The dictionary kept by this store
+     */
+    public PersistentNetDictionary getNetDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * @return The subscriber list kept by this store
+     */
+    public PersistentNetSubscriberList getNetSubscriberList() {
+        return subscribers;
+    }
+
+    /**
+     * @return The number of log records replayed on startup
+     */
+    public long getReplayedRecordCount() {
+        return replayedRecords;
+    }
+
+    /**
+     * @return The time taken to load the snapshot and replay the log on startup, in milliseconds
+     */
+    public long getReplayMillis() {
+        return replayMillis;
+    }
+
+    /**
+     * @return The number of checkpoints completed since startup
+     */
+    public long getCheckpointCount() {
+        synchronized (checkpointLock) {
+            return checkpoints;
+        }
+    }
+
+    /**
+     * @return The number of changes logged since startup
+     */
+    public long getLoggedRecordCount() {
+        return log.getAppendedRecordCount();
+    }
+
+    /**
+     * Forces every logged change to the disk, so none of them is lost by a crash
+     *
+     * @throws IOException If the changes can't be written, or a background checkpoint failed
+     */
+    public void sync() throws IOException {
+        throwCheckpointError();
+        log.sync();
+    }
+
+    /**
+     * Writes the whole state to the snapshot file and deletes the log segments it covers
+     *
+     * @throws IOException           If the snapshot can't be written
+     * @throws IllegalStateException If the store is closed
+     */
+    public void checkpoint() throws IOException {
+        synchronized (checkpointLock) {
+            if (closed) throw new IllegalStateException("The store is closed!");
+            long lastSegment;
+            Map<String, VersionedResource<String>> entries;
+            List<SMSPeer> peers;
+            lock.writeLock().lock();
+            try {
+                lastSegment = log.rotate();
+                recordsSinceCheckpoint.set(0);
+                entries = dictionary.getVersionedResources();
+                peers = subscribers.getSubscribers();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            writeSnapshot(entries, peers);
+            log.deleteSegmentsUpTo(lastSegment);
+            checkpoints++;
+        }
+    }
+
+    /**
+     * Forces every logged change to the disk and closes the store, its dictionary and list can't
+     * be changed anymore
+     *
+     * @throws IOException If the changes can't be written
+     */
+    @Override
+    public void close() throws IOException {
+        checkpointer.shutdown();
+        synchronized (checkpointLock) {
+            if (closed) return;
+            closed = true;
+            log.close();
+        }
+    }
+
+    void beginWrite() {
+        lock.readLock().lock();
+    }
+
+    void endWrite() {
+        lock.readLock().unlock();
+    }
+
+    void beginExclusive() {
+        lock.writeLock().lock();
+    }
+
+    void endExclusive() {
+        lock.writeLock().unlock();
+    }
+
+    /**
+     * Appends a record to the log, starting a checkpoint in the background when enough records
+     * were logged since the last one. Must be called between {@link #beginWrite()} and
+     * {@link #endWrite()}, or while holding the exclusive lock.
+     *
+     * @param record The record to log
+     * @throws IllegalStateException If the record can't be logged
+     */
+    void log(byte[] record) {
+        try {
+            log.append(record);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot log the change!", e);
+        }
+        if (recordsSinceCheckpoint.incrementAndGet() >= checkpointInterval &&
+                checkpointScheduled.compareAndSet(false, true))
+            scheduleCheckpoint();
+    }
+
+    static byte[] encodeEntry(String key, VersionedResource<String> versioned) {
+        return encodeEntry(ENTRY, key, versioned);
+    }
+
+    static byte[] encodeEviction(String key, VersionedResource<String> evicted) {
+        return encodeEntry(EVICTION, key, evicted);
+    }
+
+    private static byte[] encodeEntry(byte type, String key, VersionedResource<String> versioned) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream output = new DataOutputStream(bytes);
+            output.writeByte(type);
+            writeEntry(output, key, versioned);
+            output.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // writing to memory never fails
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static byte[] encodeClearDictionary() {
+        return new byte[]{CLEAR_DICTIONARY};
+    }
+
+    static byte[] encodeSubscriber(boolean added, SMSPeer subscriber) {
+        byte[] address = subscriber.getAddress().getBytes(UTF_8);
+        byte[] record = new byte[address.length + 1];
+        record[0] = added ? ADD_SUBSCRIBER : REMOVE_SUBSCRIBER;
+        System.arraycopy(address, 0, record, 1, address.length);
+        return record;
+    }
+
+    static byte[] encodeClearSubscribers() {
+        return new byte[]{CLEAR_SUBSCRIBERS};
+    }
+
+    /**
+     * Applies a record read from the log
+     *
+     * @throws IOException If the record is not a valid change
+     */
+    private void restore(byte[] record) throws IOException {
+        if (record.length == 0) throw new IOException("Empty log record!");
+        switch (record[0]) {
+            case ENTRY:
+            case EVICTION:
+                DataInputStream input = new DataInputStream(
+                        new ByteArrayInputStream(record, 1, record.length - 1));
+                readEntry(input, record[0] == EVICTION);
+                break;
+            case CLEAR_DICTIONARY:
+                dictionary.restoreClear();
+                break;
+            case ADD_SUBSCRIBER:
+                subscribers.restoreSubscriber(new SMSPeer(new String(record, 1, record.length - 1, UTF_8)));
+                break;
+            case REMOVE_SUBSCRIBER:
+                subscribers.restoreRemoval(new SMSPeer(new String(record, 1, record.length - 1, UTF_8)));
+                break;
+            case CLEAR_SUBSCRIBERS:
+                subscribers.restoreClear();
+                break;
+            default:
+                throw new IOException("Unknown log record type: " + (char) record[0]);
+        }
+    }
+
+    private static void writeEntry(DataOutputStream output, String key, VersionedResource<String> versioned)
+            throws IOException {
+        writeString(output, key);
+        output.writeLong(versioned.getVersion().getTimestamp());
+        writeString(output, versioned.getVersion().getOriginator());
+        output.writeBoolean(versioned.isTombstone());
+        if (!versioned.isTombstone()) writeString(output, versioned.getResource());
+    }
+
+    private void readEntry(DataInputStream input, boolean evicted) throws IOException {
+        String key = readString(input);
+        Version version = new Version(input.readLong(), readString(input));
+        VersionedResource<String> versioned = input.readBoolean() ?
+                VersionedResource.<String>tombstone(version) : VersionedResource.of(readString(input), version);
+        try {
+            if (evicted) dictionary.restoreEviction(key, versioned);
+            else dictionary.restore(key, versioned);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid key on the disk: " + key, e);
+        }
+    }
+
+    private static void writeString(DataOutputStream output, String string) throws IOException {
+        byte[] bytes = string.getBytes(UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        int length = input.readInt();
+        if (length < 0) throw new IOException("Negative string length!");
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * Writes the snapshot to a temporary file, forces it to the disk and moves it over the
+     * previous one, so a crash leaves either the old or the new snapshot, never half of one
+     */
+    private void writeSnapshot(Map<String, VersionedResource<String>> entries, List<SMSPeer> peers)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(SNAPSHOT_MAGIC);
+        output.writeInt(entries.size());
+        for (Map.Entry<String, VersionedResource<String>> entry : entries.entrySet())
+            writeEntry(output, entry.getKey(), entry.getValue());
+        output.writeInt(peers.size());
+        for (SMSPeer peer : peers)
+            writeString(output, peer.getAddress());
+        output.flush();
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        output.writeLong(crc.getValue());
+        output.flush();
+
+        File temporary = new File(directory, SNAPSHOT_FILE + TEMPORARY_SUFFIX);
+        FileOutputStream file = new FileOutputStream(temporary);
+        try {
+            bytes.writeTo(file);
+            file.getFD().sync();
+        } finally {
+            file.close();
+        }
+        if (!temporary.renameTo(new File(directory, SNAPSHOT_FILE)))
+            throw new IOException("Cannot replace the snapshot!");
+        // the old segments are deleted next, so the rename must be on the disk first
+        WriteAheadLog.syncDirectory(directory);
+    }
+
+    /**
+     * Loads the snapshot file, if any
+     *
+     * @throws IOException If the snapshot can't be read or is corrupted
+     */
+    private void loadSnapshot() throws IOException {
+        File file = new File(directory, SNAPSHOT_FILE);
+        if (!file.exists()) return;
+        byte[] bytes = readFile(file);
+        if (bytes.length < 8) throw new IOException("Truncated snapshot!");
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 8);
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+        input.skipBytes(bytes.length - 8);
+        if (input.readLong() != crc.getValue()) throw new IOException("Corrupted snapshot!");
+
+        input = new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length - 8));
+        if (input.readInt() != SNAPSHOT_MAGIC) throw new IOException("Not a snapshot file!");
+        for (int entries = input.readInt(); entries > 0; entries--)
+            readEntry(input, false);
+        for (int peers = input.readInt(); peers > 0; peers--)
+            subscribers.restoreSubscriber(new SMSPeer(readString(input)));
+    }
+
+    /**
+     * @return The originator id saved in the directory, or a new random one, saved before returning it
+     * @throws IOException If the id can't be read or saved
+     */
+    private String loadOriginator() throws IOException {
+        File file = new File(directory, ORIGINATOR_FILE);
+        if (file.exists()) {
+            String originator = new String(readFile(file), UTF_8).trim();
+            if (!originator.isEmpty()) return originator;
+        }
+        String originator = Long.toString(new SecureRandom().nextLong() & Long.MAX_VALUE, ORIGINATOR_RADIX);
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            output.write(originator.getBytes(UTF_8));
+            output.getFD().sync();
+        } finally {
+            output.close();
+        }
+        return originator;
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        DataInputStream input = new DataInputStream(new FileInputStream(file));
+        try {
+            byte[] bytes = new byte[(int) file.length()];
+            input.readFully(bytes);
+            return bytes;
+        } finally {
+            input.close();
+        }
+    }
+
+    private void scheduleCheckpoint() {
+        try {
+            checkpointer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    checkpointScheduled.set(false);
+                    try {
+                        checkpoint();
+                    } catch (IOException e) {
+                        checkpointError = e;
+                    } catch (IllegalStateException e) {
+                        // closed in the meantime
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the store is closing, the log keeps the changes anyway
+            checkpointScheduled.set(false);
+        }
+    }
+
+    private void throwCheckpointError() throws IOException {
+        IOException error = checkpointError;
+        if (error == null) return;
+        checkpointError = null;
+        throw error;
+    }
+}
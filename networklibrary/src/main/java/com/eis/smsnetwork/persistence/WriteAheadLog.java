@@ -0,0 +1,353 @@
+package com.eis.smsnetwork.persistence;
+
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of records, split in numbered segment files.
+ * <p>
+ * Each record is written as its length, its CRC32 and its bytes. Records are buffered and forced
+ * to the disk together (group commit): as soon as {@link #getMaxPendingRecords()} are pending, or
+ * once the oldest pending record has waited for the maximum delay, or when {@link #sync()} is
+ * called. So a crash may lose the records of the last delay, never the ones before them.
+ * <p>
+ * A record cut short by a crash, whose checksum doesn't match or whose length is zero or longer
+ * than the rest of its segment, as in a tail of zeroes, ends the replay of its segment.
+ * {@link #rotate()} starts a new segment, so the older ones can be deleted once their content is
+ * saved somewhere else.
+ */
+public class WriteAheadLog implements Closeable {
+
+    public static final String SEGMENT_PREFIX = "wal-";
+    public static final String SEGMENT_SUFFIX = ".log";
+    /**
+     * Default number of records forced to the disk together
+     */
+    public static final int DEFAULT_MAX_PENDING_RECORDS = 64;
+    /**
+     * Default maximum time a record waits before being forced to the disk, in milliseconds
+     */
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 50;
+    private static final int HEADER_BYTES = 8;
+
+    private final File directory;
+    private final int maxPendingRecords;
+    private final long maxDelayMillis;
+    private final ScheduledExecutorService timer;
+
+    private long segment;
+    private FileOutputStream segmentFile;
+    private DataOutputStream output;
+    private int pendingRecords = 0;
+    private ScheduledFuture<?> scheduledSync = null;
+    private IOException syncError = null;
+    private long appendedRecords = 0;
+    private long syncs = 0;
+
+    /**
+     * Interface receiving the records read by {@link #replay(File, RecordHandler)}
+     */
+    public interface RecordHandler {
+        /**
+         * @param record The bytes of a record, in the order they were appended
+         * @throws IOException If the record can't be handled
+         */
+        void onRecord(byte[] record) throws IOException;
+    }
+
+    /**
+     * Constructor for a WriteAheadLog using the default group commit settings
+     *
+     * @param directory The directory holding the segments
+     * @throws IOException If a new segment can't be created
+     */
+    public WriteAheadLog(@NonNull File directory) throws IOException {
+        this(directory, DEFAULT_MAX_PENDING_RECORDS, DEFAULT_MAX_DELAY_MILLIS);
+    }
+
+    /**
+     * Constructor for a WriteAheadLog, appending to a new segment after the existing ones
+     *
+     * @param directory         The directory holding the segments
+     * @param maxPendingRecords The number of records forced to the disk together
+     * @param maxDelayMillis    The maximum time a record waits before being forced to the disk,
+     *                          in milliseconds
+     * @throws IOException              If a new segment can't be created
+     * @throws IllegalArgumentException If the number of records is not positive or the delay is
+     *                                  negative
+     */
+    public WriteAheadLog(@NonNull File directory, int maxPendingRecords, long maxDelayMillis) throws IOException {
+        if (maxPendingRecords <= 0) throw new IllegalArgumentException("The pending records must be positive!");
+        if (maxDelayMillis < 0) throw new IllegalArgumentException("The delay can't be negative!");
+        this.directory = directory;
+        this.maxPendingRecords = maxPendingRecords;
+        this.maxDelayMillis = maxDelayMillis;
+        List<Long> segments = listSegments(directory);
+        segment = segments.isEmpty() ? 0 : segments.get(segments.size() - 1);
+        openNextSegment();
+        this.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, "WriteAheadLog");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public int getMaxPendingRecords() {
+        return maxPendingRecords;
+    }
+
+    /**
+     * Appends a record, which is forced to the disk with the following ones
+     *
+     * @param record The bytes of the record
+     * @throws IOException If the record, or a previous group of records, can't be written
+     */
+    public synchronized void append(@NonNull byte[] record) throws IOException {
+        throwSyncError();
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        output.writeInt(record.length);
+        output.writeInt((int) crc.getValue());
+        output.write(record);
+        appendedRecords++;
+        if (++pendingRecords >= maxPendingRecords) sync();
+        else if (scheduledSync == null) scheduleSync();
+    }
+
+    /**
+     * Forces every pending record to the disk
+     *
+     * @throws IOException If the records can't be written
+     */
+    public synchronized void sync() throws IOException {
+        if (scheduledSync != null) {
+            scheduledSync.cancel(false);
+            scheduledSync = null;
+        }
+        if (pendingRecords == 0) return;
+        output.flush();
+        segmentFile.getFD().sync();
+        pendingRecords = 0;
+        syncs++;
+    }
+
+    /**
+     * Forces the pending records to the disk and starts a new segment
+     *
+     * @return The number of the last segment written before the rotation, it and the ones before
+     * it can be deleted once their content is saved elsewhere
+     * @throws IOException If the pending records can't be written or the new segment can't be created
+     */
+    public synchronized long rotate() throws IOException {
+        sync();
+        output.close();
+        long previous = segment;
+        openNextSegment();
+        return previous;
+    }
+
+    /**
+     * Deletes the segments up to a given one
+     *
+     * @param lastSegment The number of the last segment to delete
+     */
+    public synchronized void deleteSegmentsUpTo(long lastSegment) {
+        for (long number : listSegments(directory))
+            if (number <= lastSegment && number != segment) segmentFile(directory, number).delete();
+    }
+
+    /**
+     * @return The number of records appended so far
+     */
+    public synchronized long getAppendedRecordCount() {
+        return appendedRecords;
+    }
+
+    /**
+     * @return The number of times pending records were forced to the disk so far
+     */
+    public synchronized long getSyncCount() {
+        return syncs;
+    }
+
+    /**
+     * Forces the pending records to the disk and closes the log
+     *
+     * @throws IOException If the records can't be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        timer.shutdown();
+        try {
+            sync();
+        } finally {
+            output.close();
+        }
+    }
+
+    /**
+     * Reads every record of every segment in a directory, in the order they were appended.
+     * The replay of a segment stops at its first incomplete or corrupted record.
+     *
+     * @param directory The directory holding the segments
+     * @param handler   The handler of the records
+     * @return The number of records read
+     * @throws IOException If a segment can't be read or the handler fails
+     */
+    public static long replay(@NonNull File directory, @NonNull RecordHandler handler) throws IOException {
+        long records = 0;
+        for (long number : listSegments(directory)) {
+            File file = segmentFile(directory, number);
+            long fileLength = file.length();
+            long validLength = 0;
+            DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                while (true) {
+                    byte[] record = readRecord(input, fileLength - validLength);
+                    if (record == null) break;
+                    handler.onRecord(record);
+                    validLength += HEADER_BYTES + record.length;
+                    records++;
+                }
+            } finally {
+                input.close();
+            }
+            // a torn tail would hide the records appended after it, so it's cut away
+            if (validLength < fileLength) truncate(file, validLength);
+        }
+        return records;
+    }
+
+    /**
+     * @param remaining The number of bytes left in the segment, header of the record included
+     * @return The next record, or null at the end of the segment or at a damaged record
+     */
+    private static byte[] readRecord(DataInputStream input, long remaining) throws IOException {
+        try {
+            int length = input.readInt();
+            int checksum = input.readInt();
+            // no record is empty, and an empty one would pass the checksum: it's zeroed space
+            if (length <= 0 || length > remaining - HEADER_BYTES) return null;
+            byte[] record = new byte[length];
+            input.readFully(record);
+            CRC32 crc = new CRC32();
+            crc.update(record);
+            return (int) crc.getValue() == checksum ? record : null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private static void truncate(File file, long length) throws IOException {
+        RandomAccessFile access = new RandomAccessFile(file, "rw");
+        try {
+            access.setLength(length);
+        } finally {
+            access.close();
+        }
+    }
+
+    /**
+     * Forces the entries of a directory to the disk, so that a file created or renamed in it
+     * survives a crash. Directories can only be opened from API 26, before that the entries are
+     * left to the file system.
+     *
+     * @param directory The directory to force to the disk
+     * @throws IOException If the directory can't be forced to the disk
+     */
+    static void syncDirectory(File directory) throws IOException {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) return;
+        FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ);
+        try {
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * @return The numbers of the segments in a directory, in ascending order
+     */
+    static List<Long> listSegments(File directory) {
+        String[] names = directory.list();
+        if (names == null) return Collections.emptyList();
+        List<Long> segments = new ArrayList<>();
+        for (String name : names) {
+            if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) continue;
+            try {
+                segments.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                        name.length() - SEGMENT_SUFFIX.length())));
+            } catch (NumberFormatException e) {
+                // not a segment
+            }
+        }
+        Long[] sorted = segments.toArray(new Long[0]);
+        Arrays.sort(sorted);
+        return Arrays.asList(sorted);
+    }
+
+    private static File segmentFile(File directory, long number) {
+        return new File(directory, SEGMENT_PREFIX + number + SEGMENT_SUFFIX);
+    }
+
+    private void openNextSegment() throws IOException {
+        segment++;
+        segmentFile = new FileOutputStream(segmentFile(directory, segment));
+        output = new DataOutputStream(new BufferedOutputStream(segmentFile));
+        syncDirectory(directory);
+    }
+
+    private void scheduleSync() {
+        scheduledSync = timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (WriteAheadLog.this) {
+                    scheduledSync = null;
+                    try {
+                        sync();
+                    } catch (IOException e) {
+                        syncError = e;
+                    }
+                }
+            }
+        }, maxDelayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Reports an error of a background sync to the next writer. Must be called while holding the lock.
+     */
+    private void throwSyncError() throws IOException {
+        if (syncError == null) return;
+        IOException error = syncError;
+        syncError = null;
+        throw error;
+    }
+}
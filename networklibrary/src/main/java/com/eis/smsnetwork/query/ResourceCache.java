@@ -0,0 +1,235 @@
+package com.eis.smsnetwork.query;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of the resources fetched from other peers, so repeated reads of the same keys
+ * don't cost a lookup each.
+ * <p>
+ * Entries are kept in least recently used order: once the cache is full, adding an entry evicts
+ * the least recently read one. An entry also expires after a time to live, since the cache
+ * doesn't see every change made in the network. Entries are invalidated as soon as an update of
+ * their key is received.
+ * <p>
+ * A lookup still in flight when its key is invalidated would cache the old resource once it
+ * completes, so a lookup takes the {@link #getGeneration() generation} of the cache when it starts
+ * and {@link #put(String, String, long) puts} its resource with it, which is dropped if the key
+ * was invalidated in the meantime. The generations of the last {@link #getCapacity() capacity}
+ * keys invalidated are remembered, older ones count as invalidated when the last of them was
+ * forgotten.
+ */
+public class ResourceCache {
+
+    /**
+     * Default maximum number of cached resources
+     */
+    public static final int DEFAULT_CAPACITY = 128;
+    /**
+     * Default time a cached resource is used for, in milliseconds
+     */
+    public static final long DEFAULT_TIME_TO_LIVE_MILLIS = 5 * 60 * 1000;
+
+    private final int capacity;
+    private final long timeToLiveMillis;
+    private final LinkedHashMap<String, CachedResource> entries;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long expirations = 0;
+    private long invalidations = 0;
+    private long generation = 0;
+    /**
+     * The generation of the last invalidation of the most recently invalidated keys
+     */
+    private final LinkedHashMap<String, Long> invalidatedAt;
+    /**
+     * The newest generation among the invalidations no longer remembered
+     */
+    private long forgottenGeneration = 0;
+
+    /**
+     * A resource with the time it stops being used
+     */
+    private static class CachedResource {
+        final String resource;
+        final long expiresAt;
+
+        CachedResource(String resource, long expiresAt) {
+            this.resource = resource;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Constructor for a ResourceCache using the default capacity and time to live
+     */
+    public ResourceCache() {
+        this(DEFAULT_CAPACITY, DEFAULT_TIME_TO_LIVE_MILLIS);
+    }
+
+    /**
+     * Constructor for a ResourceCache
+     *
+     * @param capacity         The maximum number of cached resources
+     * @param timeToLiveMillis The time a cached resource is used for, in milliseconds
+     * @throws IllegalArgumentException If the capacity or the time to live are not positive
+     */
+    public ResourceCache(int capacity, long timeToLiveMillis) {
+        if (capacity <= 0) throw new IllegalArgumentException("The capacity must be positive!");
+        if (timeToLiveMillis <= 0) throw new IllegalArgumentException("The time to live must be positive!");
+        this.capacity = capacity;
+        this.timeToLiveMillis = timeToLiveMillis;
+        this.entries = new LinkedHashMap<String, CachedResource>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedResource> eldest) {
+                if (size() <= ResourceCache.this.capacity) return false;
+                evictions++;
+                return true;
+            }
+        };
+        this.invalidatedAt = new LinkedHashMap<String, Long>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                if (size() <= ResourceCache.this.capacity) return false;
+                forgottenGeneration = Math.max(forgottenGeneration, eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getTimeToLiveMillis() {
+        return timeToLiveMillis;
+    }
+
+    /**
+     * @param key The key of the resource
+     * @return The cached resource, or null if it's not cached or it expired
+     */
+    @Nullable
+    public synchronized String get(@NonNull String key) {
+        CachedResource cached = entries.get(key);
+        if (cached != null && cached.expiresAt <= currentTimeMillis()) {
+            entries.remove(key);
+            expirations++;
+            cached = null;
+        }
+        if (cached == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return cached.resource;
+    }
+
+    /**
+     * Caches a resource fetched from another peer
+     *
+     * @param key      The key of the resource
+     * @param resource The resource
+     */
+    public synchronized void put(@NonNull String key, @NonNull String resource) {
+        entries.put(key, new CachedResource(resource, currentTimeMillis() + timeToLiveMillis));
+    }
+
+    /**
+     * Caches a resource fetched from another peer, unless its key was invalidated after the fetch
+     * started
+     *
+     * @param key        The key of the resource
+     * @param resource   The resource
+     * @param generation The {@link #getGeneration() generation} of the cache when the fetch started
+     * @return True if the resource was cached, false if it was dropped
+     */
+    public synchronized boolean put(@NonNull String key, @NonNull String resource, long generation) {
+        Long invalidated = invalidatedAt.get(key);
+        if ((invalidated != null ? invalidated : forgottenGeneration) > generation) return false;
+        put(key, resource);
+        return true;
+    }
+
+    /**
+     * @return The current generation, to give to {@link #put(String, String, long)}
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Drops the cached resource of a key, because it was changed or removed
+     *
+     * @param key The key of the resource
+     */
+    public synchronized void invalidate(@NonNull String key) {
+        generation++;
+        invalidatedAt.remove(key);
+        invalidatedAt.put(key, generation);
+        if (entries.remove(key) != null) invalidations++;
+    }
+
+    /**
+     * Drops every cached resource
+     */
+    public synchronized void clear() {
+        generation++;
+        invalidatedAt.clear();
+        forgottenGeneration = generation;
+        entries.clear();
+    }
+
+    /**
+     * @return The number of cached resources, expired ones included until they're read
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return The number of reads answered by the cache so far
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * @return The number of reads the cache couldn't answer so far
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * @return The number of resources dropped to make room for newer ones so far
+     */
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * @return The number of resources dropped because their time to live passed so far
+     */
+    public synchronized long getExpirationCount() {
+        return expirations;
+    }
+
+    /**
+     * @return The number of resources dropped because their key was updated so far
+     */
+    public synchronized long getInvalidationCount() {
+        return invalidations;
+    }
+
+    /**
+     * @return The current time, in milliseconds
+     */
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,354 @@
+package com.eis.smsnetwork.query;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.eis.communication.network.NetDictionary;
+import com.eis.communication.network.NetSubscriberList;
+import com.eis.communication.network.Version;
+import com.eis.communication.network.VersionedNetDictionary;
+import com.eis.communication.network.VersionedResource;
+import com.eis.communication.network.listeners.GetResourceListener;
+import com.eis.smslibrary.SMSPeer;
+import com.eis.smsnetwork.SMSFailReason;
+import com.eis.smsnetwork.TransportClient;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looks up in the network the resources missing from the local dictionary.
+ * <p>
+ * A {@link ResourceQuery} is sent to at most {@link #getFanout()} random subscribers, and every
+ * {@link ResourceReply} is matched to it by its correlation id. The lookup waits for every peer
+ * asked and keeps the newest reply, so that a peer which missed the latest writes can't answer
+ * with an old resource, or with one which was removed since: a versioned reply wins over one
+ * without a version, and among versionless replies the first one wins. The lookup fails with
+ * {@link SMSFailReason#NO_RESOURCE} if there are no subscribers to ask or the newest reply says
+ * the key is missing or removed. Once the deadline passes the lookup ends with the newest reply
+ * received so far, failing with {@link SMSFailReason#REQUEST_EXPIRED} if no peer had the resource.
+ * <p>
+ * Lookups of a key already being looked up don't send a new query: their listeners are completed
+ * together with the first one. Listeners are called from the thread receiving the reply, or from
+ * the timer of this lookup.
+ */
+public class ResourceLookup extends TransportClient {
+
+    /**
+     * Default maximum number of peers a query is sent to
+     */
+    public static final int DEFAULT_FANOUT = 3;
+    /**
+     * Default time a lookup waits for a reply, in milliseconds
+     */
+    public static final long DEFAULT_TIMEOUT_MILLIS = 30000;
+
+    private final NetDictionary<String, String> netDictionary;
+    private final NetSubscriberList<SMSPeer> netSubscribers;
+    private final int fanout;
+    private final long timeoutMillis;
+    private final Random random = new Random();
+    private final ScheduledExecutorService timer;
+
+    private final Map<String, PendingLookup> lookupsByKey = new HashMap<>();
+    private final Map<Integer, PendingLookup> lookupsById = new HashMap<>();
+    private int nextCorrelationId = new Random().nextInt(Integer.MAX_VALUE);
+    private long sentQueries = 0;
+    private long deduplicatedLookups = 0;
+
+    /**
+     * A lookup waiting for its replies
+     */
+    private static class PendingLookup {
+        final int correlationId;
+        final String key;
+        final Set<SMSPeer> waitingPeers;
+        final List<GetResourceListener<String, String, SMSFailReason>> listeners = new ArrayList<>();
+        ScheduledFuture<?> expiry;
+        String resource = null;
+        Version version = null;
+
+        PendingLookup(int correlationId, String key, Set<SMSPeer> peers) {
+            this.correlationId = correlationId;
+            this.key = key;
+            this.waitingPeers = peers;
+        }
+
+        /**
+         * Keeps the reply if it's newer than the best one received so far
+         */
+        void offer(ResourceReply reply) {
+            if (reply.getVersion() == null) {
+                if (version == null && resource == null) resource = reply.getResource();
+                return;
+            }
+            if (version != null && !reply.getVersion().isNewerThan(version)) return;
+            version = reply.getVersion();
+            resource = reply.getResource();
+        }
+    }
+
+    /**
+     * Constructor for a ResourceLookup using the default fanout and timeout
+     *
+     * @param netDictionary  The local dictionary, used to answer the queries of other peers
+     * @param netSubscribers The subscribers the queries are sent to
+     */
+    public ResourceLookup(@NonNull NetDictionary<String, String> netDictionary,
+                          @NonNull NetSubscriberList<SMSPeer> netSubscribers) {
+        this(netDictionary, netSubscribers, DEFAULT_FANOUT, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Constructor for a ResourceLookup
+     *
+     * @param netDictionary  The local dictionary, used to answer the queries of other peers
+     * @param netSubscribers The subscribers the queries are sent to
+     * @param fanout         The maximum number of peers a query is sent to
+     * @param timeoutMillis  The time a lookup waits for a reply, in milliseconds
+     * @throws IllegalArgumentException If the fanout or the timeout are not positive
+     */
+    public ResourceLookup(@NonNull NetDictionary<String, String> netDictionary,
+                          @NonNull NetSubscriberList<SMSPeer> netSubscribers, int fanout, long timeoutMillis) {
+        if (fanout <= 0) throw new IllegalArgumentException("The fanout must be positive!");
+        if (timeoutMillis <= 0) throw new IllegalArgumentException("The timeout must be positive!");
+        this.netDictionary = netDictionary;
+        this.netSubscribers = netSubscribers;
+        this.fanout = fanout;
+        this.timeoutMillis = timeoutMillis;
+        this.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, "ResourceLookup");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public int getFanout() {
+        return fanout;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * Looks a key up in the network, joining the lookup of the same key already in progress if any
+     *
+     * @param key      The key of the resource
+     * @param listener The listener called once the resource is found or the lookup fails
+     */
+    public void lookup(@NonNull String key, @NonNull GetResourceListener<String, String, SMSFailReason> listener) {
+        lookup(key, null, listener);
+    }
+
+    /**
+     * Looks a key up in the given peers, for example the owners of the key when the dictionary
+     * is partitioned. Joins the lookup of the same key already in progress if any.
+     *
+     * @param key      The key of the resource
+     * @param peers    The peers to ask, or null to ask random subscribers
+     * @param listener The listener called once the resource is found or the lookup fails
+     */
+    public void lookup(@NonNull String key, @Nullable List<SMSPeer> peers,
+                       @NonNull GetResourceListener<String, String, SMSFailReason> listener) {
+        ResourceQuery query;
+        synchronized (this) {
+            PendingLookup pending = lookupsByKey.get(key);
+            if (pending != null) {
+                pending.listeners.add(listener);
+                deduplicatedLookups++;
+                return;
+            }
+            if (peers == null) peers = choosePeers();
+            if (peers.isEmpty()) query = null;
+            else {
+                query = new ResourceQuery(takeCorrelationId(), key);
+                final PendingLookup lookup = new PendingLookup(query.getCorrelationId(), key,
+                        new HashSet<>(peers));
+                lookup.listeners.add(listener);
+                lookup.expiry = timer.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (complete(lookup)) expire(lookup);
+                    }
+                }, timeoutMillis, TimeUnit.MILLISECONDS);
+                lookupsByKey.put(key, lookup);
+                lookupsById.put(lookup.correlationId, lookup);
+                sentQueries += peers.size();
+            }
+        }
+        if (query == null) {
+            listener.onGetResourceFailed(key, SMSFailReason.NO_RESOURCE);
+            return;
+        }
+        String message = query.encode();
+        for (SMSPeer peer : peers)
+            sendMessage(peer, message);
+    }
+
+    /**
+     * Handles a message of a lookup: answers a query with the local dictionary, or completes a
+     * lookup with a reply
+     *
+     * @param sender The peer which sent the message
+     * @param data   The text of the message
+     * @return True if the message belonged to a lookup, false otherwise
+     * @throws IllegalArgumentException If the message is malformed
+     */
+    public boolean onMessage(@NonNull SMSPeer sender, @NonNull String data) {
+        if (ResourceQuery.isQuery(data)) {
+            ResourceQuery query = ResourceQuery.decode(data);
+            sendMessage(sender, localReply(query.getCorrelationId(), query.getKey()).encode());
+            return true;
+        }
+        if (ResourceReply.isReply(data)) {
+            onReply(sender, ResourceReply.decode(data));
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return The number of lookups waiting for a reply
+     */
+    public synchronized int getPendingLookupCount() {
+        return lookupsByKey.size();
+    }
+
+    /**
+     * @return The number of query messages sent so far
+     */
+    public synchronized long getSentQueryCount() {
+        return sentQueries;
+    }
+
+    /**
+     * @return The number of lookups which joined one already in progress instead of sending a query
+     */
+    public synchronized long getDeduplicatedLookupCount() {
+        return deduplicatedLookups;
+    }
+
+    /**
+     * Ends every pending lookup as if its deadline passed and stops the timer, the lookup can't
+     * be used anymore
+     */
+    public void shutdown() {
+        List<PendingLookup> pending;
+        synchronized (this) {
+            pending = new ArrayList<>(lookupsByKey.values());
+        }
+        for (PendingLookup lookup : pending)
+            if (complete(lookup)) expire(lookup);
+        timer.shutdown();
+    }
+
+    private void onReply(SMSPeer sender, ResourceReply reply) {
+        PendingLookup lookup;
+        synchronized (this) {
+            lookup = lookupsById.get(reply.getCorrelationId());
+            // replies from peers which weren't asked, or which already answered, are ignored
+            if (lookup == null || !lookup.waitingPeers.remove(sender)) return;
+            lookup.offer(reply);
+            if (!lookup.waitingPeers.isEmpty()) return;
+        }
+        if (!complete(lookup)) return;
+        if (lookup.resource == null) fail(lookup, SMSFailReason.NO_RESOURCE);
+        else succeed(lookup);
+    }
+
+    /**
+     * Removes a lookup from the pending ones, so that only the first outcome completes it
+     *
+     * @return True if the lookup was pending, false if it was already completed
+     */
+    private synchronized boolean complete(PendingLookup lookup) {
+        if (lookupsById.get(lookup.correlationId) != lookup) return false;
+        lookupsById.remove(lookup.correlationId);
+        lookupsByKey.remove(lookup.key);
+        lookup.expiry.cancel(false);
+        return true;
+    }
+
+    /**
+     * Ends a lookup whose deadline passed with the newest reply received so far
+     */
+    private void expire(PendingLookup lookup) {
+        String resource;
+        Version version;
+        synchronized (this) {
+            resource = lookup.resource;
+            version = lookup.version;
+        }
+        if (resource != null) succeed(lookup);
+        else fail(lookup, version != null ? SMSFailReason.NO_RESOURCE : SMSFailReason.REQUEST_EXPIRED);
+    }
+
+    private void succeed(PendingLookup lookup) {
+        String resource;
+        synchronized (this) {
+            resource = lookup.resource;
+        }
+        for (GetResourceListener<String, String, SMSFailReason> listener : lookup.listeners)
+            listener.onGetResource(lookup.key, resource);
+    }
+
+    private void fail(PendingLookup lookup, SMSFailReason reason) {
+        for (GetResourceListener<String, String, SMSFailReason> listener : lookup.listeners)
+            listener.onGetResourceFailed(lookup.key, reason);
+    }
+
+    /**
+     * @return At most {@link #fanout} random subscribers. Must be called while holding the lock.
+     */
+    private List<SMSPeer> choosePeers() {
+        List<SMSPeer> subscribers = new ArrayList<>(netSubscribers.getSubscribers());
+        if (subscribers.size() > fanout) {
+            Collections.shuffle(subscribers, random);
+            subscribers = subscribers.subList(0, fanout);
+        }
+        return subscribers;
+    }
+
+    /**
+     * @return A new correlation id, never negative. Must be called while holding the lock.
+     */
+    private int takeCorrelationId() {
+        int id = nextCorrelationId;
+        nextCorrelationId = id == Integer.MAX_VALUE ? 0 : id + 1;
+        return id;
+    }
+
+    /**
+     * @return The reply to a query with the local dictionary, with the version of the resource or
+     * of its removal if the dictionary is versioned
+     */
+    private ResourceReply localReply(int correlationId, String key) {
+        try {
+            if (netDictionary instanceof VersionedNetDictionary) {
+                VersionedResource<String> versioned =
+                        ((VersionedNetDictionary<String, String>) netDictionary).getVersionedResource(key);
+                if (versioned == null) return new ResourceReply(correlationId, null);
+                return new ResourceReply(correlationId, versioned.getResource(), versioned.getVersion());
+            }
+            return new ResourceReply(correlationId, netDictionary.getResource(key));
+        } catch (IllegalArgumentException e) {
+            // a key this dictionary can't hold
+            return new ResourceReply(correlationId, null);
+        }
+    }
+}
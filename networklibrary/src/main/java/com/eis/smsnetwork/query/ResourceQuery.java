@@ -0,0 +1,78 @@
+package com.eis.smsnetwork.query;
+
+import androidx.annotation.NonNull;
+
+import com.eis.smsnetwork.codec.FieldReader;
+import com.eis.smsnetwork.codec.Varints;
+
+/**
+ * Request for the resource of a key, sent to the peers which may hold it.
+ * <p>
+ * The message is {@link #QUERY_TYPE}, the correlation id the replies must carry and the key,
+ * written with {@link Varints}.
+ */
+public final class ResourceQuery {
+
+    /**
+     * Type of the message, sent at its beginning
+     */
+    public static final String QUERY_TYPE = "F";
+
+    private final int correlationId;
+    private final String key;
+
+    /**
+     * Constructor for a ResourceQuery
+     *
+     * @param correlationId The id matching the replies to this query
+     * @param key           The key of the resource
+     * @throws IllegalArgumentException If the id is negative
+     */
+    public ResourceQuery(int correlationId, @NonNull String key) {
+        if (correlationId < 0)
+            throw new IllegalArgumentException("Invalid correlation id: " + correlationId);
+        this.correlationId = correlationId;
+        this.key = key;
+    }
+
+    public int getCorrelationId() {
+        return correlationId;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return The text of the message carrying this query
+     */
+    public String encode() {
+        StringBuilder builder = new StringBuilder(QUERY_TYPE);
+        Varints.appendVarint(builder, correlationId);
+        Varints.appendField(builder, key);
+        return builder.toString();
+    }
+
+    /**
+     * @param message The text of a received message
+     * @return True if the message carries a query, false otherwise
+     */
+    public static boolean isQuery(@NonNull String message) {
+        return message.startsWith(QUERY_TYPE);
+    }
+
+    /**
+     * @param message The text of a received query
+     * @return The query carried by the message
+     * @throws IllegalArgumentException If the message is not a well formed query
+     */
+    public static ResourceQuery decode(@NonNull String message) {
+        if (!isQuery(message))
+            throw new IllegalArgumentException("The given message is not a query: " + message);
+        FieldReader reader = new FieldReader(message, QUERY_TYPE.length());
+        ResourceQuery query = new ResourceQuery(reader.readVarint(), reader.readField());
+        if (reader.hasMore())
+            throw new IllegalArgumentException("Unexpected data in: " + message);
+        return query;
+    }
+}
@@ -0,0 +1,143 @@
+package com.eis.smsnetwork.query;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.eis.communication.network.Version;
+import com.eis.smsnetwork.codec.FieldReader;
+import com.eis.smsnetwork.codec.Varints;
+
+/**
+ * Reply to a {@link ResourceQuery}, carrying the resource if the peer holds it. A peer with a
+ * versioned dictionary also sends the version of the resource, or of its removal, so that the
+ * lookup can keep the newest of the replies.
+ * <p>
+ * The message is {@link #REPLY_TYPE}, the correlation id of the query, then one of
+ * {@link #FOUND} and the resource, {@link #FOUND_VERSIONED} with the version and the resource,
+ * {@link #REMOVED} with the version of the removal, or {@link #NOT_FOUND}, written with
+ * {@link Varints}.
+ */
+public final class ResourceReply {
+
+    /**
+     * Type of the message, sent at its beginning
+     */
+    public static final String REPLY_TYPE = "Y";
+    private static final char FOUND = 'f';
+    private static final char FOUND_VERSIONED = 'v';
+    private static final char REMOVED = 'r';
+    private static final char NOT_FOUND = 'n';
+
+    private final int correlationId;
+    private final String resource;
+    private final Version version;
+
+    /**
+     * Constructor for a ResourceReply
+     *
+     * @param correlationId The id of the query answered
+     * @param resource      The resource of the key, or null if the peer doesn't hold it
+     * @throws IllegalArgumentException If the id is negative
+     */
+    public ResourceReply(int correlationId, @Nullable String resource) {
+        this(correlationId, resource, null);
+    }
+
+    /**
+     * Constructor for a ResourceReply carrying a version
+     *
+     * @param correlationId The id of the query answered
+     * @param resource      The resource of the key, or null if the peer doesn't hold it
+     * @param version       The version of the resource, of its removal if the resource is null,
+     *                      or null if the peer doesn't know it
+     * @throws IllegalArgumentException If the id is negative
+     */
+    public ResourceReply(int correlationId, @Nullable String resource, @Nullable Version version) {
+        if (correlationId < 0)
+            throw new IllegalArgumentException("Invalid correlation id: " + correlationId);
+        this.correlationId = correlationId;
+        this.resource = resource;
+        this.version = version;
+    }
+
+    public int getCorrelationId() {
+        return correlationId;
+    }
+
+    /**
+     * @return The resource of the key, or null if the peer doesn't hold it
+     */
+    @Nullable
+    public String getResource() {
+        return resource;
+    }
+
+    /**
+     * @return The version of the resource, of its removal if the resource is null, or null if
+     * the peer didn't send it
+     */
+    @Nullable
+    public Version getVersion() {
+        return version;
+    }
+
+    /**
+     * @return True if the peer knows the resource was removed, false otherwise
+     */
+    public boolean isRemoved() {
+        return resource == null && version != null;
+    }
+
+    /**
+     * @return The text of the message carrying this reply
+     */
+    public String encode() {
+        StringBuilder builder = new StringBuilder(REPLY_TYPE);
+        Varints.appendVarint(builder, correlationId);
+        if (version != null) {
+            builder.append(resource == null ? REMOVED : FOUND_VERSIONED);
+            Varints.appendVarlong(builder, version.getTimestamp());
+            Varints.appendField(builder, version.getOriginator());
+            if (resource != null) Varints.appendField(builder, resource);
+        } else if (resource == null) builder.append(NOT_FOUND);
+        else {
+            builder.append(FOUND);
+            Varints.appendField(builder, resource);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @param message The text of a received message
+     * @return True if the message carries a reply, false otherwise
+     */
+    public static boolean isReply(@NonNull String message) {
+        return message.startsWith(REPLY_TYPE);
+    }
+
+    /**
+     * @param message The text of a received reply
+     * @return The reply carried by the message
+     * @throws IllegalArgumentException If the message is not a well formed reply
+     */
+    public static ResourceReply decode(@NonNull String message) {
+        if (!isReply(message))
+            throw new IllegalArgumentException("The given message is not a reply: " + message);
+        FieldReader reader = new FieldReader(message, REPLY_TYPE.length());
+        int correlationId = reader.readVarint();
+        char outcome = reader.readChar();
+        String resource = null;
+        Version version = null;
+        if (outcome == FOUND_VERSIONED || outcome == REMOVED) {
+            long timestamp = reader.readVarlong();
+            if (timestamp < 0) throw new IllegalArgumentException("Invalid version in: " + message);
+            version = new Version(timestamp, reader.readField());
+        }
+        if (outcome == FOUND || outcome == FOUND_VERSIONED) resource = reader.readField();
+        else if (outcome != NOT_FOUND && outcome != REMOVED)
+            throw new IllegalArgumentException("Invalid reply outcome in: " + message);
+        if (reader.hasMore())
+            throw new IllegalArgumentException("Unexpected data in: " + message);
+        return new ResourceReply(correlationId, resource, version);
+    }
+}
@@ -0,0 +1,645 @@
+package com.eis.smsnetwork.simulation;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.eis.communication.network.HybridLogicalClock;
+import com.eis.communication.network.Transport;
+import com.eis.communication.network.VersionedResource;
+import com.eis.communication.network.commands.CommandExecutor;
+import com.eis.communication.network.commands.InlineCommandExecutor;
+import com.eis.communication.network.listeners.ReceiveListener;
+import com.eis.communication.network.listeners.RemoveResourceListener;
+import com.eis.communication.network.listeners.SetResourceListener;
+import com.eis.communication.network.tracing.TraceSink;
+import com.eis.communication.network.tracing.Tracer;
+import com.eis.communication.network.tracing.TracingTransport;
+import com.eis.smslibrary.SMSPeer;
+import com.eis.smsnetwork.RequestType;
+import com.eis.smsnetwork.ResourceUpdate;
+import com.eis.smsnetwork.SMSFailReason;
+import com.eis.smsnetwork.SMSInvitation;
+import com.eis.smsnetwork.SMSJoinableNetManager;
+import com.eis.smsnetwork.SMSNetDictionary;
+import com.eis.smsnetwork.SMSNetworkManager;
+import com.eis.smsnetwork.SMSWordKeyValidator;
+import com.eis.smsnetwork.broadcast.BatchBroadcaster;
+import com.eis.smsnetwork.broadcast.BatchMessage;
+import com.eis.smsnetwork.broadcast.BroadcastReceiver;
+import com.eis.smsnetwork.smsnetcommands.SMSAddPeer;
+import com.eis.smsnetwork.smsnetcommands.SMSSendInvitation;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Deterministic discrete-event simulation of a network of {@link SMSJoinableNetManager}s, to measure
+ * how the protocol behaves with many more nodes than there are phones to test with.
+ * <p>
+ * Time is virtual: events are kept in a queue ordered by the time they happen at, and running
+ * the simulation jumps from one event to the next, so hours of network activity take as long as
+ * the code they execute. Every node runs the real manager, commands and dictionary, with its
+ * commands executed inline, the clock of its dictionary reading the virtual time and its messages
+ * sent through a simulated transport. A message is delivered after a latency picked uniformly
+ * between the minimum and maximum latency, unless it's lost or its sender or receiver is offline.
+ * Updates are batched by a {@link BatchBroadcaster} on every node, like on a phone, and the
+ * pending batches are flushed in virtual time, see {@link #setBatchDelay(long)}.
+ * <p>
+ * Operations can be traced in virtual time, see {@link #setTraceSink(TraceSink)}.
+ * <p>
+ * Nodes created with {@link #addNode()} are immediately subscribers of all the others, while the
+ * ones created with {@link #join(SimulatedNode)} are invited and receive the state of the network
+ * as a phone does. The simulator handles the invitations and the added peers in place of the
+ * broadcast receiver of a phone, the other membership requests are not simulated. The resumes of
+ * an interrupted state transfer are still timed in real time, so joins are best simulated without
+ * losses.
+ * All random choices are taken from a seeded generator, so a simulation run twice with the same
+ * seed and the same actions gives the same results. The simulator is not thread safe, it must be
+ * driven by a single thread.
+ */
+public class NetworkSimulator {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final long FIRST_ADDRESS = 3400000000L;
+
+    private final Random random;
+    private final PriorityQueue<Event> events = new PriorityQueue<>(11, new Comparator<Event>() {
+        @Override
+        public int compare(Event first, Event second) {
+            if (first.time != second.time) return first.time < second.time ? -1 : 1;
+            return first.sequence < second.sequence ? -1 : first.sequence == second.sequence ? 0 : 1;
+        }
+    });
+    private final SimulatedMembership membership = new SimulatedMembership();
+    private final List<SimulatedNode> nodes = new ArrayList<>();
+    private final Map<SMSPeer, SimulatedNode> nodesByPeer = new HashMap<>();
+    // managers may wrap their transport, so the simulated ones are kept here
+    private final Map<SMSPeer, SimulatedTransport> transports = new HashMap<>();
+    private final Map<String, TrackedWrite> trackedWrites = new HashMap<>();
+    private final List<Long> convergenceTimes = new ArrayList<>();
+    private final List<Long> replicaTimes = new ArrayList<>();
+
+    private long now = 0;
+    private long nextSequence = 0;
+    private long minLatencyMillis = 0;
+    private long maxLatencyMillis = 0;
+    private long batchDelayMillis = BatchBroadcaster.DEFAULT_MAX_DELAY_MILLIS;
+    private double lossRate = 0;
+    private TraceSink traceSink = null;
+
+    private long sentMessages = 0;
+    private long sentBytes = 0;
+    private long deliveredMessages = 0;
+    private long lostMessages = 0;
+    private long writes = 0;
+    private long supersededWrites = 0;
+
+    /**
+     * Something happening at a given virtual time
+     */
+    private static class Event {
+        final long time;
+        final long sequence;
+        final Runnable action;
+
+        Event(long time, long sequence, Runnable action) {
+            this.time = time;
+            this.sequence = sequence;
+            this.action = action;
+        }
+    }
+
+    /**
+     * A write whose propagation to the live nodes is being timed
+     */
+    private static class TrackedWrite {
+        final String value;
+        final long issuedAt;
+        final Set<SMSPeer> missing;
+
+        TrackedWrite(String value, long issuedAt, Set<SMSPeer> missing) {
+            this.value = value;
+            this.issuedAt = issuedAt;
+            this.missing = missing;
+        }
+    }
+
+    /**
+     * Transport of a single node, carrying its messages through the event queue
+     */
+    private class SimulatedTransport implements Transport<SMSPeer> {
+        private final SMSPeer self;
+        private ReceiveListener<SMSPeer> listener = null;
+
+        SimulatedTransport(SMSPeer self) {
+            this.self = self;
+        }
+
+        @Override
+        public void send(@NonNull SMSPeer peer, @NonNull String message) {
+            NetworkSimulator.this.send(self, peer, message);
+        }
+
+        @Override
+        public void setReceiveListener(@Nullable ReceiveListener<SMSPeer> listener) {
+            this.listener = listener;
+        }
+    }
+
+    /**
+     * Batching stage of a node, flushing its pending batches in virtual time
+     */
+    private class VirtualBatchBroadcaster extends BatchBroadcaster {
+        VirtualBatchBroadcaster(SMSNetworkManager manager) {
+            super(manager, manager.getMaxBroadcastLength(), batchDelayMillis);
+        }
+
+        @Override
+        protected void schedule(@NonNull Runnable task, long delayMillis) {
+            NetworkSimulator.this.schedule(delayMillis, task);
+        }
+    }
+
+    /**
+     * Clock reading the virtual time of the simulation
+     */
+    private class VirtualClock extends HybridLogicalClock {
+        @Override
+        protected long currentTimeMillis() {
+            return now;
+        }
+    }
+
+    /**
+     * Tracer stamping the events with the virtual time of the simulation
+     */
+    private class VirtualTracer extends Tracer {
+        VirtualTracer(TraceSink sink, SMSPeer peer, long seed) {
+            super(sink, peer.getAddress(), new Random(seed));
+        }
+
+        @Override
+        protected long currentTimeMillis() {
+            return now;
+        }
+    }
+
+    /**
+     * Listener of the requests of the simulation, whose outcome is observed on the dictionaries
+     */
+    private static final SetResourceListener<String, String, SMSFailReason> IGNORED_SET =
+            new SetResourceListener<String, String, SMSFailReason>() {
+                @Override
+                public void onResourceSet(String key, String value) {
+                }
+
+                @Override
+                public void onResourceSetFail(String key, String value, SMSFailReason reason) {
+                }
+            };
+    private static final RemoveResourceListener<String, SMSFailReason> IGNORED_REMOVE =
+            new RemoveResourceListener<String, SMSFailReason>() {
+                @Override
+                public void onResourceRemoved(String key) {
+                }
+
+                @Override
+                public void onResourceRemoveFail(String key, SMSFailReason reason) {
+                }
+            };
+
+    /**
+     * Constructor for a NetworkSimulator delivering every message immediately
+     *
+     * @param seed The seed of the random choices
+     */
+    public NetworkSimulator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Sets how long messages take to be delivered
+     *
+     * @param minMillis The minimum latency, in milliseconds
+     * @param maxMillis The maximum latency, in milliseconds
+     * @throws IllegalArgumentException If the minimum is negative or greater than the maximum
+     */
+    public void setLatency(long minMillis, long maxMillis) {
+        if (minMillis < 0 || maxMillis < minMillis)
+            throw new IllegalArgumentException("Invalid latency range: " + minMillis + "-" + maxMillis);
+        minLatencyMillis = minMillis;
+        maxLatencyMillis = maxMillis;
+    }
+
+    /**
+     * @param rate The probability of a message being lost, between 0 and 1
+     * @throws IllegalArgumentException If the rate is not between 0 and 1
+     */
+    public void setLossRate(double rate) {
+        if (rate < 0 || rate > 1)
+            throw new IllegalArgumentException("The rate must be between 0 and 1: " + rate);
+        lossRate = rate;
+    }
+
+    /**
+     * Sets how long the nodes added from now on keep their updates pending before broadcasting
+     * them, unless they fill a whole message first
+     *
+     * @param delayMillis The maximum delay of an update, in milliseconds,
+     *                    {@link BatchBroadcaster#DEFAULT_MAX_DELAY_MILLIS} by default
+     * @throws IllegalArgumentException If the delay is negative
+     */
+    public void setBatchDelay(long delayMillis) {
+        if (delayMillis < 0) throw new IllegalArgumentException("The delay can't be negative!");
+        batchDelayMillis = delayMillis;
+    }
+
+    /**
+     * Traces the operations of every node, stamping the events with the virtual time. Traces
+     * are carried in the header of the messages, so the bytes sent grow.
+     *
+     * @param sink The sink collecting the events of every node, or null to stop tracing
+     */
+    public void setTraceSink(@Nullable TraceSink sink) {
+        traceSink = sink;
+        for (int i = 0; i < nodes.size(); i++)
+            nodes.get(i).getManager().setTracer(createTracer(nodes.get(i).getPeer(), i));
+    }
+
+    /**
+     * @param peer  The peer of a node
+     * @param index The index of the node, seeding its trace identifiers
+     * @return The tracer of the node, or null if tracing is disabled
+     */
+    private Tracer createTracer(SMSPeer peer, int index) {
+        return traceSink == null ? null : new VirtualTracer(traceSink, peer, index);
+    }
+
+    /**
+     * Adds a node to the network, subscribed to every other node. Its dictionary starts empty.
+     *
+     * @return The node added
+     */
+    public SimulatedNode addNode() {
+        SimulatedNode node = createNode();
+        membership.add(node.getPeer());
+        return node;
+    }
+
+    /**
+     * Adds a node which joins the network as a phone does: the sponsor invites it, the node
+     * accepts the invitation, and the sponsor adds it to the network and sends it the state of
+     * the network. The node isn't a member until the sponsor receives its acceptance, run the
+     * simulation to complete the join.
+     *
+     * @param sponsor The node inviting the joining one
+     * @return The node added
+     */
+    public SimulatedNode join(@NonNull SimulatedNode sponsor) {
+        SimulatedNode joiner = createNode();
+        CommandExecutor.execute(new SMSSendInvitation(new SMSInvitation(joiner.getPeer()), sponsor.getManager()));
+        return joiner;
+    }
+
+    /**
+     * Creates a node, not yet a member of the network, with an empty dictionary
+     *
+     * @return The node created
+     */
+    private SimulatedNode createNode() {
+        SMSPeer peer = new SMSPeer("+39" + (FIRST_ADDRESS + nodes.size()));
+        SMSNetDictionary dictionary =
+                new SMSNetDictionary(new SMSWordKeyValidator(), peer.getAddress(), new VirtualClock());
+        SMSJoinableNetManager manager = new SMSJoinableNetManager(membership.viewFor(peer), dictionary);
+        manager.setCommandExecutor(new InlineCommandExecutor());
+        manager.setUpdateBroadcaster(new VirtualBatchBroadcaster(manager));
+        manager.setTracer(createTracer(peer, nodes.size()));
+        SimulatedTransport transport = new SimulatedTransport(peer);
+        manager.setTransport(transport);
+        transports.put(peer, transport);
+        SimulatedNode node = new SimulatedNode(peer, manager, dictionary);
+        nodes.add(node);
+        nodesByPeer.put(peer, node);
+        return node;
+    }
+
+    /**
+     * @return The nodes of the network, in the order they were added
+     */
+    public List<SimulatedNode> getNodes() {
+        return Collections.unmodifiableList(nodes);
+    }
+
+    /**
+     * Takes a node offline or brings it back online. While offline every message sent to or by
+     * the node is lost, and it doesn't count as a replica that writes must reach.
+     *
+     * @param node   The node
+     * @param online True to bring the node online, false to take it offline
+     */
+    public void setOnline(@NonNull SimulatedNode node, boolean online) {
+        node.setOnline(online);
+        if (online) return;
+        // nodes gone offline don't hold up the writes
+        Iterator<Map.Entry<String, TrackedWrite>> iterator = trackedWrites.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, TrackedWrite> entry = iterator.next();
+            TrackedWrite write = entry.getValue();
+            if (write.missing.remove(node.getPeer()) && write.missing.isEmpty()) {
+                iterator.remove();
+                convergenceTimes.add(now - write.issuedAt);
+            }
+        }
+    }
+
+    /**
+     * Sets a resource on a node at the current virtual time, and times how long the write takes
+     * to reach every node online
+     *
+     * @param node  The node writing
+     * @param key   The key of the resource
+     * @param value The value of the resource
+     */
+    public void setResource(@NonNull SimulatedNode node, @NonNull String key, @NonNull String value) {
+        track(node, key, value);
+        node.getManager().setResource(key, value, IGNORED_SET);
+        checkWrite(node, key);
+    }
+
+    /**
+     * Removes a resource on a node at the current virtual time, and times how long the removal
+     * takes to reach every node online
+     *
+     * @param node The node removing
+     * @param key  The key of the resource
+     */
+    public void removeResource(@NonNull SimulatedNode node, @NonNull String key) {
+        track(node, key, null);
+        node.getManager().removeResource(key, IGNORED_REMOVE);
+        checkWrite(node, key);
+    }
+
+    /**
+     * Runs an action after some virtual time
+     *
+     * @param delayMillis The virtual time to wait, in milliseconds
+     * @param action      The action to run
+     */
+    public void schedule(long delayMillis, @NonNull Runnable action) {
+        if (delayMillis < 0) throw new IllegalArgumentException("The delay can't be negative!");
+        events.add(new Event(now + delayMillis, nextSequence++, action));
+    }
+
+    /**
+     * Runs the simulation until no event is left
+     *
+     * @return The virtual time reached, in milliseconds
+     */
+    public long run() {
+        return runUntil(Long.MAX_VALUE);
+    }
+
+    /**
+     * Runs the simulation until no event is left or the given virtual time is reached
+     *
+     * @param time The virtual time to stop at, in milliseconds
+     * @return The virtual time reached, in milliseconds
+     */
+    public long runUntil(long time) {
+        while (!events.isEmpty() && events.peek().time <= time) {
+            Event event = events.poll();
+            now = event.time;
+            event.action.run();
+        }
+        if (time != Long.MAX_VALUE && now < time) now = time;
+        return now;
+    }
+
+    /**
+     * @return The current virtual time, in milliseconds
+     */
+    public long getCurrentTime() {
+        return now;
+    }
+
+    /**
+     * @return The number of messages sent so far, lost ones included
+     */
+    public long getSentMessageCount() {
+        return sentMessages;
+    }
+
+    /**
+     * @return The number of bytes of the messages sent so far, as UTF-8 text
+     */
+    public long getSentBytes() {
+        return sentBytes;
+    }
+
+    /**
+     * @return The number of messages delivered so far
+     */
+    public long getDeliveredMessageCount() {
+        return deliveredMessages;
+    }
+
+    /**
+     * @return The number of messages lost so far, because of the loss rate or of offline nodes
+     */
+    public long getLostMessageCount() {
+        return lostMessages;
+    }
+
+    /**
+     * @return The number of writes and removals made through the simulator so far
+     */
+    public long getWriteCount() {
+        return writes;
+    }
+
+    /**
+     * @return The number of writes which reached every node online
+     */
+    public int getConvergedWriteCount() {
+        return convergenceTimes.size();
+    }
+
+    /**
+     * @return The number of writes still missing from some node online
+     */
+    public int getPendingWriteCount() {
+        return trackedWrites.size();
+    }
+
+    /**
+     * @return The number of writes overwritten by a later write of the same key before converging
+     */
+    public long getSupersededWriteCount() {
+        return supersededWrites;
+    }
+
+    /**
+     * @param percentile The percentile, between 0 and 100
+     * @return The time the given percentage of the converged writes took to reach every node
+     * online, in milliseconds, or -1 if no write converged
+     */
+    public long getConvergencePercentile(double percentile) {
+        return percentile(convergenceTimes, percentile);
+    }
+
+    /**
+     * @param percentile The percentile, between 0 and 100
+     * @return The time the given percentage of the replicas reached by a write took to be
+     * reached, in milliseconds, or -1 if no replica was reached. Unlike
+     * {@link #getConvergencePercentile(double)} this counts the writes which lost some messages too.
+     */
+    public long getReplicaPercentile(double percentile) {
+        return percentile(replicaTimes, percentile);
+    }
+
+    /**
+     * Compares the dictionaries of the nodes online with the newest version of every key found
+     * on any of them, removals included. Versions are compared too, since the repairs keep the
+     * version of every write, so a replica holding the right value under another version would
+     * still lose against a write it should win over. A node holding nothing for a key whose newest
+     * version is a removal, because it never saw the key or purged its tombstone, is not divergent.
+     *
+     * @return The fraction of replicas, one per key and node online, not holding the newest
+     * version of their key, between 0 and 1
+     */
+    public double getDivergence() {
+        Map<String, VersionedResource<String>> newest = new HashMap<>();
+        List<SimulatedNode> online = new ArrayList<>();
+        for (SimulatedNode node : nodes) {
+            if (!node.isOnline()) continue;
+            online.add(node);
+            for (Map.Entry<String, VersionedResource<String>> entry :
+                    node.getDictionary().getVersionedResources().entrySet()) {
+                VersionedResource<String> current = newest.get(entry.getKey());
+                if (current == null || entry.getValue().getVersion().isNewerThan(current.getVersion()))
+                    newest.put(entry.getKey(), entry.getValue());
+            }
+        }
+        long replicas = (long) newest.size() * online.size();
+        if (replicas == 0) return 0;
+        long divergent = 0;
+        for (SimulatedNode node : online) {
+            for (Map.Entry<String, VersionedResource<String>> entry : newest.entrySet()) {
+                VersionedResource<String> held = node.getDictionary().getVersionedResource(entry.getKey());
+                if (held == null ? !entry.getValue().isTombstone() : !held.equals(entry.getValue()))
+                    divergent++;
+            }
+        }
+        return (double) divergent / replicas;
+    }
+
+    private static long percentile(List<Long> times, double percentile) {
+        if (percentile < 0 || percentile > 100)
+            throw new IllegalArgumentException("The percentile must be between 0 and 100: " + percentile);
+        if (times.isEmpty()) return -1;
+        List<Long> sorted = new ArrayList<>(times);
+        Collections.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100 * sorted.size());
+        return sorted.get(Math.max(rank, 1) - 1);
+    }
+
+    private void send(SMSPeer from, final SMSPeer to, final String message) {
+        sentMessages++;
+        sentBytes += message.getBytes(UTF_8).length;
+        SimulatedNode sender = nodesByPeer.get(from);
+        if (!sender.isOnline() || random.nextDouble() < lossRate) {
+            lostMessages++;
+            return;
+        }
+        long latency = minLatencyMillis;
+        if (maxLatencyMillis > minLatencyMillis)
+            latency += (long) (random.nextDouble() * (maxLatencyMillis - minLatencyMillis + 1));
+        final SMSPeer sent = from;
+        schedule(latency, new Runnable() {
+            @Override
+            public void run() {
+                deliver(sent, to, message);
+            }
+        });
+    }
+
+    private void deliver(SMSPeer from, SMSPeer to, String message) {
+        SimulatedNode receiver = nodesByPeer.get(to);
+        if (receiver == null || !receiver.isOnline()) {
+            lostMessages++;
+            return;
+        }
+        deliveredMessages++;
+        SimulatedTransport transport = transports.get(to);
+        if (transport.listener != null) transport.listener.onMessageReceived(from, message);
+        message = TracingTransport.removeHeader(message);
+        onMembershipRequest(receiver, from, message);
+        if (trackedWrites.isEmpty()) return;
+        if (BatchMessage.isBatch(message)) {
+            for (ResourceUpdate update : BatchMessage.decode(message).getUpdates())
+                checkWrite(receiver, update.getKey());
+        } else {
+            for (String key : new ArrayList<>(trackedWrites.keySet()))
+                checkWrite(receiver, key);
+        }
+    }
+
+    /**
+     * Handles the requests of the invitations and of the added peers, which on a phone reach the
+     * broadcast receiver instead of the manager
+     */
+    private void onMembershipRequest(SimulatedNode receiver, SMSPeer sender, String message) {
+        SMSJoinableNetManager manager = receiver.getManager();
+        String addPeerPrefix = RequestType.AddPeer.asString() + BroadcastReceiver.FIELD_SEPARATOR;
+        if (message.equals(RequestType.Invite.asString())) {
+            manager.checkInvitation(new SMSInvitation(sender));
+        } else if (message.equals(RequestType.AcceptInvitation.asString())) {
+            // only the peers invited by this node are added
+            if (!manager.getInvitedPeers().remove(sender)) return;
+            CommandExecutor.execute(new SMSAddPeer(sender, manager.getNetSubscriberList(), manager));
+            manager.startSnapshotSync(sender);
+        } else if (message.startsWith(addPeerPrefix)) {
+            manager.getNetSubscriberList().addSubscriber(new SMSPeer(message.substring(addPeerPrefix.length())));
+            manager.onMembershipChanged();
+        }
+    }
+
+    /**
+     * Starts timing a write, replacing the previous write of the same key, on the members online
+     */
+    private void track(SimulatedNode writer, String key, @Nullable String value) {
+        writes++;
+        Set<SMSPeer> missing = new HashSet<>();
+        for (SimulatedNode node : nodes)
+            if (node.isOnline() && membership.contains(node.getPeer())) missing.add(node.getPeer());
+        if (trackedWrites.put(key, new TrackedWrite(value, now, missing)) != null) supersededWrites++;
+    }
+
+    /**
+     * Checks whether a node now holds a tracked write, recording when the write reached the last
+     * node online
+     */
+    private void checkWrite(SimulatedNode node, String key) {
+        TrackedWrite write = trackedWrites.get(key);
+        if (write == null || !write.missing.contains(node.getPeer())) return;
+        String held = node.getDictionary().getResource(key);
+        if (write.value == null ? held != null : !write.value.equals(held)) return;
+        write.missing.remove(node.getPeer());
+        replicaTimes.add(now - write.issuedAt);
+        if (write.missing.isEmpty()) {
+            trackedWrites.remove(key);
+            convergenceTimes.add(now - write.issuedAt);
+        }
+    }
+
+}
@@ -0,0 +1,119 @@
+package com.eis.smsnetwork.simulation;
+
+import androidx.annotation.NonNull;
+
+import com.eis.communication.network.NetSubscriberList;
+import com.eis.communication.network.SubscriberSnapshot;
+import com.eis.smslibrary.SMSPeer;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Membership shared by every node of a simulation. Each node sees it through its own
+ * {@link NetSubscriberList}, holding every member but the node itself, so the simulation needs
+ * a single list of members instead of one per node. A node which isn't a member, because it's
+ * still joining or it left, sees no subscriber at all.
+ */
+class SimulatedMembership {
+
+    private final List<SMSPeer> members = new ArrayList<>();
+    private final Set<SMSPeer> index = new HashSet<>();
+    private long epoch = 0;
+
+    /**
+     * Subscribers as seen by a single node
+     */
+    private class View implements NetSubscriberList<SMSPeer> {
+        private final SMSPeer self;
+
+        View(SMSPeer self) {
+            this.self = self;
+        }
+
+        @Override
+        public void addSubscriber(SMSPeer subscriber) {
+            add(subscriber);
+        }
+
+        @Override
+        public List<SMSPeer> getSubscribers() {
+            return getSnapshot().getSubscribers();
+        }
+
+        @Override
+        public SubscriberSnapshot<SMSPeer> getSnapshot() {
+            if (!index.contains(self)) return new SubscriberSnapshot<>(epoch, new ArrayList<SMSPeer>());
+            List<SMSPeer> others = new ArrayList<>(members.size());
+            for (SMSPeer member : members)
+                if (!member.equals(self)) others.add(member);
+            return new SubscriberSnapshot<>(epoch, others);
+        }
+
+        @Override
+        public void removeSubscriber(SMSPeer subscriber) {
+            if (!remove(subscriber))
+                throw new IllegalArgumentException("The subscriber you're trying to remove is not present!");
+        }
+
+        @Override
+        public boolean isSubscribed(SMSPeer subscriber) {
+            return !subscriber.equals(self) && index.contains(self) && index.contains(subscriber);
+        }
+
+        /**
+         * The node leaves the network
+         */
+        @Override
+        public void clear() {
+            remove(self);
+        }
+    }
+
+    /**
+     * @param self The peer of the node
+     * @return The subscribers as seen by the node
+     */
+    NetSubscriberList<SMSPeer> viewFor(@NonNull SMSPeer self) {
+        return new View(self);
+    }
+
+    /**
+     * @param peer The peer joining
+     * @return True if the peer was added, false if it was already a member
+     */
+    boolean add(@NonNull SMSPeer peer) {
+        if (!index.add(peer)) return false;
+        members.add(peer);
+        epoch++;
+        return true;
+    }
+
+    /**
+     * @param peer The peer leaving
+     * @return True if the peer was removed, false if it wasn't a member
+     */
+    boolean remove(@NonNull SMSPeer peer) {
+        if (!index.remove(peer)) return false;
+        members.remove(peer);
+        epoch++;
+        return true;
+    }
+
+    /**
+     * @param peer A peer
+     * @return True if the peer is a member, false otherwise
+     */
+    boolean contains(@NonNull SMSPeer peer) {
+        return index.contains(peer);
+    }
+
+    /**
+     * @return The number of members
+     */
+    int size() {
+        return members.size();
+    }
+}
@@ -0,0 +1,47 @@
+package com.eis.smsnetwork.simulation;
+
+import com.eis.smslibrary.SMSPeer;
+import com.eis.smsnetwork.SMSJoinableNetManager;
+import com.eis.smsnetwork.SMSNetDictionary;
+
+/**
+ * A node of a {@link NetworkSimulator}: a real {@link SMSJoinableNetManager} whose messages travel
+ * on the simulated network.
+ */
+public class SimulatedNode {
+
+    private final SMSPeer peer;
+    private final SMSJoinableNetManager manager;
+    private final SMSNetDictionary dictionary;
+    private boolean online = true;
+
+    SimulatedNode(SMSPeer peer, SMSJoinableNetManager manager, SMSNetDictionary dictionary) {
+        this.peer = peer;
+        this.manager = manager;
+        this.dictionary = dictionary;
+    }
+
+    public SMSPeer getPeer() {
+        return peer;
+    }
+
+    public SMSJoinableNetManager getManager() {
+        return manager;
+    }
+
+    public SMSNetDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * @return True if the node sends and receives messages, false if it's offline and every
+     * message sent to or by it is lost
+     */
+    public boolean isOnline() {
+        return online;
+    }
+
+    void setOnline(boolean online) {
+        this.online = online;
+    }
+}
@@ -0,0 +1,21 @@
+package com.eis.smsnetwork.smsnetcommands;
+
+/**
+ * Command which broadcasts a message to every subscriber of the network.
+ * The broadcast is always sent to a single snapshot of the subscribers, whose epoch can be
+ * retrieved once the command has been executed.
+ *
+ * @see com.eis.communication.network.SubscriberSnapshot
+ */
+public interface BroadcastCommand {
+
+    /**
+     * Value returned by {@link #getBroadcastEpoch()} if the command hasn't broadcast anything yet
+     */
+    long NOT_BROADCAST = -1;
+
+    /**
+     * @return The epoch of the subscribers the message was broadcast to, or {@link #NOT_BROADCAST}
+     */
+    long getBroadcastEpoch();
+}
@@ -5,8 +5,6 @@ import android.util.Log;
 import androidx.annotation.NonNull;
 
 import com.eis.communication.network.commands.CommandExecutor;
-import com.eis.smslibrary.SMSManager;
-import com.eis.smslibrary.SMSMessage;
 import com.eis.smslibrary.SMSPeer;
 import com.eis.smsnetwork.RequestType;
 import com.eis.smsnetwork.SMSInvitation;
@@ -33,9 +31,11 @@ public class SMSAcceptInvite extends com.eis.communication.network.commands.Acce
 
     protected void execute() {
         SMSPeer inviter = invitation.getInviterPeer();
-        CommandExecutor.execute(new SMSQuitNetwork(SMSJoinableNetManager.getInstance().getNetSubscriberList()));
+        CommandExecutor.execute(new SMSQuitNetwork(netManager.getNetSubscriberList(), netManager));
         netManager.getNetSubscriberList().addSubscriber(inviter);
-        SMSManager.getInstance().sendMessage(new SMSMessage(inviter, RequestType.AcceptInvitation.asString()));
+        // the snapshot sent by the inviter starts a new transfer
+        netManager.getSnapshotReceiver().reset();
+        netManager.getTransport().send(inviter, RequestType.AcceptInvitation.asString());
         Log.d("ACCEPTINVITE_COMMAND", "Accepting invite from: " + inviter);
     }
 }
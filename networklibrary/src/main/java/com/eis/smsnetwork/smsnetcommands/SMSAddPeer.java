@@ -5,8 +5,8 @@ import androidx.annotation.NonNull;
 import com.eis.communication.network.NetSubscriberList;
 import com.eis.smslibrary.SMSPeer;
 import com.eis.smsnetwork.RequestType;
+import com.eis.smsnetwork.SMSNetworkManager;
 import com.eis.smsnetwork.broadcast.BroadcastReceiver;
-import com.eis.smsnetwork.broadcast.BroadcastSender;
 
 /**
  * Command to add a peer to the Subscribers list
@@ -15,25 +15,41 @@ import com.eis.smsnetwork.broadcast.BroadcastSender;
  * @author Marco Cognolato
  * @author Giovanni Velludo
  */
-public class SMSAddPeer extends com.eis.communication.network.commands.AddPeer<SMSPeer> {
+public class SMSAddPeer extends com.eis.communication.network.commands.AddPeer<SMSPeer>
+        implements BroadcastCommand {
+
+    private final SnapshotBroadcast broadcast = new SnapshotBroadcast();
+    private final SMSNetworkManager netManager;
 
     /**
      * SMSAddPeer command constructor, receives the data it needs to operate on.
      *
      * @param peer           The SMSPeer to add to the network
      * @param netSubscribers The subscribers to notify of the newest member
+     * @param netManager     The manager of the network the peer is added to
      */
-    public SMSAddPeer(@NonNull SMSPeer peer, @NonNull NetSubscriberList<SMSPeer> netSubscribers) {
+    public SMSAddPeer(@NonNull SMSPeer peer, @NonNull NetSubscriberList<SMSPeer> netSubscribers,
+                      @NonNull SMSNetworkManager netManager) {
         super(peer, netSubscribers);
+        this.netManager = netManager;
     }
 
     /**
-     * Adds the peer to the subscribers list and broadcasts it to the net
+     * Adds the peer to the subscribers list and broadcasts it to the net, then moves to the new
+     * peer the keys it now owns, if the dictionary is partitioned
      */
     protected void execute() {
         netSubscribers.addSubscriber(peer);
         String addPeerMessage = RequestType.AddPeer.asString() + BroadcastReceiver.FIELD_SEPARATOR +
                 peer.getAddress();
-        BroadcastSender.broadcastMessage(netSubscribers.getSubscribers(), addPeerMessage);
+        broadcast.send(netManager, netSubscribers.getSnapshot(), addPeerMessage);
+        netManager.onMembershipChanged();
+    }
+
+    /**
+     * @return The epoch of the subscribers the message was broadcast to, or {@link #NOT_BROADCAST}
+     */
+    public long getBroadcastEpoch() {
+        return broadcast.getEpoch();
     }
 }
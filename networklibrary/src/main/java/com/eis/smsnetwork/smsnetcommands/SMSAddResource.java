@@ -1,13 +1,12 @@
 package com.eis.smsnetwork.smsnetcommands;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.eis.communication.network.NetDictionary;
-import com.eis.smsnetwork.RequestType;
-import com.eis.smsnetwork.SMSJoinableNetManager;
-import com.eis.smsnetwork.SMSNetDictionary;
-import com.eis.smsnetwork.broadcast.BroadcastReceiver;
-import com.eis.smsnetwork.broadcast.BroadcastSender;
+import com.eis.smsnetwork.ResourceUpdate;
+import com.eis.smsnetwork.SMSNetworkManager;
+import com.eis.smsnetwork.broadcast.UpdateBroadcaster;
 
 /**
  * Command to add a resource to the net dictionary
@@ -16,7 +15,13 @@ import com.eis.smsnetwork.broadcast.BroadcastSender;
  * @author Marco Cognolato
  * @author Giovanni Velludo
  */
-public class SMSAddResource extends com.eis.communication.network.commands.AddResource<String, String> {
+public class SMSAddResource extends com.eis.communication.network.commands.AddResource<String, String>
+        implements BroadcastCommand {
+
+    private final SnapshotBroadcast broadcast = new SnapshotBroadcast();
+    private final UpdateBroadcaster updateBroadcaster;
+    private final SMSNetworkManager netManager;
+    private ResourceUpdate update = null;
 
     /**
      * Constructor for the SMSAddResource command, needs the data to operate
@@ -24,23 +29,68 @@ public class SMSAddResource extends com.eis.communication.network.commands.AddRe
      * @param key           The key of the resource to add
      * @param value         The value of the resource to add
      * @param netDictionary The dictionary to add the resource in
+     * @param netManager    The manager broadcasting the update
+     */
+    public SMSAddResource(@NonNull String key, @NonNull String value, @NonNull NetDictionary<String, String> netDictionary,
+                          @NonNull SMSNetworkManager netManager) {
+        this(key, value, netDictionary, null, netManager);
+    }
+
+    /**
+     * Constructor for the SMSAddResource command, needs the data to operate
+     *
+     * @param key               The key of the resource to add
+     * @param value             The value of the resource to add
+     * @param netDictionary     The dictionary to add the resource in
+     * @param updateBroadcaster The stage to hand the update to, or null to broadcast it immediately
+     * @param netManager        The manager broadcasting the update
      */
-    public SMSAddResource(@NonNull String key, @NonNull String value, @NonNull NetDictionary<String, String> netDictionary) {
+    public SMSAddResource(@NonNull String key, @NonNull String value, @NonNull NetDictionary<String, String> netDictionary,
+                          @Nullable UpdateBroadcaster updateBroadcaster, @NonNull SMSNetworkManager netManager) {
         super(key, value, netDictionary);
+        this.updateBroadcaster = updateBroadcaster;
+        this.netManager = netManager;
     }
 
     /**
-     * Adds the key-resource pair to the dictionary, then broadcasts the message
+     * Adds the key-resource pair to the dictionary, then broadcasts the message.
+     * If an {@link UpdateBroadcaster} was given the update is handed to it instead, which may
+     * batch or coalesce it with the following ones.
      *
      * @throws IllegalArgumentException if fields key or value contain a backslash as their last
      *                                  character.
      */
     protected void execute() {
-        netDictionary.addResource(key, value);
-        String addResourceMessage = RequestType.AddResource.asString() +
-                BroadcastReceiver.FIELD_SEPARATOR + SMSNetDictionary.addEscapes(key) +
-                BroadcastReceiver.FIELD_SEPARATOR + SMSNetDictionary.addEscapes(value);
-        BroadcastSender.broadcastMessage(SMSJoinableNetManager.getInstance().getNetSubscriberList()
-                .getSubscribers(), addResourceMessage);
+        ResourceUpdate update = applyLocally();
+        if (updateBroadcaster != null) {
+            updateBroadcaster.submit(update);
+            return;
+        }
+        String addResourceMessage = update.toRequestMessage();
+        broadcast.send(netManager, addResourceMessage);
+    }
+
+    /**
+     * Adds the key-resource pair to the dictionary, unless it was already done, without
+     * broadcasting the update. The manager calls it on the thread of the request, so that the
+     * dictionary is up to date as soon as the request returns, and leaves only the broadcast to
+     * its executor.
+     *
+     * @return The update to broadcast, with the version given by the dictionary
+     * @throws IllegalArgumentException if the key or the value are not valid
+     */
+    public synchronized ResourceUpdate applyLocally() {
+        if (update == null) {
+            netDictionary.addResource(key, value);
+            update = ResourceUpdate.add(key, value).withVersionFrom(netDictionary);
+        }
+        return update;
+    }
+
+    /**
+     * @return The epoch of the subscribers the message was broadcast to, or {@link #NOT_BROADCAST}
+     */
+    public long getBroadcastEpoch() {
+        return broadcast.getEpoch();
     }
 }
@@ -3,11 +3,12 @@ package com.eis.smsnetwork.smsnetcommands;
 import androidx.annotation.NonNull;
 
 import com.eis.communication.network.NetSubscriberList;
+import com.eis.communication.network.SubscriberSnapshot;
 import com.eis.communication.network.commands.QuitNetwork;
 import com.eis.smslibrary.SMSPeer;
 import com.eis.smsnetwork.RequestType;
 import com.eis.smsnetwork.SMSJoinableNetManager;
-import com.eis.smsnetwork.broadcast.BroadcastSender;
+import com.eis.smsnetwork.partition.KeyPartitioner;
 
 /**
  * Command to quit the current network.
@@ -16,9 +17,10 @@ import com.eis.smsnetwork.broadcast.BroadcastSender;
  * @author Marco Cognolato
  * @author Giovanni Velludo
  */
-public class SMSQuitNetwork extends QuitNetwork<SMSPeer> {
+public class SMSQuitNetwork extends QuitNetwork<SMSPeer> implements BroadcastCommand {
 
     SMSJoinableNetManager netManager;
+    private final SnapshotBroadcast broadcast = new SnapshotBroadcast();
 
     /**
      * Constructor for the SMSQuitNetwork command, needs the data to operate
@@ -33,11 +35,23 @@ public class SMSQuitNetwork extends QuitNetwork<SMSPeer> {
     }
 
     /**
-     * Removes myself from the subscribers list and broadcasts it to the net
+     * Removes myself from the subscribers list and broadcasts it to the net.
+     * The subscribers are taken before clearing the state, so that the message still reaches them.
+     * If the dictionary is partitioned the keys of this node are handed off to their next owners first.
      */
     protected void execute() {
+        SubscriberSnapshot<SMSPeer> subscribers = netSubscribers.getSnapshot();
+        KeyPartitioner partitioner = netManager.getKeyPartitioner();
+        if (partitioner != null) partitioner.handOff();
         netManager.clear();
         String quitNetworkMessage = RequestType.QuitNetwork.asString();
-        BroadcastSender.broadcastMessage(netSubscribers.getSubscribers(), quitNetworkMessage);
+        broadcast.send(netManager, subscribers, quitNetworkMessage);
+    }
+
+    /**
+     * @return The epoch of the subscribers the message was broadcast to, or {@link #NOT_BROADCAST}
+     */
+    public long getBroadcastEpoch() {
+        return broadcast.getEpoch();
     }
 }
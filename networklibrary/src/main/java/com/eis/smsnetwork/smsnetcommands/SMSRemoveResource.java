@@ -1,13 +1,12 @@
 package com.eis.smsnetwork.smsnetcommands;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.eis.communication.network.NetDictionary;
-import com.eis.smsnetwork.RequestType;
-import com.eis.smsnetwork.SMSJoinableNetManager;
-import com.eis.smsnetwork.SMSNetDictionary;
-import com.eis.smsnetwork.broadcast.BroadcastReceiver;
-import com.eis.smsnetwork.broadcast.BroadcastSender;
+import com.eis.smsnetwork.ResourceUpdate;
+import com.eis.smsnetwork.SMSNetworkManager;
+import com.eis.smsnetwork.broadcast.UpdateBroadcaster;
 
 /**
  * Command to remove a resource from the network dictionary
@@ -16,30 +15,80 @@ import com.eis.smsnetwork.broadcast.BroadcastSender;
  * @author Marco Cognolato
  * @author Giovanni Velludo
  */
-public class SMSRemoveResource extends com.eis.communication.network.commands.RemoveResource<String, String> {
+public class SMSRemoveResource extends com.eis.communication.network.commands.RemoveResource<String, String>
+        implements BroadcastCommand {
+
+    private final SnapshotBroadcast broadcast = new SnapshotBroadcast();
+    private final UpdateBroadcaster updateBroadcaster;
+    private final SMSNetworkManager netManager;
+    private ResourceUpdate update = null;
 
     /**
      * Constructor for the SMSRemoveResource command, needs the data to operate
      *
      * @param key           The key identifier of the resource to remove
      * @param netDictionary The dictionary to remove the resource from
+     * @param netManager    The manager broadcasting the update
+     */
+    public SMSRemoveResource(@NonNull String key, @NonNull NetDictionary<String, String> netDictionary,
+                             @NonNull SMSNetworkManager netManager) {
+        this(key, netDictionary, null, netManager);
+    }
+
+    /**
+     * Constructor for the SMSRemoveResource command, needs the data to operate
+     *
+     * @param key               The key identifier of the resource to remove
+     * @param netDictionary     The dictionary to remove the resource from
+     * @param updateBroadcaster The stage to hand the update to, or null to broadcast it immediately
+     * @param netManager        The manager broadcasting the update
      */
-    public SMSRemoveResource(@NonNull String key, @NonNull NetDictionary<String, String> netDictionary) {
+    public SMSRemoveResource(@NonNull String key, @NonNull NetDictionary<String, String> netDictionary,
+                             @Nullable UpdateBroadcaster updateBroadcaster, @NonNull SMSNetworkManager netManager) {
         super(key, netDictionary);
+        this.updateBroadcaster = updateBroadcaster;
+        this.netManager = netManager;
     }
 
     /**
-     * Removes a Resource from the dictionary, then broadcasts it to the net
+     * Removes a Resource from the dictionary, then broadcasts it to the net.
+     * If an {@link UpdateBroadcaster} was given the update is handed to it instead, which may
+     * batch or coalesce it with the following ones.
      *
      * @throws IllegalArgumentException if fields key or value contain a backslash as their last
      *                                  character.
      */
     protected void execute() {
-        netDictionary.removeResource(key);
-        String removeResourceMessage =
-                RequestType.RemoveResource.asString() + BroadcastReceiver.FIELD_SEPARATOR +
-                        SMSNetDictionary.addEscapes(key);
-        BroadcastSender.broadcastMessage(SMSJoinableNetManager.getInstance().getNetSubscriberList()
-                .getSubscribers(), removeResourceMessage);
+        ResourceUpdate update = applyLocally();
+        if (updateBroadcaster != null) {
+            updateBroadcaster.submit(update);
+            return;
+        }
+        String removeResourceMessage = update.toRequestMessage();
+        broadcast.send(netManager, removeResourceMessage);
+    }
+
+    /**
+     * Removes the resource from the dictionary, unless it was already done, without
+     * broadcasting the update. The manager calls it on the thread of the request, so that the
+     * dictionary is up to date as soon as the request returns, and leaves only the broadcast to
+     * its executor.
+     *
+     * @return The update to broadcast, with the version given by the dictionary
+     * @throws IllegalArgumentException if the key is not valid
+     */
+    public synchronized ResourceUpdate applyLocally() {
+        if (update == null) {
+            netDictionary.removeResource(key);
+            update = ResourceUpdate.remove(key).withVersionFrom(netDictionary);
+        }
+        return update;
+    }
+
+    /**
+     * @return The epoch of the subscribers the message was broadcast to, or {@link #NOT_BROADCAST}
+     */
+    public long getBroadcastEpoch() {
+        return broadcast.getEpoch();
     }
 }
@@ -5,8 +5,6 @@ import android.util.Log;
 import androidx.annotation.NonNull;
 
 import com.eis.communication.network.commands.SendInvitation;
-import com.eis.smslibrary.SMSManager;
-import com.eis.smslibrary.SMSMessage;
 import com.eis.smslibrary.SMSPeer;
 import com.eis.smsnetwork.RequestType;
 import com.eis.smsnetwork.SMSInvitation;
@@ -37,8 +35,7 @@ public class SMSSendInvitation extends SendInvitation<SMSInvitation> {
      */
     protected void execute() {
         String message = RequestType.Invite.asString();
-        SMSMessage messageToSend = new SMSMessage(invitation.getInviterPeer(), message);
-        SMSManager.getInstance().sendMessage(messageToSend);
+        netManager.getTransport().send(invitation.getInviterPeer(), message);
         Log.d("SMSINVITE_COMMAND", "Invitation Sent to: " + invitation.getInviterPeer());
         netManager.getInvitedPeers().add(invitation.getInviterPeer());
     }
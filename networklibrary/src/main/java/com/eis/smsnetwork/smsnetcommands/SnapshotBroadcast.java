@@ -0,0 +1,48 @@
+package com.eis.smsnetwork.smsnetcommands;
+
+import androidx.annotation.NonNull;
+
+import com.eis.communication.network.SubscriberSnapshot;
+import com.eis.smslibrary.SMSPeer;
+import com.eis.smsnetwork.SMSNetworkManager;
+
+/**
+ * The broadcast of a {@link BroadcastCommand}: sends its message to a single snapshot of the
+ * subscribers and remembers the epoch of that snapshot. Commands extend different base
+ * commands, so they share this part by holding one instead of inheriting it.
+ */
+class SnapshotBroadcast {
+
+    private volatile long epoch = BroadcastCommand.NOT_BROADCAST;
+
+    /**
+     * Broadcasts a message to the current subscribers of a manager
+     *
+     * @param manager The manager to broadcast the message through
+     * @param message The text of the message
+     */
+    void send(@NonNull SMSNetworkManager manager, @NonNull String message) {
+        send(manager, manager.getNetSubscriberList().getSnapshot(), message);
+    }
+
+    /**
+     * Broadcasts a message to the given subscribers
+     *
+     * @param manager     The manager to broadcast the message through
+     * @param subscribers The subscribers to send the message to
+     * @param message     The text of the message
+     */
+    void send(@NonNull SMSNetworkManager manager, @NonNull SubscriberSnapshot<SMSPeer> subscribers,
+              @NonNull String message) {
+        manager.broadcastMessage(subscribers, message);
+        epoch = subscribers.getEpoch();
+    }
+
+    /**
+     * @return The epoch of the subscribers the message was broadcast to, or
+     * {@link BroadcastCommand#NOT_BROADCAST}
+     */
+    long getEpoch() {
+        return epoch;
+    }
+}
@@ -0,0 +1,412 @@
+package com.eis.smsnetwork.sync;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.eis.communication.network.NetDictionary;
+import com.eis.communication.network.VersionedNetDictionary;
+import com.eis.smslibrary.SMSPeer;
+import com.eis.smsnetwork.ResourceUpdate;
+import com.eis.smsnetwork.SMSNetworkManager;
+import com.eis.smsnetwork.TransportClient;
+import com.eis.smsnetwork.partition.KeyPartitioner;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Repairs a dictionary which diverged from the one of another peer, for example after being
+ * offline or losing some messages, by comparing their {@link MerkleTree}s.
+ * <p>
+ * The peer being repaired starts with {@link #startRepair(SMSPeer)}, sending the hash of its
+ * root to a source peer. Then each side answers the {@link MerkleHashes} of the other one with
+ * the hashes of the children of every node which differs, descending one level per message,
+ * until the source sends the entries of the differing leaves in {@link MerkleLeaf} messages.
+ * If the dictionary is a {@link VersionedNetDictionary} the entries carry their versions and
+ * tombstones and the repaired peer merges them, so a write of the source only replaces an older
+ * one and the local writes the source hasn't seen yet are kept. Otherwise the repaired peer makes
+ * each of those ranges of its dictionary equal to the one of the source, adding, changing and
+ * removing resources.
+ * So the messages exchanged grow with the number of differences and the logarithm of the
+ * dictionary size, while equal dictionaries only cost the hash of the root.
+ * <p>
+ * Both sides must use the same tree depth. Each side builds the tree of its dictionary once per
+ * exchange, when the exchange starts, and answers every message of the exchange with it, so
+ * resources written during an exchange are left to the next one. An exchange is forgotten after
+ * {@link #EXCHANGE_TIMEOUT_MILLIS} without messages, and at most {@link #MAX_EXCHANGES} of each
+ * side are kept at the same time.
+ * <p>
+ * If the dictionary is partitioned the trees only hold the keys both peers own, and the entries
+ * of other keys are never repaired, so a peer doesn't pull the keys it doesn't have to store.
+ */
+public class AntiEntropy extends TransportClient {
+
+    /**
+     * Characters available for a message in a single SMS whatever the configuration of the manager
+     */
+    public static final int DEFAULT_MAX_MESSAGE_LENGTH = SMSNetworkManager.MAX_MESSAGE_LENGTH;
+    /**
+     * Time after its last message an exchange is forgotten, in milliseconds
+     */
+    public static final long EXCHANGE_TIMEOUT_MILLIS = 5 * 60 * 1000;
+    /**
+     * Maximum number of exchanges kept at the same time for each side, the oldest is forgotten first
+     */
+    public static final int MAX_EXCHANGES = 8;
+
+    private final NetDictionary<String, String> netDictionary;
+    private final int depth;
+    private volatile int maxMessageLength;
+    /**
+     * Exchanges repairing the local dictionary, by address of the source
+     */
+    private final Map<String, Exchange> repairs = newExchangeMap();
+    /**
+     * Exchanges repairing the dictionary of another peer, by address of that peer
+     */
+    private final Map<String, Exchange> served = newExchangeMap();
+    private long sentMessages = 0;
+    private long repairedResources = 0;
+    private volatile KeyPartitioner keyPartitioner = null;
+
+    /**
+     * Constructor for an AntiEntropy using the default depth and message length
+     *
+     * @param netDictionary The dictionary to repair, or to repair others with
+     */
+    public AntiEntropy(@NonNull NetDictionary<String, String> netDictionary) {
+        this(netDictionary, MerkleTree.DEFAULT_DEPTH, DEFAULT_MAX_MESSAGE_LENGTH);
+    }
+
+    /**
+     * Constructor for an AntiEntropy
+     *
+     * @param netDictionary    The dictionary to repair, or to repair others with
+     * @param depth            The depth of the trees, the same for every peer
+     * @param maxMessageLength The maximum number of characters of a message
+     * @throws IllegalArgumentException If the depth is not valid for a {@link MerkleTree} or the
+     *                                  message length can't hold a hash
+     */
+    public AntiEntropy(@NonNull NetDictionary<String, String> netDictionary, int depth, int maxMessageLength) {
+        if (depth < 1 || depth > MerkleTree.MAX_DEPTH)
+            throw new IllegalArgumentException("The depth must be between 1 and " + MerkleTree.MAX_DEPTH);
+        this.netDictionary = netDictionary;
+        this.depth = depth;
+        setMaxMessageLength(maxMessageLength);
+    }
+
+    /**
+     * Sets the maximum number of characters of a message
+     *
+     * @param maxMessageLength The maximum number of characters of a message
+     * @throws IllegalArgumentException If the message length can't hold a hash
+     */
+    public void setMaxMessageLength(int maxMessageLength) {
+        if (maxMessageLength < MerkleHashes.headerLength() + MerkleHashes.hashLength(2 << depth, -1))
+            throw new IllegalArgumentException("The message length can't hold any hash!");
+        this.maxMessageLength = maxMessageLength;
+    }
+
+    /**
+     * Starts repairing the local dictionary, making it equal to the one of the source
+     *
+     * @param source The peer whose dictionary is trusted
+     */
+    public void startRepair(@NonNull SMSPeer source) {
+        Exchange exchange = new Exchange(buildTree(source), currentTimeMillis());
+        synchronized (this) {
+            evictExpired(exchange.lastMessageTime);
+            repairs.put(source.getAddress(), exchange);
+        }
+        Map<Integer, Long> root = new HashMap<>();
+        root.put(MerkleTree.ROOT, exchange.tree.getHash(MerkleTree.ROOT));
+        sendHashes(source, true, root);
+    }
+
+    /**
+     * Handles a message of the anti-entropy exchange
+     *
+     * @param sender The peer which sent the message
+     * @param data   The text of the message
+     * @return True if the message belonged to the exchange, false otherwise
+     * @throws IllegalArgumentException If the message belonged to the exchange but was malformed
+     */
+    public boolean onMessage(@NonNull SMSPeer sender, @NonNull String data) {
+        if (MerkleHashes.isHashes(data)) {
+            onHashes(sender, MerkleHashes.decode(data));
+            return true;
+        }
+        if (MerkleLeaf.isLeaf(data)) {
+            onLeaf(sender, MerkleLeaf.decode(data));
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return The number of messages sent so far
+     */
+    public synchronized long getSentMessageCount() {
+        return sentMessages;
+    }
+
+    /**
+     * @return The number of entries added, changed or removed by the repairs so far
+     */
+    public synchronized long getRepairedResourceCount() {
+        return repairedResources;
+    }
+
+    /**
+     * @return The number of exchanges currently remembered, on both sides
+     */
+    public synchronized int getExchangeCount() {
+        evictExpired(currentTimeMillis());
+        return repairs.size() + served.size();
+    }
+
+    /**
+     * Sets the partitioner deciding which keys are exchanged with every peer
+     *
+     * @param partitioner The partitioner of the dictionary, or null to exchange every key
+     */
+    public void setKeyPartitioner(@Nullable KeyPartitioner partitioner) {
+        keyPartitioner = partitioner;
+    }
+
+    /**
+     * @return The current time in milliseconds
+     */
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Builds the tree of the entries exchanged with a peer, the ones of the keys both own if the
+     * dictionary is partitioned
+     */
+    private MerkleTree buildTree(SMSPeer peer) {
+        List<ResourceUpdate> entries = SyncEntries.of(netDictionary);
+        KeyPartitioner partitioner = keyPartitioner;
+        if (partitioner != null) {
+            Iterator<ResourceUpdate> iterator = entries.iterator();
+            while (iterator.hasNext())
+                if (!partitioner.isSharedWith(iterator.next().getKey(), peer)) iterator.remove();
+        }
+        return new MerkleTree(entries, depth);
+    }
+
+    /**
+     * Finds the exchange a message belongs to. The root hash from a repairing peer starts a new
+     * exchange, building the tree of the local dictionary.
+     *
+     * @return The exchange, or null if the message belongs to none
+     */
+    private Exchange getExchange(SMSPeer sender, MerkleHashes message) {
+        long now = currentTimeMillis();
+        Exchange exchange;
+        synchronized (this) {
+            evictExpired(now);
+            if (!message.isFromRepairing())
+                exchange = repairs.get(sender.getAddress());
+            else if (message.getHashes().containsKey(MerkleTree.ROOT))
+                exchange = null;
+            else
+                exchange = served.get(sender.getAddress());
+            if (exchange != null) {
+                exchange.lastMessageTime = now;
+                return exchange;
+            }
+        }
+        // the hashes below the root of a forgotten exchange can't be answered, the repair must restart
+        if (!message.isFromRepairing() || !message.getHashes().containsKey(MerkleTree.ROOT))
+            return null;
+        exchange = new Exchange(buildTree(sender), now);
+        synchronized (this) {
+            served.put(sender.getAddress(), exchange);
+        }
+        return exchange;
+    }
+
+    /**
+     * Forgets the exchanges without messages for longer than the timeout. Must be called while
+     * holding the lock.
+     */
+    private void evictExpired(long now) {
+        evictExpired(repairs, now);
+        evictExpired(served, now);
+    }
+
+    private static void evictExpired(Map<String, Exchange> exchanges, long now) {
+        Iterator<Exchange> iterator = exchanges.values().iterator();
+        while (iterator.hasNext())
+            if (now - iterator.next().lastMessageTime > EXCHANGE_TIMEOUT_MILLIS) iterator.remove();
+    }
+
+    private static Map<String, Exchange> newExchangeMap() {
+        return new LinkedHashMap<String, Exchange>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Exchange> eldest) {
+                return size() > MAX_EXCHANGES;
+            }
+        };
+    }
+
+    private void onHashes(SMSPeer sender, MerkleHashes message) {
+        Exchange exchange = getExchange(sender, message);
+        if (exchange == null) return;
+        MerkleTree tree = exchange.tree;
+        Map<Integer, Long> reply = new LinkedHashMap<>();
+        for (Map.Entry<Integer, Long> hash : message.getHashes().entrySet()) {
+            int node = hash.getKey();
+            // a node out of the tree comes from a peer using another depth
+            if (node < MerkleTree.ROOT || node >= 2 << depth || tree.getHash(node) == hash.getValue())
+                continue;
+            if (!tree.isLeaf(node))
+                for (int child : tree.getChildren(node))
+                    reply.put(child, tree.getHash(child));
+            else if (message.isFromRepairing())
+                sendLeaf(sender, node, tree.getLeafEntries(node).values());
+            else
+                // asking the source for the entries of the leaf
+                reply.put(node, tree.getHash(node));
+        }
+        if (!reply.isEmpty()) sendHashes(sender, !message.isFromRepairing(), reply);
+    }
+
+    private void onLeaf(SMSPeer sender, MerkleLeaf part) {
+        List<ResourceUpdate> remote = new ArrayList<>();
+        long now = currentTimeMillis();
+        Exchange exchange;
+        synchronized (this) {
+            evictExpired(now);
+            exchange = repairs.get(sender.getAddress());
+            if (exchange == null || part.getLeaf() < 1 << depth || part.getLeaf() >= 2 << depth)
+                return;
+            exchange.lastMessageTime = now;
+            Map<Integer, MerkleLeaf> parts = exchange.pendingLeaves.get(part.getLeaf());
+            if (parts == null || parts.values().iterator().next().getParts() != part.getParts()) {
+                parts = new HashMap<>();
+                exchange.pendingLeaves.put(part.getLeaf(), parts);
+            }
+            parts.put(part.getPart(), part);
+            if (parts.size() < part.getParts()) return;
+            exchange.pendingLeaves.remove(part.getLeaf());
+            for (MerkleLeaf received : parts.values())
+                remote.addAll(received.getEntries());
+        }
+        repairLeaf(sender, exchange.tree, part.getLeaf(), remote);
+    }
+
+    /**
+     * Repairs a leaf with the entries received from the source. Versioned entries are merged,
+     * unversioned ones make the leaf equal to the one of the source. The entries of keys not
+     * shared with the source, if the dictionary is partitioned, are ignored.
+     *
+     * @param tree The tree of the local dictionary built when the exchange started
+     */
+    private void repairLeaf(SMSPeer source, MerkleTree tree, int leaf, List<ResourceUpdate> remote) {
+        Map<String, ResourceUpdate> local = tree.getLeafEntries(leaf);
+        KeyPartitioner partitioner = keyPartitioner;
+        boolean versioned = netDictionary instanceof VersionedNetDictionary;
+        int repaired = 0;
+        if (!versioned) {
+            Map<String, ResourceUpdate> remoteKeys = new HashMap<>();
+            for (ResourceUpdate entry : remote)
+                remoteKeys.put(entry.getKey(), entry);
+            for (String key : local.keySet())
+                if (!remoteKeys.containsKey(key)) {
+                    netDictionary.removeResource(key);
+                    repaired++;
+                }
+        }
+        for (ResourceUpdate entry : remote) {
+            if (entry.equals(local.get(entry.getKey())) || tree.leafOf(entry.getKey()) != leaf)
+                continue;
+            if (partitioner != null && !partitioner.isSharedWith(entry.getKey(), source)) continue;
+            // a versioned entry must keep its version, an unversioned one is written as it is
+            if (!versioned) entry = entry.withVersion(null);
+            try {
+                if (entry.applyTo(netDictionary)) repaired++;
+            } catch (IllegalArgumentException e) {
+                // an entry this dictionary doesn't accept can't be repaired
+            }
+        }
+        synchronized (this) {
+            repairedResources += repaired;
+        }
+    }
+
+    private void sendHashes(SMSPeer peer, boolean fromRepairing, Map<Integer, Long> hashes) {
+        Map<Integer, Long> current = new LinkedHashMap<>();
+        int length = MerkleHashes.headerLength();
+        for (Map.Entry<Integer, Long> hash : hashes.entrySet()) {
+            int hashLength = MerkleHashes.hashLength(hash.getKey(), hash.getValue());
+            if (!current.isEmpty() && length + hashLength > maxMessageLength) {
+                send(peer, new MerkleHashes(fromRepairing, current).encode());
+                current = new LinkedHashMap<>();
+                length = MerkleHashes.headerLength();
+            }
+            current.put(hash.getKey(), hash.getValue());
+            length += hashLength;
+        }
+        send(peer, new MerkleHashes(fromRepairing, current).encode());
+    }
+
+    /**
+     * Sends the entries of a leaf, split in as few parts as possible.
+     * An entry longer than a message is still sent, alone.
+     */
+    private void sendLeaf(SMSPeer peer, int leaf, Collection<ResourceUpdate> entries) {
+        int capacity = maxMessageLength - MerkleLeaf.headerLength(leaf, Math.max(1, entries.size()));
+        List<List<ResourceUpdate>> parts = new ArrayList<>();
+        List<ResourceUpdate> current = new ArrayList<>();
+        int length = 0;
+        for (ResourceUpdate entry : SyncEntries.sorted(entries)) {
+            int entryLength = MerkleLeaf.entryLength(entry, current.isEmpty() ? null : current.get(current.size() - 1));
+            if (!current.isEmpty() && length + entryLength > capacity) {
+                parts.add(current);
+                current = new ArrayList<>();
+                // the first entry of a part has a version of its own
+                entryLength = MerkleLeaf.entryLength(entry, null);
+                length = 0;
+            }
+            current.add(entry);
+            length += entryLength;
+        }
+        // an empty leaf is still sent, so the repaired peer removes its resources
+        parts.add(current);
+        for (int i = 0; i < parts.size(); i++)
+            send(peer, new MerkleLeaf(leaf, i, parts.size(), parts.get(i)).encode());
+    }
+
+    private void send(SMSPeer peer, String message) {
+        sendMessage(peer, message);
+        synchronized (this) {
+            sentMessages++;
+        }
+    }
+
+    /**
+     * State of an exchange with another peer
+     */
+    private static class Exchange {
+
+        final MerkleTree tree;
+        /**
+         * Parts of the leaves received so far, by leaf. Only used when repairing the local dictionary
+         */
+        final Map<Integer, Map<Integer, MerkleLeaf>> pendingLeaves = new HashMap<>();
+        long lastMessageTime;
+
+        Exchange(MerkleTree tree, long lastMessageTime) {
+            this.tree = tree;
+            this.lastMessageTime = lastMessageTime;
+        }
+    }
+}
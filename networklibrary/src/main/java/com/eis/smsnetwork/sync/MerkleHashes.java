@@ -0,0 +1,110 @@
+package com.eis.smsnetwork.sync;
+
+import androidx.annotation.NonNull;
+
+import com.eis.smsnetwork.codec.FieldReader;
+import com.eis.smsnetwork.codec.Varints;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Message of the anti-entropy exchange carrying the hashes of some nodes of a {@link MerkleTree}.
+ * <p>
+ * The message starts with {@link #HASHES_TYPE}, then {@link #FROM_REPAIRING} or
+ * {@link #FROM_SOURCE} telling which side of the exchange sent it, followed by node and hash
+ * pairs written with {@link Varints}.
+ */
+public final class MerkleHashes {
+
+    /**
+     * Type of the message, sent at its beginning
+     */
+    public static final String HASHES_TYPE = "H";
+    public static final char FROM_REPAIRING = 'r';
+    public static final char FROM_SOURCE = 's';
+
+    private final boolean fromRepairing;
+    private final Map<Integer, Long> hashes;
+
+    /**
+     * Constructor for a MerkleHashes message
+     *
+     * @param fromRepairing True if sent by the peer being repaired, false if sent by its source
+     * @param hashes        The hashes, by node
+     */
+    public MerkleHashes(boolean fromRepairing, @NonNull Map<Integer, Long> hashes) {
+        this.fromRepairing = fromRepairing;
+        this.hashes = Collections.unmodifiableMap(new LinkedHashMap<>(hashes));
+    }
+
+    /**
+     * @return True if the message was sent by the peer being repaired, false if sent by its source
+     */
+    public boolean isFromRepairing() {
+        return fromRepairing;
+    }
+
+    /**
+     * @return The hashes, by node, unmodifiable
+     */
+    public Map<Integer, Long> getHashes() {
+        return hashes;
+    }
+
+    /**
+     * @return The text of the message
+     */
+    public String encode() {
+        StringBuilder builder = new StringBuilder(HASHES_TYPE);
+        builder.append(fromRepairing ? FROM_REPAIRING : FROM_SOURCE);
+        for (Map.Entry<Integer, Long> hash : hashes.entrySet()) {
+            Varints.appendVarint(builder, hash.getKey());
+            Varints.appendVarlong(builder, hash.getValue());
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return The number of characters taken by the beginning of the message, before the hashes
+     */
+    static int headerLength() {
+        return HASHES_TYPE.length() + 1;
+    }
+
+    /**
+     * @param node A node of the tree
+     * @param hash The hash of the node
+     * @return The number of characters the node and its hash take in a message
+     */
+    static int hashLength(int node, long hash) {
+        return Varints.varintLength(node) + Varints.varlongLength(hash);
+    }
+
+    /**
+     * @param message The text of a received message
+     * @return True if the message carries hashes, false otherwise
+     */
+    public static boolean isHashes(@NonNull String message) {
+        return message.startsWith(HASHES_TYPE);
+    }
+
+    /**
+     * @param message The text of a received message carrying hashes
+     * @return The hashes carried by the message
+     * @throws IllegalArgumentException If the message is not well formed
+     */
+    public static MerkleHashes decode(@NonNull String message) {
+        if (!isHashes(message))
+            throw new IllegalArgumentException("The given message doesn't carry hashes: " + message);
+        FieldReader reader = new FieldReader(message, HASHES_TYPE.length());
+        char sender = reader.readChar();
+        if (sender != FROM_REPAIRING && sender != FROM_SOURCE)
+            throw new IllegalArgumentException("Unknown sender " + sender + " in: " + message);
+        Map<Integer, Long> hashes = new LinkedHashMap<>();
+        while (reader.hasMore())
+            hashes.put(reader.readVarint(), reader.readVarlong());
+        return new MerkleHashes(sender == FROM_REPAIRING, hashes);
+    }
+}
@@ -0,0 +1,132 @@
+package com.eis.smsnetwork.sync;
+
+import androidx.annotation.NonNull;
+
+import com.eis.smsnetwork.ResourceUpdate;
+import com.eis.smsnetwork.codec.FieldReader;
+import com.eis.smsnetwork.codec.Varints;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Message of the anti-entropy exchange carrying the entries of a leaf of a {@link MerkleTree}.
+ * A leaf whose entries don't fit in a single message is split in numbered parts.
+ * <p>
+ * The message starts with {@link #LEAF_TYPE}, then the leaf, the index of the part and the
+ * number of parts written with {@link Varints}, followed by the entries written by
+ * {@link SyncEntries} with their versions, tombstones included.
+ */
+public final class MerkleLeaf {
+
+    /**
+     * Type of the message, sent at its beginning
+     */
+    public static final String LEAF_TYPE = "L";
+
+    private final int leaf;
+    private final int part;
+    private final int parts;
+    private final List<ResourceUpdate> entries;
+
+    /**
+     * Constructor for a MerkleLeaf message
+     *
+     * @param leaf    The leaf the entries belong to
+     * @param part    The index of this part
+     * @param parts   The number of parts the entries of the leaf are split in
+     * @param entries The entries in this part
+     * @throws IllegalArgumentException If the part isn't lower than the number of parts
+     */
+    public MerkleLeaf(int leaf, int part, int parts, @NonNull List<ResourceUpdate> entries) {
+        if (part < 0 || part >= parts)
+            throw new IllegalArgumentException("Invalid part " + part + " of " + parts);
+        this.leaf = leaf;
+        this.part = part;
+        this.parts = parts;
+        this.entries = Collections.unmodifiableList(new ArrayList<>(entries));
+    }
+
+    public int getLeaf() {
+        return leaf;
+    }
+
+    public int getPart() {
+        return part;
+    }
+
+    public int getParts() {
+        return parts;
+    }
+
+    /**
+     * @return The entries in this part, with their versions, unmodifiable
+     */
+    public List<ResourceUpdate> getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return The text of the message
+     */
+    public String encode() {
+        StringBuilder builder = new StringBuilder(LEAF_TYPE);
+        Varints.appendVarint(builder, leaf);
+        Varints.appendVarint(builder, part);
+        Varints.appendVarint(builder, parts);
+        ResourceUpdate previous = null;
+        for (ResourceUpdate entry : entries) {
+            SyncEntries.append(builder, entry, previous);
+            previous = entry;
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @param leaf  The leaf of the message
+     * @param parts The number of parts of the leaf
+     * @return The number of characters taken by the beginning of any part, before the entries
+     */
+    static int headerLength(int leaf, int parts) {
+        return LEAF_TYPE.length() + Varints.varintLength(leaf) + 2 * Varints.varintLength(parts);
+    }
+
+    /**
+     * @param entry    An entry of the leaf
+     * @param previous The entry before it in the same part, or null if it's the first one
+     * @return The number of characters the entry takes in a message
+     */
+    static int entryLength(ResourceUpdate entry, ResourceUpdate previous) {
+        return SyncEntries.length(entry, previous);
+    }
+
+    /**
+     * @param message The text of a received message
+     * @return True if the message carries the entries of a leaf, false otherwise
+     */
+    public static boolean isLeaf(@NonNull String message) {
+        return message.startsWith(LEAF_TYPE);
+    }
+
+    /**
+     * @param message The text of a received message carrying the entries of a leaf
+     * @return The part of the leaf carried by the message
+     * @throws IllegalArgumentException If the message is not well formed
+     */
+    public static MerkleLeaf decode(@NonNull String message) {
+        if (!isLeaf(message))
+            throw new IllegalArgumentException("The given message doesn't carry a leaf: " + message);
+        FieldReader reader = new FieldReader(message, LEAF_TYPE.length());
+        int leaf = reader.readVarint();
+        int part = reader.readVarint();
+        int parts = reader.readVarint();
+        List<ResourceUpdate> entries = new ArrayList<>();
+        ResourceUpdate previous = null;
+        while (reader.hasMore()) {
+            previous = SyncEntries.read(reader, reader.readChar(), previous);
+            entries.add(previous);
+        }
+        return new MerkleLeaf(leaf, part, parts, entries);
+    }
+}
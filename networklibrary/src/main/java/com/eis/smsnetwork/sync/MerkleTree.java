@@ -0,0 +1,184 @@
+package com.eis.smsnetwork.sync;
+
+import androidx.annotation.NonNull;
+
+import com.eis.communication.network.Version;
+import com.eis.smsnetwork.ResourceUpdate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hash tree over the key space of a dictionary.
+ * <p>
+ * Keys are spread over {@code 2^depth} leaves by the hash of the key, so a leaf stands for a
+ * range of the key space. The hash of a leaf is the sum of the hashes of its entries, so it
+ * doesn't depend on their order, and the hash of any other node is made from the hashes of its
+ * two children. An empty subtree always has hash {@link #EMPTY_HASH}.
+ * The hash of an entry covers its version and whether it's a tombstone, so two dictionaries have
+ * the same tree only if they hold the same writes, and the ranges where they differ are found by
+ * descending only into the nodes whose hashes differ.
+ * <p>
+ * Nodes are numbered as in a heap: the root is {@link #ROOT}, the children of node n are 2n and
+ * 2n + 1, and the leaves go from {@code 2^depth} to {@code 2^(depth + 1) - 1}.
+ * The tree is a snapshot: it isn't affected by later changes to the dictionary.
+ */
+public final class MerkleTree {
+
+    public static final int ROOT = 1;
+    public static final long EMPTY_HASH = 0;
+    /**
+     * Default depth, giving 64 leaves
+     */
+    public static final int DEFAULT_DEPTH = 6;
+    public static final int MAX_DEPTH = 20;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long GOLDEN_RATIO = 0x9e3779b97f4a7c15L;
+    /**
+     * Mixed into the hash of a tombstone in place of a value, it's no valid value length
+     */
+    private static final long TOMBSTONE_MARK = -1;
+
+    private final int depth;
+    private final long[] hashes;
+    private final Map<Integer, Map<String, ResourceUpdate>> leafEntries = new HashMap<>();
+
+    /**
+     * Builds the tree of the entries of a dictionary
+     *
+     * @param entries The entries, one per key, with their versions and tombstones if any
+     * @param depth   The depth of the tree, both ends of a comparison must use the same one
+     * @throws IllegalArgumentException If the depth is not between 1 and {@link #MAX_DEPTH}
+     */
+    public MerkleTree(@NonNull Collection<ResourceUpdate> entries, int depth) {
+        if (depth < 1 || depth > MAX_DEPTH)
+            throw new IllegalArgumentException("The depth must be between 1 and " + MAX_DEPTH);
+        this.depth = depth;
+        this.hashes = new long[2 << depth];
+        for (ResourceUpdate entry : entries) {
+            int leaf = leafOf(entry.getKey());
+            hashes[leaf] += hashEntry(entry);
+            Map<String, ResourceUpdate> leafMap = leafEntries.get(leaf);
+            if (leafMap == null) {
+                leafMap = new HashMap<>();
+                leafEntries.put(leaf, leafMap);
+            }
+            leafMap.put(entry.getKey(), entry);
+        }
+        for (int node = (1 << depth) - 1; node >= ROOT; node--)
+            hashes[node] = combine(hashes[2 * node], hashes[2 * node + 1]);
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @param node A node of the tree
+     * @return The hash of the node
+     * @throws IllegalArgumentException If the node is not part of the tree
+     */
+    public long getHash(int node) {
+        checkNode(node);
+        return hashes[node];
+    }
+
+    /**
+     * @param node A node of the tree
+     * @return True if the node is a leaf, false otherwise
+     * @throws IllegalArgumentException If the node is not part of the tree
+     */
+    public boolean isLeaf(int node) {
+        checkNode(node);
+        return node >= 1 << depth;
+    }
+
+    /**
+     * @param node A node of the tree, not a leaf
+     * @return The two children of the node
+     * @throws IllegalArgumentException If the node is not part of the tree or is a leaf
+     */
+    public List<Integer> getChildren(int node) {
+        if (isLeaf(node)) throw new IllegalArgumentException("A leaf has no children: " + node);
+        List<Integer> children = new ArrayList<>(2);
+        children.add(2 * node);
+        children.add(2 * node + 1);
+        return children;
+    }
+
+    /**
+     * @param key A key of the dictionary
+     * @return The leaf the key belongs to
+     */
+    public int leafOf(@NonNull String key) {
+        return (1 << depth) + (int) (mix(hashString(FNV_OFFSET, key)) >>> (Long.SIZE - depth));
+    }
+
+    /**
+     * @param leaf A leaf of the tree
+     * @return The entries whose key belongs to the leaf, by key, unmodifiable
+     * @throws IllegalArgumentException If the node is not a leaf of the tree
+     */
+    public Map<String, ResourceUpdate> getLeafEntries(int leaf) {
+        if (!isLeaf(leaf)) throw new IllegalArgumentException("Not a leaf: " + leaf);
+        Map<String, ResourceUpdate> entries = leafEntries.get(leaf);
+        if (entries == null) return Collections.emptyMap();
+        return Collections.unmodifiableMap(entries);
+    }
+
+    private void checkNode(int node) {
+        if (node < ROOT || node >= hashes.length)
+            throw new IllegalArgumentException("Not a node of the tree: " + node);
+    }
+
+    private static long hashEntry(ResourceUpdate entry) {
+        String key = entry.getKey();
+        long hash = hashString(FNV_OFFSET, key);
+        // the length tells apart ("ab", "c") from ("a", "bc")
+        hash = (hash ^ key.length()) * FNV_PRIME;
+        if (entry.isRemoval())
+            hash = (hash ^ TOMBSTONE_MARK) * FNV_PRIME;
+        else
+            hash = hashString((hash ^ entry.getValue().length()) * FNV_PRIME, entry.getValue());
+        Version version = entry.getVersion();
+        if (version != null) {
+            hash = (hash ^ version.getTimestamp()) * FNV_PRIME;
+            hash = hashString(hash, version.getOriginator());
+        }
+        hash = mix(hash);
+        // an empty leaf must keep EMPTY_HASH, so an entry never hashes to it
+        return hash == EMPTY_HASH ? 1 : hash;
+    }
+
+    private static long combine(long left, long right) {
+        if (left == EMPTY_HASH && right == EMPTY_HASH) return EMPTY_HASH;
+        return mix(left * GOLDEN_RATIO + right);
+    }
+
+    /**
+     * FNV-1a over the characters of a string
+     */
+    private static long hashString(long hash, String string) {
+        for (int i = 0; i < string.length(); i++)
+            hash = (hash ^ string.charAt(i)) * FNV_PRIME;
+        return hash;
+    }
+
+    /**
+     * Finalizer of MurmurHash3, spreading every bit of the input over the whole output
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,166 @@
+package com.eis.smsnetwork.sync;
+
+import androidx.annotation.NonNull;
+
+import com.eis.smsnetwork.ResourceUpdate;
+import com.eis.smsnetwork.codec.FieldReader;
+import com.eis.smsnetwork.codec.Varints;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One numbered piece of the state of the network, sent to a peer which just joined it.
+ * <p>
+ * The message starts with {@link #CHUNK_TYPE}, then the session, the index of the chunk and the
+ * number of chunks in the session, followed by its entries. A subscriber is {@link #PEER} and its
+ * address, a dictionary entry is written by {@link SyncEntries} with its version, tombstones
+ * included. Numbers and strings are written with {@link Varints}, so entries are packed without
+ * separators.
+ */
+public final class SnapshotChunk {
+
+    /**
+     * Type of the message, sent at its beginning
+     */
+    public static final String CHUNK_TYPE = "S";
+    public static final char PEER = 'p';
+
+    private final int sessionId;
+    private final int index;
+    private final int total;
+    private final List<String> peerAddresses;
+    private final List<ResourceUpdate> entries;
+
+    /**
+     * Constructor for a SnapshotChunk
+     *
+     * @param sessionId     The session the chunk belongs to
+     * @param index         The index of the chunk in its session
+     * @param total         The number of chunks in the session
+     * @param peerAddresses The addresses of the subscribers in the chunk
+     * @param entries       The dictionary entries in the chunk
+     * @throws IllegalArgumentException If the session is negative or the index isn't lower than
+     *                                  the number of chunks
+     */
+    public SnapshotChunk(int sessionId, int index, int total, @NonNull List<String> peerAddresses,
+                         @NonNull List<ResourceUpdate> entries) {
+        if (sessionId < 0) throw new IllegalArgumentException("The session can't be negative!");
+        if (index < 0 || index >= total)
+            throw new IllegalArgumentException("Invalid chunk " + index + " of " + total);
+        this.sessionId = sessionId;
+        this.index = index;
+        this.total = total;
+        this.peerAddresses = Collections.unmodifiableList(new ArrayList<>(peerAddresses));
+        this.entries = Collections.unmodifiableList(new ArrayList<>(entries));
+    }
+
+    public int getSessionId() {
+        return sessionId;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * @return The addresses of the subscribers in the chunk, unmodifiable
+     */
+    public List<String> getPeerAddresses() {
+        return peerAddresses;
+    }
+
+    /**
+     * @return The dictionary entries in the chunk, with their versions, unmodifiable
+     */
+    public List<ResourceUpdate> getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return The text of the message carrying this chunk
+     */
+    public String encode() {
+        StringBuilder builder = new StringBuilder(CHUNK_TYPE);
+        Varints.appendVarint(builder, sessionId);
+        Varints.appendVarint(builder, index);
+        Varints.appendVarint(builder, total);
+        for (String address : peerAddresses) {
+            builder.append(PEER);
+            Varints.appendField(builder, address);
+        }
+        ResourceUpdate previous = null;
+        for (ResourceUpdate entry : entries) {
+            SyncEntries.append(builder, entry, previous);
+            previous = entry;
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @param sessionId The session of the chunk
+     * @param index     The index of the chunk
+     * @param total     The number of chunks in the session
+     * @return The number of characters taken by the beginning of the message, before the entries
+     */
+    static int headerLength(int sessionId, int index, int total) {
+        return CHUNK_TYPE.length() + Varints.varintLength(sessionId) + Varints.varintLength(index) +
+                Varints.varintLength(total);
+    }
+
+    /**
+     * @param address The address of a subscriber
+     * @return The number of characters the subscriber takes in a chunk
+     */
+    static int peerLength(String address) {
+        return 1 + Varints.fieldLength(address);
+    }
+
+    /**
+     * @param entry    A dictionary entry
+     * @param previous The entry before it in the same chunk, or null if it's the first one
+     * @return The number of characters the entry takes in a chunk
+     */
+    static int entryLength(ResourceUpdate entry, ResourceUpdate previous) {
+        return SyncEntries.length(entry, previous);
+    }
+
+    /**
+     * @param message The text of a received message
+     * @return True if the message carries a chunk, false otherwise
+     */
+    public static boolean isChunk(@NonNull String message) {
+        return message.startsWith(CHUNK_TYPE);
+    }
+
+    /**
+     * @param message The text of a received chunk
+     * @return The chunk carried by the message
+     * @throws IllegalArgumentException If the message is not a well formed chunk
+     */
+    public static SnapshotChunk decode(@NonNull String message) {
+        if (!isChunk(message))
+            throw new IllegalArgumentException("The given message is not a chunk: " + message);
+        FieldReader reader = new FieldReader(message, CHUNK_TYPE.length());
+        int sessionId = reader.readVarint();
+        int index = reader.readVarint();
+        int total = reader.readVarint();
+        List<String> peerAddresses = new ArrayList<>();
+        List<ResourceUpdate> entries = new ArrayList<>();
+        ResourceUpdate previous = null;
+        while (reader.hasMore()) {
+            char type = reader.readChar();
+            if (type == PEER) peerAddresses.add(reader.readField());
+            else if (SyncEntries.isEntry(type)) {
+                previous = SyncEntries.read(reader, type, previous);
+                entries.add(previous);
+            } else throw new IllegalArgumentException("Unknown entry " + type + " in: " + message);
+        }
+        return new SnapshotChunk(sessionId, index, total, peerAddresses, entries);
+    }
+}
@@ -0,0 +1,215 @@
+package com.eis.smsnetwork.sync;
+
+import androidx.annotation.NonNull;
+
+import com.eis.communication.network.NetDictionary;
+import com.eis.communication.network.NetSubscriberList;
+import com.eis.smslibrary.SMSPeer;
+import com.eis.smsnetwork.ResourceUpdate;
+import com.eis.smsnetwork.TransportClient;
+
+import java.util.BitSet;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Joining side of the state transfer, adding the content of the {@link SnapshotChunk}s received
+ * to the local subscribers and dictionary.
+ * <p>
+ * Chunks are applied as soon as they arrive, in any order, and the ones already received are
+ * ignored. The first chunk received picks the session, chunks of any other session are ignored
+ * until {@link #reset()} is called.
+ * <p>
+ * If no chunk arrives for the resume timeout while the transfer is incomplete, the receiver
+ * resumes it by itself with {@link #resume(SMSPeer)}, which asks only for the chunks from the
+ * first missing one onward. It gives up after {@link #MAX_RESUMES} requests in a row without
+ * any new chunk. Once the last chunk arrives the receiver tells the inviter, once, so that it can
+ * forget the session.
+ */
+public class SnapshotReceiver extends TransportClient {
+
+    /**
+     * Default time without new chunks after which an incomplete transfer is resumed, in milliseconds
+     */
+    public static final long DEFAULT_RESUME_TIMEOUT_MILLIS = 30 * 1000;
+    /**
+     * Maximum number of resume requests sent in a row without receiving any new chunk
+     */
+    public static final int MAX_RESUMES = 5;
+    private static final int NO_SESSION = -1;
+
+    private final NetDictionary<String, String> netDictionary;
+    private final NetSubscriberList<SMSPeer> netSubscribers;
+    private final long resumeTimeoutMillis;
+    private final ScheduledThreadPoolExecutor timer;
+
+    private int sessionId = NO_SESSION;
+    private int total = 0;
+    private SMSPeer inviter = null;
+    private BitSet receivedChunks = new BitSet();
+    private ScheduledFuture<?> scheduledResume = null;
+    private int resumesInARow = 0;
+
+    /**
+     * Constructor for a SnapshotReceiver using the default resume timeout
+     *
+     * @param netDictionary  The dictionary to merge the received entries into
+     * @param netSubscribers The subscribers to add the received peers to
+     */
+    public SnapshotReceiver(@NonNull NetDictionary<String, String> netDictionary,
+                            @NonNull NetSubscriberList<SMSPeer> netSubscribers) {
+        this(netDictionary, netSubscribers, DEFAULT_RESUME_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Constructor for a SnapshotReceiver
+     *
+     * @param netDictionary       The dictionary to merge the received entries into
+     * @param netSubscribers      The subscribers to add the received peers to
+     * @param resumeTimeoutMillis The time without new chunks after which an incomplete transfer
+     *                            is resumed, in milliseconds
+     * @throws IllegalArgumentException If the timeout is not positive
+     */
+    public SnapshotReceiver(@NonNull NetDictionary<String, String> netDictionary,
+                            @NonNull NetSubscriberList<SMSPeer> netSubscribers, long resumeTimeoutMillis) {
+        if (resumeTimeoutMillis <= 0) throw new IllegalArgumentException("The timeout must be positive!");
+        this.netDictionary = netDictionary;
+        this.netSubscribers = netSubscribers;
+        this.resumeTimeoutMillis = resumeTimeoutMillis;
+        this.timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, "SnapshotReceiver");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        // the thread only lives while a transfer is in progress
+        timer.setKeepAliveTime(resumeTimeoutMillis, TimeUnit.MILLISECONDS);
+        timer.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Applies a received chunk, and waits for the next one if the transfer is still incomplete or
+     * acknowledges the end of the transfer if it's the last one
+     *
+     * @param inviter The peer which sent the chunk
+     * @param chunk   The chunk received
+     * @return True if the chunk was applied, false if it had already been received or it belongs
+     * to another session than the current one
+     */
+    public synchronized boolean onChunk(@NonNull SMSPeer inviter, @NonNull SnapshotChunk chunk) {
+        if (sessionId == NO_SESSION) {
+            sessionId = chunk.getSessionId();
+            total = chunk.getTotal();
+            receivedChunks = new BitSet(total);
+            this.inviter = inviter;
+        }
+        if (chunk.getSessionId() != sessionId || !inviter.equals(this.inviter)) return false;
+        if (chunk.getIndex() >= total || receivedChunks.get(chunk.getIndex())) return false;
+        for (String address : chunk.getPeerAddresses())
+            netSubscribers.addSubscriber(new SMSPeer(address));
+        // merged, so a write received while the transfer was going on isn't overwritten
+        for (ResourceUpdate entry : chunk.getEntries())
+            entry.applyTo(netDictionary);
+        receivedChunks.set(chunk.getIndex());
+        resumesInARow = 0;
+        cancelResume();
+        if (isComplete()) resume(inviter);
+        else scheduleResume();
+        return true;
+    }
+
+    /**
+     * @return True if every chunk of the current session was received, false otherwise or if no
+     * session was started
+     */
+    public synchronized boolean isComplete() {
+        return sessionId != NO_SESSION && receivedChunks.cardinality() == total;
+    }
+
+    /**
+     * @return The number of chunks of the current session received so far
+     */
+    public synchronized int getReceivedChunkCount() {
+        return receivedChunks.cardinality();
+    }
+
+    /**
+     * @return The request for the chunks still missing, asking for the chunk after the last one if
+     * the session is complete, or null if no chunk was received yet
+     */
+    public synchronized SnapshotResume getResumeRequest() {
+        if (sessionId == NO_SESSION) return null;
+        int firstMissing = receivedChunks.nextClearBit(0);
+        return new SnapshotResume(sessionId, Math.min(firstMissing, total));
+    }
+
+    /**
+     * Asks the inviter for the chunks still missing, or tells it the session is complete
+     *
+     * @param inviter The peer sending the chunks
+     * @return True if the request was sent, false if no chunk was received yet, so there is no
+     * session to resume
+     */
+    public boolean resume(@NonNull SMSPeer inviter) {
+        SnapshotResume request = getResumeRequest();
+        if (request == null) return false;
+        sendMessage(inviter, request.encode());
+        return true;
+    }
+
+    /**
+     * Forgets the current session, to be called before joining another network
+     */
+    public synchronized void reset() {
+        cancelResume();
+        sessionId = NO_SESSION;
+        total = 0;
+        inviter = null;
+        receivedChunks = new BitSet();
+        resumesInARow = 0;
+    }
+
+    /**
+     * Resumes the transfer once the timeout expires. Must be called while holding the lock.
+     */
+    private void scheduleResume() {
+        scheduledResume = timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                onResumeTimeout();
+            }
+        }, resumeTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Cancels the scheduled resume, if any. Must be called while holding the lock.
+     */
+    private void cancelResume() {
+        if (scheduledResume != null) {
+            scheduledResume.cancel(false);
+            scheduledResume = null;
+        }
+    }
+
+    /**
+     * Asks for the missing chunks if none arrived since the resume was scheduled
+     */
+    private void onResumeTimeout() {
+        SMSPeer currentInviter;
+        SnapshotResume request;
+        synchronized (this) {
+            scheduledResume = null;
+            if (sessionId == NO_SESSION || isComplete() || resumesInARow >= MAX_RESUMES) return;
+            resumesInARow++;
+            currentInviter = inviter;
+            // taken while incomplete, so it never acknowledges the end of the transfer
+            request = getResumeRequest();
+            scheduleResume();
+        }
+        sendMessage(currentInviter, request.encode());
+    }
+}
@@ -0,0 +1,79 @@
+package com.eis.smsnetwork.sync;
+
+import androidx.annotation.NonNull;
+
+import com.eis.smsnetwork.codec.FieldReader;
+import com.eis.smsnetwork.codec.Varints;
+
+/**
+ * Request sent by a joining peer to get the chunks of a session starting from the first one it
+ * misses. Asking for the chunk after the last one tells the sender the session is complete.
+ * <p>
+ * The message is {@link #RESUME_TYPE}, the session and the index of the first chunk to send,
+ * written with {@link Varints}.
+ */
+public final class SnapshotResume {
+
+    /**
+     * Type of the message, sent at its beginning
+     */
+    public static final String RESUME_TYPE = "Q";
+
+    private final int sessionId;
+    private final int fromIndex;
+
+    /**
+     * Constructor for a SnapshotResume
+     *
+     * @param sessionId The session to resume
+     * @param fromIndex The index of the first chunk to send
+     * @throws IllegalArgumentException If the session or the index are negative
+     */
+    public SnapshotResume(int sessionId, int fromIndex) {
+        if (sessionId < 0 || fromIndex < 0)
+            throw new IllegalArgumentException("Invalid resume of session " + sessionId + " from " + fromIndex);
+        this.sessionId = sessionId;
+        this.fromIndex = fromIndex;
+    }
+
+    public int getSessionId() {
+        return sessionId;
+    }
+
+    public int getFromIndex() {
+        return fromIndex;
+    }
+
+    /**
+     * @return The text of the message carrying this request
+     */
+    public String encode() {
+        StringBuilder builder = new StringBuilder(RESUME_TYPE);
+        Varints.appendVarint(builder, sessionId);
+        Varints.appendVarint(builder, fromIndex);
+        return builder.toString();
+    }
+
+    /**
+     * @param message The text of a received message
+     * @return True if the message carries a resume request, false otherwise
+     */
+    public static boolean isResume(@NonNull String message) {
+        return message.startsWith(RESUME_TYPE);
+    }
+
+    /**
+     * @param message The text of a received resume request
+     * @return The request carried by the message
+     * @throws IllegalArgumentException If the message is not a well formed request
+     */
+    public static SnapshotResume decode(@NonNull String message) {
+        if (!isResume(message))
+            throw new IllegalArgumentException("The given message is not a resume request: " + message);
+        FieldReader reader = new FieldReader(message, RESUME_TYPE.length());
+        SnapshotResume resume = new SnapshotResume(reader.readVarint(), reader.readVarint());
+        if (reader.hasMore())
+            throw new IllegalArgumentException("Unexpected data in: " + message);
+        return resume;
+    }
+}
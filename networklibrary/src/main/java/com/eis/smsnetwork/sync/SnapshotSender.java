@@ -0,0 +1,229 @@
+package com.eis.smsnetwork.sync;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.eis.communication.network.NetDictionary;
+import com.eis.communication.network.NetSubscriberList;
+import com.eis.smslibrary.SMSPeer;
+import com.eis.smsnetwork.ResourceUpdate;
+import com.eis.smsnetwork.SMSNetworkManager;
+import com.eis.smsnetwork.TransportClient;
+import com.eis.smsnetwork.partition.KeyPartitioner;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Inviter side of the state transfer to a peer which just joined the network.
+ * <p>
+ * When a session is started the subscribers and the dictionary are copied and packed into as few
+ * {@link SnapshotChunk}s as possible, which are then sent to the joining peer. The chunks of a
+ * session are kept until the peer tells it has all of them, so it can ask again for the ones it
+ * missed with a {@link SnapshotResume}, getting the same state it started receiving.
+ * Only the most recent {@link #MAX_SESSIONS} sessions are kept.
+ * If the dictionary is partitioned only the keys the joining peer owns are sent.
+ */
+public class SnapshotSender extends TransportClient {
+
+    /**
+     * Characters available for a chunk in a single SMS whatever the configuration of the manager
+     */
+    public static final int DEFAULT_MAX_MESSAGE_LENGTH = SMSNetworkManager.MAX_MESSAGE_LENGTH;
+    /**
+     * Maximum number of sessions kept at the same time
+     */
+    public static final int MAX_SESSIONS = 16;
+
+    private final NetDictionary<String, String> netDictionary;
+    private final NetSubscriberList<SMSPeer> netSubscribers;
+    private volatile int maxMessageLength;
+    private final Map<String, Session> sessions = new LinkedHashMap<String, Session>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Session> eldest) {
+            return size() > MAX_SESSIONS;
+        }
+    };
+    private int nextSessionId = new Random().nextInt(Integer.MAX_VALUE);
+    private long sentChunks = 0;
+    private volatile KeyPartitioner keyPartitioner = null;
+
+    /**
+     * Constructor for a SnapshotSender using the default message length
+     *
+     * @param netDictionary  The dictionary to send
+     * @param netSubscribers The subscribers to send
+     */
+    public SnapshotSender(@NonNull NetDictionary<String, String> netDictionary,
+                          @NonNull NetSubscriberList<SMSPeer> netSubscribers) {
+        this(netDictionary, netSubscribers, DEFAULT_MAX_MESSAGE_LENGTH);
+    }
+
+    /**
+     * Constructor for a SnapshotSender
+     *
+     * @param netDictionary    The dictionary to send
+     * @param netSubscribers   The subscribers to send
+     * @param maxMessageLength The maximum number of characters of a chunk
+     * @throws IllegalArgumentException If the message length can't hold any entry
+     */
+    public SnapshotSender(@NonNull NetDictionary<String, String> netDictionary,
+                          @NonNull NetSubscriberList<SMSPeer> netSubscribers, int maxMessageLength) {
+        this.netDictionary = netDictionary;
+        this.netSubscribers = netSubscribers;
+        setMaxMessageLength(maxMessageLength);
+    }
+
+    /**
+     * Sets the maximum number of characters of a chunk, for the sessions started from now on
+     *
+     * @param maxMessageLength The maximum number of characters of a chunk
+     * @throws IllegalArgumentException If the message length can't hold any entry
+     */
+    public void setMaxMessageLength(int maxMessageLength) {
+        if (maxMessageLength <= SnapshotChunk.headerLength(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE))
+            throw new IllegalArgumentException("The message length can't hold any entry!");
+        this.maxMessageLength = maxMessageLength;
+    }
+
+    /**
+     * Takes a snapshot of the network and sends all of its chunks to a joining peer, replacing
+     * any previous session with the same peer
+     *
+     * @param joiner The peer which just joined the network
+     * @return The id of the new session
+     */
+    public synchronized int startSession(@NonNull SMSPeer joiner) {
+        int sessionId = nextSessionId;
+        nextSessionId = (nextSessionId + 1) & Integer.MAX_VALUE;
+        List<String> chunks = packChunks(sessionId, joiner);
+        sessions.remove(joiner.getAddress());
+        sessions.put(joiner.getAddress(), new Session(sessionId, chunks));
+        sendChunks(joiner, chunks, 0);
+        return sessionId;
+    }
+
+    /**
+     * Sends again the chunks a joining peer asked for, or forgets the session if the peer has all
+     * of them
+     *
+     * @param joiner  The peer which sent the request
+     * @param request The request received
+     * @return False if the session is unknown, so the peer should get a new one, true otherwise
+     */
+    public synchronized boolean onResumeRequest(@NonNull SMSPeer joiner, @NonNull SnapshotResume request) {
+        Session session = sessions.get(joiner.getAddress());
+        if (session == null || session.id != request.getSessionId()) return false;
+        if (request.getFromIndex() >= session.chunks.size()) sessions.remove(joiner.getAddress());
+        else sendChunks(joiner, session.chunks, request.getFromIndex());
+        return true;
+    }
+
+    /**
+     * @return The number of sessions waiting to be completed
+     */
+    public synchronized int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * @return The number of chunks sent so far, including the ones sent again
+     */
+    public synchronized long getSentChunkCount() {
+        return sentChunks;
+    }
+
+    /**
+     * Sets the partitioner deciding which keys a joining peer owns, so that only those are sent
+     *
+     * @param partitioner The partitioner of the dictionary, or null to send every key
+     */
+    public void setKeyPartitioner(@Nullable KeyPartitioner partitioner) {
+        keyPartitioner = partitioner;
+    }
+
+    private void sendChunks(SMSPeer joiner, List<String> chunks, int fromIndex) {
+        for (int i = fromIndex; i < chunks.size(); i++) {
+            sendMessage(joiner, chunks.get(i));
+            sentChunks++;
+        }
+    }
+
+    /**
+     * Packs the subscribers, except the joining peer, and the entries of the dictionary the peer
+     * owns, with their versions and tombstones, into chunks, in order.
+     * An entry longer than a chunk is still sent, alone.
+     */
+    private List<String> packChunks(int sessionId, SMSPeer joiner) {
+        List<String> addresses = new ArrayList<>();
+        for (SMSPeer peer : netSubscribers.getSubscribers())
+            if (!peer.equals(joiner)) addresses.add(peer.getAddress());
+        List<ResourceUpdate> entries = SyncEntries.of(netDictionary);
+        KeyPartitioner partitioner = keyPartitioner;
+        if (partitioner != null) {
+            Iterator<ResourceUpdate> iterator = entries.iterator();
+            while (iterator.hasNext())
+                if (!partitioner.isOwnedBy(iterator.next().getKey(), joiner)) iterator.remove();
+        }
+
+        // the index and total fields can't be longer than the ones of one chunk per entry
+        int maxChunks = Math.max(1, addresses.size() + entries.size());
+        int capacity = maxMessageLength - SnapshotChunk.headerLength(sessionId, maxChunks, maxChunks);
+
+        List<List<String>> chunkAddresses = new ArrayList<>();
+        List<List<ResourceUpdate>> chunkEntries = new ArrayList<>();
+        List<String> currentAddresses = new ArrayList<>();
+        List<ResourceUpdate> currentEntries = new ArrayList<>();
+        int currentLength = 0;
+        for (String address : addresses) {
+            int length = SnapshotChunk.peerLength(address);
+            if (currentLength > 0 && currentLength + length > capacity) {
+                chunkAddresses.add(currentAddresses);
+                chunkEntries.add(currentEntries);
+                currentAddresses = new ArrayList<>();
+                currentEntries = new ArrayList<>();
+                currentLength = 0;
+            }
+            currentAddresses.add(address);
+            currentLength += length;
+        }
+        for (ResourceUpdate entry : entries) {
+            ResourceUpdate previous = currentEntries.isEmpty() ? null : currentEntries.get(currentEntries.size() - 1);
+            int length = SnapshotChunk.entryLength(entry, previous);
+            if (currentLength > 0 && currentLength + length > capacity) {
+                chunkAddresses.add(currentAddresses);
+                chunkEntries.add(currentEntries);
+                currentAddresses = new ArrayList<>();
+                currentEntries = new ArrayList<>();
+                // the first entry of a chunk has a version of its own
+                length = SnapshotChunk.entryLength(entry, null);
+                currentLength = 0;
+            }
+            currentEntries.add(entry);
+            currentLength += length;
+        }
+        // an empty network still gets a chunk, so the joining peer knows the transfer is complete
+        chunkAddresses.add(currentAddresses);
+        chunkEntries.add(currentEntries);
+
+        int total = chunkAddresses.size();
+        List<String> chunks = new ArrayList<>(total);
+        for (int i = 0; i < total; i++)
+            chunks.add(new SnapshotChunk(sessionId, i, total, chunkAddresses.get(i), chunkEntries.get(i)).encode());
+        return chunks;
+    }
+
+    private static class Session {
+        private final int id;
+        private final List<String> chunks;
+
+        private Session(int id, List<String> chunks) {
+            this.id = id;
+            this.chunks = chunks;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.eis.smsnetwork.sync;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.eis.communication.network.NetDictionary;
+import com.eis.communication.network.Version;
+import com.eis.communication.network.VersionedNetDictionary;
+import com.eis.communication.network.VersionedResource;
+import com.eis.smsnetwork.ResourceUpdate;
+import com.eis.smsnetwork.codec.FieldReader;
+import com.eis.smsnetwork.codec.Varints;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dictionary entries carried by the messages of the state transfer and of the anti-entropy
+ * exchange, as {@link ResourceUpdate}s.
+ * <p>
+ * An entry is {@link #RESOURCE}, its key and its value, or {@link #TOMBSTONE} and the key of a
+ * removed resource. An entry with a version is preceded by {@link #VERSION}, its timestamp and
+ * its originator, so that the receiver merges it with the last-writer-wins rule instead of
+ * overwriting newer writes. Everything is written with {@link Varints}.
+ * <p>
+ * A version takes more than most resources, so when the previous entry of the same message has a
+ * version with the same originator and an older timestamp it's written as {@link #NEXT_VERSION}
+ * and the difference between the timestamps only. The entries are {@link #sort(List) sorted} by
+ * originator and timestamp before being packed, so that almost every version is written this way.
+ */
+final class SyncEntries {
+
+    static final char RESOURCE = 'r';
+    static final char TOMBSTONE = 't';
+    static final char VERSION = 'v';
+    static final char NEXT_VERSION = 'w';
+
+    private static final Comparator<ResourceUpdate> BY_VERSION = new Comparator<ResourceUpdate>() {
+        @Override
+        public int compare(ResourceUpdate first, ResourceUpdate second) {
+            Version firstVersion = first.getVersion();
+            Version secondVersion = second.getVersion();
+            if (firstVersion == null || secondVersion == null)
+                return (firstVersion == null ? 0 : 1) - (secondVersion == null ? 0 : 1);
+            int byOriginator = firstVersion.getOriginator().compareTo(secondVersion.getOriginator());
+            if (byOriginator != 0) return byOriginator;
+            long firstTimestamp = firstVersion.getTimestamp();
+            long secondTimestamp = secondVersion.getTimestamp();
+            return firstTimestamp < secondTimestamp ? -1 : firstTimestamp == secondTimestamp ? 0 : 1;
+        }
+    };
+
+    private SyncEntries() {
+    }
+
+    /**
+     * @param dictionary A dictionary
+     * @return Every entry of the dictionary with its version and its tombstones, or only its
+     * resources, without versions, if the dictionary doesn't version them, {@link #sort(List) sorted}
+     */
+    static List<ResourceUpdate> of(@NonNull NetDictionary<String, String> dictionary) {
+        List<ResourceUpdate> entries = new ArrayList<>();
+        if (dictionary instanceof VersionedNetDictionary) {
+            for (Map.Entry<String, VersionedResource<String>> entry :
+                    ((VersionedNetDictionary<String, String>) dictionary).getVersionedResources().entrySet())
+                entries.add(ResourceUpdate.of(entry.getKey(), entry.getValue()));
+        } else {
+            for (Map.Entry<String, String> resource : dictionary.getResources().entrySet())
+                entries.add(ResourceUpdate.add(resource.getKey(), resource.getValue()));
+        }
+        sort(entries);
+        return entries;
+    }
+
+    /**
+     * @param entries Some entries
+     * @return The entries sorted by originator and timestamp, the unversioned ones first
+     */
+    static List<ResourceUpdate> sorted(@NonNull Collection<ResourceUpdate> entries) {
+        List<ResourceUpdate> sorted = new ArrayList<>(entries);
+        sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Sorts entries by originator and timestamp, the unversioned ones first
+     *
+     * @param entries The entries to sort
+     */
+    static void sort(@NonNull List<ResourceUpdate> entries) {
+        Collections.sort(entries, BY_VERSION);
+    }
+
+    /**
+     * @param builder  The builder to append the entry to
+     * @param entry    The entry to append
+     * @param previous The entry appended before this one in the same message, or null if it's the
+     *                 first one
+     */
+    static void append(@NonNull StringBuilder builder, @NonNull ResourceUpdate entry,
+                       @Nullable ResourceUpdate previous) {
+        Version version = entry.getVersion();
+        if (version != null && followsVersionOf(entry, previous)) {
+            builder.append(NEXT_VERSION);
+            Varints.appendVarlong(builder, version.getTimestamp() - previous.getVersion().getTimestamp());
+        } else if (version != null) {
+            builder.append(VERSION);
+            Varints.appendVarlong(builder, version.getTimestamp());
+            Varints.appendField(builder, version.getOriginator());
+        }
+        builder.append(entry.isRemoval() ? TOMBSTONE : RESOURCE);
+        Varints.appendField(builder, entry.getKey());
+        if (!entry.isRemoval()) Varints.appendField(builder, entry.getValue());
+    }
+
+    /**
+     * @param entry    An entry
+     * @param previous The entry before it in the same message, or null if it's the first one
+     * @return The number of characters the entry takes in a message
+     */
+    static int length(@NonNull ResourceUpdate entry, @Nullable ResourceUpdate previous) {
+        int length = 1 + Varints.fieldLength(entry.getKey());
+        if (!entry.isRemoval()) length += Varints.fieldLength(entry.getValue());
+        Version version = entry.getVersion();
+        if (version != null && followsVersionOf(entry, previous))
+            length += 1 + Varints.varlongLength(version.getTimestamp() - previous.getVersion().getTimestamp());
+        else if (version != null)
+            length += 1 + Varints.varlongLength(version.getTimestamp()) + Varints.fieldLength(version.getOriginator());
+        return length;
+    }
+
+    /**
+     * @param type The first character of an entry
+     * @return True if the character starts an entry, false otherwise
+     */
+    static boolean isEntry(char type) {
+        return type == RESOURCE || type == TOMBSTONE || type == VERSION || type == NEXT_VERSION;
+    }
+
+    /**
+     * Reads an entry whose first character was already read
+     *
+     * @param reader   The reader of the message, placed after the first character of the entry
+     * @param type     The first character of the entry
+     * @param previous The entry read before this one from the same message, or null if it's the
+     *                 first one
+     * @return The entry
+     * @throws IllegalArgumentException If the entry is not well formed
+     */
+    static ResourceUpdate read(@NonNull FieldReader reader, char type, @Nullable ResourceUpdate previous) {
+        Version version = null;
+        if (type == VERSION) {
+            long timestamp = reader.readVarlong();
+            if (timestamp < 0) throw new IllegalArgumentException("Invalid entry version: " + timestamp);
+            version = new Version(timestamp, reader.readField());
+            type = reader.readChar();
+        } else if (type == NEXT_VERSION) {
+            if (previous == null || previous.getVersion() == null)
+                throw new IllegalArgumentException("A relative version must follow a versioned entry");
+            long timestamp = previous.getVersion().getTimestamp() + reader.readVarlong();
+            if (timestamp < 0) throw new IllegalArgumentException("Invalid entry version: " + timestamp);
+            version = new Version(timestamp, previous.getVersion().getOriginator());
+            type = reader.readChar();
+        }
+        if (type == RESOURCE)
+            return ResourceUpdate.add(reader.readField(), reader.readField()).withVersion(version);
+        if (type == TOMBSTONE)
+            return ResourceUpdate.remove(reader.readField()).withVersion(version);
+        throw new IllegalArgumentException("Unknown entry: " + type);
+    }
+
+    /**
+     * @return True if the version of the entry can be written relative to the one of the previous
+     * entry, false otherwise
+     */
+    private static boolean followsVersionOf(ResourceUpdate entry, ResourceUpdate previous) {
+        if (previous == null || previous.getVersion() == null) return false;
+        Version version = entry.getVersion();
+        Version previousVersion = previous.getVersion();
+        return version.getOriginator().equals(previousVersion.getOriginator()) &&
+                version.getTimestamp() >= previousVersion.getTimestamp();
+    }
+}
@@ -0,0 +1,79 @@
+package com.eis.communication.network;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the HybridLogicalClock class
+ */
+public class HybridLogicalClockTest {
+
+    private long time;
+    private HybridLogicalClock clock;
+
+    @Before
+    public void setup() {
+        time = 1000;
+        clock = new HybridLogicalClock() {
+            @Override
+            protected long currentTimeMillis() {
+                return time;
+            }
+        };
+    }
+
+    @Test
+    public void timestamps_followPhysicalTime() {
+        long first = clock.now();
+        time = 2000;
+        long second = clock.now();
+        assertEquals(1000, HybridLogicalClock.toMillis(first));
+        assertEquals(2000, HybridLogicalClock.toMillis(second));
+    }
+
+    @Test
+    public void timestamps_growWithinSameMillisecond() {
+        long first = clock.now();
+        long second = clock.now();
+        assertTrue(second > first);
+        assertEquals(HybridLogicalClock.toMillis(first), HybridLogicalClock.toMillis(second));
+    }
+
+    @Test
+    public void timestamps_growWhenPhysicalTimeGoesBack() {
+        long first = clock.now();
+        time = 500;
+        assertTrue(clock.now() > first);
+    }
+
+    @Test
+    public void remoteTimestamp_fromFaster_clockIsPassed() {
+        long remote = 5000L << HybridLogicalClock.LOGICAL_BITS;
+        clock.update(remote);
+        assertTrue(clock.now() > remote);
+    }
+
+    @Test
+    public void remoteTimestamp_beyondMaxDrift_isRejected() {
+        long remote = (time + HybridLogicalClock.DEFAULT_MAX_DRIFT_MILLIS + 1) << HybridLogicalClock.LOGICAL_BITS;
+        assertFalse(clock.update(remote));
+        assertEquals(time, HybridLogicalClock.toMillis(clock.now()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeDrift_isRejected() {
+        new HybridLogicalClock(-1);
+    }
+
+    @Test
+    public void versions_areOrderedByTimestampThenOriginator() {
+        Version older = new Version(1, "b");
+        Version newer = new Version(2, "a");
+        assertTrue(newer.isNewerThan(older));
+        assertFalse(older.isNewerThan(newer));
+        assertTrue(new Version(1, "c").isNewerThan(older));
+        assertFalse(older.isNewerThan(new Version(1, "b")));
+    }
+}
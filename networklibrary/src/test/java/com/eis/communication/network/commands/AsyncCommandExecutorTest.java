@@ -0,0 +1,142 @@
+package com.eis.communication.network.commands;
+
+import com.eis.communication.network.listeners.CommandListener;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the AsyncCommandExecutor class
+ */
+public class AsyncCommandExecutorTest {
+
+    private static final int TIMEOUT_SECONDS = 5;
+
+    private AsyncCommandExecutor executor;
+
+    @Before
+    public void setup() {
+        executor = new AsyncCommandExecutor(1, 2);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void submit_executesOnWorkerThread() throws Exception {
+        final AtomicReference<Thread> executingThread = new AtomicReference<>();
+        Future<Void> future = executor.submit(new Command() {
+            @Override
+            protected void execute() {
+                executingThread.set(Thread.currentThread());
+            }
+        }, null);
+        future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertNotNull(executingThread.get());
+        assertNotSame(Thread.currentThread(), executingThread.get());
+    }
+
+    @Test
+    public void singleWorker_keepsSubmissionOrder() throws Exception {
+        final List<Integer> executed = new ArrayList<>();
+        AsyncCommandExecutor orderedExecutor = new AsyncCommandExecutor(1, 100);
+        Future<Void> last = null;
+        for (int i = 0; i < 100; i++) {
+            final int index = i;
+            last = orderedExecutor.submit(new Command() {
+                @Override
+                protected void execute() {
+                    executed.add(index);
+                }
+            }, null);
+        }
+        last.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        for (int i = 0; i < 100; i++)
+            assertEquals(i, (int) executed.get(i));
+        orderedExecutor.shutdown();
+    }
+
+    @Test
+    public void listener_isNotifiedOfSuccessAndFailure() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        executor.submit(new Command() {
+            @Override
+            protected void execute() {
+            }
+        }, listener).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertTrue(listener.executed);
+
+        RecordingListener failingListener = new RecordingListener();
+        Future<Void> future = executor.submit(new Command() {
+            @Override
+            protected void execute() {
+                throw new IllegalArgumentException();
+            }
+        }, failingListener);
+        try {
+            future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+        assertTrue(failingListener.failure instanceof IllegalArgumentException);
+    }
+
+    @Test
+    public void fullQueue_rejectsCommands() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        Command blocking = new Command() {
+            @Override
+            protected void execute() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        // one running plus two waiting fill the executor
+        executor.submit(blocking, null);
+        executor.submit(blocking, null);
+        executor.submit(blocking, null);
+        RecordingListener listener = new RecordingListener();
+        Future<Void> rejected = executor.submit(blocking, listener);
+        assertTrue(listener.failure instanceof RejectedExecutionException);
+        assertTrue(rejected.isDone());
+        release.countDown();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noWorkers_throws() {
+        new AsyncCommandExecutor(0, 1);
+    }
+
+    private static class RecordingListener implements CommandListener {
+        volatile boolean executed;
+        volatile Exception failure;
+
+        @Override
+        public void onCommandExecuted() {
+            executed = true;
+        }
+
+        @Override
+        public void onCommandFailed(Exception exception) {
+            failure = exception;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.eis.communication.network.loopback;
+
+import com.eis.communication.network.Transport;
+import com.eis.communication.network.listeners.ReceiveListener;
+import com.eis.smslibrary.SMSPeer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the LoopbackNetwork class
+ */
+public class LoopbackNetworkTest {
+
+    private static final SMSPeer PEER1 = new SMSPeer("+393423541601");
+    private static final SMSPeer PEER2 = new SMSPeer("+393423541602");
+    private static final SMSPeer UNKNOWN = new SMSPeer("+393423541609");
+    private static final int MESSAGES = 50;
+    private static final long TIMEOUT = 5000;
+
+    private LoopbackNetwork<SMSPeer> network;
+    private Transport<SMSPeer> sender;
+    private List<String> received;
+
+    @Before
+    public void setup() {
+        network = new LoopbackNetwork<>(42);
+        sender = network.getTransport(PEER1);
+        received = Collections.synchronizedList(new ArrayList<String>());
+        network.getTransport(PEER2).setReceiveListener(new ReceiveListener<SMSPeer>() {
+            @Override
+            public void onMessageReceived(SMSPeer from, String message) {
+                assertEquals(PEER1.getAddress(), from.getAddress());
+                received.add(message);
+            }
+        });
+    }
+
+    @After
+    public void teardown() {
+        network.shutdown();
+    }
+
+    private void sendAll() throws InterruptedException {
+        for (int i = 0; i < MESSAGES; i++)
+            sender.send(PEER2, String.valueOf(i));
+        assertTrue(network.awaitIdle(TIMEOUT));
+    }
+
+    @Test
+    public void send_deliversInOrderWithoutLatency() throws InterruptedException {
+        sendAll();
+        assertEquals(MESSAGES, received.size());
+        for (int i = 0; i < MESSAGES; i++)
+            assertEquals(String.valueOf(i), received.get(i));
+        assertEquals(MESSAGES, network.getDeliveredMessageCount());
+        assertEquals(0, network.getLostMessageCount());
+    }
+
+    @Test
+    public void send_losesEveryMessage() throws InterruptedException {
+        network.setLossRate(1);
+        sendAll();
+        assertTrue(received.isEmpty());
+        assertEquals(MESSAGES, network.getSentMessageCount());
+        assertEquals(MESSAGES, network.getLostMessageCount());
+    }
+
+    @Test
+    public void send_losesSomeMessages() throws InterruptedException {
+        network.setLossRate(0.5);
+        sendAll();
+        assertTrue(received.size() > 0 && received.size() < MESSAGES);
+        assertEquals(MESSAGES, network.getDeliveredMessageCount() + network.getLostMessageCount());
+    }
+
+    @Test
+    public void send_reordersHeldBackMessages() throws InterruptedException {
+        network.setReorder(0.5, 50);
+        sendAll();
+        assertEquals(MESSAGES, received.size());
+        List<String> sorted = new ArrayList<>(received);
+        Collections.sort(sorted, new Comparator<String>() {
+            @Override
+            public int compare(String first, String second) {
+                return Integer.valueOf(first).compareTo(Integer.valueOf(second));
+            }
+        });
+        assertNotEquals(sorted, received);
+    }
+
+    @Test
+    public void send_respectsSendRate() throws InterruptedException {
+        network.setSendRate(100);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 10; i++)
+            sender.send(PEER2, String.valueOf(i));
+        assertTrue(network.awaitIdle(TIMEOUT));
+        // the tenth message leaves 9 intervals of 10 milliseconds after the first
+        assertTrue(System.currentTimeMillis() - start >= 90);
+        assertEquals(10, received.size());
+    }
+
+    @Test
+    public void send_appliesLatency() throws InterruptedException {
+        network.setLatency(20, 30);
+        sender.send(PEER2, "hello");
+        assertTrue(network.awaitIdle(TIMEOUT));
+        assertTrue(network.getAverageDelayMillis() >= 20);
+        assertTrue(network.getAverageDelayMillis() <= 30);
+    }
+
+    @Test
+    public void send_toUnknownPeerIsLost() throws InterruptedException {
+        sender.send(UNKNOWN, "hello");
+        assertTrue(network.awaitIdle(TIMEOUT));
+        assertEquals(1, network.getLostMessageCount());
+        assertEquals(0, network.getDeliveredMessageCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setLossRate_rejectsInvalidRate() {
+        network.setLossRate(1.5);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setLatency_rejectsInvertedRange() {
+        network.setLatency(10, 5);
+    }
+}
@@ -0,0 +1,117 @@
+package com.eis.communication.network.metrics;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the SimpleMetricsRegistry class, and for the exporting of its metrics
+ */
+public class SimpleMetricsRegistryTest {
+
+    private static final String NAME = "metric";
+
+    private SimpleMetricsRegistry registry;
+
+    @Before
+    public void setup() {
+        registry = new SimpleMetricsRegistry();
+    }
+
+    @Test
+    public void counter_sameNameSameCounter() {
+        registry.counter(NAME).increment();
+        registry.counter(NAME).add(2);
+        assertSame(registry.counter(NAME), registry.counter(NAME));
+        assertEquals(3, registry.counter(NAME).getCount());
+        assertEquals(3, (long) registry.getSnapshot().getCounters().get(NAME));
+    }
+
+    @Test
+    public void histogram_recordsDistribution() {
+        Histogram histogram = registry.histogram(NAME);
+        for (int i = 1; i <= 100; i++)
+            histogram.record(i);
+        HistogramSnapshot snapshot = histogram.getSnapshot();
+        assertEquals(100, snapshot.getCount());
+        assertEquals(5050, snapshot.getSum());
+        assertEquals(100, snapshot.getMax());
+        assertEquals(50.5, snapshot.getMean(), 0);
+        assertEquals(64, snapshot.getPercentile(50));
+        assertEquals(100, snapshot.getPercentile(99));
+        assertEquals(1, snapshot.getPercentile(0));
+    }
+
+    @Test
+    public void histogram_negativeRecordedAsZero() {
+        registry.histogram(NAME).record(-5);
+        assertEquals(0, registry.histogram(NAME).getSnapshot().getMax());
+        assertEquals(1, registry.histogram(NAME).getSnapshot().getBucketCount(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void histogram_invalidPercentile_throws() {
+        registry.histogram(NAME).getSnapshot().getPercentile(101);
+    }
+
+    @Test
+    public void gauge_readOnSnapshot() {
+        final long[] value = {1};
+        registry.gauge(NAME, new Gauge() {
+            @Override
+            public long getValue() {
+                return value[0];
+            }
+        });
+        assertEquals(1, (long) registry.getSnapshot().getGauges().get(NAME));
+        value[0] = 2;
+        assertEquals(2, (long) registry.getSnapshot().getGauges().get(NAME));
+    }
+
+    @Test
+    public void noOpRegistry_recordsNothing() {
+        MetricsRegistry noOp = NoOpMetricsRegistry.INSTANCE;
+        noOp.counter(NAME).increment();
+        noOp.histogram(NAME).record(10);
+        assertFalse(noOp.isEnabled());
+        assertEquals(0, noOp.counter(NAME).getCount());
+        assertEquals(0, noOp.histogram(NAME).getSnapshot().getCount());
+        assertTrue(noOp.getSnapshot().getCounters().isEmpty());
+    }
+
+    @Test
+    public void reporter_exportsSnapshot() {
+        registry.counter(NAME).increment();
+        final MetricsSnapshot[] exported = new MetricsSnapshot[1];
+        MetricsReporter reporter = new MetricsReporter(registry, new MetricsExporter() {
+            @Override
+            public void export(MetricsSnapshot snapshot) {
+                exported[0] = snapshot;
+            }
+        });
+        assertTrue(reporter.report());
+        assertEquals(1, (long) exported[0].getCounters().get(NAME));
+        assertEquals(1, reporter.getExportCount());
+    }
+
+    @Test
+    public void reporter_exporterThrows_countsFailure() {
+        MetricsReporter reporter = new MetricsReporter(registry, new MetricsExporter() {
+            @Override
+            public void export(MetricsSnapshot snapshot) {
+                throw new IllegalStateException();
+            }
+        });
+        assertFalse(reporter.report());
+        assertEquals(1, reporter.getFailedExportCount());
+        assertEquals(0, reporter.getExportCount());
+    }
+
+    @Test
+    public void messageType_requestOrPrefix() {
+        assertEquals("12", MeteredTransport.getMessageType("12 key value"));
+        assertEquals("B", MeteredTransport.getMessageType("B1key"));
+        assertEquals("empty", MeteredTransport.getMessageType(""));
+    }
+}
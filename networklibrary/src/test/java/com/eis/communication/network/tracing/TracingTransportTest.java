@@ -0,0 +1,206 @@
+package com.eis.communication.network.tracing;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.eis.communication.network.Transport;
+import com.eis.communication.network.listeners.ReceiveListener;
+import com.eis.smslibrary.SMSPeer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the TracingTransport class, and for the propagation of the trace contexts
+ */
+public class TracingTransportTest {
+
+    private static final SMSPeer PEER = new SMSPeer("+393423541601");
+    private static final String MESSAGE = "B1key";
+
+    private InMemoryTraceSink sink;
+    private RecordingTransport inner;
+    private TracingTransport<SMSPeer> transport;
+
+    /**
+     * Transport keeping the messages sent, and letting the test receive messages
+     */
+    private static class RecordingTransport implements Transport<SMSPeer> {
+        final List<String> sent = new ArrayList<>();
+        ReceiveListener<SMSPeer> listener;
+
+        @Override
+        public void send(@NonNull SMSPeer peer, @NonNull String message) {
+            sent.add(message);
+        }
+
+        @Override
+        public void setReceiveListener(@Nullable ReceiveListener<SMSPeer> listener) {
+            this.listener = listener;
+        }
+    }
+
+    @Before
+    public void setup() {
+        sink = new InMemoryTraceSink();
+        inner = new RecordingTransport();
+        transport = new TracingTransport<>(inner, new Tracer(sink, "node"));
+        TraceContext.attach(null);
+    }
+
+    @Test
+    public void send_noContext_messageUnchanged() {
+        transport.send(PEER, MESSAGE);
+        assertEquals(MESSAGE, inner.sent.get(0));
+        assertTrue(sink.getEvents().isEmpty());
+    }
+
+    @Test
+    public void send_withContext_addsHeader() {
+        TraceContext previous = TraceContext.attach(new TraceContext("abc", false));
+        try {
+            transport.send(PEER, MESSAGE);
+        } finally {
+            TraceContext.attach(previous);
+        }
+        assertEquals("Tabc;" + MESSAGE, inner.sent.get(0));
+        TraceEvent event = sink.getEvents().get(0);
+        assertEquals("abc", event.getTraceId());
+        assertEquals(TraceEvent.Type.SEND, event.getType());
+        assertEquals(PEER.getAddress(), event.getPeer());
+        assertEquals("node", event.getNode());
+        assertNull(TraceContext.current());
+    }
+
+    @Test
+    public void send_request_noHeader() {
+        TraceContext previous = TraceContext.attach(new TraceContext("abc", false));
+        try {
+            transport.send(PEER, "3 key");
+        } finally {
+            TraceContext.attach(previous);
+        }
+        assertEquals("3 key", inner.sent.get(0));
+        assertEquals(1, sink.getEvents().size());
+    }
+
+    @Test
+    public void receive_attachesContextAndForwards() {
+        final String[] received = new String[1];
+        transport.setReceiveListener(new ReceiveListener<SMSPeer>() {
+            @Override
+            public void onMessageReceived(SMSPeer sender, String message) {
+                received[0] = message;
+                transport.send(PEER, message);
+            }
+        });
+        inner.listener.onMessageReceived(PEER, "Tb;" + MESSAGE);
+        assertEquals(MESSAGE, received[0]);
+        assertEquals("Tb;" + MESSAGE, inner.sent.get(0));
+        assertEquals(TraceEvent.Type.RECEIVE, sink.getTimeline("b").get(0).getType());
+        assertEquals(TraceEvent.Type.FORWARD, sink.getTimeline("b").get(1).getType());
+        assertNull(TraceContext.current());
+    }
+
+    @Test
+    public void send_manyTraces_carriesTheFirstAndTheCount() {
+        TraceContext previous = TraceContext.attach(new TraceContext("a,b,c", false));
+        try {
+            transport.send(PEER, MESSAGE);
+        } finally {
+            TraceContext.attach(previous);
+        }
+        assertEquals("Ta+2;" + MESSAGE, inner.sent.get(0));
+        // the sending is recorded for every trace
+        assertEquals(3, sink.getEvents().size());
+    }
+
+    @Test
+    public void send_headerFitsTheReservedSpace() {
+        StringBuilder traceIds = new StringBuilder("zzzzzzzz");
+        for (int i = 0; i < 2000; i++)
+            traceIds.append(TraceContext.ID_SEPARATOR).append(Integer.toString(i, 36));
+        TraceContext previous = TraceContext.attach(new TraceContext(traceIds.toString(), false));
+        try {
+            transport.send(PEER, MESSAGE);
+        } finally {
+            TraceContext.attach(previous);
+        }
+        String sent = inner.sent.get(0);
+        assertEquals(MESSAGE, TracingTransport.removeHeader(sent));
+        assertTrue(sent.length() - MESSAGE.length() <= TracingTransport.MAX_HEADER_LENGTH);
+        assertEquals(36 * 36 - 1, TracingTransport.getOmittedTraceCount(sent));
+    }
+
+    @Test
+    public void send_foreignTraceId_noHeader() {
+        TraceContext previous = TraceContext.attach(new TraceContext("Not-A-Trace", false));
+        try {
+            transport.send(PEER, MESSAGE);
+        } finally {
+            TraceContext.attach(previous);
+        }
+        assertEquals(MESSAGE, inner.sent.get(0));
+    }
+
+    @Test
+    public void receive_countsTheOmittedTraces() {
+        transport.setReceiveListener(new ReceiveListener<SMSPeer>() {
+            @Override
+            public void onMessageReceived(SMSPeer sender, String message) {
+                assertEquals("a", TraceContext.current().getTraceIds());
+            }
+        });
+        inner.listener.onMessageReceived(PEER, "Ta+1z;" + MESSAGE);
+        TraceEvent received = sink.getTimeline("a").get(0);
+        assertEquals(TraceEvent.Type.RECEIVE, received.getType());
+        assertTrue(received.getDetail().endsWith("+71 traces"));
+    }
+
+    @Test
+    public void removeHeader_untraced_unchanged() {
+        assertEquals(MESSAGE, TracingTransport.removeHeader(MESSAGE));
+        assertEquals(MESSAGE, TracingTransport.removeHeader("Tx;" + MESSAGE));
+        assertFalse(TracingTransport.isTraced("T;" + MESSAGE));
+        assertNull(TracingTransport.getContext(MESSAGE));
+    }
+
+    @Test
+    public void isTraced_rejectsMalformedHeaders() {
+        assertTrue(TracingTransport.isTraced("Tzz09+1;" + MESSAGE));
+        assertFalse(TracingTransport.isTraced("Ta,b;" + MESSAGE));
+        assertFalse(TracingTransport.isTraced("TAB;" + MESSAGE));
+        assertFalse(TracingTransport.isTraced("T123456789;" + MESSAGE));
+        assertFalse(TracingTransport.isTraced("Ta+;" + MESSAGE));
+        assertFalse(TracingTransport.isTraced("Ta+123;" + MESSAGE));
+        assertFalse(TracingTransport.isTraced("Ta"));
+        assertFalse(TracingTransport.isTraced("Text with a ; inside"));
+        assertEquals("Text with a ; inside", TracingTransport.removeHeader("Text with a ; inside"));
+        assertEquals(0, TracingTransport.getOmittedTraceCount("Ta;" + MESSAGE));
+    }
+
+    @Test
+    public void merge_joinsDistinctTraces() {
+        TraceContext merged = TraceContext.merge(Arrays.asList(
+                new TraceContext("a", true), null, new TraceContext("b,a", false)));
+        assertEquals("a,b", merged.getTraceIds());
+        assertFalse(merged.isRemote());
+        assertNull(TraceContext.merge(Arrays.<TraceContext>asList(null, null)));
+    }
+
+    @Test
+    public void inMemorySink_dropsOldest() {
+        InMemoryTraceSink small = new InMemoryTraceSink(2);
+        for (int i = 0; i < 3; i++)
+            small.record(new TraceEvent("t" + i, TraceEvent.Type.START, i, null, null, null));
+        assertEquals(2, small.getEvents().size());
+        assertEquals("t1", small.getEvents().get(0).getTraceId());
+        assertEquals(1, small.getDroppedEventCount());
+    }
+}
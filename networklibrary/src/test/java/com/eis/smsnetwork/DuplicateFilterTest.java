@@ -0,0 +1,68 @@
+package com.eis.smsnetwork;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the DuplicateFilter class
+ */
+public class DuplicateFilterTest {
+
+    private static final MessageId ID1 = new MessageId("+393423541601", 1);
+    private static final MessageId ID2 = new MessageId("+393423541601", 2);
+    private static final MessageId OTHER_ORIGINATOR = new MessageId("+393423541602", 1);
+
+    private long now;
+    private DuplicateFilter filter;
+
+    @Before
+    public void setup() {
+        now = 0;
+        filter = new DuplicateFilter(2, 1000) {
+            @Override
+            protected long currentTimeMillis() {
+                return now;
+            }
+        };
+    }
+
+    @Test
+    public void sameId_isDuplicate() {
+        assertFalse(filter.isDuplicate(ID1));
+        assertTrue(filter.isDuplicate(ID1));
+        assertEquals(1, filter.getAcceptedCount());
+        assertEquals(1, filter.getDuplicateCount());
+    }
+
+    @Test
+    public void differentIds_areNotDuplicates() {
+        assertFalse(filter.isDuplicate(ID1));
+        assertFalse(filter.isDuplicate(ID2));
+        assertFalse(filter.isDuplicate(OTHER_ORIGINATOR));
+        assertEquals(0, filter.getDuplicateCount());
+    }
+
+    @Test
+    public void expiredId_isForgotten() {
+        filter.isDuplicate(ID1);
+        now = 1001;
+        assertFalse(filter.isDuplicate(ID1));
+    }
+
+    @Test
+    public void capacity_forgetsOldestFirst() {
+        filter.isDuplicate(ID1);
+        filter.isDuplicate(ID2);
+        filter.isDuplicate(OTHER_ORIGINATOR);
+        assertEquals(2, filter.size());
+        assertTrue(filter.isDuplicate(OTHER_ORIGINATOR));
+        assertFalse(filter.isDuplicate(ID1));
+    }
+
+    @Test
+    public void messageId_encodesAndDecodes() {
+        assertEquals(ID2, MessageId.decode(ID2.encode()));
+    }
+}
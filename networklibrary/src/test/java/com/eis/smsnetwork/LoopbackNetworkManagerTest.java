@@ -0,0 +1,280 @@
+package com.eis.smsnetwork;
+
+import com.eis.communication.network.commands.AsyncCommandExecutor;
+import com.eis.communication.network.commands.InlineCommandExecutor;
+import com.eis.communication.network.listeners.GetResourceListener;
+import com.eis.communication.network.listeners.ReceiveListener;
+import com.eis.communication.network.listeners.RemoveResourceListener;
+import com.eis.communication.network.listeners.SetResourceListener;
+import com.eis.communication.network.loopback.LoopbackNetwork;
+import com.eis.communication.network.metrics.MetricsSnapshot;
+import com.eis.communication.network.metrics.NetworkMetrics;
+import com.eis.communication.network.metrics.SimpleMetricsRegistry;
+import com.eis.smslibrary.SMSPeer;
+import com.eis.smsnetwork.broadcast.BatchBroadcaster;
+import com.eis.smsnetwork.dissemination.Disseminator;
+import com.eis.smsnetwork.dissemination.FullMeshStrategy;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests running many SMSNetworkManagers in a single process over a {@link LoopbackNetwork}
+ */
+public class LoopbackNetworkManagerTest {
+
+    private static final int NODES = 100;
+    private static final long TIMEOUT = 5000;
+    private static final String KEY = "key";
+    private static final String VALUE = "value";
+
+    private LoopbackNetwork<SMSPeer> network;
+    private List<SMSPeer> peers;
+    private List<SMSNetworkManager> managers;
+
+    @Before
+    public void setup() {
+        network = new LoopbackNetwork<>(7);
+        network.setLatency(0, 5);
+        peers = new ArrayList<>();
+        managers = new ArrayList<>();
+        for (int i = 0; i < NODES; i++)
+            peers.add(new SMSPeer("+39342354" + (1000 + i)));
+        for (SMSPeer peer : peers) {
+            SMSNetworkManager manager = new SMSNetworkManager();
+            manager.setTransport(network.getTransport(peer));
+            for (SMSPeer other : peers)
+                if (other != peer) manager.getNetSubscriberList().addSubscriber(other);
+            managers.add(manager);
+        }
+    }
+
+    @After
+    public void teardown() {
+        network.shutdown();
+    }
+
+    @Test
+    public void setResource_reachesEveryNode() throws InterruptedException {
+        SMSNetworkManager writer = managers.get(0);
+        BatchBroadcaster broadcaster = new BatchBroadcaster(writer);
+        writer.setUpdateBroadcaster(broadcaster);
+        // the update is handed to the broadcaster before the request returns, so it can be flushed
+        writer.setCommandExecutor(new InlineCommandExecutor());
+        final CountDownLatch set = new CountDownLatch(1);
+        writer.setResource(KEY, VALUE, new SetResourceListener<String, String, SMSFailReason>() {
+            @Override
+            public void onResourceSet(String key, String value) {
+                set.countDown();
+            }
+
+            @Override
+            public void onResourceSetFail(String key, String value, SMSFailReason reason) {
+            }
+        });
+        assertTrue(set.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        broadcaster.flush();
+        assertTrue(network.awaitIdle(TIMEOUT));
+        for (SMSNetworkManager manager : managers)
+            assertEquals(VALUE, manager.getNetDictionary().getResource(KEY));
+        assertEquals(NODES - 1, network.getDeliveredMessageCount());
+    }
+
+    @Test
+    public void setResource_isReadableRightAway() {
+        SMSNetworkManager writer = managers.get(0);
+        final List<String> results = new ArrayList<>();
+        writer.setResource(KEY, VALUE, new SetResourceListener<String, String, SMSFailReason>() {
+            @Override
+            public void onResourceSet(String key, String value) {
+                results.add("set");
+            }
+
+            @Override
+            public void onResourceSetFail(String key, String value, SMSFailReason reason) {
+                results.add("failed");
+            }
+        });
+        writer.getResource(KEY, new GetResourceListener<String, String, SMSFailReason>() {
+            @Override
+            public void onGetResource(String key, String value) {
+                results.add(value);
+            }
+
+            @Override
+            public void onGetResourceFailed(String key, SMSFailReason reason) {
+                results.add("missing");
+            }
+        });
+        writer.removeResource(KEY, new RemoveResourceListener<String, SMSFailReason>() {
+            @Override
+            public void onResourceRemoved(String key) {
+                results.add("removed");
+            }
+
+            @Override
+            public void onResourceRemoveFail(String key, SMSFailReason reason) {
+                results.add("failed");
+            }
+        });
+        // the local dictionary is written before the requests return, only the broadcast is queued
+        assertNull(writer.getNetDictionary().getResource(KEY));
+        assertEquals(3, results.size());
+        assertEquals("set", results.get(0));
+        assertEquals(VALUE, results.get(1));
+        assertEquals("removed", results.get(2));
+    }
+
+    @Test
+    public void removal_isAcknowledgedByEveryNode() throws InterruptedException {
+        SMSNetworkManager writer = managers.get(0);
+        BatchBroadcaster broadcaster = new BatchBroadcaster(writer);
+        writer.setUpdateBroadcaster(broadcaster);
+        // the update is handed to the broadcaster before the request returns, so it can be flushed
+        writer.setCommandExecutor(new InlineCommandExecutor());
+        writer.getNetDictionary().addResource(KEY, VALUE);
+        final CountDownLatch removed = new CountDownLatch(1);
+        writer.removeResource(KEY, new RemoveResourceListener<String, SMSFailReason>() {
+            @Override
+            public void onResourceRemoved(String key) {
+                removed.countDown();
+            }
+
+            @Override
+            public void onResourceRemoveFail(String key, SMSFailReason reason) {
+            }
+        });
+        assertTrue(removed.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        broadcaster.flush();
+        assertTrue(network.awaitIdle(TIMEOUT));
+        // every node acknowledges the removal with its own compaction
+        for (SMSNetworkManager manager : managers)
+            if (manager != writer) manager.getTombstoneCompactor().sendAcknowledgements();
+        assertTrue(network.awaitIdle(TIMEOUT));
+        // every node sent back an acknowledgement, so the tombstone is purged before the horizon
+        assertEquals(1, writer.getTombstoneCompactor().compact());
+    }
+
+    @Test
+    public void getResource_looksUpOtherNodes() throws InterruptedException {
+        SMSNetworkManager reader = managers.get(0);
+        for (SMSNetworkManager manager : managers)
+            if (manager != reader) manager.getNetDictionary().addResource(KEY, VALUE);
+        final String[] found = new String[1];
+        final CountDownLatch done = new CountDownLatch(1);
+        reader.getResource(KEY, new GetResourceListener<String, String, SMSFailReason>() {
+            @Override
+            public void onGetResource(String key, String value) {
+                found[0] = value;
+                done.countDown();
+            }
+
+            @Override
+            public void onGetResourceFailed(String key, SMSFailReason reason) {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals(VALUE, found[0]);
+        assertTrue(network.awaitIdle(TIMEOUT));
+        assertEquals(1, reader.getResourceCache().size());
+    }
+
+    @Test
+    public void getResource_ofRemovedKey_failsWithoutLookup() {
+        SMSNetworkManager reader = managers.get(0);
+        for (SMSNetworkManager manager : managers)
+            if (manager != reader) manager.getNetDictionary().addResource(KEY, VALUE);
+        reader.getNetDictionary().addResource(KEY, VALUE);
+        reader.getNetDictionary().removeResource(KEY);
+        final List<SMSFailReason> failures = new ArrayList<>();
+        reader.getResource(KEY, new GetResourceListener<String, String, SMSFailReason>() {
+            @Override
+            public void onGetResource(String key, String value) {
+            }
+
+            @Override
+            public void onGetResourceFailed(String key, SMSFailReason reason) {
+                failures.add(reason);
+            }
+        });
+        assertEquals(1, failures.size());
+        assertEquals(SMSFailReason.NO_RESOURCE, failures.get(0));
+        assertEquals(0, reader.getResourceLookup().getSentQueryCount());
+    }
+
+    @Test
+    public void disseminatedRequest_reachesTheRequestListener() throws InterruptedException {
+        final List<String> requests = new ArrayList<>();
+        for (int i = 0; i < NODES; i++) {
+            SMSNetworkManager manager = managers.get(i);
+            manager.setDisseminator(new Disseminator(new FullMeshStrategy(), peers.get(i).getAddress()));
+            manager.setRequestListener(new ReceiveListener<SMSPeer>() {
+                @Override
+                public void onMessageReceived(SMSPeer sender, String message) {
+                    synchronized (requests) {
+                        requests.add(sender.getAddress() + ":" + message);
+                    }
+                }
+            });
+        }
+        SMSNetworkManager quitting = managers.get(0);
+        quitting.broadcastMessage(quitting.getNetSubscriberList().getSnapshot(), "request");
+        assertTrue(network.awaitIdle(TIMEOUT));
+        synchronized (requests) {
+            assertEquals(NODES - 1, requests.size());
+            for (String request : requests)
+                assertEquals(peers.get(0).getAddress() + ":request", request);
+        }
+    }
+
+    @Test
+    public void metrics_recordMessagesAndRequests() throws InterruptedException {
+        SimpleMetricsRegistry metrics = new SimpleMetricsRegistry();
+        for (SMSNetworkManager manager : managers)
+            manager.setMetricsRegistry(metrics);
+        SMSNetworkManager writer = managers.get(0);
+        BatchBroadcaster broadcaster = new BatchBroadcaster(writer);
+        writer.setUpdateBroadcaster(broadcaster);
+        // the update is handed to the broadcaster before the request returns, so it can be flushed
+        writer.setCommandExecutor(new InlineCommandExecutor());
+        final CountDownLatch set = new CountDownLatch(1);
+        writer.setResource(KEY, VALUE, new SetResourceListener<String, String, SMSFailReason>() {
+            @Override
+            public void onResourceSet(String key, String value) {
+                set.countDown();
+            }
+
+            @Override
+            public void onResourceSetFail(String key, String value, SMSFailReason reason) {
+            }
+        });
+        assertTrue(set.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        broadcaster.flush();
+        assertTrue(network.awaitIdle(TIMEOUT));
+        MetricsSnapshot snapshot = metrics.getSnapshot();
+        assertEquals(NODES - 1, (long) snapshot.getCounters().get(NetworkMetrics.MESSAGES_SENT + ".B"));
+        assertEquals(NODES - 1, (long) snapshot.getCounters().get(NetworkMetrics.MESSAGES_RECEIVED + ".B"));
+        assertEquals(NODES - 1, snapshot.getHistograms().get(NetworkMetrics.MESSAGE_BYTES).getCount());
+        assertEquals(NODES - 1, snapshot.getHistograms().get(NetworkMetrics.BROADCAST_FANOUT).getMax());
+        assertEquals(1, snapshot.getHistograms().get(NetworkMetrics.operationLatency("set")).getCount());
+        assertEquals(1, (long) snapshot.getCounters().get(NetworkMetrics.COMMANDS_EXECUTED));
+        assertEquals(0, (long) snapshot.getGauges().get(NetworkMetrics.COMMAND_QUEUE_DEPTH));
+    }
+
+    @Test
+    public void setCommandExecutor_shutsDownReplacedExecutor() throws InterruptedException {
+        SMSNetworkManager manager = managers.get(0);
+        AsyncCommandExecutor previous = manager.getCommandExecutor();
+        manager.setCommandExecutor(new AsyncCommandExecutor(1, 1));
+        assertTrue(previous.awaitTermination(TIMEOUT, TimeUnit.MILLISECONDS));
+    }
+}
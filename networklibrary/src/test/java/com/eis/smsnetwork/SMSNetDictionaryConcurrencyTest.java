@@ -0,0 +1,107 @@
+package com.eis.smsnetwork;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Correctness tests for SMSNetDictionary when shared between threads.
+ * Each scenario is run with an increasing number of reader and writer threads, throughput is
+ * measured by the DictionaryBenchmark of the benchmark module instead.
+ */
+public class SMSNetDictionaryConcurrencyTest {
+
+    private static final int KEY_COUNT = 64;
+    private static final int OPERATIONS_PER_THREAD = 20000;
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8};
+
+    @Test
+    public void computeResource_neverLosesUpdates() throws InterruptedException {
+        for (int threads : THREAD_COUNTS) {
+            final SMSNetDictionary dictionary = new SMSNetDictionary();
+            runInParallel(threads, (threadIndex, iteration) ->
+                    dictionary.computeResource(key(iteration), (key, current) ->
+                            String.valueOf(current == null ? 1 : Integer.parseInt(current) + 1)));
+            long total = 0;
+            for (int i = 0; i < KEY_COUNT; i++)
+                total += Integer.parseInt(dictionary.getResource(key(i)));
+            assertEquals((long) threads * OPERATIONS_PER_THREAD, total);
+        }
+    }
+
+    @Test
+    public void addResourceIfAbsent_onlyOneWriterWins() throws InterruptedException {
+        final SMSNetDictionary dictionary = new SMSNetDictionary();
+        final AtomicLong winners = new AtomicLong();
+        runInParallel(8, (threadIndex, iteration) -> {
+            if (dictionary.addResourceIfAbsent(key(iteration), "t" + threadIndex) == null)
+                winners.incrementAndGet();
+        });
+        assertEquals(KEY_COUNT, winners.get());
+    }
+
+    @Test
+    public void readersAndWriters_noLostUpdates() throws InterruptedException {
+        for (int threads : THREAD_COUNTS) {
+            final SMSNetDictionary dictionary = new SMSNetDictionary();
+            runInParallel(threads, (threadIndex, iteration) -> {
+                // each thread owns its keys, while iterating over the whole dictionary
+                String key = "t" + threadIndex + "_" + (iteration % KEY_COUNT);
+                if (iteration % 3 == 2) dictionary.removeResource(key);
+                else dictionary.addResource(key, "value" + iteration);
+                if (iteration % 100 == 0)
+                    for (String value : dictionary.getResources().values())
+                        assertNotNull(value);
+            });
+            for (int t = 0; t < threads; t++)
+                for (int i = 0; i < KEY_COUNT; i++) {
+                    // the last operation on each key happened at the highest iteration with that remainder
+                    int last = OPERATIONS_PER_THREAD - 1 - (OPERATIONS_PER_THREAD - 1 - i) % KEY_COUNT;
+                    String expected = last % 3 == 2 ? null : "value" + last;
+                    assertEquals(expected, dictionary.getResource("t" + t + "_" + i));
+                }
+        }
+    }
+
+    private static String key(int iteration) {
+        return "key" + (iteration % KEY_COUNT);
+    }
+
+    /**
+     * Starts the given number of threads at the same time, each one running the body
+     * {@link #OPERATIONS_PER_THREAD} times, and fails if any of them threw.
+     */
+    private static void runInParallel(int threads, final ThreadBody body) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final ArrayList<Throwable> errors = new ArrayList<>();
+        ArrayList<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int threadIndex = t;
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < OPERATIONS_PER_THREAD; i++)
+                        body.run(threadIndex, i);
+                } catch (Throwable e) {
+                    synchronized (errors) {
+                        errors.add(e);
+                    }
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for (Thread worker : workers)
+            worker.join();
+        assertTrue("Worker threads failed: " + errors, errors.isEmpty());
+    }
+
+    private interface ThreadBody {
+        void run(int threadIndex, int iteration);
+    }
+}
@@ -0,0 +1,126 @@
+package com.eis.smsnetwork;
+
+import com.eis.communication.network.HybridLogicalClock;
+import com.eis.communication.network.Version;
+import com.eis.communication.network.VersionedResource;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the versioning and merging of the SMSNetDictionary class
+ */
+public class SMSNetDictionaryMergeTest {
+
+    private static final String KEY = "key";
+
+    private SMSNetDictionary dictionary;
+
+    @Before
+    public void setup() {
+        dictionary = new SMSNetDictionary(new SMSWordKeyValidator(), "local", new HybridLogicalClock());
+    }
+
+    @Test
+    public void localWrites_getGrowingVersions() {
+        dictionary.addResource(KEY, "1");
+        Version first = dictionary.getVersionedResource(KEY).getVersion();
+        dictionary.addResource(KEY, "2");
+        Version second = dictionary.getVersionedResource(KEY).getVersion();
+        assertTrue(second.isNewerThan(first));
+        assertEquals("local", second.getOriginator());
+    }
+
+    @Test
+    public void removal_leavesTombstone() {
+        dictionary.addResource(KEY, "1");
+        dictionary.removeResource(KEY);
+        assertNull(dictionary.getResource(KEY));
+        assertTrue(dictionary.getVersionedResource(KEY).isTombstone());
+        assertFalse(dictionary.getResources().containsKey(KEY));
+        assertTrue(dictionary.getVersionedResources().containsKey(KEY));
+    }
+
+    @Test
+    public void farFutureWrite_isNotMerged() {
+        dictionary.addResource(KEY, "local");
+        long future = System.currentTimeMillis() + 10 * HybridLogicalClock.DEFAULT_MAX_DRIFT_MILLIS;
+        Version skewed = new Version(future << HybridLogicalClock.LOGICAL_BITS, "remote");
+        assertFalse(dictionary.mergeResource(KEY, VersionedResource.of("remote", skewed)));
+        assertEquals("local", dictionary.getResource(KEY));
+        dictionary.addResource(KEY, "later");
+        assertEquals("later", dictionary.getResource(KEY));
+    }
+
+    @Test
+    public void olderWrite_isNotMerged() {
+        dictionary.addResource(KEY, "local");
+        Version current = dictionary.getVersionedResource(KEY).getVersion();
+        Version older = new Version(current.getTimestamp() - 1, "remote");
+        assertFalse(dictionary.mergeResource(KEY, VersionedResource.of("remote", older)));
+        assertEquals("local", dictionary.getResource(KEY));
+    }
+
+    @Test
+    public void tombstone_blocksOlderAdd() {
+        Version removal = new Version(100, "remote");
+        assertTrue(dictionary.mergeResource(KEY, VersionedResource.<String>tombstone(removal)));
+        assertFalse(dictionary.mergeResource(KEY, VersionedResource.of("late", new Version(99, "other"))));
+        assertNull(dictionary.getResource(KEY));
+    }
+
+    @Test
+    public void localWrite_afterMerge_isNewer() {
+        // ahead of the local clock, but within the maximum drift
+        long ahead = System.currentTimeMillis() + HybridLogicalClock.DEFAULT_MAX_DRIFT_MILLIS / 2;
+        Version future = new Version(ahead << HybridLogicalClock.LOGICAL_BITS, "remote");
+        dictionary.mergeResource(KEY, VersionedResource.of("remote", future));
+        dictionary.addResource(KEY, "local");
+        assertTrue(dictionary.getVersionedResource(KEY).getVersion().isNewerThan(future));
+        assertEquals("local", dictionary.getResource(KEY));
+    }
+
+    @Test
+    public void replicas_convergeInAnyOrder() {
+        List<ResourceUpdate> writes = new ArrayList<>();
+        String[] originators = {"a", "b", "c"};
+        for (String originator : originators) {
+            SMSNetDictionary writer = new SMSNetDictionary(new SMSWordKeyValidator(), originator,
+                    new HybridLogicalClock());
+            for (int i = 0; i < 50; i++) {
+                String key = "key" + (i % 10);
+                ResourceUpdate update = i % 7 == 0 ? ResourceUpdate.remove(key) :
+                        ResourceUpdate.add(key, originator + i);
+                update.applyTo(writer);
+                writes.add(update.withVersionFrom(writer));
+            }
+        }
+        Random random = new Random(42);
+        SMSNetDictionary first = null;
+        for (int replica = 0; replica < 5; replica++) {
+            List<ResourceUpdate> shuffled = new ArrayList<>(writes);
+            Collections.shuffle(shuffled, random);
+            SMSNetDictionary dictionary = new SMSNetDictionary();
+            for (ResourceUpdate update : shuffled)
+                update.applyTo(dictionary);
+            if (first == null) first = dictionary;
+            else assertEquals(first.getVersionedResources(), dictionary.getVersionedResources());
+        }
+    }
+
+    @Test
+    public void conditionalOperations_ignoreTombstones() {
+        dictionary.addResource(KEY, "1");
+        dictionary.removeResource(KEY);
+        assertNull(dictionary.addResourceIfAbsent(KEY, "2"));
+        assertEquals("2", dictionary.getResource(KEY));
+        assertFalse(dictionary.replaceResource("other", "x", "y"));
+    }
+}
@@ -77,4 +77,48 @@ public class SMSNetDictionaryTest {
         netDictionary.removeResource(KEY2);
         assertNull(netDictionary.getResource(KEY2));
     }
-}
\ No newline at end of file
+
+    @Test(expected = IllegalArgumentException.class)
+    public void addNullResource_throws() {
+        netDictionary.addResource(KEY1, null);
+    }
+
+    @Test
+    public void addResourceIfAbsent_addsOnlyOnce() {
+        assertNull(netDictionary.addResourceIfAbsent(KEY1, RESOURCE1));
+        assertEquals(RESOURCE1, netDictionary.addResourceIfAbsent(KEY1, RESOURCE2));
+        assertEquals(RESOURCE1, netDictionary.getResource(KEY1));
+    }
+
+    @Test
+    public void replaceResource_expectedMatches_getsReplaced() {
+        netDictionary.addResource(KEY1, RESOURCE1);
+        assertTrue(netDictionary.replaceResource(KEY1, RESOURCE1, RESOURCE2));
+        assertEquals(RESOURCE2, netDictionary.getResource(KEY1));
+    }
+
+    @Test
+    public void replaceResource_expectedDiffers_doesNothing() {
+        netDictionary.addResource(KEY1, RESOURCE1);
+        assertFalse(netDictionary.replaceResource(KEY1, RESOURCE2, RESOURCE2));
+        assertEquals(RESOURCE1, netDictionary.getResource(KEY1));
+    }
+
+    @Test
+    public void computeResource_addsUpdatesAndRemoves() {
+        assertEquals(RESOURCE1, netDictionary.computeResource(KEY1, (key, current) -> RESOURCE1));
+        assertEquals(RESOURCE1 + RESOURCE2,
+                netDictionary.computeResource(KEY1, (key, current) -> current + RESOURCE2));
+        assertNull(netDictionary.computeResource(KEY1, (key, current) -> null));
+        assertNull(netDictionary.getResource(KEY1));
+    }
+
+    @Test
+    public void clear_removesEverything() {
+        netDictionary.addResource(KEY1, RESOURCE1);
+        netDictionary.addResource(KEY2, RESOURCE2);
+        netDictionary.clear();
+        assertNull(netDictionary.getResource(KEY1));
+        assertNull(netDictionary.getResource(KEY2));
+    }
+}
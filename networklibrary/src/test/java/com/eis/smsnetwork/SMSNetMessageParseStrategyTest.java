@@ -0,0 +1,80 @@
+package com.eis.smsnetwork;
+
+import com.eis.smslibrary.SMSMessage;
+import com.eis.smslibrary.SMSPeer;
+import com.eis.smsnetwork.broadcast.BatchMessage;
+import com.eis.smsnetwork.codec.CompactUpdateCodec;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the SMSNetMessageParseStrategy class
+ */
+public class SMSNetMessageParseStrategyTest {
+
+    private static final SMSPeer PEER1 = new SMSPeer("+393423541601");
+    private static final SMSPeer PEER2 = new SMSPeer("+393423541602");
+    private static final String DATA = "0 key value";
+
+    private final SMSNetMessageParseStrategy sender = new SMSNetMessageParseStrategy();
+    private final SMSNetMessageParseStrategy receiver = new SMSNetMessageParseStrategy();
+
+    @Test
+    public void sentMessage_isParsedBack() {
+        String text = sender.parseData(new SMSMessage(PEER2, DATA));
+        SMSMessage received = receiver.parseMessage(text, PEER1);
+        assertNotNull(received);
+        assertEquals(DATA, received.getData());
+        assertEquals(PEER1, received.getPeer());
+    }
+
+    @Test
+    public void retransmittedMessage_isDropped() {
+        String text = sender.parseData(new SMSMessage(PEER2, DATA));
+        assertNotNull(receiver.parseMessage(text, PEER1));
+        assertNull(receiver.parseMessage(text, PEER1));
+        assertEquals(1, receiver.getDuplicateFilter().getDuplicateCount());
+    }
+
+    @Test
+    public void sameTextFromAnotherPeer_isNotDropped() {
+        String text = sender.parseData(new SMSMessage(PEER2, DATA));
+        assertNotNull(receiver.parseMessage(text, PEER1));
+        assertNotNull(receiver.parseMessage(text, PEER2));
+    }
+
+    @Test
+    public void resentData_getsNewId() {
+        SMSMessage message = new SMSMessage(PEER2, DATA);
+        assertNotNull(receiver.parseMessage(sender.parseData(message), PEER1));
+        assertNotNull(receiver.parseMessage(sender.parseData(message), PEER1));
+    }
+
+    @Test
+    public void foreignMessages_areIgnored() {
+        assertNull(receiver.parseMessage("Hello there", PEER1));
+        assertNull(receiver.parseMessage(SMSNetMessageParseStrategy.HIDDEN_CHARACTER + "noid", PEER1));
+        assertNull(receiver.parseMessage(SMSNetMessageParseStrategy.HIDDEN_CHARACTER + "!! data", PEER1));
+    }
+
+    @Test
+    public void compactBatch_isReadAsTextBatch() {
+        CompactUpdateCodec codec = new CompactUpdateCodec();
+        receiver.setUpdateCodec(codec);
+        List<ResourceUpdate> updates = Arrays.asList(ResourceUpdate.add("a", "1"), ResourceUpdate.remove("a"));
+        SMSMessage received = receiver.parseMessage(sender.parseData(new SMSMessage(PEER2, codec.encode(updates))), PEER1);
+        assertNotNull(received);
+        assertEquals(updates, BatchMessage.decode(received.getData()).getUpdates());
+    }
+
+    @Test
+    public void malformedCompactBatch_isDropped() {
+        receiver.setUpdateCodec(new CompactUpdateCodec());
+        assertNull(receiver.parseMessage(sender.parseData(new SMSMessage(PEER2, "Cx")), PEER1));
+    }
+}
@@ -1,13 +1,20 @@
 package com.eis.smsnetwork;
 
+import com.eis.communication.network.SubscriberSnapshot;
 import com.eis.smslibrary.SMSPeer;
 
 import org.junit.Before;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Unit tests for the SMSNetSubscriberList class
@@ -47,7 +54,7 @@ public class SMSNetSubscriberListTest {
         netSubscribers.addSubscriber(PEER1);
         netSubscribers.addSubscriber(PEER2);
         assertArrayEquals(netSubscribers.getSubscribers().toArray(),
-                new SMSPeer[]{PEER2, PEER1});
+                new SMSPeer[]{PEER1, PEER2});
     }
 
     @Test
@@ -56,7 +63,7 @@ public class SMSNetSubscriberListTest {
         netSubscribers.addSubscriber(PEER2);
         netSubscribers.addSubscriber(PEER3);
         assertArrayEquals(netSubscribers.getSubscribers().toArray(),
-                new SMSPeer[]{PEER3, PEER2, PEER1});
+                new SMSPeer[]{PEER1, PEER2, PEER3});
     }
 
     @Test
@@ -76,4 +83,89 @@ public class SMSNetSubscriberListTest {
     public void addNullPeer_throws() {
         netSubscribers.addSubscriber(null);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void addDuplicatePeer_getsAddedOnce() {
+        netSubscribers.addSubscriber(PEER1);
+        netSubscribers.addSubscriber(PEER2);
+        netSubscribers.addSubscriber(PEER1);
+        assertArrayEquals(netSubscribers.getSubscribers().toArray(),
+                new SMSPeer[]{PEER1, PEER2});
+    }
+
+    @Test
+    public void isSubscribed_followsAddAndRemove() {
+        assertFalse(netSubscribers.isSubscribed(PEER1));
+        netSubscribers.addSubscriber(PEER1);
+        assertTrue(netSubscribers.isSubscribed(PEER1));
+        netSubscribers.removeSubscriber(PEER1);
+        assertFalse(netSubscribers.isSubscribed(PEER1));
+    }
+
+    @Test
+    public void getSubscribers_isNotChangedByLaterAdds() {
+        netSubscribers.addSubscriber(PEER1);
+        List<SMSPeer> snapshot = netSubscribers.getSubscribers();
+        netSubscribers.addSubscriber(PEER2);
+        assertArrayEquals(snapshot.toArray(), new SMSPeer[]{PEER1});
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void getSubscribers_cannotBeModified() {
+        netSubscribers.addSubscriber(PEER1);
+        netSubscribers.getSubscribers().add(PEER2);
+    }
+
+    @Test
+    public void clear_removesEveryPeer() {
+        netSubscribers.addSubscriber(PEER1);
+        netSubscribers.addSubscriber(PEER2);
+        netSubscribers.clear();
+        assertTrue(netSubscribers.getSubscribers().isEmpty());
+        assertFalse(netSubscribers.isSubscribed(PEER1));
+    }
+
+    @Test
+    public void changes_increaseEpoch() {
+        long initialEpoch = netSubscribers.getSnapshot().getEpoch();
+        netSubscribers.addSubscriber(PEER1);
+        long afterAdd = netSubscribers.getSnapshot().getEpoch();
+        netSubscribers.removeSubscriber(PEER1);
+        long afterRemove = netSubscribers.getSnapshot().getEpoch();
+        assertTrue(initialEpoch < afterAdd);
+        assertTrue(afterAdd < afterRemove);
+    }
+
+    @Test
+    public void duplicateAdd_keepsEpoch() {
+        netSubscribers.addSubscriber(PEER1);
+        SubscriberSnapshot<SMSPeer> snapshot = netSubscribers.getSnapshot();
+        netSubscribers.addSubscriber(PEER1);
+        assertSame(snapshot, netSubscribers.getSnapshot());
+    }
+
+    @Test
+    public void snapshot_isNotChangedByLaterRemoves() {
+        netSubscribers.addSubscriber(PEER1);
+        netSubscribers.addSubscriber(PEER2);
+        SubscriberSnapshot<SMSPeer> snapshot = netSubscribers.getSnapshot();
+        netSubscribers.removeSubscriber(PEER1);
+        assertTrue(snapshot.contains(PEER1));
+        assertEquals(2, snapshot.size());
+        assertFalse(netSubscribers.getSnapshot().contains(PEER1));
+    }
+
+    @Test
+    public void snapshot_reusedUntilNextChange() {
+        netSubscribers.addSubscriber(PEER1);
+        netSubscribers.addSubscriber(PEER2);
+        netSubscribers.removeSubscriber(PEER1);
+        SubscriberSnapshot<SMSPeer> snapshot = netSubscribers.getSnapshot();
+        assertEquals(3, snapshot.getEpoch());
+        assertSame(snapshot, netSubscribers.getSnapshot());
+        assertTrue(netSubscribers.isSubscribed(PEER2));
+        netSubscribers.addSubscriber(PEER3);
+        assertNotSame(snapshot, netSubscribers.getSnapshot());
+        assertEquals(4, netSubscribers.getSnapshot().getEpoch());
+    }
+}
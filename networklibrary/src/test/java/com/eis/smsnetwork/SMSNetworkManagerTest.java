@@ -19,6 +19,7 @@ import org.powermock.modules.junit4.PowerMockRunner;
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
@@ -36,6 +37,8 @@ public class SMSNetworkManagerTest {
     private String RES1 = "Res1";
     private String RES2 = "Res2";
     private SMSPeer VALID_PEER = new SMSPeer("+393479281192");
+    // invitations are sent in the background, this is how long their listeners are waited for
+    private static final int TIMEOUT = 1000;
 
     private boolean hasPassed = false;
     private GetResourceListener<String, String, SMSFailReason> getListenerMock = mock(GetResourceListener.class);
@@ -80,6 +83,7 @@ public class SMSNetworkManagerTest {
         localDictionary.addResource(KEY1, RES1);
         networkManager.setResource(KEY1, RES2, setListenerMock);
         verify(setListenerMock, times(1)).onResourceSet(KEY1, RES2);
+        assertEquals(RES2, localDictionary.getResource(KEY1));
     }
 
     @Test
@@ -99,6 +103,7 @@ public class SMSNetworkManagerTest {
         localDictionary.addResource(KEY1, RES1);
         networkManager.removeResource(KEY1, removeListenerMock);
         verify(removeListenerMock, times(1)).onResourceRemoved(KEY1);
+        assertNull(localDictionary.getResource(KEY1));
     }
 
     @Test
@@ -109,7 +114,7 @@ public class SMSNetworkManagerTest {
         PowerMockito.mockStatic(Log.class);
         when(Log.e(anyString(), anyString())).thenReturn(0);
         networkManager.invite(VALID_PEER, inviteListenerMock);
-        verify(inviteListenerMock, times(1)).onInvitationNotSent(VALID_PEER, SMSFailReason.MESSAGE_SEND_ERROR);
+        verify(inviteListenerMock, timeout(TIMEOUT).times(1)).onInvitationNotSent(VALID_PEER, SMSFailReason.MESSAGE_SEND_ERROR);
     }
 
     //TODO mock SMSHandler
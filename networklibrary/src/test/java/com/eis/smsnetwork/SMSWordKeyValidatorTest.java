@@ -0,0 +1,51 @@
+package com.eis.smsnetwork;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the SMSWordKeyValidator class
+ */
+public class SMSWordKeyValidatorTest {
+
+    private static final String[] KEYS = {"ResourceKey", "key_1", "_", "0", "ABCxyz789",
+            "", " ", "two words", "dash-key", "dot.key", "àccent", "tab\tkey", "new\nline", "key\\"};
+
+    private final SMSWordKeyValidator validator = new SMSWordKeyValidator();
+
+    @Test
+    public void validWords_areValid() {
+        assertTrue(validator.isValid("ResourceKey"));
+        assertTrue(validator.isValid("key_1"));
+    }
+
+    @Test
+    public void nullKey_isNotValid() {
+        assertFalse(validator.isValid(null));
+    }
+
+    @Test
+    public void emptyKey_isNotValid() {
+        assertFalse(validator.isValid(""));
+    }
+
+    @Test
+    public void multipleWords_areNotValid() {
+        assertFalse(validator.isValid("This is not a valid key"));
+    }
+
+    @Test
+    public void sameResultsAsRegex() {
+        for (String key : KEYS)
+            assertEquals(key, key.matches("^\\w+$"), validator.isValid(key));
+    }
+
+    @Test
+    public void anyKeyValidator_acceptsSpaces() {
+        SMSAnyKeyValidator anyValidator = new SMSAnyKeyValidator();
+        assertTrue(anyValidator.isValid("two words"));
+        assertFalse(anyValidator.isValid(""));
+        assertFalse(anyValidator.isValid(null));
+    }
+}
@@ -0,0 +1,195 @@
+package com.eis.smsnetwork;
+
+import com.eis.communication.network.HybridLogicalClock;
+import com.eis.communication.network.Transport;
+import com.eis.communication.network.Version;
+import com.eis.communication.network.VersionedResource;
+import com.eis.communication.network.listeners.ReceiveListener;
+import com.eis.smslibrary.SMSPeer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the TombstoneCompactor class
+ */
+public class TombstoneCompactorTest {
+
+    private static final SMSPeer PEER1 = new SMSPeer("+393423541601");
+    private static final SMSPeer PEER2 = new SMSPeer("+393423541602");
+    private static final long HORIZON = 60000;
+    private static final long START = 1000000;
+
+    private long time;
+    private SMSNetDictionary dictionary;
+    private SMSNetSubscriberList subscribers;
+    private TombstoneCompactor compactor;
+    private List<String> sent;
+
+    @Before
+    public void setup() {
+        time = START;
+        HybridLogicalClock clock = new HybridLogicalClock() {
+            @Override
+            protected long currentTimeMillis() {
+                return time;
+            }
+        };
+        dictionary = new SMSNetDictionary(new SMSWordKeyValidator(), "local", clock);
+        subscribers = new SMSNetSubscriberList();
+        subscribers.addSubscriber(PEER1);
+        subscribers.addSubscriber(PEER2);
+        compactor = new TombstoneCompactor(dictionary, subscribers, HORIZON, HORIZON) {
+            @Override
+            protected long currentTimeMillis() {
+                return time;
+            }
+        };
+        sent = new ArrayList<>();
+        compactor.setTransport(new Transport<SMSPeer>() {
+            @Override
+            public void send(SMSPeer peer, String message) {
+                sent.add(peer.getAddress() + ":" + message);
+            }
+
+            @Override
+            public void setReceiveListener(ReceiveListener<SMSPeer> listener) {
+            }
+        });
+        dictionary.addResource("live", "value");
+        dictionary.addResource("removed", "value");
+        dictionary.removeResource("removed");
+    }
+
+    @Test
+    public void metrics_countLiveEntriesAndTombstones() {
+        assertEquals(1, compactor.getLiveEntryCount());
+        assertEquals(1, compactor.getTombstoneCount());
+    }
+
+    @Test
+    public void unseenTombstone_isKept() {
+        compactor.acknowledge(PEER1, versionOf("removed"));
+        assertEquals(0, compactor.compact());
+        assertEquals(1, compactor.getTombstoneCount());
+    }
+
+    @Test
+    public void tombstoneSeenByEverySubscriber_isPurged() {
+        Version removal = versionOf("removed");
+        compactor.acknowledge(PEER1, removal);
+        List<String> acks = TombstoneCompactor.encodeAcks(Collections.singletonList(removal), 160);
+        assertTrue(compactor.onMessage(PEER2, acks.get(0)));
+        assertEquals(1, compactor.compact());
+        assertEquals(0, compactor.getTombstoneCount());
+        assertEquals(1, compactor.getLiveEntryCount());
+        assertEquals(1, compactor.getPurgedTombstoneCount());
+        assertTrue(compactor.getReclaimedBytes() > 0);
+    }
+
+    @Test
+    public void laterRemoval_doesNotAcknowledgeEarlierOne() {
+        dictionary.addResource("later", "value");
+        time += 10;
+        dictionary.removeResource("later");
+        compactor.acknowledge(PEER1, versionOf("later"));
+        compactor.acknowledge(PEER2, versionOf("later"));
+        assertEquals(1, compactor.compact());
+        assertTrue(dictionary.getVersionedResource("removed").isTombstone());
+    }
+
+    @Test
+    public void rewrittenKey_isNotPurgedByOldAck() {
+        Version removal = versionOf("removed");
+        compactor.acknowledge(PEER1, removal);
+        compactor.acknowledge(PEER2, removal);
+        time += 10;
+        dictionary.addResource("removed", "again");
+        dictionary.removeResource("removed");
+        assertEquals(0, compactor.compact());
+        assertTrue(dictionary.getVersionedResource("removed").isTombstone());
+    }
+
+    @Test
+    public void receivedRemovals_areAcknowledgedTogether() {
+        compactor.onRemovalReceived(PEER1, new Version(START, "remote"));
+        compactor.onRemovalReceived(PEER1, new Version(START + 1, "remote"));
+        compactor.onRemovalReceived(PEER2, new Version(START, "remote"));
+        assertEquals(3, compactor.getPendingAckCount());
+        assertTrue(sent.isEmpty());
+        compactor.compact();
+        assertEquals(2, sent.size());
+        assertEquals(0, compactor.getPendingAckCount());
+        TombstoneCompactor receiver = new TombstoneCompactor(dictionary, subscribers);
+        String ack = sent.get(0).substring(PEER1.getAddress().length() + 1);
+        assertTrue(receiver.onMessage(PEER1, ack));
+    }
+
+    @Test
+    public void manyAcks_areSplitByMessageLength() {
+        List<Version> versions = new ArrayList<>();
+        for (int i = 0; i < 50; i++)
+            versions.add(new Version(START + i, "originator"));
+        List<String> messages = TombstoneCompactor.encodeAcks(versions, 60);
+        assertTrue(messages.size() > 1);
+        for (String message : messages)
+            assertTrue(message.length() <= 60);
+    }
+
+    @Test
+    public void tombstoneOlderThanHorizon_isPurged() {
+        time += HORIZON / 2;
+        assertEquals(0, compactor.compact());
+        time += HORIZON;
+        assertEquals(1, compactor.compact());
+        assertEquals(0, compactor.getTombstoneCount());
+    }
+
+    @Test
+    public void peerWhichLeft_isNotWaitedFor() {
+        compactor.acknowledge(PEER1, versionOf("removed"));
+        subscribers.removeSubscriber(PEER2);
+        assertEquals(1, compactor.compact());
+    }
+
+    @Test
+    public void noSubscribers_waitsForHorizon() {
+        compactor.acknowledge(PEER1, versionOf("removed"));
+        compactor.acknowledge(PEER2, versionOf("removed"));
+        subscribers.clear();
+        assertEquals(0, compactor.compact());
+        time += HORIZON + 1;
+        assertEquals(1, compactor.compact());
+    }
+
+    @Test
+    public void newerWrite_isNeverPurged() {
+        Version removal = versionOf("removed");
+        compactor.acknowledge(PEER1, removal);
+        compactor.acknowledge(PEER2, removal);
+        dictionary.mergeResource("other", VersionedResource.<String>tombstone(
+                new Version(removal.getTimestamp() + 1, "remote")));
+        assertEquals(1, compactor.compact());
+        assertTrue(dictionary.getVersionedResource("other").isTombstone());
+    }
+
+    @Test
+    public void foreignMessage_isNotHandled() {
+        assertFalse(compactor.onMessage(PEER1, "0 key value"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void malformedAck_isRejected() {
+        compactor.onMessage(PEER1, TombstoneCompactor.ACK_TYPE + "!");
+    }
+
+    private Version versionOf(String key) {
+        return dictionary.getVersionedResource(key).getVersion();
+    }
+}
@@ -0,0 +1,153 @@
+package com.eis.smsnetwork.broadcast;
+
+import com.eis.communication.network.SubscriberSnapshot;
+import com.eis.communication.network.Transport;
+import com.eis.communication.network.listeners.ReceiveListener;
+import com.eis.communication.network.tracing.InMemoryTraceSink;
+import com.eis.communication.network.tracing.Tracer;
+import com.eis.communication.network.tracing.TracingTransport;
+import com.eis.smslibrary.SMSMessage;
+import com.eis.smslibrary.SMSPeer;
+import com.eis.smsnetwork.ResourceUpdate;
+import com.eis.smsnetwork.SMSNetMessageParseStrategy;
+import com.eis.smsnetwork.SMSNetworkManager;
+import com.eis.smsnetwork.dissemination.Disseminator;
+import com.eis.smsnetwork.dissemination.FullMeshStrategy;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the BatchBroadcaster class
+ */
+public class BatchBroadcasterTest {
+
+    private static final int MAX_MESSAGE_LENGTH = 40;
+    private static final long NEVER = 60000;
+
+    private final List<String> sentMessages = new ArrayList<>();
+    private SMSNetworkManager manager;
+
+    @Before
+    public void setup() {
+        manager = new SMSNetworkManager();
+        manager.getNetSubscriberList().addSubscriber(new SMSPeer("+393423541601"));
+    }
+
+    @Test
+    public void smallUpdates_stayPendingUntilFlush() {
+        BatchBroadcaster broadcaster = newBroadcaster(NEVER);
+        broadcaster.submit(ResourceUpdate.add("a", "1"));
+        broadcaster.submit(ResourceUpdate.remove("b"));
+        assertTrue(sentMessages.isEmpty());
+        broadcaster.flush();
+        assertEquals(1, sentMessages.size());
+        assertEquals(2, BatchMessage.decode(sentMessages.get(0)).getUpdates().size());
+    }
+
+    @Test
+    public void fullMessage_isSentImmediately() {
+        BatchBroadcaster broadcaster = newBroadcaster(NEVER);
+        for (int i = 0; i < 10; i++)
+            broadcaster.submit(ResourceUpdate.add("key" + i, "value" + i));
+        assertFalse(sentMessages.isEmpty());
+        broadcaster.flush();
+        int updates = 0;
+        for (String message : sentMessages) {
+            assertTrue(message.length() <= MAX_MESSAGE_LENGTH);
+            updates += BatchMessage.decode(message).getUpdates().size();
+        }
+        assertEquals(10, updates);
+        assertEquals(sentMessages.size(), broadcaster.getSentMessageCount());
+        assertTrue(sentMessages.size() < 10);
+    }
+
+    @Test
+    public void updates_keepTheirOrder() {
+        BatchBroadcaster broadcaster = newBroadcaster(NEVER);
+        for (int i = 0; i < 10; i++)
+            broadcaster.submit(ResourceUpdate.add("key", "value" + i));
+        broadcaster.flush();
+        List<ResourceUpdate> received = new ArrayList<>();
+        for (String message : sentMessages)
+            received.addAll(BatchMessage.decode(message).getUpdates());
+        for (int i = 0; i < 10; i++)
+            assertEquals("value" + i, received.get(i).getValue());
+    }
+
+    @Test
+    public void oversizedUpdate_isSentAlone() {
+        BatchBroadcaster broadcaster = newBroadcaster(NEVER);
+        StringBuilder longValue = new StringBuilder();
+        for (int i = 0; i < MAX_MESSAGE_LENGTH; i++) longValue.append('x');
+        broadcaster.submit(ResourceUpdate.add("big", longValue.toString()));
+        broadcaster.flush();
+        assertEquals(1, sentMessages.size());
+    }
+
+    @Test
+    public void deadline_flushesPendingUpdates() throws InterruptedException {
+        BatchBroadcaster broadcaster = newBroadcaster(10);
+        broadcaster.submit(ResourceUpdate.add("a", "1"));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (broadcaster.getPendingUpdateCount() > 0 && System.currentTimeMillis() < deadline)
+            Thread.sleep(5);
+        assertEquals(0, broadcaster.getPendingUpdateCount());
+        synchronized (sentMessages) {
+            assertEquals(1, sentMessages.size());
+        }
+    }
+
+    @Test
+    public void defaultLength_fitsInASingleSms() {
+        final List<String> wire = new ArrayList<>();
+        final SMSNetMessageParseStrategy parseStrategy = new SMSNetMessageParseStrategy();
+        manager.setTransport(new Transport<SMSPeer>() {
+            @Override
+            public void send(SMSPeer peer, String message) {
+                wire.add(parseStrategy.parseData(new SMSMessage(peer, message)));
+            }
+
+            @Override
+            public void setReceiveListener(ReceiveListener<SMSPeer> listener) {
+            }
+        });
+        manager.setDisseminator(new Disseminator(new FullMeshStrategy(), "+393423541600000"));
+        BatchBroadcaster broadcaster = new BatchBroadcaster(manager);
+        for (int i = 0; i < 50; i++)
+            broadcaster.submit(ResourceUpdate.add("key" + i, "value" + i));
+        broadcaster.flush();
+        assertTrue(wire.size() > 1);
+        for (String sms : wire)
+            assertTrue(sms.length() <= SMSNetMessageParseStrategy.MAX_SMS_LENGTH);
+    }
+
+    @Test
+    public void defaultLength_followsTheManager() {
+        BatchBroadcaster broadcaster = new BatchBroadcaster(manager);
+        assertEquals(SMSNetworkManager.MAX_PAYLOAD_LENGTH, broadcaster.getMaxMessageLength());
+        manager.setDisseminator(new Disseminator(new FullMeshStrategy(), "+393423541600000"));
+        assertEquals(SMSNetworkManager.MAX_PAYLOAD_LENGTH - Disseminator.MAX_WRAP_LENGTH,
+                broadcaster.getMaxMessageLength());
+        manager.setTracer(new Tracer(new InMemoryTraceSink(), "node"));
+        assertEquals(SMSNetworkManager.MAX_MESSAGE_LENGTH, broadcaster.getMaxMessageLength());
+        assertEquals(SMSNetworkManager.MAX_PAYLOAD_LENGTH - TracingTransport.MAX_HEADER_LENGTH,
+                manager.getMaxMessageLength());
+    }
+
+    private BatchBroadcaster newBroadcaster(long maxDelayMillis) {
+        return new BatchBroadcaster(manager, MAX_MESSAGE_LENGTH, maxDelayMillis) {
+            @Override
+            protected void broadcastMessage(SubscriberSnapshot<SMSPeer> peers, String message) {
+                synchronized (sentMessages) {
+                    sentMessages.add(message);
+                }
+            }
+        };
+    }
+}
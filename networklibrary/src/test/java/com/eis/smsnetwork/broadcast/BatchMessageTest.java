@@ -0,0 +1,98 @@
+package com.eis.smsnetwork.broadcast;
+
+import com.eis.communication.network.Version;
+import com.eis.smsnetwork.ResourceUpdate;
+import com.eis.smsnetwork.SMSNetDictionary;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the BatchMessage class
+ */
+public class BatchMessageTest {
+
+    private static final ResourceUpdate ADD_A = ResourceUpdate.add("a", "hello");
+    private static final ResourceUpdate REMOVE_B = ResourceUpdate.remove("b");
+    private static final ResourceUpdate ADD_SEPARATORS = ResourceUpdate.add("key", "1:2 -+ 3\\");
+
+    @Test
+    public void encode_writesLengthPrefixedFields() {
+        assertEquals("B+1:a5:hello-1:b", new BatchMessage(Arrays.asList(ADD_A, REMOVE_B)).encode());
+    }
+
+    @Test
+    public void decode_returnsSameUpdates() {
+        BatchMessage message = new BatchMessage(Arrays.asList(ADD_A, REMOVE_B, ADD_SEPARATORS));
+        assertEquals(message.getUpdates(), BatchMessage.decode(message.encode()).getUpdates());
+    }
+
+    @Test
+    public void encodedLength_matchesEncoding() {
+        BatchMessage message = new BatchMessage(Arrays.asList(ADD_A, REMOVE_B, ADD_SEPARATORS));
+        int length = BatchMessage.BATCH_TYPE.length() + BatchMessage.encodedLength(ADD_A) +
+                BatchMessage.encodedLength(REMOVE_B) + BatchMessage.encodedLength(ADD_SEPARATORS);
+        assertEquals(message.encode().length(), length);
+    }
+
+    @Test
+    public void applyTo_appliesInOrder() {
+        SMSNetDictionary dictionary = new SMSNetDictionary();
+        dictionary.addResource("b", "old");
+        String message = new BatchMessage(Arrays.asList(ADD_A, REMOVE_B,
+                ResourceUpdate.add("a", "world"))).encode();
+        BatchMessage.applyTo(message, dictionary);
+        assertEquals("world", dictionary.getResource("a"));
+        assertNull(dictionary.getResource("b"));
+    }
+
+    @Test
+    public void malformedBatch_changesNothing() {
+        SMSNetDictionary dictionary = new SMSNetDictionary();
+        try {
+            BatchMessage.applyTo("B+1:a5:hello+1:c9:short", dictionary);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertNull(dictionary.getResource("a"));
+        }
+    }
+
+    @Test
+    public void invalidKey_changesNothing() {
+        SMSNetDictionary dictionary = new SMSNetDictionary();
+        String message = new BatchMessage(Arrays.asList(ADD_A, ResourceUpdate.add("two words", "x"))).encode();
+        try {
+            BatchMessage.applyTo(message, dictionary);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertNull(dictionary.getResource("a"));
+        }
+    }
+
+    @Test
+    public void isBatch_checksHeader() {
+        assertTrue(BatchMessage.isBatch("B"));
+        assertTrue(BatchMessage.isBatch("B+1:a1:b"));
+        assertTrue(BatchMessage.isBatch("B@1:z1:o-1:a"));
+        assertFalse(BatchMessage.isBatch("Bogus"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownOperation_throws() {
+        BatchMessage.decode("B*1:a");
+    }
+
+    @Test
+    public void versionedUpdates_roundTrip() {
+        ResourceUpdate versionedAdd = ADD_A.withVersion(new Version(123456789L, "node1"));
+        ResourceUpdate versionedRemove = REMOVE_B.withVersion(new Version(42L, "node2"));
+        BatchMessage message = new BatchMessage(Arrays.asList(versionedAdd, ADD_SEPARATORS, versionedRemove));
+        String encoded = message.encode();
+        assertEquals(message.getUpdates(), BatchMessage.decode(encoded).getUpdates());
+        assertEquals(encoded.length(), BatchMessage.BATCH_TYPE.length() + BatchMessage.encodedLength(versionedAdd) +
+                BatchMessage.encodedLength(ADD_SEPARATORS) + BatchMessage.encodedLength(versionedRemove));
+    }
+}
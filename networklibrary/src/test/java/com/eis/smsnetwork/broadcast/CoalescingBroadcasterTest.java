@@ -0,0 +1,100 @@
+package com.eis.smsnetwork.broadcast;
+
+import androidx.annotation.NonNull;
+
+import com.eis.communication.network.SubscriberSnapshot;
+import com.eis.smslibrary.SMSPeer;
+import com.eis.smsnetwork.ResourceUpdate;
+import com.eis.smsnetwork.SMSNetworkManager;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the CoalescingBroadcaster class
+ */
+public class CoalescingBroadcasterTest {
+
+    private static final long NEVER = 60000;
+
+    private final List<ResourceUpdate> forwarded = new ArrayList<>();
+    private final UpdateBroadcaster downstream = new UpdateBroadcaster() {
+        @Override
+        public void submit(@NonNull ResourceUpdate update) {
+            synchronized (forwarded) {
+                forwarded.add(update);
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+    };
+    private SMSNetworkManager manager;
+
+    @Before
+    public void setup() {
+        manager = new SMSNetworkManager();
+        manager.getNetSubscriberList().addSubscriber(new SMSPeer("+393423541601"));
+    }
+
+    @Test
+    public void supersededUpdates_areDropped() {
+        CoalescingBroadcaster broadcaster = new CoalescingBroadcaster(manager, NEVER, downstream);
+        broadcaster.submit(ResourceUpdate.add("k", "v1"));
+        broadcaster.submit(ResourceUpdate.add("k", "v2"));
+        broadcaster.submit(ResourceUpdate.remove("k"));
+        broadcaster.flush();
+        assertEquals(1, forwarded.size());
+        assertEquals(ResourceUpdate.remove("k"), forwarded.get(0));
+        assertEquals(2, broadcaster.getSavedUpdateCount());
+    }
+
+    @Test
+    public void differentKeys_areAllForwardedInOrderOfLastChange() {
+        CoalescingBroadcaster broadcaster = new CoalescingBroadcaster(manager, NEVER, downstream);
+        broadcaster.submit(ResourceUpdate.add("a", "1"));
+        broadcaster.submit(ResourceUpdate.add("b", "1"));
+        broadcaster.submit(ResourceUpdate.add("a", "2"));
+        broadcaster.flush();
+        assertEquals(2, forwarded.size());
+        assertEquals(ResourceUpdate.add("b", "1"), forwarded.get(0));
+        assertEquals(ResourceUpdate.add("a", "2"), forwarded.get(1));
+        assertEquals(2, broadcaster.getForwardedUpdateCount());
+        assertEquals(1, broadcaster.getSavedUpdateCount());
+    }
+
+    @Test
+    public void withoutDownstream_broadcastsOneMessagePerKey() {
+        final List<String> messages = new ArrayList<>();
+        CoalescingBroadcaster broadcaster = new CoalescingBroadcaster(manager, NEVER) {
+            @Override
+            protected void broadcastMessage(SubscriberSnapshot<SMSPeer> peers, String message) {
+                messages.add(message);
+            }
+        };
+        broadcaster.submit(ResourceUpdate.add("a", "1"));
+        broadcaster.submit(ResourceUpdate.add("a", "2"));
+        broadcaster.submit(ResourceUpdate.add("b", "1"));
+        broadcaster.flush();
+        assertEquals(2, messages.size());
+        assertEquals(ResourceUpdate.add("a", "2").toRequestMessage(), messages.get(0));
+    }
+
+    @Test
+    public void window_flushesPendingUpdates() throws InterruptedException {
+        CoalescingBroadcaster broadcaster = new CoalescingBroadcaster(manager, 10, downstream);
+        broadcaster.submit(ResourceUpdate.add("a", "1"));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (broadcaster.getForwardedUpdateCount() == 0 && System.currentTimeMillis() < deadline)
+            Thread.sleep(5);
+        synchronized (forwarded) {
+            assertEquals(1, forwarded.size());
+        }
+    }
+}
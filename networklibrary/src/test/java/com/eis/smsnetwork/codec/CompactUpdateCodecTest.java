@@ -0,0 +1,176 @@
+package com.eis.smsnetwork.codec;
+
+import com.eis.communication.network.SubscriberSnapshot;
+import com.eis.communication.network.Version;
+import com.eis.smslibrary.SMSPeer;
+import com.eis.smsnetwork.ResourceUpdate;
+import com.eis.smsnetwork.SMSNetworkManager;
+import com.eis.smsnetwork.broadcast.BatchBroadcaster;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the CompactUpdateCodec class
+ */
+public class CompactUpdateCodecTest {
+
+    private CompactUpdateCodec codec;
+
+    @Before
+    public void setup() {
+        codec = new CompactUpdateCodec();
+    }
+
+    @Test
+    public void updates_roundTrip() {
+        List<ResourceUpdate> updates = Arrays.asList(
+                ResourceUpdate.add("key", "value with spaces, \\ and :"),
+                ResourceUpdate.remove("other"),
+                ResourceUpdate.add("", ""));
+        String message = codec.encode(updates);
+        assertTrue(codec.isEncoded(message));
+        assertEquals(updates, codec.decode(message));
+    }
+
+    @Test
+    public void versionedUpdates_roundTrip() {
+        List<ResourceUpdate> updates = Arrays.asList(
+                ResourceUpdate.add("a", "1").withVersion(new Version(Long.MAX_VALUE, "node1")),
+                ResourceUpdate.remove("b").withVersion(new Version(7, "node1")),
+                ResourceUpdate.add("c", "3"),
+                ResourceUpdate.remove("a").withVersion(new Version(8, "node2")));
+        String message = codec.encode(updates);
+        assertEquals(updates, codec.decode(message));
+        // the originator is written only when it changes
+        assertEquals(message.indexOf("node1"), message.lastIndexOf("node1"));
+    }
+
+    @Test
+    public void longValue_roundTrips() {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 5000; i++) value.append((char) ('a' + i % 26));
+        List<ResourceUpdate> updates = Collections.singletonList(ResourceUpdate.add("k", value.toString()));
+        assertEquals(updates, codec.decode(codec.encode(updates)));
+    }
+
+    @Test
+    public void varint_roundTrips() {
+        for (int value : new int[]{0, 1, 31, 32, 1023, 1024, 123456, Integer.MAX_VALUE}) {
+            StringBuilder builder = new StringBuilder();
+            Varints.appendVarint(builder, value);
+            assertEquals(Varints.varintLength(value), builder.length());
+            assertEquals(value, new FieldReader(builder.toString(), 0).readVarint());
+        }
+    }
+
+    @Test
+    public void repeatedKey_isWrittenOnce() {
+        String key = "temperature";
+        List<ResourceUpdate> updates = Arrays.asList(
+                ResourceUpdate.add(key, "20"), ResourceUpdate.add(key, "21"), ResourceUpdate.remove(key));
+        String message = codec.encode(updates);
+        assertEquals(message.indexOf(key), message.lastIndexOf(key));
+        assertEquals(updates, codec.decode(message));
+    }
+
+    @Test
+    public void sharedKeys_areNeverWritten() {
+        CompactUpdateCodec shared = new CompactUpdateCodec(Arrays.asList("humidity", "temperature"));
+        List<ResourceUpdate> updates = Arrays.asList(
+                ResourceUpdate.add("temperature", "20"), ResourceUpdate.remove("humidity"),
+                ResourceUpdate.add("pressure", "1013"), ResourceUpdate.add("pressure", "1014"));
+        String message = shared.encode(updates);
+        assertFalse(message.contains("temperature"));
+        assertFalse(message.contains("humidity"));
+        assertEquals(updates, shared.decode(message));
+    }
+
+    @Test
+    public void compact_isShorterThanText() {
+        List<ResourceUpdate> updates = Arrays.asList(
+                ResourceUpdate.add("a", "1"), ResourceUpdate.add("a", "2"), ResourceUpdate.remove("a"));
+        assertTrue(codec.encode(updates).length() < new TextUpdateCodec().encode(updates).length());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void textMessage_isRejected() {
+        codec.decode("B+1:a1:1");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void truncatedMessage_isRejected() {
+        String message = codec.encode(Collections.singletonList(ResourceUpdate.add("key", "value")));
+        codec.decode(message.substring(0, message.length() - 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownReference_isRejected() {
+        codec.decode("CR5");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownOpcode_isRejected() {
+        codec.decode("Cx");
+    }
+
+    @Test
+    public void compactBatches_fitMoreUpdatesPerMessage() {
+        int textMessages = countMessages(new TextUpdateCodec());
+        int compactMessages = countMessages(codec);
+        // a few keys updated over and over: references save at least a fifth of the messages
+        assertTrue(compactMessages <= textMessages - textMessages / 5);
+    }
+
+    @Test
+    public void writer_matchesEncode() {
+        List<ResourceUpdate> updates = Arrays.asList(
+                ResourceUpdate.add("key", "value").withVersion(new Version(10, "+393423541601")),
+                ResourceUpdate.remove("key").withVersion(new Version(11, "+393423541601")),
+                ResourceUpdate.add("other", "value").withVersion(new Version(12, "+393423541602")),
+                ResourceUpdate.add("key", "again"));
+        UpdateWriter writer = codec.newWriter();
+        for (int i = 0; i < updates.size(); i++) {
+            int expected = codec.encode(updates.subList(0, i + 1)).length();
+            assertEquals(expected, writer.lengthWith(updates.get(i)));
+            writer.append(updates.get(i));
+            assertEquals(expected, writer.length());
+        }
+        assertEquals(codec.encode(updates), writer.getMessage());
+    }
+
+    /**
+     * @return The number of messages a {@link BatchBroadcaster} using the given codec sends for
+     * a stream of updates on a few keys
+     */
+    private int countMessages(UpdateCodec updateCodec) {
+        final List<String> sent = new ArrayList<>();
+        SMSNetworkManager manager = new SMSNetworkManager();
+        manager.getNetSubscriberList().addSubscriber(new SMSPeer("+393423541601"));
+        BatchBroadcaster broadcaster = new BatchBroadcaster(manager,
+                BatchBroadcaster.DEFAULT_MAX_MESSAGE_LENGTH, 60000, updateCodec) {
+            @Override
+            protected void broadcastMessage(SubscriberSnapshot<SMSPeer> snapshot, String message) {
+                sent.add(message);
+            }
+        };
+        for (int i = 0; i < 200; i++) {
+            String key = "sensor" + (i % 8);
+            if (i % 10 == 9) broadcaster.submit(ResourceUpdate.remove(key));
+            else broadcaster.submit(ResourceUpdate.add(key, String.valueOf(i * 7)));
+        }
+        broadcaster.flush();
+        for (String message : sent) {
+            assertTrue(message.length() <= BatchBroadcaster.DEFAULT_MAX_MESSAGE_LENGTH);
+            assertTrue(updateCodec.isEncoded(message));
+        }
+        return sent.size();
+    }
+}
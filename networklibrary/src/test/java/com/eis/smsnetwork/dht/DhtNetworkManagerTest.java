@@ -0,0 +1,290 @@
+package com.eis.smsnetwork.dht;
+
+import com.eis.communication.network.Version;
+import com.eis.communication.network.VersionedResource;
+import com.eis.communication.network.listeners.GetResourceListener;
+import com.eis.communication.network.listeners.RemoveResourceListener;
+import com.eis.communication.network.listeners.SetResourceListener;
+import com.eis.smslibrary.SMSPeer;
+import com.eis.smsnetwork.SMSFailReason;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the DhtNetworkManager class, with a whole network of nodes whose messages are
+ * delivered in order by the test
+ */
+public class DhtNetworkManagerTest {
+
+    private static final int NODES = 100;
+    private static final int BUCKET_SIZE = 4;
+
+    private final Map<SMSPeer, DhtNetworkManager> nodes = new LinkedHashMap<>();
+    private final Queue<Object[]> inFlight = new ArrayDeque<>();
+    private final List<SMSPeer> peers = new ArrayList<>();
+    private String found;
+    private SMSFailReason failure;
+    private int storedResources;
+    private String droppedPrefix = null;
+    private long lookupMessages;
+
+    private final GetResourceListener<String, String, SMSFailReason> getListener =
+            new GetResourceListener<String, String, SMSFailReason>() {
+                @Override
+                public void onGetResource(String key, String value) {
+                    found = value;
+                }
+
+                @Override
+                public void onGetResourceFailed(String key, SMSFailReason reason) {
+                    failure = reason;
+                }
+            };
+    private final SetResourceListener<String, String, SMSFailReason> setListener =
+            new SetResourceListener<String, String, SMSFailReason>() {
+                @Override
+                public void onResourceSet(String key, String value) {
+                    storedResources++;
+                }
+
+                @Override
+                public void onResourceSetFail(String key, String value, SMSFailReason reason) {
+                    fail();
+                }
+            };
+
+    @Before
+    public void setup() {
+        for (int i = 0; i < NODES; i++) {
+            SMSPeer peer = new SMSPeer("+3934235" + (41000 + i));
+            nodes.put(peer, newNode(peer));
+            peers.add(peer);
+            if (i > 0) {
+                nodes.get(peer).join(peers.get(0));
+                deliverAll();
+            }
+        }
+    }
+
+    private DhtNetworkManager newNode(SMSPeer peer) {
+        return newNode(peer, 60000);
+    }
+
+    private DhtNetworkManager newNode(final SMSPeer peer, long rpcTimeoutMillis) {
+        return new DhtNetworkManager(peer, BUCKET_SIZE, 3, rpcTimeoutMillis, 3600000) {
+            @Override
+            protected void sendMessage(SMSPeer destination, String message) {
+                inFlight.add(new Object[]{peer, destination, message});
+            }
+        };
+    }
+
+    private void deliverAll() {
+        while (!inFlight.isEmpty()) {
+            Object[] message = inFlight.poll();
+            String text = (String) message[2];
+            if (droppedPrefix != null && text.startsWith(droppedPrefix)) continue;
+            char operation = text.charAt(DhtMessage.DHT_TYPE.length());
+            if (operation == DhtMessage.FIND_VALUE || operation == DhtMessage.VALUE || operation == DhtMessage.NODES)
+                lookupMessages++;
+            DhtNetworkManager destination = nodes.get(message[1]);
+            if (destination != null) destination.onMessage((SMSPeer) message[0], (String) message[2]);
+        }
+    }
+
+    @Test
+    public void messages_roundTrip() {
+        VersionedResource<String> value = VersionedResource.of("a value", new Version(123, "+393423541000"));
+        DhtMessage store = DhtMessage.decode(DhtMessage.store(9, "key", value).encode());
+        assertEquals(DhtMessage.STORE, store.getOperation());
+        assertEquals("key", store.getKey());
+        assertEquals(value, store.getValue());
+        DhtMessage nodesReply = DhtMessage.decode(DhtMessage.nodes(4, peers.subList(0, 3)).encode());
+        assertEquals(peers.subList(0, 3), nodesReply.getNodes());
+        assertEquals(new NodeId(-5), DhtMessage.decode(DhtMessage.findNode(1, new NodeId(-5)).encode()).getTarget());
+        assertTrue(DhtMessage.decode(DhtMessage.value(2, VersionedResource.<String>tombstone(new Version(1, "x")))
+                .encode()).getValue().isTombstone());
+        assertTrue(DhtMessage.decode(DhtMessage.stored(7).encode()).isReply());
+    }
+
+    @Test
+    public void lookup_returnsTheNewestValueOfTheQuorum() {
+        VersionedResource<String> older = VersionedResource.of("older", new Version(1, "+393423541000"));
+        VersionedResource<String> newer = VersionedResource.of("newer", new Version(2, "+393423541000"));
+        final List<VersionedResource<String>> outcome = new ArrayList<>();
+        List<Contact> contacts = new ArrayList<>();
+        for (int i = 0; i < BUCKET_SIZE; i++)
+            contacts.add(new Contact(peers.get(i)));
+        NodeLookup lookup = new NodeLookup(NodeId.of("key"), "key", BUCKET_SIZE, 3, 2, contacts,
+                new NodeLookup.Callback() {
+                    @Override
+                    public void onLookupComplete(List<Contact> closest, VersionedResource<String> value) {
+                        outcome.add(value);
+                    }
+                });
+        List<Contact> queried = lookup.takeNextQueries();
+        lookup.onValue(queried.get(0), newer);
+        // a single value isn't a quorum
+        assertFalse(lookup.completeIfDone());
+        lookup.onValue(queried.get(1), older);
+        assertTrue(lookup.completeIfDone());
+        lookup.notifyComplete();
+        assertEquals(Arrays.asList(newer), outcome);
+    }
+
+    @Test
+    public void set_isReportedOnlyOnceStored() {
+        droppedPrefix = DhtMessage.DHT_TYPE + DhtMessage.STORED;
+        nodes.get(peers.get(10)).setResource("key", "value", setListener);
+        deliverAll();
+        assertEquals(0, storedResources);
+        droppedPrefix = null;
+        nodes.get(peers.get(10)).setResource("key", "value", setListener);
+        deliverAll();
+        assertEquals(1, storedResources);
+    }
+
+    @Test
+    public void set_withoutAcknowledgements_fails() throws InterruptedException {
+        SMSPeer writer = new SMSPeer("+393999999998");
+        nodes.put(writer, newNode(writer, 50));
+        nodes.get(writer).join(peers.get(0));
+        deliverAll();
+        droppedPrefix = DhtMessage.DHT_TYPE + DhtMessage.STORED;
+        final List<SMSFailReason> failures = new ArrayList<>();
+        nodes.get(writer).setResource("key", "value", new SetResourceListener<String, String, SMSFailReason>() {
+            @Override
+            public void onResourceSet(String key, String value) {
+                failures.add(null);
+            }
+
+            @Override
+            public void onResourceSetFail(String key, String value, SMSFailReason reason) {
+                synchronized (failures) {
+                    failures.add(reason);
+                }
+            }
+        });
+        deliverAll();
+        for (int i = 0; i < 100; i++) {
+            synchronized (failures) {
+                if (!failures.isEmpty()) break;
+            }
+            Thread.sleep(20);
+        }
+        synchronized (failures) {
+            assertEquals(Arrays.asList(SMSFailReason.REQUEST_EXPIRED), failures);
+        }
+    }
+
+    @Test
+    public void joins_fillTheRoutingTables() {
+        for (DhtNetworkManager node : nodes.values())
+            assertTrue(node.getRoutingTable().size() >= BUCKET_SIZE);
+    }
+
+    @Test
+    public void setThenGet_fromAnotherNode() {
+        nodes.get(peers.get(10)).setResource("key", "value", setListener);
+        deliverAll();
+        nodes.get(peers.get(70)).getResource("key", getListener);
+        deliverAll();
+        assertEquals("value", found);
+    }
+
+    @Test
+    public void resources_areStoredOnKNodesOnly() {
+        nodes.get(peers.get(5)).setResource("key", "value", setListener);
+        deliverAll();
+        int holders = 0;
+        for (DhtNetworkManager node : nodes.values())
+            if (node.getStoredResources().containsKey("key")) holders++;
+        assertEquals(BUCKET_SIZE, holders);
+    }
+
+    @Test
+    public void lookups_costLogarithmicMessages() {
+        nodes.get(peers.get(1)).setResource("key", "value", setListener);
+        deliverAll();
+        for (int i = 0; i < 20; i++) {
+            found = null;
+            long before = lookupMessages;
+            nodes.get(peers.get(20 + i)).getResource("key", getListener);
+            deliverAll();
+            assertEquals("value", found);
+            // the pings refreshing the routing tables are left out
+            long cost = lookupMessages - before;
+            // a broadcast would take one message for every node
+            assertTrue("Lookup took " + cost + " messages", cost < NODES / 2);
+        }
+    }
+
+    @Test
+    public void missingKey_failsWithNoResource() {
+        nodes.get(peers.get(3)).getResource("missing", getListener);
+        deliverAll();
+        assertEquals(SMSFailReason.NO_RESOURCE, failure);
+    }
+
+    @Test
+    public void remove_hidesTheResource() {
+        nodes.get(peers.get(1)).setResource("key", "value", setListener);
+        deliverAll();
+        nodes.get(peers.get(2)).removeResource("key", new RemoveResourceListener<String, SMSFailReason>() {
+            @Override
+            public void onResourceRemoved(String key) {
+            }
+
+            @Override
+            public void onResourceRemoveFail(String key, SMSFailReason reason) {
+                fail();
+            }
+        });
+        deliverAll();
+        nodes.get(peers.get(50)).getResource("key", getListener);
+        deliverAll();
+        assertNull(found);
+        assertEquals(SMSFailReason.NO_RESOURCE, failure);
+    }
+
+    @Test
+    public void newNode_receivesTheResourcesItIsClosestTo() {
+        nodes.get(peers.get(1)).setResource("key", "value", setListener);
+        deliverAll();
+        // a newcomer whose id is as close as possible to the key
+        NodeId keyId = NodeId.of("key");
+        SMSPeer closest = null;
+        for (int i = 0; closest == null || i < 5000; i++) {
+            SMSPeer candidate = new SMSPeer("+3935" + (1000000 + i));
+            if (closest == null || keyId.compareDistance(NodeId.of(candidate.getAddress()),
+                    NodeId.of(closest.getAddress())) < 0)
+                closest = candidate;
+        }
+        nodes.put(closest, newNode(closest));
+        nodes.get(closest).join(peers.get(0));
+        deliverAll();
+        assertTrue(nodes.get(closest).getStoredResources().containsKey("key"));
+    }
+
+    @Test
+    public void alone_storesLocally() {
+        SMSPeer lonely = new SMSPeer("+393999999999");
+        DhtNetworkManager node = newNode(lonely);
+        node.setResource("key", "value", setListener);
+        node.getResource("key", getListener);
+        assertEquals("value", found);
+        assertTrue(inFlight.isEmpty());
+        assertEquals(Arrays.asList("key"), new ArrayList<>(node.getStoredResources().keySet()));
+    }
+}
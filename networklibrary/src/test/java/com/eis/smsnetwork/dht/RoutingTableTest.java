@@ -0,0 +1,106 @@
+package com.eis.smsnetwork.dht;
+
+import com.eis.smslibrary.SMSPeer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the RoutingTable and NodeId classes
+ */
+public class RoutingTableTest {
+
+    private static final int BUCKET_SIZE = 2;
+
+    private Contact self;
+    private RoutingTable table;
+
+    @Before
+    public void setup() {
+        self = new Contact(new SMSPeer("+393423541600"));
+        table = new RoutingTable(self, BUCKET_SIZE);
+    }
+
+    /**
+     * @return Contacts falling in the given bucket of the table
+     */
+    private List<Contact> contactsInBucket(int bucket, int count) {
+        List<Contact> contacts = new ArrayList<>();
+        for (int i = 0; contacts.size() < count; i++) {
+            Contact contact = new Contact(new SMSPeer("+39" + (3000000000L + i)));
+            if (self.getId().bucketIndex(contact.getId()) == bucket) contacts.add(contact);
+        }
+        return contacts;
+    }
+
+    @Test
+    public void nodeId_distanceIsXor() {
+        NodeId id = new NodeId(0b1010);
+        assertEquals(0b0110, id.distance(new NodeId(0b1100)));
+        assertEquals(3, id.bucketIndex(new NodeId(0b0010)));
+        assertEquals(NodeId.BITS - 1, id.bucketIndex(new NodeId(Long.MIN_VALUE)));
+        assertTrue(id.compareDistance(new NodeId(0b1011), new NodeId(Long.MIN_VALUE)) < 0);
+        assertEquals(NodeId.of("+393423541600"), NodeId.of("+393423541600"));
+    }
+
+    @Test
+    public void randomIdInBucket_fallsInTheBucket() {
+        for (int bucket = 0; bucket < NodeId.BITS; bucket++)
+            assertEquals(bucket, self.getId().bucketIndex(self.getId().randomIdInBucket(bucket, -1L)));
+    }
+
+    @Test
+    public void self_isNeverAdded() {
+        assertNull(table.update(self));
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    public void fullBucket_returnsTheLeastRecentlySeen() {
+        List<Contact> contacts = contactsInBucket(NodeId.BITS - 1, 3);
+        assertNull(table.update(contacts.get(0)));
+        assertNull(table.update(contacts.get(1)));
+        assertEquals(contacts.get(0), table.update(contacts.get(2)));
+        assertFalse(table.contains(contacts.get(2)));
+
+        // seeing the first one again makes the second the least recently seen
+        assertNull(table.update(contacts.get(0)));
+        assertEquals(contacts.get(1), table.update(contacts.get(2)));
+    }
+
+    @Test
+    public void remove_promotesAWaitingContact() {
+        List<Contact> contacts = contactsInBucket(NodeId.BITS - 1, 3);
+        table.update(contacts.get(0));
+        table.update(contacts.get(1));
+        table.update(contacts.get(2));
+        assertTrue(table.remove(contacts.get(0)));
+        assertTrue(table.contains(contacts.get(2)));
+        assertEquals(BUCKET_SIZE, table.size());
+    }
+
+    @Test
+    public void findClosest_sortsByDistance() {
+        for (int bucket = NodeId.BITS - 4; bucket < NodeId.BITS; bucket++)
+            for (Contact contact : contactsInBucket(bucket, 1))
+                table.update(contact);
+        List<Contact> closest = table.findClosest(self.getId(), 3);
+        assertEquals(3, closest.size());
+        for (int i = 1; i < closest.size(); i++)
+            assertTrue(self.getId().compareDistance(closest.get(i - 1).getId(), closest.get(i).getId()) < 0);
+    }
+
+    @Test
+    public void staleBuckets_areTheOnesWithoutLookups() {
+        Contact contact = contactsInBucket(NodeId.BITS - 1, 1).get(0);
+        table.update(contact);
+        assertEquals(1, table.getStaleBuckets(1000, 100).size());
+        table.touch(contact.getId(), 950);
+        assertTrue(table.getStaleBuckets(1000, 100).isEmpty());
+    }
+}
@@ -0,0 +1,169 @@
+package com.eis.smsnetwork.dissemination;
+
+import com.eis.communication.network.SubscriberSnapshot;
+import com.eis.smslibrary.SMSPeer;
+import com.eis.smsnetwork.MessageId;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the Disseminator class and its strategies, run on a small simulated network
+ * where every node knows every other one.
+ */
+public class DisseminatorTest {
+
+    private static final String MESSAGE = "0 key value";
+
+    @Test
+    public void fullMesh_originatorSendsToEveryone() {
+        SimulatedNetwork network = new SimulatedNetwork(20);
+        for (int i = 0; i < network.size(); i++)
+            network.nodes.get(i).setStrategy(new FullMeshStrategy());
+        network.broadcastFrom(0, MESSAGE);
+        assertEquals(19, network.deliveredCount(MESSAGE));
+        assertEquals(19, network.nodes.get(0).disseminator.getSentMessageCount());
+    }
+
+    @Test
+    public void tree_reachesEveryoneWithBoundedSends() {
+        SimulatedNetwork network = new SimulatedNetwork(100);
+        for (int i = 0; i < network.size(); i++)
+            network.nodes.get(i).setStrategy(new TreeStrategy(3, network.peer(i)));
+        network.broadcastFrom(42, MESSAGE);
+        assertEquals(99, network.deliveredCount(MESSAGE));
+        for (SimulatedNode node : network.nodes)
+            assertTrue(node.sentMessages <= 3);
+    }
+
+    @Test
+    public void gossip_reachesEveryoneWithBoundedSends() {
+        SimulatedNetwork network = new SimulatedNetwork(100);
+        Random random = new Random(1);
+        for (int i = 0; i < network.size(); i++)
+            network.nodes.get(i).setStrategy(new GossipStrategy(8, random));
+        network.broadcastFrom(0, MESSAGE);
+        assertEquals(99, network.deliveredCount(MESSAGE));
+        for (SimulatedNode node : network.nodes)
+            assertTrue(node.sentMessages <= 8);
+    }
+
+    @Test
+    public void duplicates_areDroppedAndCounted() {
+        SimulatedNetwork network = new SimulatedNetwork(3);
+        for (int i = 0; i < network.size(); i++)
+            network.nodes.get(i).setStrategy(new GossipStrategy(2));
+        SimulatedNode receiver = network.nodes.get(1);
+        String wrapped = Disseminator.DISSEMINATED_TYPE + new MessageId("+100", 7).encode() +
+                Disseminator.ID_TERMINATOR + MESSAGE;
+        assertEquals(MESSAGE, receiver.disseminator.onMessageReceived(network.peer(2), wrapped,
+                receiver.snapshot));
+        assertNull(receiver.disseminator.onMessageReceived(network.peer(2), wrapped, receiver.snapshot));
+        assertEquals(1, receiver.disseminator.getDuplicateMessageCount());
+    }
+
+    @Test
+    public void sequence_startsFromTheClock() {
+        long before = System.currentTimeMillis();
+        Disseminator disseminator = new Disseminator(new FullMeshStrategy(), "+393423541600000");
+        MessageId id = disseminator.broadcast(new SubscriberSnapshot<SMSPeer>(0, new ArrayList<SMSPeer>()), MESSAGE);
+        assertTrue(id.getSequence() >= before);
+        assertTrue(Disseminator.DISSEMINATED_TYPE.length() + id.encode().length() + 1 <= Disseminator.MAX_WRAP_LENGTH);
+    }
+
+    @Test
+    public void originator_isReadFromTheWrap() {
+        String wrapped = Disseminator.DISSEMINATED_TYPE + new MessageId("+100", 7).encode() +
+                Disseminator.ID_TERMINATOR + MESSAGE;
+        assertEquals("+100", Disseminator.getOriginator(wrapped));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void notDisseminatedMessage_throws() {
+        new Disseminator(new FullMeshStrategy(), "+100").onMessageReceived(new SMSPeer("+101"),
+                MESSAGE, new SubscriberSnapshot<SMSPeer>(0, new ArrayList<SMSPeer>()));
+    }
+
+    /**
+     * Network of nodes exchanging messages through an in-memory queue
+     */
+    private static class SimulatedNetwork {
+        final List<SimulatedNode> nodes = new ArrayList<>();
+        final Map<SMSPeer, SimulatedNode> byPeer = new HashMap<>();
+        final Queue<Object[]> inFlight = new ArrayDeque<>();
+
+        SimulatedNetwork(int size) {
+            List<SMSPeer> peers = new ArrayList<>();
+            for (int i = 0; i < size; i++)
+                peers.add(new SMSPeer("+" + (1000 + i)));
+            for (SMSPeer peer : peers) {
+                List<SMSPeer> others = new ArrayList<>(peers);
+                others.remove(peer);
+                SimulatedNode node = new SimulatedNode(this, peer, new SubscriberSnapshot<>(1, others));
+                nodes.add(node);
+                byPeer.put(peer, node);
+            }
+        }
+
+        int size() {
+            return nodes.size();
+        }
+
+        SMSPeer peer(int index) {
+            return nodes.get(index).peer;
+        }
+
+        void broadcastFrom(int index, String message) {
+            SimulatedNode origin = nodes.get(index);
+            origin.disseminator.broadcast(origin.snapshot, message);
+            while (!inFlight.isEmpty()) {
+                Object[] delivery = inFlight.poll();
+                SimulatedNode target = byPeer.get((SMSPeer) delivery[1]);
+                String payload = target.disseminator.onMessageReceived((SMSPeer) delivery[0],
+                        (String) delivery[2], target.snapshot);
+                if (payload != null) target.delivered.add(payload);
+            }
+        }
+
+        int deliveredCount(String message) {
+            int count = 0;
+            for (SimulatedNode node : nodes)
+                if (node.delivered.contains(message)) count++;
+            return count;
+        }
+    }
+
+    private static class SimulatedNode {
+        final SimulatedNetwork network;
+        final SMSPeer peer;
+        final SubscriberSnapshot<SMSPeer> snapshot;
+        final List<String> delivered = new ArrayList<>();
+        Disseminator disseminator;
+        int sentMessages = 0;
+
+        SimulatedNode(SimulatedNetwork network, SMSPeer peer, SubscriberSnapshot<SMSPeer> snapshot) {
+            this.network = network;
+            this.peer = peer;
+            this.snapshot = snapshot;
+        }
+
+        void setStrategy(DisseminationStrategy strategy) {
+            disseminator = new Disseminator(strategy, peer.getAddress()) {
+                @Override
+                protected void sendMessage(SMSPeer target, String message) {
+                    sentMessages++;
+                    network.inFlight.add(new Object[]{peer, target, message});
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.eis.smsnetwork.partition;
+
+import com.eis.smslibrary.SMSPeer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the HashRing class
+ */
+public class HashRingTest {
+
+    private static final int KEYS = 2000;
+
+    private List<SMSPeer> peers;
+
+    @Before
+    public void setup() {
+        peers = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+            peers.add(new SMSPeer("+3934235416" + (10 + i)));
+    }
+
+    @Test
+    public void owners_areDistinctAndBounded() {
+        HashRing ring = new HashRing(peers, HashRing.DEFAULT_VIRTUAL_NODES);
+        List<SMSPeer> owners = ring.getOwners("key", 3);
+        assertEquals(3, owners.size());
+        assertEquals(3, new java.util.HashSet<>(owners).size());
+        assertEquals(2, new HashRing(peers.subList(0, 2), 8).getOwners("key", 3).size());
+        assertTrue(new HashRing(new ArrayList<SMSPeer>(), 8).getOwners("key", 3).isEmpty());
+    }
+
+    @Test
+    public void owners_dontDependOnTheOrderOfTheMembers() {
+        HashRing ring = new HashRing(peers, HashRing.DEFAULT_VIRTUAL_NODES);
+        List<SMSPeer> shuffled = new ArrayList<>(peers);
+        Collections.reverse(shuffled);
+        HashRing other = new HashRing(shuffled, HashRing.DEFAULT_VIRTUAL_NODES);
+        for (int i = 0; i < 100; i++)
+            assertEquals(ring.getOwners("key" + i, 3), other.getOwners("key" + i, 3));
+    }
+
+    @Test
+    public void keys_areSpreadEvenly() {
+        HashRing ring = new HashRing(peers, HashRing.DEFAULT_VIRTUAL_NODES);
+        Map<SMSPeer, Integer> primaries = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            SMSPeer primary = ring.getOwners("key" + i, 1).get(0);
+            Integer count = primaries.get(primary);
+            primaries.put(primary, count == null ? 1 : count + 1);
+        }
+        assertEquals(peers.size(), primaries.size());
+        for (int count : primaries.values())
+            assertTrue("Unbalanced ring: " + primaries, count < KEYS / peers.size() * 2);
+    }
+
+    @Test
+    public void addingAPeer_movesOnlyItsKeys() {
+        HashRing before = new HashRing(peers.subList(0, 9), HashRing.DEFAULT_VIRTUAL_NODES);
+        HashRing after = new HashRing(peers, HashRing.DEFAULT_VIRTUAL_NODES);
+        SMSPeer added = peers.get(9);
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            SMSPeer oldPrimary = before.getOwners("key" + i, 1).get(0);
+            SMSPeer newPrimary = after.getOwners("key" + i, 1).get(0);
+            if (oldPrimary.equals(newPrimary)) continue;
+            assertEquals(added, newPrimary);
+            moved++;
+        }
+        assertTrue(moved > 0);
+        assertTrue("Too many keys moved: " + moved, moved < KEYS / 5);
+    }
+}
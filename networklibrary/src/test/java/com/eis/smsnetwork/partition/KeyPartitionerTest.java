@@ -0,0 +1,183 @@
+package com.eis.smsnetwork.partition;
+
+import com.eis.communication.network.VersionedResource;
+import com.eis.smslibrary.SMSPeer;
+import com.eis.smsnetwork.ResourceUpdate;
+import com.eis.smsnetwork.SMSNetDictionary;
+import com.eis.smsnetwork.SMSNetSubscriberList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the KeyPartitioner class, with a whole network of partitioners delivering their
+ * messages to each other
+ */
+public class KeyPartitionerTest {
+
+    private static final int REPLICAS = 2;
+    private static final int KEYS = 200;
+
+    private final Map<SMSPeer, SMSNetDictionary> dictionaries = new HashMap<>();
+    private final Map<SMSPeer, SMSNetSubscriberList> subscriberLists = new HashMap<>();
+    private final Map<SMSPeer, KeyPartitioner> partitioners = new HashMap<>();
+    private final List<SMSPeer> peers = new ArrayList<>();
+    private int sentMessages;
+    private boolean dropMessages;
+
+    @Before
+    public void setup() {
+        for (int i = 0; i < 5; i++)
+            join(new SMSPeer("+39342354160" + i));
+        for (SMSPeer peer : peers)
+            partitioners.get(peer).rebalance();
+    }
+
+    private void join(final SMSPeer peer) {
+        for (SMSPeer other : peers)
+            subscriberLists.get(other).addSubscriber(peer);
+        SMSNetSubscriberList subscribers = new SMSNetSubscriberList();
+        for (SMSPeer other : peers)
+            subscribers.addSubscriber(other);
+        peers.add(peer);
+        dictionaries.put(peer, new SMSNetDictionary());
+        subscriberLists.put(peer, subscribers);
+        partitioners.put(peer, new KeyPartitioner(peer, dictionaries.get(peer), subscribers, REPLICAS, 32) {
+            @Override
+            protected void sendMessage(SMSPeer destination, String message) {
+                sentMessages++;
+                if (!dropMessages) partitioners.get(destination).onMessage(peer, message);
+            }
+        });
+    }
+
+    private void set(SMSPeer writer, String key, String value) {
+        dictionaries.get(writer).addResource(key, value);
+        partitioners.get(writer).submit(ResourceUpdate.add(key, value).withVersionFrom(dictionaries.get(writer)));
+    }
+
+    private void assertStoredOnlyByOwners() {
+        HashRing ring = partitioners.get(peers.get(0)).getRing();
+        for (int i = 0; i < KEYS; i++) {
+            String key = "key" + i;
+            List<SMSPeer> owners = ring.getOwners(key, REPLICAS);
+            for (SMSPeer peer : peers)
+                assertEquals(key + " on " + peer, owners.contains(peer) ? "value" + i : null,
+                        dictionaries.get(peer).getResource(key));
+        }
+    }
+
+    @Test
+    public void writes_reachOnlyTheOwners() {
+        for (int i = 0; i < KEYS; i++)
+            set(peers.get(i % peers.size()), "key" + i, "value" + i);
+        assertStoredOnlyByOwners();
+        int stored = 0;
+        for (SMSNetDictionary dictionary : dictionaries.values())
+            stored += dictionary.getLiveResourceCount();
+        assertEquals(KEYS * REPLICAS, stored);
+    }
+
+    @Test
+    public void everyNode_agreesOnTheOwners() {
+        for (int i = 0; i < KEYS; i++)
+            for (SMSPeer peer : peers)
+                assertEquals(partitioners.get(peers.get(0)).getOwners("key" + i),
+                        partitioners.get(peer).getOwners("key" + i));
+    }
+
+    @Test
+    public void join_movesOnlyTheAffectedKeys() {
+        for (int i = 0; i < KEYS; i++)
+            set(peers.get(i % peers.size()), "key" + i, "value" + i);
+        SMSPeer newcomer = new SMSPeer("+393423541609");
+        join(newcomer);
+        sentMessages = 0;
+        int moved = 0;
+        for (SMSPeer peer : peers)
+            moved += partitioners.get(peer).rebalance();
+
+        assertStoredOnlyByOwners();
+        assertEquals(dictionaries.get(newcomer).getLiveResourceCount(), moved);
+        assertTrue("Too many keys moved: " + moved, moved < KEYS * REPLICAS / 2);
+    }
+
+    @Test
+    public void leave_handsOffTheKeys() {
+        for (int i = 0; i < KEYS; i++)
+            set(peers.get(i % peers.size()), "key" + i, "value" + i);
+        SMSPeer leaving = peers.get(2);
+        partitioners.get(leaving).handOff();
+        peers.remove(leaving);
+        dictionaries.get(leaving).clear();
+        for (SMSPeer peer : peers) {
+            subscriberLists.get(peer).removeSubscriber(leaving);
+            partitioners.get(peer).rebalance();
+        }
+        assertStoredOnlyByOwners();
+    }
+
+    @Test
+    public void rebalance_withoutChanges_sendsNothing() {
+        set(peers.get(0), "key", "value");
+        sentMessages = 0;
+        for (SMSPeer peer : peers)
+            assertEquals(0, partitioners.get(peer).rebalance());
+        assertEquals(0, sentMessages);
+    }
+
+    @Test
+    public void nonOwner_keepsNoCopy() {
+        KeyPartitioner partitioner = partitioners.get(peers.get(0));
+        String key = null;
+        for (int i = 0; key == null; i++)
+            if (!partitioner.isOwner("key" + i)) key = "key" + i;
+        set(peers.get(0), key, "value");
+        VersionedResource<String> local = dictionaries.get(peers.get(0)).getVersionedResource(key);
+        assertNull(local);
+        assertEquals(1, partitioner.getEvictedResourceCount());
+        for (SMSPeer owner : partitioner.getRemoteOwners(key))
+            assertEquals("value", dictionaries.get(owner).getResource(key));
+        assertEquals(0, partitioner.getPendingHandoffCount());
+    }
+
+    @Test
+    public void lostHandoff_keepsTheKey() {
+        KeyPartitioner partitioner = partitioners.get(peers.get(0));
+        String key = null;
+        for (int i = 0; key == null; i++)
+            if (!partitioner.isOwner("key" + i)) key = "key" + i;
+        dropMessages = true;
+        set(peers.get(0), key, "value");
+        assertEquals("value", dictionaries.get(peers.get(0)).getResource(key));
+        assertEquals(0, partitioner.getEvictedResourceCount());
+        assertEquals(REPLICAS, partitioner.getPendingHandoffCount());
+    }
+
+    @Test
+    public void ackFromAnotherPeer_isIgnored() {
+        KeyPartitioner partitioner = partitioners.get(peers.get(0));
+        String key = null;
+        for (int i = 0; key == null; i++)
+            if (!partitioner.isOwner("key" + i)) key = "key" + i;
+        dropMessages = true;
+        set(peers.get(0), key, "value");
+        SMSPeer stranger = new SMSPeer("+393423541699");
+        for (int id = 0; id < REPLICAS; id++)
+            assertTrue(partitioner.onMessage(stranger, KeyPartitioner.ACK_TYPE + id));
+        assertEquals("value", dictionaries.get(peers.get(0)).getResource(key));
+        assertEquals(REPLICAS, partitioner.getPendingHandoffCount());
+    }
+
+    @Test
+    public void unrelatedMessage_isNotHandled() {
+        assertFalse(partitioners.get(peers.get(0)).onMessage(peers.get(1), "Bxyz"));
+    }
+}
@@ -0,0 +1,137 @@
+package com.eis.smsnetwork.persistence;
+
+import com.eis.communication.network.HybridLogicalClock;
+import com.eis.communication.network.Version;
+import com.eis.communication.network.VersionedResource;
+import com.eis.smsnetwork.SMSWordKeyValidator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the MappedNetDictionary class, run on a temporary file
+ */
+public class MappedNetDictionaryTest {
+
+    private static final long SNAPSHOT_TIME = 1000L << HybridLogicalClock.LOGICAL_BITS;
+
+    private File file;
+    private MappedNetDictionary dictionary;
+
+    @Before
+    public void setup() throws IOException {
+        file = File.createTempFile("snapshot", ".map");
+        Map<String, VersionedResource<String>> entries = new HashMap<>();
+        entries.put("mapped", VersionedResource.of("value", new Version(SNAPSHOT_TIME, "remote")));
+        entries.put("removed", VersionedResource.<String>tombstone(new Version(SNAPSHOT_TIME, "remote")));
+        MappedSnapshot.write(file, entries);
+        dictionary = open();
+    }
+
+    @After
+    public void teardown() {
+        file.delete();
+    }
+
+    private MappedNetDictionary open() throws IOException {
+        // the physical clock is behind the snapshot, as after a clock change
+        HybridLogicalClock clock = new HybridLogicalClock() {
+            @Override
+            protected long currentTimeMillis() {
+                return 1;
+            }
+        };
+        return new MappedNetDictionary(MappedSnapshot.open(file), new SMSWordKeyValidator(), "local", clock);
+    }
+
+    @Test
+    public void getResource_readsTheSnapshot() {
+        assertEquals("value", dictionary.getResource("mapped"));
+        assertNull(dictionary.getResource("removed"));
+        assertNull(dictionary.getResource("missing"));
+        assertEquals(0, dictionary.getOverlaySize());
+    }
+
+    @Test
+    public void writes_goToTheOverlay() {
+        dictionary.addResource("mapped", "new");
+        dictionary.addResource("other", "value");
+        assertEquals("new", dictionary.getResource("mapped"));
+        assertEquals("value", dictionary.getResource("other"));
+        assertEquals(2, dictionary.getOverlaySize());
+        assertTrue(dictionary.getVersionedResource("mapped").getVersion().getTimestamp() > SNAPSHOT_TIME);
+    }
+
+    @Test
+    public void remove_hidesTheSnapshot() {
+        dictionary.removeResource("mapped");
+        assertNull(dictionary.getResource("mapped"));
+        assertFalse(dictionary.getResources().containsKey("mapped"));
+    }
+
+    @Test
+    public void conditionalChanges_seeTheSnapshot() {
+        assertEquals("value", dictionary.addResourceIfAbsent("mapped", "other"));
+        assertNull(dictionary.addResourceIfAbsent("removed", "back"));
+        assertTrue(dictionary.replaceResource("mapped", "value", "replaced"));
+        assertEquals("replaced", dictionary.getResource("mapped"));
+        assertEquals("back", dictionary.getResource("removed"));
+    }
+
+    @Test
+    public void merge_comparesWithTheSnapshot() {
+        assertFalse(dictionary.mergeResource("mapped",
+                VersionedResource.of("old", new Version(SNAPSHOT_TIME - 1, "remote"))));
+        assertEquals("value", dictionary.getResource("mapped"));
+        assertTrue(dictionary.mergeResource("mapped",
+                VersionedResource.of("newer", new Version(SNAPSHOT_TIME + 1, "remote"))));
+        assertEquals("newer", dictionary.getResource("mapped"));
+    }
+
+    @Test
+    public void purge_keepsTombstonesShadowingTheSnapshot() {
+        dictionary.removeResource("mapped");
+        dictionary.addResource("other", "value");
+        dictionary.removeResource("other");
+        Map<String, VersionedResource<String>> purged = dictionary.purgeTombstones(Long.MAX_VALUE);
+        assertEquals(1, purged.size());
+        assertTrue(purged.containsKey("other"));
+        assertNull(dictionary.getResource("mapped"));
+        assertTrue(dictionary.getVersionedResource("mapped").isTombstone());
+    }
+
+    @Test
+    public void counts_includeTheSnapshot() {
+        dictionary.addResource("other", "value");
+        assertEquals(2, dictionary.getLiveResourceCount());
+        assertEquals(1, dictionary.getTombstoneCount());
+    }
+
+    @Test
+    public void clear_dropsTheSnapshot() {
+        dictionary.clear();
+        assertNull(dictionary.getResource("mapped"));
+        assertTrue(dictionary.getVersionedResources().isEmpty());
+    }
+
+    @Test
+    public void writeSnapshot_foldsTheOverlay() throws IOException {
+        dictionary.addResource("other", "value");
+        dictionary.removeResource("mapped");
+        dictionary.writeSnapshot(file);
+
+        MappedNetDictionary reopened = open();
+        assertEquals(0, reopened.getOverlaySize());
+        assertEquals(3, reopened.getSnapshot().size());
+        assertEquals("value", reopened.getResource("other"));
+        assertNull(reopened.getResource("mapped"));
+    }
+}
@@ -0,0 +1,96 @@
+package com.eis.smsnetwork.persistence;
+
+import com.eis.communication.network.Version;
+import com.eis.communication.network.VersionedResource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the MappedSnapshot class, run on a temporary file
+ */
+public class MappedSnapshotTest {
+
+    private File file;
+
+    @Before
+    public void setup() throws IOException {
+        file = File.createTempFile("snapshot", ".map");
+    }
+
+    @After
+    public void teardown() {
+        file.delete();
+    }
+
+    @Test
+    public void emptyMap_hasNoEntries() throws IOException {
+        MappedSnapshot.write(file, new HashMap<String, VersionedResource<String>>());
+        MappedSnapshot snapshot = MappedSnapshot.open(file);
+        assertEquals(0, snapshot.size());
+        assertNull(snapshot.get("key"));
+    }
+
+    @Test
+    public void manyEntries_areFound() throws IOException {
+        Map<String, VersionedResource<String>> entries = new HashMap<>();
+        for (int i = 0; i < 1000; i++)
+            entries.put("key" + i, VersionedResource.of("value" + i, new Version(i + 1, "node" + (i % 3))));
+        MappedSnapshot.write(file, entries);
+
+        MappedSnapshot snapshot = MappedSnapshot.open(file);
+        assertEquals(1000, snapshot.size());
+        assertEquals(1000, snapshot.getMaxTimestamp());
+        for (Map.Entry<String, VersionedResource<String>> entry : entries.entrySet())
+            assertEquals(entry.getValue(), snapshot.get(entry.getKey()));
+        assertNull(snapshot.get("key1000"));
+        assertNull(snapshot.get("ke"));
+        assertNull(snapshot.get(""));
+    }
+
+    @Test
+    public void keys_areSortedByTheirBytes() throws IOException {
+        Map<String, VersionedResource<String>> entries = new HashMap<>();
+        Version version = new Version(1, "node");
+        entries.put("b", VersionedResource.of("2", version));
+        entries.put("a", VersionedResource.of("1", version));
+        entries.put("\u00E8", VersionedResource.of("3", version));
+        entries.put("\uD83D\uDE00", VersionedResource.of("4", version));
+        MappedSnapshot.write(file, entries);
+
+        MappedSnapshot snapshot = MappedSnapshot.open(file);
+        assertEquals("a", snapshot.getKey(0));
+        assertEquals("b", snapshot.getKey(1));
+        assertEquals("\u00E8", snapshot.getKey(2));
+        for (Map.Entry<String, VersionedResource<String>> entry : entries.entrySet())
+            assertEquals(entry.getValue(), snapshot.get(entry.getKey()));
+    }
+
+    @Test
+    public void tombstones_areKept() throws IOException {
+        Map<String, VersionedResource<String>> entries = new HashMap<>();
+        entries.put("removed", VersionedResource.<String>tombstone(new Version(7, "node")));
+        MappedSnapshot.write(file, entries);
+
+        VersionedResource<String> removed = MappedSnapshot.open(file).get("removed");
+        assertTrue(removed.isTombstone());
+        assertEquals(new Version(7, "node"), removed.getVersion());
+    }
+
+    @Test(expected = IOException.class)
+    public void otherFile_isRejected() throws IOException {
+        FileOutputStream output = new FileOutputStream(file);
+        output.write(new byte[32]);
+        output.close();
+        MappedSnapshot.open(file);
+    }
+}
@@ -0,0 +1,250 @@
+package com.eis.smsnetwork.persistence;
+
+import com.eis.communication.network.HybridLogicalClock;
+import com.eis.communication.network.Version;
+import com.eis.communication.network.VersionedResource;
+import com.eis.smslibrary.SMSPeer;
+import com.eis.smsnetwork.SMSWordKeyValidator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the PersistentNetworkStore class, run on a temporary directory
+ */
+public class PersistentNetworkStoreTest {
+
+    private static final SMSPeer PEER1 = new SMSPeer("+393423541601");
+    private static final SMSPeer PEER2 = new SMSPeer("+393423541602");
+    private static final int CHECKPOINT_INTERVAL = 100;
+
+    private File directory;
+    private PersistentNetworkStore store;
+
+    @Before
+    public void setup() throws IOException {
+        directory = File.createTempFile("store", "");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdir());
+        store = open();
+    }
+
+    @After
+    public void teardown() throws IOException {
+        store.close();
+        File[] files = directory.listFiles();
+        if (files != null)
+            for (File file : files) file.delete();
+        directory.delete();
+    }
+
+    private PersistentNetworkStore open() throws IOException {
+        return new PersistentNetworkStore(directory, new SMSWordKeyValidator(), 8, 10, CHECKPOINT_INTERVAL);
+    }
+
+    private PersistentNetworkStore restart() throws IOException {
+        store.close();
+        store = open();
+        return store;
+    }
+
+    @Test
+    public void emptyDirectory_isEmptyStore() {
+        assertTrue(store.getNetDictionary().getResources().isEmpty());
+        assertTrue(store.getNetSubscriberList().getSubscribers().isEmpty());
+        assertEquals(0, store.getReplayedRecordCount());
+    }
+
+    @Test
+    public void restart_replaysTheLog() throws IOException {
+        store.getNetDictionary().addResource("key1", "value1");
+        store.getNetDictionary().addResource("key2", "value2");
+        store.getNetDictionary().replaceResource("key2", "value2", "value3");
+        store.getNetSubscriberList().addSubscriber(PEER1);
+        store.getNetSubscriberList().addSubscriber(PEER2);
+        store.getNetSubscriberList().removeSubscriber(PEER1);
+
+        restart();
+        assertEquals("value1", store.getNetDictionary().getResource("key1"));
+        assertEquals("value3", store.getNetDictionary().getResource("key2"));
+        assertEquals(1, store.getNetSubscriberList().getSubscribers().size());
+        assertTrue(store.getNetSubscriberList().isSubscribed(PEER2));
+        assertEquals(6, store.getReplayedRecordCount());
+    }
+
+    @Test
+    public void restart_keepsTombstonesAndVersions() throws IOException {
+        store.getNetDictionary().addResource("key", "value");
+        store.getNetDictionary().removeResource("key");
+        long removal = store.getNetDictionary().getVersionedResource("key").getVersion().getTimestamp();
+        String originator = store.getNetDictionary().getOriginator();
+
+        restart();
+        assertNull(store.getNetDictionary().getResource("key"));
+        assertTrue(store.getNetDictionary().getVersionedResource("key").isTombstone());
+        assertEquals(originator, store.getNetDictionary().getOriginator());
+        store.getNetDictionary().addResource("key", "again");
+        assertTrue(store.getNetDictionary().getVersionedResource("key").getVersion().getTimestamp() > removal);
+    }
+
+    @Test
+    public void restart_replaysEvictions() throws IOException {
+        store.getNetDictionary().addResource("handedOff", "value");
+        store.getNetDictionary().addResource("kept", "value");
+        assertTrue(store.getNetDictionary().evictResource("handedOff",
+                store.getNetDictionary().getVersionedResource("handedOff")));
+
+        restart();
+        assertNull(store.getNetDictionary().getVersionedResource("handedOff"));
+        assertEquals("value", store.getNetDictionary().getResource("kept"));
+    }
+
+    @Test
+    public void eviction_doesNotForgetANewerEntryOnReplay() throws IOException {
+        store.getNetDictionary().addResource("key", "old");
+        assertTrue(store.getNetDictionary().evictResource("key",
+                store.getNetDictionary().getVersionedResource("key")));
+        store.getNetDictionary().addResource("key", "new");
+
+        restart();
+        assertEquals("new", store.getNetDictionary().getResource("key"));
+    }
+
+    @Test
+    public void restart_replaysClear() throws IOException {
+        store.getNetDictionary().addResource("key", "value");
+        store.getNetSubscriberList().addSubscriber(PEER1);
+        store.getNetDictionary().clear();
+        store.getNetSubscriberList().clear();
+        store.getNetDictionary().addResource("other", "value");
+
+        restart();
+        assertNull(store.getNetDictionary().getVersionedResource("key"));
+        assertEquals("value", store.getNetDictionary().getResource("other"));
+        assertTrue(store.getNetSubscriberList().getSubscribers().isEmpty());
+    }
+
+    @Test
+    public void checkpoint_replacesTheLogWithASnapshot() throws IOException {
+        for (int i = 0; i < 10; i++)
+            store.getNetDictionary().addResource("key" + i, "value" + i);
+        store.getNetSubscriberList().addSubscriber(PEER1);
+        store.checkpoint();
+        store.getNetDictionary().addResource("after", "checkpoint");
+
+        restart();
+        assertEquals(11, store.getNetDictionary().getResources().size());
+        assertEquals("value3", store.getNetDictionary().getResource("key3"));
+        assertEquals("checkpoint", store.getNetDictionary().getResource("after"));
+        assertTrue(store.getNetSubscriberList().isSubscribed(PEER1));
+        assertEquals(1, store.getReplayedRecordCount());
+    }
+
+    @Test
+    public void manyChanges_checkpointInTheBackground() throws IOException, InterruptedException {
+        for (int i = 0; i < CHECKPOINT_INTERVAL * 3; i++)
+            store.getNetDictionary().addResource("key" + (i % 50), "value" + i);
+        for (int i = 0; i < 100 && store.getCheckpointCount() == 0; i++)
+            Thread.sleep(10);
+        assertTrue(store.getCheckpointCount() > 0);
+
+        restart();
+        assertEquals(50, store.getNetDictionary().getResources().size());
+        assertEquals("value299", store.getNetDictionary().getResource("key49"));
+        assertTrue(store.getReplayedRecordCount() < CHECKPOINT_INTERVAL * 3);
+    }
+
+    @Test
+    public void tornTail_isDiscarded() throws IOException {
+        store.getNetDictionary().addResource("key1", "value1");
+        store.getNetDictionary().addResource("key2", "value2");
+        store.close();
+        File segment = new File(directory, WriteAheadLog.SEGMENT_PREFIX + 1 + WriteAheadLog.SEGMENT_SUFFIX);
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        file.setLength(file.length() - 3);
+        file.close();
+
+        store = open();
+        assertEquals("value1", store.getNetDictionary().getResource("key1"));
+        assertNull(store.getNetDictionary().getResource("key2"));
+        store.getNetDictionary().addResource("key3", "value3");
+
+        restart();
+        assertEquals("value1", store.getNetDictionary().getResource("key1"));
+        assertEquals("value3", store.getNetDictionary().getResource("key3"));
+    }
+
+    @Test
+    public void zeroedTail_isDiscarded() throws IOException {
+        store.getNetDictionary().addResource("key1", "value1");
+        store.close();
+        File segment = new File(directory, WriteAheadLog.SEGMENT_PREFIX + 1 + WriteAheadLog.SEGMENT_SUFFIX);
+        long length = segment.length();
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        // preallocated space left by a torn write reads as a record of length zero
+        file.setLength(length + 64);
+        file.close();
+
+        store = open();
+        assertEquals("value1", store.getNetDictionary().getResource("key1"));
+        assertEquals(length, segment.length());
+    }
+
+    @Test
+    public void garbageLength_endsTheReplayOfItsSegment() throws IOException {
+        store.getNetDictionary().addResource("key1", "value1");
+        store.close();
+        File segment = new File(directory, WriteAheadLog.SEGMENT_PREFIX + 1 + WriteAheadLog.SEGMENT_SUFFIX);
+        long length = segment.length();
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        file.seek(length);
+        file.writeInt(Integer.MAX_VALUE);
+        file.writeInt(0);
+        file.close();
+
+        store = open();
+        assertEquals("value1", store.getNetDictionary().getResource("key1"));
+        assertEquals(length, segment.length());
+    }
+
+    @Test
+    public void corruptedRecord_endsTheReplayOfItsSegment() throws IOException {
+        store.getNetDictionary().addResource("key1", "value1");
+        store.getNetDictionary().addResource("key2", "value2");
+        store.close();
+        File segment = new File(directory, WriteAheadLog.SEGMENT_PREFIX + 1 + WriteAheadLog.SEGMENT_SUFFIX);
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        file.seek(file.length() - 1);
+        file.write('?');
+        file.close();
+
+        store = open();
+        assertEquals("value1", store.getNetDictionary().getResource("key1"));
+        assertNull(store.getNetDictionary().getResource("key2"));
+    }
+
+    @Test
+    public void mergedWrites_arePersisted() throws IOException {
+        assertTrue(store.getNetDictionary().mergeResource("key",
+                VersionedResource.of("remote",
+                new Version(System.currentTimeMillis() << HybridLogicalClock.LOGICAL_BITS, "remote"))));
+
+        restart();
+        assertEquals("remote", store.getNetDictionary().getResource("key"));
+    }
+
+    @Test
+    public void sync_groupsRecords() throws IOException {
+        for (int i = 0; i < 16; i++)
+            store.getNetDictionary().addResource("key" + i, "value");
+        store.sync();
+        assertEquals(16, store.getLoggedRecordCount());
+    }
+}
@@ -0,0 +1,114 @@
+package com.eis.smsnetwork.query;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the ResourceCache class
+ */
+public class ResourceCacheTest {
+
+    private static final long TIME_TO_LIVE = 1000;
+
+    private long now;
+    private ResourceCache cache;
+
+    @Before
+    public void setup() {
+        now = 0;
+        cache = new ResourceCache(2, TIME_TO_LIVE) {
+            @Override
+            protected long currentTimeMillis() {
+                return now;
+            }
+        };
+    }
+
+    @Test
+    public void get_countsHitsAndMisses() {
+        assertNull(cache.get("a"));
+        cache.put("a", "1");
+        assertEquals("1", cache.get("a"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void put_evictsLeastRecentlyRead() {
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.get("a");
+        cache.put("c", "3");
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertNull(cache.get("b"));
+        assertEquals("1", cache.get("a"));
+        assertEquals("3", cache.get("c"));
+    }
+
+    @Test
+    public void get_expiresAfterTimeToLive() {
+        cache.put("a", "1");
+        now = TIME_TO_LIVE - 1;
+        assertEquals("1", cache.get("a"));
+        now = TIME_TO_LIVE;
+        assertNull(cache.get("a"));
+        assertEquals(1, cache.getExpirationCount());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void put_refreshesTimeToLive() {
+        cache.put("a", "1");
+        now = TIME_TO_LIVE - 1;
+        cache.put("a", "2");
+        now = TIME_TO_LIVE + 1;
+        assertEquals("2", cache.get("a"));
+    }
+
+    @Test
+    public void invalidate_dropsEntry() {
+        cache.put("a", "1");
+        cache.invalidate("a");
+        cache.invalidate("missing");
+        assertNull(cache.get("a"));
+        assertEquals(1, cache.getInvalidationCount());
+    }
+
+    @Test
+    public void put_afterInvalidation_isDropped() {
+        long generation = cache.getGeneration();
+        cache.invalidate("a");
+        assertFalse(cache.put("a", "stale", generation));
+        assertNull(cache.get("a"));
+        // other keys and later lookups are still cached
+        assertTrue(cache.put("b", "2", generation));
+        assertTrue(cache.put("a", "1", cache.getGeneration()));
+        assertEquals("1", cache.get("a"));
+    }
+
+    @Test
+    public void put_afterForgottenInvalidation_isDropped() {
+        long generation = cache.getGeneration();
+        cache.invalidate("a");
+        // the capacity is 2, so the invalidation of a is forgotten
+        cache.invalidate("b");
+        cache.invalidate("c");
+        assertFalse(cache.put("a", "stale", generation));
+        assertFalse(cache.put("c", "stale", generation));
+        cache.clear();
+        assertFalse(cache.put("d", "stale", generation));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsEmptyCapacity() {
+        new ResourceCache(0, TIME_TO_LIVE);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsNonPositiveTimeToLive() {
+        new ResourceCache(1, 0);
+    }
+}
@@ -0,0 +1,252 @@
+package com.eis.smsnetwork.query;
+
+import com.eis.communication.network.Version;
+import com.eis.communication.network.listeners.GetResourceListener;
+import com.eis.smslibrary.SMSPeer;
+import com.eis.smsnetwork.SMSFailReason;
+import com.eis.smsnetwork.SMSNetDictionary;
+import com.eis.smsnetwork.SMSNetSubscriberList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the ResourceLookup class and its messages
+ */
+public class ResourceLookupTest {
+
+    private static final SMSPeer PEER1 = new SMSPeer("+393423541601");
+    private static final SMSPeer PEER2 = new SMSPeer("+393423541602");
+    private static final SMSPeer PEER3 = new SMSPeer("+393423541603");
+    private static final SMSPeer STRANGER = new SMSPeer("+393423541609");
+
+    private SMSNetDictionary dictionary;
+    private SMSNetSubscriberList subscribers;
+    private List<String> sentMessages;
+    private List<SMSPeer> sentPeers;
+
+    private static class RecordingListener implements GetResourceListener<String, String, SMSFailReason> {
+        final List<String> resources = new ArrayList<>();
+        final List<SMSFailReason> failures = new ArrayList<>();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        @Override
+        public synchronized void onGetResource(String key, String value) {
+            resources.add(value);
+            done.countDown();
+        }
+
+        @Override
+        public synchronized void onGetResourceFailed(String key, SMSFailReason reason) {
+            failures.add(reason);
+            done.countDown();
+        }
+    }
+
+    @Before
+    public void setup() {
+        dictionary = new SMSNetDictionary();
+        subscribers = new SMSNetSubscriberList();
+        subscribers.addSubscriber(PEER1);
+        subscribers.addSubscriber(PEER2);
+        subscribers.addSubscriber(PEER3);
+        sentMessages = new ArrayList<>();
+        sentPeers = new ArrayList<>();
+    }
+
+    private ResourceLookup newLookup(int fanout, long timeoutMillis) {
+        return new ResourceLookup(dictionary, subscribers, fanout, timeoutMillis) {
+            @Override
+            protected void sendMessage(SMSPeer peer, String message) {
+                sentPeers.add(peer);
+                sentMessages.add(message);
+            }
+        };
+    }
+
+    @Test
+    public void messages_roundTrip() {
+        ResourceQuery query = ResourceQuery.decode(new ResourceQuery(42, "key").encode());
+        assertEquals(42, query.getCorrelationId());
+        assertEquals("key", query.getKey());
+        assertEquals("value with spaces", ResourceReply.decode(new ResourceReply(7, "value with spaces").encode()).getResource());
+        assertNull(ResourceReply.decode(new ResourceReply(7, null).encode()).getResource());
+        ResourceReply versioned = ResourceReply.decode(new ResourceReply(7, "value", new Version(99, "node")).encode());
+        assertEquals("value", versioned.getResource());
+        assertEquals(new Version(99, "node"), versioned.getVersion());
+        ResourceReply removed = ResourceReply.decode(new ResourceReply(7, null, new Version(99, "node")).encode());
+        assertTrue(removed.isRemoved());
+        assertEquals(new Version(99, "node"), removed.getVersion());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void malformedReply_isRejected() {
+        ResourceReply.decode(ResourceReply.REPLY_TYPE + "0x");
+    }
+
+    @Test
+    public void lookup_queriesAtMostTheFanout() {
+        newLookup(2, 10000).lookup("key", new RecordingListener());
+        assertEquals(2, sentMessages.size());
+        assertNotEquals(sentPeers.get(0), sentPeers.get(1));
+        assertEquals("key", ResourceQuery.decode(sentMessages.get(0)).getKey());
+    }
+
+    @Test
+    public void newestReply_wins() {
+        ResourceLookup lookup = newLookup(3, 10000);
+        RecordingListener listener = new RecordingListener();
+        lookup.lookup("key", listener);
+        int id = ResourceQuery.decode(sentMessages.get(0)).getCorrelationId();
+
+        assertTrue(lookup.onMessage(PEER1, new ResourceReply(id, "old", new Version(1, "node")).encode()));
+        lookup.onMessage(PEER2, new ResourceReply(id, "new", new Version(2, "node")).encode());
+        assertTrue(listener.resources.isEmpty());
+        lookup.onMessage(PEER3, new ResourceReply(id, "unversioned").encode());
+        assertEquals(1, listener.resources.size());
+        assertEquals("new", listener.resources.get(0));
+        assertEquals(0, lookup.getPendingLookupCount());
+    }
+
+    @Test
+    public void firstUnversionedReply_wins() {
+        ResourceLookup lookup = newLookup(2, 10000);
+        RecordingListener listener = new RecordingListener();
+        lookup.lookup("key", listener);
+        int id = ResourceQuery.decode(sentMessages.get(0)).getCorrelationId();
+
+        lookup.onMessage(sentPeers.get(0), new ResourceReply(id, "first").encode());
+        lookup.onMessage(sentPeers.get(1), new ResourceReply(id, "second").encode());
+        assertEquals("first", listener.resources.get(0));
+    }
+
+    @Test
+    public void newerRemoval_failsWithNoResource() {
+        ResourceLookup lookup = newLookup(3, 10000);
+        RecordingListener listener = new RecordingListener();
+        lookup.lookup("key", listener);
+        int id = ResourceQuery.decode(sentMessages.get(0)).getCorrelationId();
+
+        lookup.onMessage(PEER1, new ResourceReply(id, "stale", new Version(1, "node")).encode());
+        lookup.onMessage(PEER2, new ResourceReply(id, null, new Version(2, "node")).encode());
+        lookup.onMessage(PEER3, new ResourceReply(id, null).encode());
+        assertTrue(listener.resources.isEmpty());
+        assertEquals(SMSFailReason.NO_RESOURCE, listener.failures.get(0));
+    }
+
+    @Test
+    public void deadline_endsWithTheNewestReply() throws InterruptedException {
+        ResourceLookup lookup = newLookup(3, 50);
+        RecordingListener listener = new RecordingListener();
+        lookup.lookup("key", listener);
+        int id = ResourceQuery.decode(sentMessages.get(0)).getCorrelationId();
+
+        lookup.onMessage(PEER1, new ResourceReply(id, "value", new Version(1, "node")).encode());
+        assertTrue(listener.done.await(5, TimeUnit.SECONDS));
+        assertEquals("value", listener.resources.get(0));
+    }
+
+    @Test
+    public void replies_fromPeersNotAsked_areIgnored() {
+        ResourceLookup lookup = newLookup(3, 10000);
+        RecordingListener listener = new RecordingListener();
+        lookup.lookup("key", listener);
+        int id = ResourceQuery.decode(sentMessages.get(0)).getCorrelationId();
+
+        lookup.onMessage(STRANGER, new ResourceReply(id, "forged").encode());
+        lookup.onMessage(PEER1, new ResourceReply(id + 1, "other").encode());
+        assertTrue(listener.resources.isEmpty());
+        assertEquals(1, lookup.getPendingLookupCount());
+    }
+
+    @Test
+    public void everyPeerMissing_failsWithNoResource() {
+        ResourceLookup lookup = newLookup(3, 10000);
+        RecordingListener listener = new RecordingListener();
+        lookup.lookup("key", listener);
+        int id = ResourceQuery.decode(sentMessages.get(0)).getCorrelationId();
+
+        lookup.onMessage(PEER1, new ResourceReply(id, null).encode());
+        lookup.onMessage(PEER2, new ResourceReply(id, null).encode());
+        assertTrue(listener.failures.isEmpty());
+        lookup.onMessage(PEER3, new ResourceReply(id, null).encode());
+        assertEquals(SMSFailReason.NO_RESOURCE, listener.failures.get(0));
+    }
+
+    @Test
+    public void noSubscribers_failsWithNoResource() {
+        subscribers.clear();
+        RecordingListener listener = new RecordingListener();
+        newLookup(3, 10000).lookup("key", listener);
+        assertEquals(SMSFailReason.NO_RESOURCE, listener.failures.get(0));
+        assertTrue(sentMessages.isEmpty());
+    }
+
+    @Test
+    public void deadline_failsWithRequestExpired() throws InterruptedException {
+        ResourceLookup lookup = newLookup(3, 50);
+        RecordingListener listener = new RecordingListener();
+        lookup.lookup("key", listener);
+        assertTrue(listener.done.await(5, TimeUnit.SECONDS));
+        assertEquals(SMSFailReason.REQUEST_EXPIRED, listener.failures.get(0));
+
+        int id = ResourceQuery.decode(sentMessages.get(0)).getCorrelationId();
+        lookup.onMessage(PEER1, new ResourceReply(id, "late").encode());
+        assertTrue(listener.resources.isEmpty());
+    }
+
+    @Test
+    public void concurrentLookups_shareOneQuery() {
+        ResourceLookup lookup = newLookup(3, 10000);
+        RecordingListener first = new RecordingListener();
+        RecordingListener second = new RecordingListener();
+        lookup.lookup("key", first);
+        lookup.lookup("key", second);
+        assertEquals(3, sentMessages.size());
+        assertEquals(1, lookup.getDeduplicatedLookupCount());
+
+        int id = ResourceQuery.decode(sentMessages.get(0)).getCorrelationId();
+        lookup.onMessage(PEER1, new ResourceReply(id, null).encode());
+        lookup.onMessage(PEER2, new ResourceReply(id, "value").encode());
+        lookup.onMessage(PEER3, new ResourceReply(id, null).encode());
+        assertEquals("value", first.resources.get(0));
+        assertEquals("value", second.resources.get(0));
+    }
+
+    @Test
+    public void query_isAnsweredWithTheLocalDictionary() {
+        dictionary.addResource("key", "value");
+        ResourceLookup lookup = newLookup(3, 10000);
+        assertTrue(lookup.onMessage(PEER1, new ResourceQuery(5, "key").encode()));
+        assertTrue(lookup.onMessage(PEER1, new ResourceQuery(6, "missing").encode()));
+
+        assertEquals(PEER1, sentPeers.get(0));
+        ResourceReply found = ResourceReply.decode(sentMessages.get(0));
+        assertEquals(5, found.getCorrelationId());
+        assertEquals("value", found.getResource());
+        assertEquals(dictionary.getVersionedResource("key").getVersion(), found.getVersion());
+        assertNull(ResourceReply.decode(sentMessages.get(1)).getResource());
+    }
+
+    @Test
+    public void query_ofRemovedKey_isAnsweredWithTheRemoval() {
+        dictionary.addResource("key", "value");
+        dictionary.removeResource("key");
+        assertTrue(newLookup(3, 10000).onMessage(PEER1, new ResourceQuery(5, "key").encode()));
+        ResourceReply reply = ResourceReply.decode(sentMessages.get(0));
+        assertTrue(reply.isRemoved());
+        assertEquals(dictionary.getVersionedResource("key").getVersion(), reply.getVersion());
+    }
+
+    @Test
+    public void otherMessages_areNotHandled() {
+        assertFalse(newLookup(3, 10000).onMessage(PEER1, "Sother"));
+    }
+}
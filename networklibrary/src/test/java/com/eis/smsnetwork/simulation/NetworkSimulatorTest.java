@@ -0,0 +1,212 @@
+package com.eis.smsnetwork.simulation;
+
+import com.eis.communication.network.Invitation;
+import com.eis.communication.network.listeners.JoinInvitationListener;
+import com.eis.communication.network.tracing.InMemoryTraceSink;
+import com.eis.communication.network.tracing.TraceEvent;
+import com.eis.smslibrary.SMSPeer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the NetworkSimulator class
+ */
+public class NetworkSimulatorTest {
+
+    private static final int NODES = 50;
+    private static final long MIN_LATENCY = 10;
+    private static final long MAX_LATENCY = 100;
+    private static final long BATCH_DELAY = 200;
+    private static final double DELTA = 1e-9;
+
+    private NetworkSimulator simulator;
+
+    @Before
+    public void setup() {
+        simulator = createSimulator(1);
+    }
+
+    private static NetworkSimulator createSimulator(long seed) {
+        NetworkSimulator simulator = new NetworkSimulator(seed);
+        simulator.setLatency(MIN_LATENCY, MAX_LATENCY);
+        simulator.setBatchDelay(BATCH_DELAY);
+        for (int i = 0; i < NODES; i++)
+            simulator.addNode();
+        return simulator;
+    }
+
+    @Test
+    public void setResource_reachesEveryNode() {
+        simulator.setResource(simulator.getNodes().get(0), "key", "value");
+        simulator.run();
+        for (SimulatedNode node : simulator.getNodes())
+            assertEquals("value", node.getDictionary().getResource("key"));
+        assertEquals(NODES - 1, simulator.getSentMessageCount());
+        assertEquals(1, simulator.getConvergedWriteCount());
+        assertEquals(0, simulator.getPendingWriteCount());
+        long convergence = simulator.getConvergencePercentile(100);
+        assertTrue(convergence >= BATCH_DELAY + MIN_LATENCY && convergence <= BATCH_DELAY + MAX_LATENCY);
+        // the writer holds the resource right away
+        assertEquals(0, simulator.getReplicaPercentile(0));
+        assertTrue(simulator.getReplicaPercentile(50) >= BATCH_DELAY + MIN_LATENCY);
+        assertEquals(0, simulator.getDivergence(), DELTA);
+    }
+
+    @Test
+    public void writesWithinTheDelay_shareABatch() {
+        simulator.setResource(simulator.getNodes().get(0), "key", "value");
+        simulator.runUntil(BATCH_DELAY - 1);
+        simulator.setResource(simulator.getNodes().get(0), "other", "value");
+        simulator.run();
+        assertEquals(NODES - 1, simulator.getSentMessageCount());
+        assertEquals(2, simulator.getConvergedWriteCount());
+        assertEquals(0, simulator.getDivergence(), DELTA);
+    }
+
+    @Test
+    public void removeResource_reachesEveryNode() {
+        simulator.setResource(simulator.getNodes().get(0), "key", "value");
+        simulator.run();
+        simulator.removeResource(simulator.getNodes().get(1), "key");
+        simulator.run();
+        for (SimulatedNode node : simulator.getNodes())
+            assertNull(node.getDictionary().getResource("key"));
+        assertEquals(2, simulator.getConvergedWriteCount());
+        assertEquals(0, simulator.getDivergence(), DELTA);
+    }
+
+    @Test
+    public void run_isDeterministic() {
+        NetworkSimulator other = createSimulator(1);
+        for (NetworkSimulator current : new NetworkSimulator[]{simulator, other}) {
+            current.setLossRate(0.1);
+            for (int i = 0; i < 10; i++)
+                current.setResource(current.getNodes().get(i), "key" + i, "value" + i);
+            current.run();
+        }
+        assertEquals(simulator.getLostMessageCount(), other.getLostMessageCount());
+        assertEquals(simulator.getCurrentTime(), other.getCurrentTime());
+        assertEquals(simulator.getConvergencePercentile(50), other.getConvergencePercentile(50));
+        assertEquals(simulator.getDivergence(), other.getDivergence(), DELTA);
+    }
+
+    @Test
+    public void lostMessages_leaveDivergence() {
+        simulator.setLossRate(0.5);
+        simulator.setResource(simulator.getNodes().get(0), "key", "value");
+        simulator.run();
+        assertTrue(simulator.getLostMessageCount() > 0);
+        assertEquals(1, simulator.getPendingWriteCount());
+        assertEquals(-1, simulator.getConvergencePercentile(50));
+        assertTrue(simulator.getReplicaPercentile(50) >= MIN_LATENCY);
+        assertTrue(simulator.getDivergence() > 0);
+    }
+
+    @Test
+    public void offlineNode_missesWritesUntilRepaired() {
+        SimulatedNode offline = simulator.getNodes().get(NODES - 1);
+        simulator.setOnline(offline, false);
+        simulator.setResource(simulator.getNodes().get(0), "key", "value");
+        simulator.run();
+        assertEquals(1, simulator.getConvergedWriteCount());
+        assertEquals(0, simulator.getDivergence(), DELTA);
+
+        simulator.setOnline(offline, true);
+        assertEquals(1.0 / NODES, simulator.getDivergence(), DELTA);
+        offline.getManager().getAntiEntropy().startRepair(simulator.getNodes().get(0).getPeer());
+        simulator.run();
+        assertEquals("value", offline.getDictionary().getResource("key"));
+        assertEquals(0, simulator.getDivergence(), DELTA);
+    }
+
+    @Test
+    public void join_copiesTheDictionary() {
+        SimulatedNode sponsor = simulator.getNodes().get(0);
+        for (int i = 0; i < 20; i++)
+            simulator.setResource(sponsor, "key" + i, "value" + i);
+        simulator.run();
+        long sentBefore = simulator.getSentMessageCount();
+        SimulatedNode joiner = simulator.join(sponsor);
+        simulator.run();
+        assertTrue(simulator.getSentMessageCount() > sentBefore);
+        for (int i = 0; i < 20; i++)
+            assertEquals("value" + i, joiner.getDictionary().getResource("key" + i));
+        assertEquals(0, simulator.getDivergence(), DELTA);
+        for (SimulatedNode node : simulator.getNodes()) {
+            if (node == joiner) continue;
+            assertTrue(node.getManager().getNetSubscriberList().isSubscribed(joiner.getPeer()));
+            assertTrue(joiner.getManager().getNetSubscriberList().isSubscribed(node.getPeer()));
+        }
+        assertTrue(sponsor.getManager().getInvitedPeers().isEmpty());
+    }
+
+    @Test
+    public void join_reachesTheJoinerWithLaterWrites() {
+        SimulatedNode joiner = simulator.join(simulator.getNodes().get(0));
+        simulator.run();
+        simulator.setResource(simulator.getNodes().get(1), "key", "value");
+        simulator.run();
+        assertEquals("value", joiner.getDictionary().getResource("key"));
+        assertEquals(0, simulator.getPendingWriteCount());
+    }
+
+    @Test
+    public void join_withoutAcceptingTheInvitation_leavesTheNodeOut() {
+        SimulatedNode sponsor = simulator.getNodes().get(0);
+        simulator.setResource(sponsor, "key", "value");
+        simulator.run();
+        SimulatedNode joiner = simulator.join(sponsor);
+        joiner.getManager().setJoinInvitationListener(new JoinInvitationListener<Invitation<SMSPeer>>() {
+            @Override
+            public void onJoinInvitationReceived(Invitation<SMSPeer> invitation) {
+            }
+        });
+        simulator.run();
+        assertNull(joiner.getDictionary().getResource("key"));
+        assertFalse(sponsor.getManager().getNetSubscriberList().isSubscribed(joiner.getPeer()));
+        assertTrue(sponsor.getManager().getInvitedPeers().contains(joiner.getPeer()));
+    }
+
+    @Test
+    public void runUntil_stopsAtTheGivenTime() {
+        simulator.setResource(simulator.getNodes().get(0), "key", "value");
+        assertEquals(BATCH_DELAY + MIN_LATENCY - 1, simulator.runUntil(BATCH_DELAY + MIN_LATENCY - 1));
+        assertEquals(0, simulator.getDeliveredMessageCount());
+        simulator.run();
+        assertEquals(NODES - 1, simulator.getDeliveredMessageCount());
+    }
+
+    @Test
+    public void tracing_rebuildsTimeline() {
+        InMemoryTraceSink sink = new InMemoryTraceSink();
+        simulator.setTraceSink(sink);
+        simulator.setResource(simulator.getNodes().get(0), "key", "value");
+        simulator.run();
+        for (SimulatedNode node : simulator.getNodes())
+            assertEquals("value", node.getDictionary().getResource("key"));
+        String traceId = sink.getEvents().get(0).getTraceId();
+        List<TraceEvent> timeline = sink.getTimeline(traceId);
+        assertEquals(sink.getEvents().size(), timeline.size());
+        assertEquals(TraceEvent.Type.START, timeline.get(0).getType());
+        Map<TraceEvent.Type, Integer> counts = new EnumMap<>(TraceEvent.Type.class);
+        for (TraceEvent event : timeline) {
+            Integer count = counts.get(event.getType());
+            counts.put(event.getType(), count == null ? 1 : count + 1);
+        }
+        assertEquals(NODES - 1, (int) counts.get(TraceEvent.Type.SEND));
+        assertEquals(NODES - 1, (int) counts.get(TraceEvent.Type.RECEIVE));
+        assertEquals(NODES - 1, (int) counts.get(TraceEvent.Type.APPLY));
+        assertEquals(1, (int) counts.get(TraceEvent.Type.COMPLETE));
+        TraceEvent last = timeline.get(timeline.size() - 1);
+        assertTrue(last.getTimestamp() >= BATCH_DELAY + MIN_LATENCY &&
+                last.getTimestamp() <= BATCH_DELAY + MAX_LATENCY);
+        assertEquals(simulator.getConvergencePercentile(100), last.getTimestamp());
+    }
+}
@@ -21,7 +21,7 @@ public class SMSAddPeerTest {
 
     private SMSPeer peer = new SMSPeer("+393408140326");
     private SMSNetworkManager networkManager = new SMSNetworkManager();
-    private SMSAddPeer addPeer = new SMSAddPeer(peer, networkManager.getNetSubscriberList());
+    private SMSAddPeer addPeer = new SMSAddPeer(peer, networkManager.getNetSubscriberList(), networkManager);
 
     @Test
     public void execute() {
@@ -17,7 +17,7 @@ public class SMSAddResourceTest {
     private String key = "key";
     private String value = "value";
 
-    private SMSAddResource addResource = new SMSAddResource(key, value, networkManager.getNetDictionary());
+    private SMSAddResource addResource = new SMSAddResource(key, value, networkManager.getNetDictionary(), networkManager);
 
     @Test
     public void execute() {
@@ -25,10 +25,10 @@ public class SMSQuitNetworkTest {
 
     private SMSJoinableNetManager networkManager = SMSJoinableNetManager.getInstance();
 
-    private SMSAddPeer addPeer1 = new SMSAddPeer(peer1, networkManager.getNetSubscriberList());
-    private SMSAddPeer addPeer2 = new SMSAddPeer(peer2, networkManager.getNetSubscriberList());
+    private SMSAddPeer addPeer1 = new SMSAddPeer(peer1, networkManager.getNetSubscriberList(), networkManager);
+    private SMSAddPeer addPeer2 = new SMSAddPeer(peer2, networkManager.getNetSubscriberList(), networkManager);
 
-    private SMSQuitNetwork removePeer1 = new SMSQuitNetwork(networkManager.getNetSubscriberList());
+    private SMSQuitNetwork removePeer1 = new SMSQuitNetwork(networkManager.getNetSubscriberList(), networkManager);
 
     @Before
     public void setUp() {
@@ -22,9 +22,9 @@ public class SMSRemoveResourceTest {
     private String key2 = "lmao";
     private String value2 = "fuck";
 
-    private SMSAddResource addResource1 = new SMSAddResource(key1, value1, networkManager.getNetDictionary());
-    private SMSAddResource addResource2 = new SMSAddResource(key2, value2, networkManager.getNetDictionary());
-    private SMSRemoveResource removeResource = new SMSRemoveResource(key1, networkManager.getNetDictionary());
+    private SMSAddResource addResource1 = new SMSAddResource(key1, value1, networkManager.getNetDictionary(), networkManager);
+    private SMSAddResource addResource2 = new SMSAddResource(key2, value2, networkManager.getNetDictionary(), networkManager);
+    private SMSRemoveResource removeResource = new SMSRemoveResource(key1, networkManager.getNetDictionary(), networkManager);
     @Before
     public void setUp(){
         CommandExecutor.execute(addResource1);
@@ -0,0 +1,261 @@
+package com.eis.smsnetwork.sync;
+
+import com.eis.communication.network.Version;
+import com.eis.communication.network.VersionedResource;
+import com.eis.smslibrary.SMSPeer;
+import com.eis.smsnetwork.ResourceUpdate;
+import com.eis.smsnetwork.SMSNetDictionary;
+import com.eis.smsnetwork.SMSNetSubscriberList;
+import com.eis.smsnetwork.partition.KeyPartitioner;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the anti-entropy repair of a dictionary
+ */
+public class AntiEntropyTest {
+
+    private static final SMSPeer REPAIRED = new SMSPeer("+393423541601");
+    private static final SMSPeer SOURCE = new SMSPeer("+393423541602");
+
+    private final Queue<Object[]> inFlight = new ArrayDeque<>();
+    private SMSNetDictionary repairedDictionary;
+    private SMSNetDictionary sourceDictionary;
+    private AntiEntropy repaired;
+    private AntiEntropy source;
+    private long now = 0;
+
+    @Before
+    public void setup() {
+        repairedDictionary = new SMSNetDictionary();
+        sourceDictionary = new SMSNetDictionary();
+        repaired = newAntiEntropy(repairedDictionary, REPAIRED);
+        source = newAntiEntropy(sourceDictionary, SOURCE);
+    }
+
+    @Test
+    public void tree_dependsOnlyOnContent() {
+        List<ResourceUpdate> forward = new ArrayList<>();
+        List<ResourceUpdate> backward = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            forward.add(versioned("key" + i, "value" + i, i + 1));
+            backward.add(versioned("key" + (99 - i), "value" + (99 - i), 100 - i));
+        }
+        long root = new MerkleTree(forward, MerkleTree.DEFAULT_DEPTH).getHash(MerkleTree.ROOT);
+        assertEquals(root, new MerkleTree(backward, MerkleTree.DEFAULT_DEPTH).getHash(MerkleTree.ROOT));
+        backward.set(5, versioned("key94", "changed", 95));
+        assertNotEquals(root, new MerkleTree(backward, MerkleTree.DEFAULT_DEPTH).getHash(MerkleTree.ROOT));
+        // the same value under another version is another write
+        backward.set(5, versioned("key94", "value94", 101));
+        assertNotEquals(root, new MerkleTree(backward, MerkleTree.DEFAULT_DEPTH).getHash(MerkleTree.ROOT));
+        backward.set(5, ResourceUpdate.remove("key94").withVersion(new Version(95, "node")));
+        assertNotEquals(root, new MerkleTree(backward, MerkleTree.DEFAULT_DEPTH).getHash(MerkleTree.ROOT));
+        assertEquals(MerkleTree.EMPTY_HASH,
+                new MerkleTree(new ArrayList<ResourceUpdate>(), 3).getHash(MerkleTree.ROOT));
+    }
+
+    @Test
+    public void messages_roundTrip() {
+        Map<Integer, Long> hashes = new LinkedHashMap<>();
+        hashes.put(1, -1L);
+        hashes.put(127, 42L);
+        MerkleHashes decoded = MerkleHashes.decode(new MerkleHashes(true, hashes).encode());
+        assertTrue(decoded.isFromRepairing());
+        assertEquals(hashes, decoded.getHashes());
+        List<ResourceUpdate> entries = Arrays.asList(versioned("key", "a value", 1L << 40),
+                ResourceUpdate.remove("removed").withVersion(new Version(7, "other")),
+                // written relative to the version before it
+                ResourceUpdate.add("next", "value").withVersion(new Version(9, "other")),
+                ResourceUpdate.add("plain", "value"));
+        MerkleLeaf leaf = MerkleLeaf.decode(new MerkleLeaf(70, 1, 2, entries).encode());
+        assertEquals(70, leaf.getLeaf());
+        assertEquals(1, leaf.getPart());
+        assertEquals(2, leaf.getParts());
+        assertEquals(entries, leaf.getEntries());
+    }
+
+    @Test
+    public void equalDictionaries_onlySendRoot() {
+        fill(sourceDictionary, 500);
+        copy(sourceDictionary, repairedDictionary);
+        repaired.startRepair(SOURCE);
+        deliverAll();
+        assertEquals(1, repaired.getSentMessageCount());
+        assertEquals(0, source.getSentMessageCount());
+    }
+
+    @Test
+    public void differences_areRepaired() {
+        fill(sourceDictionary, 300);
+        copy(sourceDictionary, repairedDictionary);
+        sourceDictionary.addResource("missing", "value");
+        sourceDictionary.addResource("key42", "newer");
+        sourceDictionary.removeResource("key7");
+        repairedDictionary.addResource("extra", "value");
+        repaired.startRepair(SOURCE);
+        deliverAll();
+        // a write the source hasn't seen yet is kept, everything else is the same write
+        assertEquals("value", repairedDictionary.getResource("extra"));
+        repairedDictionary.removeResource("extra");
+        sourceDictionary.removeResource("extra");
+        assertEquals(sourceDictionary.getResources(), repairedDictionary.getResources());
+        assertEquals(sourceDictionary.getVersionedResource("key42"), repairedDictionary.getVersionedResource("key42"));
+        assertEquals(3, repaired.getRepairedResourceCount());
+    }
+
+    @Test
+    public void olderSourceWrite_doesNotOverwrite() {
+        fill(sourceDictionary, 50);
+        copy(sourceDictionary, repairedDictionary);
+        repairedDictionary.addResource("key3", "local");
+        repaired.startRepair(SOURCE);
+        deliverAll();
+        assertEquals("local", repairedDictionary.getResource("key3"));
+        assertEquals(0, repaired.getRepairedResourceCount());
+    }
+
+    @Test
+    public void partitioned_repairsOnlySharedKeys() {
+        fill(sourceDictionary, 300);
+        SMSNetSubscriberList repairedSubscribers = new SMSNetSubscriberList();
+        SMSNetSubscriberList sourceSubscribers = new SMSNetSubscriberList();
+        for (int i = 0; i < 4; i++) {
+            repairedSubscribers.addSubscriber(new SMSPeer("+39342354170" + i));
+            sourceSubscribers.addSubscriber(new SMSPeer("+39342354170" + i));
+        }
+        repairedSubscribers.addSubscriber(SOURCE);
+        sourceSubscribers.addSubscriber(REPAIRED);
+        KeyPartitioner partitioner = new KeyPartitioner(REPAIRED, repairedDictionary, repairedSubscribers, 2, 32);
+        repaired.setKeyPartitioner(partitioner);
+        source.setKeyPartitioner(new KeyPartitioner(SOURCE, sourceDictionary, sourceSubscribers, 2, 32));
+        repaired.startRepair(SOURCE);
+        deliverAll();
+        int shared = 0;
+        for (int i = 0; i < 300; i++) {
+            String key = "key" + i;
+            boolean isShared = partitioner.isSharedWith(key, SOURCE);
+            assertEquals(key, isShared ? "value" + i : null, repairedDictionary.getResource(key));
+            if (isShared) shared++;
+        }
+        assertTrue(shared > 0 && shared < 300);
+        assertEquals(shared, repaired.getRepairedResourceCount());
+    }
+
+    @Test
+    public void emptyDictionary_isFilled() {
+        fill(sourceDictionary, 400);
+        sourceDictionary.removeResource("key9");
+        repaired.startRepair(SOURCE);
+        deliverAll();
+        // tombstones travel along, so the removal wins over an older write arriving later
+        assertEquals(sourceDictionary.getVersionedResources(), repairedDictionary.getVersionedResources());
+    }
+
+    @Test
+    public void repairCost_growsWithDifferences() {
+        fill(sourceDictionary, 5000);
+        copy(sourceDictionary, repairedDictionary);
+        sourceDictionary.addResource("key1234", "newer");
+        repaired.startRepair(SOURCE);
+        deliverAll();
+        long oneDifference = repaired.getSentMessageCount() + source.getSentMessageCount();
+        assertEquals(sourceDictionary.getResources(), repairedDictionary.getResources());
+
+        repairedDictionary.clear();
+        repaired.startRepair(SOURCE);
+        deliverAll();
+        long allDifferent = repaired.getSentMessageCount() + source.getSentMessageCount() - oneDifference;
+        assertEquals(sourceDictionary.getResources(), repairedDictionary.getResources());
+        // two messages for each level of the tree, plus the parts of a single leaf, holding
+        // about 5000 / 64 versioned entries, four or five per part
+        assertTrue(oneDifference < 2 * (MerkleTree.DEFAULT_DEPTH + 1) + 5000 / (1 << MerkleTree.DEFAULT_DEPTH) / 3);
+        assertTrue(oneDifference * 10 < allDifferent);
+    }
+
+    @Test
+    public void exchanges_areForgottenAfterTimeout() {
+        fill(sourceDictionary, 100);
+        repaired.startRepair(SOURCE);
+        deliverAll();
+        assertEquals(1, repaired.getExchangeCount());
+        assertEquals(1, source.getExchangeCount());
+        now += AntiEntropy.EXCHANGE_TIMEOUT_MILLIS + 1;
+        assertEquals(0, repaired.getExchangeCount());
+        assertEquals(0, source.getExchangeCount());
+        // a leaf arriving after the exchange is forgotten is ignored
+        sourceDictionary.addResource("late", "value");
+        MerkleTree tree = new MerkleTree(SyncEntries.of(sourceDictionary), MerkleTree.DEFAULT_DEPTH);
+        int leaf = tree.leafOf("late");
+        repaired.onMessage(SOURCE, leafMessage(tree, leaf));
+        assertNull(repairedDictionary.getResource("late"));
+    }
+
+    @Test
+    public void leafFromUnknownPeer_isIgnored() {
+        sourceDictionary.addResource("key", "value");
+        MerkleTree tree = new MerkleTree(SyncEntries.of(sourceDictionary), MerkleTree.DEFAULT_DEPTH);
+        int leaf = tree.leafOf("key");
+        assertTrue(repaired.onMessage(SOURCE, leafMessage(tree, leaf)));
+        assertNull(repairedDictionary.getResource("key"));
+    }
+
+    @Test
+    public void foreignMessage_isNotHandled() {
+        assertFalse(repaired.onMessage(SOURCE, "0 key value"));
+    }
+
+    private AntiEntropy newAntiEntropy(SMSNetDictionary dictionary, final SMSPeer self) {
+        return new AntiEntropy(dictionary) {
+            @Override
+            protected void sendMessage(SMSPeer peer, String message) {
+                assertTrue(message.length() <= DEFAULT_MAX_MESSAGE_LENGTH);
+                inFlight.add(new Object[]{self, peer, message});
+            }
+
+            @Override
+            protected long currentTimeMillis() {
+                return now;
+            }
+        };
+    }
+
+    private void deliverAll() {
+        Object[] message;
+        while ((message = inFlight.poll()) != null) {
+            AntiEntropy receiver = message[1].equals(SOURCE) ? source : repaired;
+            assertTrue(receiver.onMessage((SMSPeer) message[0], (String) message[2]));
+        }
+    }
+
+    private static void fill(SMSNetDictionary dictionary, int resources) {
+        for (int i = 0; i < resources; i++)
+            dictionary.addResource("key" + i, "value" + i);
+    }
+
+    /**
+     * Copies every write of a dictionary into another one, with its version
+     */
+    private static void copy(SMSNetDictionary from, SMSNetDictionary to) {
+        for (Map.Entry<String, VersionedResource<String>> entry : from.getVersionedResources().entrySet())
+            to.mergeResource(entry.getKey(), entry.getValue());
+    }
+
+    private static ResourceUpdate versioned(String key, String value, long timestamp) {
+        return ResourceUpdate.add(key, value).withVersion(new Version(timestamp, "node"));
+    }
+
+    private static String leafMessage(MerkleTree tree, int leaf) {
+        return new MerkleLeaf(leaf, 0, 1, new ArrayList<>(tree.getLeafEntries(leaf).values())).encode();
+    }
+}
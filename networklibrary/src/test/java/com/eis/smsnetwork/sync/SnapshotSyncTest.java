@@ -0,0 +1,281 @@
+package com.eis.smsnetwork.sync;
+
+import com.eis.communication.network.Version;
+import com.eis.smslibrary.SMSPeer;
+import com.eis.smsnetwork.ResourceUpdate;
+import com.eis.smsnetwork.SMSNetDictionary;
+import com.eis.smsnetwork.SMSNetSubscriberList;
+import com.eis.smsnetwork.partition.KeyPartitioner;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the state transfer to a joining peer
+ */
+public class SnapshotSyncTest {
+
+    private static final SMSPeer INVITER = new SMSPeer("+393423541601");
+    private static final SMSPeer JOINER = new SMSPeer("+393423541602");
+    private static final int PEERS = 5;
+
+    private final List<String> sentChunks = new ArrayList<>();
+    private final List<String> sentRequests = new ArrayList<>();
+    private SMSNetDictionary inviterDictionary;
+    private SMSNetSubscriberList inviterSubscribers;
+    private SMSNetDictionary joinerDictionary;
+    private SMSNetSubscriberList joinerSubscribers;
+    private SnapshotSender sender;
+    private SnapshotReceiver receiver;
+
+    @Before
+    public void setup() {
+        inviterDictionary = new SMSNetDictionary();
+        inviterSubscribers = new SMSNetSubscriberList();
+        for (int i = 0; i < PEERS; i++)
+            inviterSubscribers.addSubscriber(new SMSPeer("+39342354170" + i));
+        inviterSubscribers.addSubscriber(JOINER);
+        joinerDictionary = new SMSNetDictionary();
+        joinerSubscribers = new SMSNetSubscriberList();
+        joinerSubscribers.addSubscriber(INVITER);
+        sender = new SnapshotSender(inviterDictionary, inviterSubscribers) {
+            @Override
+            protected void sendMessage(SMSPeer joiner, String message) {
+                assertEquals(JOINER, joiner);
+                sentChunks.add(message);
+            }
+        };
+        receiver = new SnapshotReceiver(joinerDictionary, joinerSubscribers) {
+            @Override
+            protected void sendMessage(SMSPeer inviter, String message) {
+                assertEquals(INVITER, inviter);
+                sentRequests.add(message);
+            }
+        };
+    }
+
+    @Test
+    public void chunk_roundTrips() {
+        List<ResourceUpdate> entries = Arrays.asList(ResourceUpdate.add("key", "a value: with \\ anything"),
+                ResourceUpdate.add("versioned", "value").withVersion(new Version(1L << 40, "node")),
+                ResourceUpdate.remove("removed").withVersion(new Version(3, "other")));
+        SnapshotChunk chunk = new SnapshotChunk(42, 3, 7, Arrays.asList("+393423541601"), entries);
+        SnapshotChunk decoded = SnapshotChunk.decode(chunk.encode());
+        assertEquals(42, decoded.getSessionId());
+        assertEquals(3, decoded.getIndex());
+        assertEquals(7, decoded.getTotal());
+        assertEquals(chunk.getPeerAddresses(), decoded.getPeerAddresses());
+        assertEquals(entries, decoded.getEntries());
+    }
+
+    @Test
+    public void resume_roundTrips() {
+        SnapshotResume resume = SnapshotResume.decode(new SnapshotResume(1234567, 89).encode());
+        assertEquals(1234567, resume.getSessionId());
+        assertEquals(89, resume.getFromIndex());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void malformedChunk_isRejected() {
+        SnapshotChunk.decode("S000x");
+    }
+
+    @Test
+    public void wholeState_isTransferred() {
+        fillDictionary(200);
+        inviterDictionary.removeResource("key0");
+        sender.startSession(JOINER);
+        deliver(sentChunks);
+        assertTrue(receiver.isComplete());
+        // the versions and the tombstones are transferred too
+        assertEquals(inviterDictionary.getVersionedResources(), joinerDictionary.getVersionedResources());
+        assertEquals(PEERS + 1, joinerSubscribers.getSubscribers().size());
+        assertFalse(joinerSubscribers.isSubscribed(JOINER));
+        for (String chunk : sentChunks)
+            assertTrue(chunk.length() <= SnapshotSender.DEFAULT_MAX_MESSAGE_LENGTH);
+        // many resources share each message, even with their versions
+        assertTrue(sentChunks.size() * 3 < 200);
+    }
+
+    @Test
+    public void partitioned_sendsOnlyTheJoinersKeys() {
+        fillDictionary(200);
+        KeyPartitioner partitioner = new KeyPartitioner(INVITER, inviterDictionary, inviterSubscribers, 2, 32);
+        sender.setKeyPartitioner(partitioner);
+        sender.startSession(JOINER);
+        deliver(sentChunks);
+        assertTrue(receiver.isComplete());
+        int owned = 0;
+        for (int i = 0; i < 200; i++) {
+            String key = "key" + i;
+            boolean ownedByJoiner = partitioner.isOwnedBy(key, JOINER);
+            assertEquals(key, ownedByJoiner ? "value" + i : null, joinerDictionary.getResource(key));
+            if (ownedByJoiner) owned++;
+        }
+        assertTrue(owned > 0 && owned < 200);
+    }
+
+    @Test
+    public void newerLocalWrite_isKept() {
+        fillDictionary(10);
+        sender.startSession(JOINER);
+        // written by the joining peer after the chunk was packed, so it's newer
+        joinerDictionary.mergeResource("key3", inviterDictionary.getVersionedResource("key3"));
+        joinerDictionary.addResource("key3", "newer");
+        deliver(sentChunks);
+        assertTrue(receiver.isComplete());
+        assertEquals("newer", joinerDictionary.getResource("key3"));
+    }
+
+    @Test
+    public void emptyNetwork_sendsOneChunk() {
+        inviterSubscribers.clear();
+        sender.startSession(JOINER);
+        assertEquals(1, sentChunks.size());
+        deliver(sentChunks);
+        assertTrue(receiver.isComplete());
+    }
+
+    @Test
+    public void lostChunks_areResumedFromFirstMissing() {
+        fillDictionary(100);
+        sender.startSession(JOINER);
+        List<String> firstRound = new ArrayList<>(sentChunks);
+        int total = firstRound.size();
+        assertTrue(total > 3);
+        // the second half of the transfer is lost
+        deliver(firstRound.subList(0, total / 2));
+        assertFalse(receiver.isComplete());
+
+        sentChunks.clear();
+        assertTrue(receiver.resume(INVITER));
+        SnapshotResume request = SnapshotResume.decode(sentRequests.get(0));
+        assertEquals(total / 2, request.getFromIndex());
+        assertTrue(sender.onResumeRequest(JOINER, request));
+        assertEquals(total - total / 2, sentChunks.size());
+        deliver(sentChunks);
+        assertTrue(receiver.isComplete());
+        assertEquals(inviterDictionary.getResources(), joinerDictionary.getResources());
+    }
+
+    @Test
+    public void completedSession_isForgotten() {
+        fillDictionary(10);
+        sender.startSession(JOINER);
+        deliver(sentChunks);
+        assertEquals(1, sender.getSessionCount());
+        receiver.resume(INVITER);
+        assertTrue(sender.onResumeRequest(JOINER, SnapshotResume.decode(sentRequests.get(0))));
+        assertEquals(0, sender.getSessionCount());
+    }
+
+    @Test
+    public void duplicateChunk_isIgnored() {
+        fillDictionary(10);
+        sender.startSession(JOINER);
+        SnapshotChunk chunk = SnapshotChunk.decode(sentChunks.get(0));
+        assertTrue(receiver.onChunk(INVITER, chunk));
+        assertFalse(receiver.onChunk(INVITER, chunk));
+    }
+
+    @Test
+    public void completion_isAcknowledgedOnce() {
+        fillDictionary(10);
+        sender.startSession(JOINER);
+        deliver(sentChunks);
+        assertTrue(receiver.isComplete());
+        assertEquals(1, sentRequests.size());
+        deliver(sentChunks);
+        assertEquals(1, sentRequests.size());
+        assertEquals(sentChunks.size(), SnapshotResume.decode(sentRequests.get(0)).getFromIndex());
+    }
+
+    @Test
+    public void otherSession_isIgnored() {
+        fillDictionary(10);
+        sender.startSession(JOINER);
+        List<String> firstSession = new ArrayList<>(sentChunks);
+        sentChunks.clear();
+        inviterDictionary.addResource("late", "value");
+        sender.startSession(JOINER);
+        assertTrue(receiver.onChunk(INVITER, SnapshotChunk.decode(sentChunks.get(0))));
+        for (String chunk : firstSession)
+            assertFalse(receiver.onChunk(INVITER, SnapshotChunk.decode(chunk)));
+        receiver.reset();
+        assertTrue(receiver.onChunk(INVITER, SnapshotChunk.decode(firstSession.get(0))));
+    }
+
+    @Test
+    public void lostChunks_areResumedAfterTimeout() throws InterruptedException {
+        final List<String> requests = new ArrayList<>();
+        SnapshotReceiver timedReceiver = new SnapshotReceiver(joinerDictionary, joinerSubscribers, 10) {
+            @Override
+            protected void sendMessage(SMSPeer inviter, String message) {
+                synchronized (requests) {
+                    requests.add(message);
+                }
+            }
+        };
+        fillDictionary(100);
+        sender.startSession(JOINER);
+        assertTrue(sentChunks.size() > 1);
+        timedReceiver.onChunk(INVITER, SnapshotChunk.decode(sentChunks.get(0)));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            synchronized (requests) {
+                if (requests.size() == SnapshotReceiver.MAX_RESUMES) break;
+            }
+            Thread.sleep(5);
+        }
+        // gives up after the last request
+        Thread.sleep(50);
+        synchronized (requests) {
+            assertEquals(SnapshotReceiver.MAX_RESUMES, requests.size());
+            assertEquals(1, SnapshotResume.decode(requests.get(0)).getFromIndex());
+        }
+    }
+
+    @Test
+    public void unknownSession_isNotResumed() {
+        assertFalse(sender.onResumeRequest(JOINER, new SnapshotResume(1, 0)));
+        assertNull(receiver.getResumeRequest());
+    }
+
+    @Test
+    public void chunks_scaleWithData() {
+        // entries of the same length, so that only their number grows
+        fillDictionaryEvenly(50);
+        sender.startSession(JOINER);
+        int small = sentChunks.size();
+        sentChunks.clear();
+        fillDictionaryEvenly(500);
+        sender.startSession(JOINER);
+        int large = sentChunks.size();
+        assertTrue(large < small * 12);
+        assertTrue(large > small * 8);
+    }
+
+    private void fillDictionary(int resources) {
+        for (int i = 0; i < resources; i++)
+            inviterDictionary.addResource("key" + i, "value" + i);
+    }
+
+    private void fillDictionaryEvenly(int resources) {
+        for (int i = 0; i < resources; i++)
+            inviterDictionary.addResource(String.format("key%03d", i), String.format("value%03d", i));
+    }
+
+    private void deliver(List<String> chunks) {
+        List<String> shuffled = new ArrayList<>(chunks);
+        Collections.reverse(shuffled);
+        for (String chunk : shuffled)
+            receiver.onChunk(INVITER, SnapshotChunk.decode(chunk));
+    }
+}